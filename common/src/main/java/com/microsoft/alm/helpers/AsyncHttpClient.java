@@ -0,0 +1,61 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import java.net.URI;
+import java.util.Map;
+
+/**
+ * The non-blocking counterpart of {@link HttpClient}: every call returns immediately with a future that
+ * completes when the response has arrived, so no thread is held for the duration of the round trip.
+ *
+ * The futures fail with the same {@link java.io.IOException}s the blocking methods would throw.
+ */
+public interface AsyncHttpClient {
+
+    /**
+     * Return a reference to the headers this request will use
+     *
+     * Must return a reference, not a clone or a copy
+     *
+     * @return the reference of headers will be used for this request
+     */
+    Map<String, String> getHeaders();
+
+    /**
+     * Make a HEAD call and get the header value returned
+     *
+     * @param uri target uri
+     * @param header the header to retrieve
+     * @return the future value of the header, null if this header doesn't exist
+     */
+    ListenableFuture<String> getHeaderField(URI uri, String header);
+
+    /**
+     * Read response from a GET HTTP call to the targetUri
+     *
+     * @param uri target uri
+     * @return the future response; fails if the response status code is not 200
+     */
+    ListenableFuture<String> getGetResponseText(URI uri);
+    ListenableFuture<String> getGetResponseText(URI uri, int timeout);
+
+    /**
+     * Read the response from a POST HTTP call to the target uri
+     *
+     * @param uri target uri
+     * @param content the body of the request
+     * @return the future response; fails if the response status code is not 200
+     */
+    ListenableFuture<String> getPostResponseText(URI uri, StringContent content);
+
+    /**
+     * Read the response from a POST HTTP call, but don't fail even if the call is not successful
+     *
+     * @param uri target uri
+     * @param content the body of the request
+     * @return the future response
+     */
+    ListenableFuture<HttpResponse> getPostResponse(URI uri, StringContent content);
+}
@@ -0,0 +1,114 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Presents a blocking {@link HttpClient} as an {@link AsyncHttpClient}, by running each call on an executor.
+ *
+ * The calls go through the blocking client unchanged, with its SSL, proxy and {@link java.net.Authenticator}
+ * handling; the caller's {@link Deadline} is installed on the executor thread for the duration of the call.
+ * Cancelling a future before its call has started skips the call; a call already running is left to finish and
+ * its result dropped.
+ */
+public class AsyncHttpClientAdapter implements AsyncHttpClient {
+
+    private final HttpClient httpClient;
+    private final Executor executor;
+
+    public AsyncHttpClientAdapter(final HttpClient httpClient, final Executor executor) {
+        Debug.Assert(httpClient != null, "httpClient cannot be null");
+        Debug.Assert(executor != null, "executor cannot be null");
+
+        this.httpClient = httpClient;
+        this.executor = executor;
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+        return httpClient.getHeaders();
+    }
+
+    @Override
+    public ListenableFuture<String> getHeaderField(final URI uri, final String header) {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return httpClient.getHeaderField(uri, header);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<String> getGetResponseText(final URI uri) {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return httpClient.getGetResponseText(uri);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<String> getGetResponseText(final URI uri, final int timeout) {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return httpClient.getGetResponseText(uri, timeout);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<String> getPostResponseText(final URI uri, final StringContent content) {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return httpClient.getPostResponseText(uri, content);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<HttpResponse> getPostResponse(final URI uri, final StringContent content) {
+        return submit(new Callable<HttpResponse>() {
+            @Override
+            public HttpResponse call() throws Exception {
+                return httpClient.getPostResponse(uri, content);
+            }
+        });
+    }
+
+    private <T> ListenableFuture<T> submit(final Callable<T> call) {
+        final SettableFuture<T> future = SettableFuture.create();
+        final Deadline deadline = Deadline.current();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (future.isDone()) {
+                        // cancelled before it started
+                        return;
+                    }
+                    final Deadline previousDeadline = Deadline.setCurrent(deadline);
+                    try {
+                        future.set(call.call());
+                    } catch (final Throwable t) {
+                        future.setException(t);
+                    } finally {
+                        Deadline.setCurrent(previousDeadline);
+                    }
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            future.setException(e);
+        }
+        return future;
+    }
+}
@@ -0,0 +1,17 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+/**
+ * The {@link AsyncHttpClient} counterpart of {@link AttemptAwareHttpClient}, asked for by
+ * {@link RetryingAsyncHttpClient}.
+ */
+interface AttemptAwareAsyncHttpClient extends AsyncHttpClient {
+
+    /**
+     * @param attempt 1 for the first attempt at a call, 2 and up for retries
+     * @return a client making the calls of that attempt, which passes the attempt on to its own delegate
+     */
+    AsyncHttpClient forAttempt(final int attempt);
+}
@@ -0,0 +1,17 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+/**
+ * Implemented by the decorators that need to know which attempt of a {@link RetryingHttpClient} call they carry.
+ * The retrying client asks for a client per attempt instead of publishing the attempt where anyone can read it.
+ */
+interface AttemptAwareHttpClient extends HttpClient {
+
+    /**
+     * @param attempt 1 for the first attempt at a call, 2 and up for retries
+     * @return a client making the calls of that attempt, which passes the attempt on to its own delegate
+     */
+    HttpClient forAttempt(final int attempt);
+}
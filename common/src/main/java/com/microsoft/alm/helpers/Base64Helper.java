@@ -0,0 +1,30 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import javax.xml.bind.DatatypeConverter;
+
+/**
+ * Encodes and decodes standard base64, as in {@code Basic} authorization headers.
+ *
+ * This is the Java 6 version, built on {@link DatatypeConverter}.  Java 11 and later, where that class is no longer
+ * part of the JDK, load a version built on {@code java.util.Base64} instead from the multi-release jar; classes
+ * used straight from a build folder, as in tests, still need {@code javax.xml.bind} on the class path.
+ */
+public final class Base64Helper {
+
+    private Base64Helper() {
+    }
+
+    public static String encode(final byte[] bytes) {
+        return DatatypeConverter.printBase64Binary(bytes);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the value is not base64
+     */
+    public static byte[] decode(final String value) {
+        return DatatypeConverter.parseBase64Binary(value);
+    }
+}
@@ -0,0 +1,98 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Presents an {@link AsyncHttpClient} as a blocking {@link HttpClient}, for callers that have not moved to futures.
+ */
+public class BlockingHttpClientAdapter implements HttpClient {
+
+    private final AsyncHttpClient asyncHttpClient;
+
+    public BlockingHttpClientAdapter(final AsyncHttpClient asyncHttpClient) {
+        Debug.Assert(asyncHttpClient != null, "asyncHttpClient cannot be null");
+
+        this.asyncHttpClient = asyncHttpClient;
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+        return asyncHttpClient.getHeaders();
+    }
+
+    @Override
+    public String getHeaderField(final URI uri, final String header) throws IOException {
+        return await(asyncHttpClient.getHeaderField(uri, header));
+    }
+
+    @Override
+    public String getGetResponseText(final URI uri) throws IOException {
+        return await(asyncHttpClient.getGetResponseText(uri));
+    }
+
+    @Override
+    public String getGetResponseText(final URI uri, final int timeout) throws IOException {
+        return await(asyncHttpClient.getGetResponseText(uri, timeout));
+    }
+
+    @Override
+    public String getPostResponseText(final URI uri, final StringContent content) throws IOException {
+        return await(asyncHttpClient.getPostResponseText(uri, content));
+    }
+
+    @Override
+    public HttpResponse getPostResponse(final URI uri, final StringContent content) throws IOException {
+        return await(asyncHttpClient.getPostResponse(uri, content));
+    }
+
+    /**
+     * Waits for the future and rethrows its failure the way the blocking call would have thrown it.
+     *
+     * When the current thread has a {@link Deadline}, the wait ends there and the request is cancelled.
+     */
+    public static <T> T await(final Future<T> future) throws IOException {
+        try {
+            final Deadline deadline = Deadline.current();
+            if (deadline == null) {
+                return future.get();
+            }
+            try {
+                return future.get(deadline.checkRemainingMillis(), TimeUnit.MILLISECONDS);
+            } catch (final TimeoutException e) {
+                future.cancel(true);
+                throw new DeadlineExceededException("The deadline passed while waiting for the response.");
+            }
+        } catch (final DeadlineExceededException e) {
+            future.cancel(true);
+            throw e;
+        } catch (final InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            final InterruptedIOException exception = new InterruptedIOException("Interrupted while waiting for the response");
+            exception.initCause(e);
+            throw exception;
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause == null ? e.getMessage() : cause.getMessage(), cause);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A {@link Reader} that refuses to deliver more than a set number of characters, so a misbehaving server
+ * cannot make us buffer an unbounded response.
+ */
+public class BoundedReader extends FilterReader {
+
+    private final long maxCharacters;
+    private long remaining;
+
+    public BoundedReader(final Reader in, final long maxCharacters) {
+        super(in);
+        this.maxCharacters = maxCharacters;
+        this.remaining = maxCharacters;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int c = super.read();
+        if (c != -1) {
+            consume(1);
+        }
+        return c;
+    }
+
+    @Override
+    public int read(final char[] buffer, final int offset, final int length) throws IOException {
+        // ask for one character more than allowed, so reaching the limit exactly is not an error
+        final int count = super.read(buffer, offset, (int) Math.min(length, remaining + 1));
+        if (count > 0) {
+            consume(count);
+        }
+        return count;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        final long skipped = super.skip(Math.min(n, remaining + 1));
+        consume(skipped);
+        return skipped;
+    }
+
+    private void consume(final long count) throws IOException {
+        remaining -= count;
+        if (remaining < 0) {
+            throw new IOException("The response is larger than " + maxCharacters + " characters.");
+        }
+    }
+}
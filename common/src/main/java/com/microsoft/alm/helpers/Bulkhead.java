@@ -0,0 +1,178 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InterruptedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the requests in flight to each host, so a burst of threads missing their cache at the same time does not
+ * turn into a burst of token requests that gets us throttled.
+ *
+ * A request beyond {@code maxConcurrentCalls} waits, in arrival order, for up to {@code maxWaitMillis} or the
+ * current {@link Deadline}, whichever comes first.  At most {@code maxQueuedCalls} requests wait per host; any
+ * more, and any that wait too long, are rejected with a {@link BulkheadRejectedException}.
+ */
+public class Bulkhead {
+
+    private static final Logger logger = LoggerFactory.getLogger(Bulkhead.class);
+
+    public static final int DEFAULT_MAX_CONCURRENT_CALLS = 8;
+    public static final int DEFAULT_MAX_QUEUED_CALLS = 64;
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 30 * 1000;
+
+    private final int maxConcurrentCalls;
+    private final int maxQueuedCalls;
+    private final long maxWaitMillis;
+    private final ConcurrentMap<String, Compartment> compartments = new ConcurrentHashMap<String, Compartment>();
+    private final AtomicLong rejectedCalls = new AtomicLong();
+
+    public Bulkhead() {
+        this(DEFAULT_MAX_CONCURRENT_CALLS, DEFAULT_MAX_QUEUED_CALLS, DEFAULT_MAX_WAIT_MILLIS);
+    }
+
+    /**
+     * @param maxConcurrentCalls the number of requests to a single host that may be in flight at once
+     * @param maxQueuedCalls     the number of requests to a single host that may wait for their turn
+     * @param maxWaitMillis      how long a request waits for its turn before it is rejected
+     */
+    public Bulkhead(final int maxConcurrentCalls, final int maxQueuedCalls, final long maxWaitMillis) {
+        if (maxConcurrentCalls < 1) {
+            throw new IllegalArgumentException("maxConcurrentCalls must be at least 1");
+        }
+        if (maxQueuedCalls < 0) {
+            throw new IllegalArgumentException("maxQueuedCalls cannot be negative");
+        }
+        if (maxWaitMillis < 0) {
+            throw new IllegalArgumentException("maxWaitMillis cannot be negative");
+        }
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.maxQueuedCalls = maxQueuedCalls;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    /**
+     * Waits for a turn to send a request to the host.  Every successful call must be followed by
+     * {@link #release(String)}.
+     *
+     * @throws BulkheadRejectedException if the host's queue is full or the wait took too long
+     * @throws DeadlineExceededException if the current deadline has passed
+     * @throws InterruptedIOException    if the thread was interrupted while waiting
+     */
+    void acquire(final String host) throws InterruptedIOException, BulkheadRejectedException {
+        final Compartment compartment = getCompartment(host);
+        if (compartment.permits.tryAcquire()) {
+            return;
+        }
+        if (compartment.queued.incrementAndGet() > maxQueuedCalls) {
+            compartment.queued.decrementAndGet();
+            throw reject(host, maxQueuedCalls + " requests are already waiting");
+        }
+        try {
+            // a wait of 0 means no waiting here, but no timeout to capTimeout
+            final long waitMillis = maxWaitMillis == 0
+                    ? 0
+                    : Deadline.capTimeout((int) Math.min(maxWaitMillis, Integer.MAX_VALUE));
+            if (!compartment.permits.tryAcquire(waitMillis, TimeUnit.MILLISECONDS)) {
+                Deadline.checkCurrent();
+                throw reject(host, "no turn within " + waitMillis + " ms");
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            final InterruptedIOException exception = new InterruptedIOException("Interrupted while waiting for a turn to call " + host);
+            exception.initCause(e);
+            throw exception;
+        } finally {
+            compartment.queued.decrementAndGet();
+        }
+    }
+
+    void release(final String host) {
+        getCompartment(host).permits.release();
+    }
+
+    private BulkheadRejectedException reject(final String host, final String reason) {
+        rejectedCalls.incrementAndGet();
+        logger.debug("Rejecting request to {}: {}", host, reason);
+        return new BulkheadRejectedException(host, reason);
+    }
+
+    private Compartment getCompartment(final String host) {
+        Compartment compartment = compartments.get(host);
+        if (compartment == null) {
+            final Compartment created = new Compartment(maxConcurrentCalls);
+            compartment = compartments.putIfAbsent(host, created);
+            if (compartment == null) {
+                compartment = created;
+            }
+        }
+        return compartment;
+    }
+
+    public Statistics getStatistics() {
+        final Map<String, Integer> inFlightByHost = new LinkedHashMap<String, Integer>();
+        final Map<String, Integer> queuedByHost = new LinkedHashMap<String, Integer>();
+        for (final Map.Entry<String, Compartment> entry : compartments.entrySet()) {
+            final Compartment compartment = entry.getValue();
+            inFlightByHost.put(entry.getKey(), maxConcurrentCalls - compartment.permits.availablePermits());
+            queuedByHost.put(entry.getKey(), Math.max(compartment.queued.get(), 0));
+        }
+        return new Statistics(rejectedCalls.get(), inFlightByHost, queuedByHost);
+    }
+
+    /**
+     * A point-in-time view of the bulkhead.
+     */
+    public static class Statistics {
+        private final long rejectedCalls;
+        private final Map<String, Integer> inFlightCallsByHost;
+        private final Map<String, Integer> queuedCallsByHost;
+
+        Statistics(final long rejectedCalls, final Map<String, Integer> inFlightCallsByHost,
+                   final Map<String, Integer> queuedCallsByHost) {
+            this.rejectedCalls = rejectedCalls;
+            this.inFlightCallsByHost = inFlightCallsByHost;
+            this.queuedCallsByHost = queuedCallsByHost;
+        }
+
+        /**
+         * @return number of requests rejected since the bulkhead was created
+         */
+        public long getRejectedCalls() {
+            return rejectedCalls;
+        }
+
+        public Map<String, Integer> getInFlightCallsByHost() {
+            return inFlightCallsByHost;
+        }
+
+        public Map<String, Integer> getQueuedCallsByHost() {
+            return queuedCallsByHost;
+        }
+
+        @Override
+        public String toString() {
+            return "rejected=" + rejectedCalls + ", inFlight=" + inFlightCallsByHost + ", queued=" + queuedCallsByHost;
+        }
+    }
+
+    private static class Compartment {
+        final Semaphore permits;
+        final AtomicInteger queued = new AtomicInteger();
+
+        Compartment(final int maxConcurrentCalls) {
+            this.permits = new Semaphore(maxConcurrentCalls, true);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+
+/**
+ * The {@link AsyncHttpClient} counterpart of {@link BulkheadHttpClient}: every call first takes a turn from a
+ * {@link Bulkhead} shared by all clients, holding it until the response has arrived.
+ *
+ * A call that has to wait for its turn waits on the calling thread, as it would with the blocking client; a call
+ * that is refused fails its future with the {@link BulkheadRejectedException}.
+ */
+public class BulkheadAsyncHttpClient implements AttemptAwareAsyncHttpClient {
+
+    private final AsyncHttpClient delegate;
+    private final Bulkhead bulkhead;
+
+    public BulkheadAsyncHttpClient(final AsyncHttpClient delegate, final Bulkhead bulkhead) {
+        Debug.Assert(delegate != null, "delegate cannot be null");
+        Debug.Assert(bulkhead != null, "bulkhead cannot be null");
+
+        this.delegate = delegate;
+        this.bulkhead = bulkhead;
+    }
+
+    /**
+     * Takes no interest in the attempt itself, only passes it on.
+     */
+    @Override
+    public AsyncHttpClient forAttempt(final int attempt) {
+        if (delegate instanceof AttemptAwareAsyncHttpClient) {
+            return new BulkheadAsyncHttpClient(RetryingAsyncHttpClient.forAttempt(delegate, attempt), bulkhead);
+        }
+        return this;
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+        return delegate.getHeaders();
+    }
+
+    @Override
+    public ListenableFuture<String> getHeaderField(final URI uri, final String header) {
+        return execute(uri, new Call<String>() {
+            @Override
+            ListenableFuture<String> execute() {
+                return delegate.getHeaderField(uri, header);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<String> getGetResponseText(final URI uri) {
+        return execute(uri, new Call<String>() {
+            @Override
+            ListenableFuture<String> execute() {
+                return delegate.getGetResponseText(uri);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<String> getGetResponseText(final URI uri, final int timeout) {
+        return execute(uri, new Call<String>() {
+            @Override
+            ListenableFuture<String> execute() {
+                return delegate.getGetResponseText(uri, timeout);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<String> getPostResponseText(final URI uri, final StringContent content) {
+        return execute(uri, new Call<String>() {
+            @Override
+            ListenableFuture<String> execute() {
+                return delegate.getPostResponseText(uri, content);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<HttpResponse> getPostResponse(final URI uri, final StringContent content) {
+        return execute(uri, new Call<HttpResponse>() {
+            @Override
+            ListenableFuture<HttpResponse> execute() {
+                return delegate.getPostResponse(uri, content);
+            }
+        });
+    }
+
+    /**
+     * @return a future that completes like the response, once the turn has been given back
+     */
+    private <T> ListenableFuture<T> execute(final URI uri, final Call<T> call) {
+        final SettableFuture<T> result = SettableFuture.create();
+        final String host = HttpClientHelper.getHostKey(uri);
+        try {
+            bulkhead.acquire(host);
+        } catch (final IOException e) {
+            result.setException(e);
+            return result;
+        }
+        final ListenableFuture<T> response;
+        try {
+            response = call.execute();
+        } catch (final RuntimeException e) {
+            bulkhead.release(host);
+            throw e;
+        }
+        response.addCallback(new Callback<T>() {
+            @Override
+            public void onSuccess(final T value) {
+                bulkhead.release(host);
+                result.set(value);
+            }
+
+            @Override
+            public void onFailure(final Throwable throwable) {
+                bulkhead.release(host);
+                result.setException(throwable);
+            }
+        });
+        // cancelling the caller's future cancels the request, which gives the turn back
+        result.addCallback(new Callback<T>() {
+            @Override
+            public void onSuccess(final T value) {
+            }
+
+            @Override
+            public void onFailure(final Throwable throwable) {
+                if (result.isCancelled()) {
+                    response.cancel(true);
+                }
+            }
+        });
+        return result;
+    }
+
+    private abstract static class Call<T> {
+        abstract ListenableFuture<T> execute();
+    }
+}
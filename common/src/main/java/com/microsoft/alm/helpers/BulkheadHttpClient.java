@@ -0,0 +1,130 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+
+/**
+ * Decorates an {@link HttpClient} so every call first takes a turn from a {@link Bulkhead} shared by all clients,
+ * holding it until the response has been read.
+ */
+public class BulkheadHttpClient implements AttemptAwareHttpClient, StreamingHttpClient {
+
+    private final HttpClient delegate;
+    private final Bulkhead bulkhead;
+
+    public BulkheadHttpClient(final HttpClient delegate, final Bulkhead bulkhead) {
+        Debug.Assert(delegate != null, "delegate cannot be null");
+        Debug.Assert(bulkhead != null, "bulkhead cannot be null");
+
+        this.delegate = delegate;
+        this.bulkhead = bulkhead;
+    }
+
+    /**
+     * Takes no interest in the attempt itself, only passes it on.
+     */
+    @Override
+    public HttpClient forAttempt(final int attempt) {
+        if (delegate instanceof AttemptAwareHttpClient) {
+            return new BulkheadHttpClient(RetryingHttpClient.forAttempt(delegate, attempt), bulkhead);
+        }
+        return this;
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+        return delegate.getHeaders();
+    }
+
+    @Override
+    public String getHeaderField(final URI uri, final String header) throws IOException {
+        final String host = acquire(uri);
+        try {
+            return delegate.getHeaderField(uri, header);
+        } finally {
+            bulkhead.release(host);
+        }
+    }
+
+    @Override
+    public String getGetResponseText(final URI uri) throws IOException {
+        final String host = acquire(uri);
+        try {
+            return delegate.getGetResponseText(uri);
+        } finally {
+            bulkhead.release(host);
+        }
+    }
+
+    @Override
+    public String getGetResponseText(final URI uri, final int timeout) throws IOException {
+        final String host = acquire(uri);
+        try {
+            return delegate.getGetResponseText(uri, timeout);
+        } finally {
+            bulkhead.release(host);
+        }
+    }
+
+    @Override
+    public String getPostResponseText(final URI uri, final StringContent content) throws IOException {
+        final String host = acquire(uri);
+        try {
+            return delegate.getPostResponseText(uri, content);
+        } finally {
+            bulkhead.release(host);
+        }
+    }
+
+    @Override
+    public HttpResponse getPostResponse(final URI uri, final StringContent content) throws IOException {
+        final String host = acquire(uri);
+        try {
+            return delegate.getPostResponse(uri, content);
+        } finally {
+            bulkhead.release(host);
+        }
+    }
+
+    @Override
+    public <T> T streamGetResponse(final URI uri, final ResponseHandler<T> handler) throws IOException {
+        final String host = acquire(uri);
+        try {
+            return HttpClientHelper.streamGetResponse(delegate, uri, handler);
+        } finally {
+            bulkhead.release(host);
+        }
+    }
+
+    @Override
+    public <T> T streamGetResponse(final URI uri, final int timeout, final ResponseHandler<T> handler)
+            throws IOException {
+        final String host = acquire(uri);
+        try {
+            return HttpClientHelper.streamGetResponse(delegate, uri, timeout, handler);
+        } finally {
+            bulkhead.release(host);
+        }
+    }
+
+    @Override
+    public <T> T streamPostResponse(final URI uri, final StringContent content, final ResponseHandler<T> handler)
+            throws IOException {
+        final String host = acquire(uri);
+        try {
+            return HttpClientHelper.streamPostResponse(delegate, uri, content, handler);
+        } finally {
+            bulkhead.release(host);
+        }
+    }
+
+    private String acquire(final URI uri) throws IOException {
+        final String host = HttpClientHelper.getHostKey(uri);
+        bulkhead.acquire(host);
+        return host;
+    }
+}
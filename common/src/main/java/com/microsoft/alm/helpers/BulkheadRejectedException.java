@@ -0,0 +1,24 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of sending a request when a host already has as many requests in flight and waiting as its
+ * {@link Bulkhead} allows.
+ */
+public class BulkheadRejectedException extends IOException {
+
+    private final String host;
+
+    public BulkheadRejectedException(final String host, final String reason) {
+        super(String.format("Request to %1$s rejected: %2$s", host, reason));
+        this.host = host;
+    }
+
+    public String getHost() {
+        return host;
+    }
+}
@@ -0,0 +1,25 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+/**
+ * Receives the outcome of an asynchronous operation.
+ *
+ * @param <T> the type of the result
+ */
+public interface Callback<T> {
+    /**
+     * Called once the operation has produced its result.
+     *
+     * @param result the result of the operation
+     */
+    void onSuccess(final T result);
+
+    /**
+     * Called once the operation has failed or was cancelled.
+     *
+     * @param throwable the reason of the failure
+     */
+    void onFailure(final Throwable throwable);
+}
@@ -0,0 +1,156 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the health of each host separately and stops sending requests to a host that keeps failing.
+ *
+ * After {@code failureThreshold} consecutive failures the circuit of a host opens: requests fail at once with a
+ * {@link CircuitBreakerOpenException} for {@code openMillis}.  Then a single trial request is let through; the
+ * circuit closes again if it succeeds and stays open for another period if it fails.
+ */
+public class CircuitBreaker {
+
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final long DEFAULT_OPEN_MILLIS = 30 * 1000;
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private final ConcurrentMap<String, Circuit> circuits = new ConcurrentHashMap<String, Circuit>();
+
+    public CircuitBreaker() {
+        this(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MILLIS);
+    }
+
+    /**
+     * @param failureThreshold the number of consecutive failures that opens the circuit of a host
+     * @param openMillis       how long requests to the host are refused before a trial request is let through
+     */
+    public CircuitBreaker(final int failureThreshold, final long openMillis) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("failureThreshold must be at least 1");
+        }
+        if (openMillis < 0) {
+            throw new IllegalArgumentException("openMillis cannot be negative");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    public State getState(final String host) {
+        final Circuit circuit = circuits.get(host);
+        if (circuit == null) {
+            return State.CLOSED;
+        }
+        synchronized (circuit) {
+            return circuit.state;
+        }
+    }
+
+    /**
+     * Asks to send a request to the host.  Every successful call must be followed by exactly one of
+     * {@link #onSuccess(String)}, {@link #onFailure(String)} or {@link #onAbandoned(String)}.
+     *
+     * @throws CircuitBreakerOpenException if the circuit of the host is open
+     */
+    void acquire(final String host) throws CircuitBreakerOpenException {
+        final Circuit circuit = getCircuit(host);
+        synchronized (circuit) {
+            if (circuit.state == State.CLOSED) {
+                return;
+            }
+            final long now = System.nanoTime();
+            if (circuit.state == State.OPEN && now - circuit.openedAtNanos >= TimeUnit.MILLISECONDS.toNanos(openMillis)) {
+                logger.debug("Letting a trial request through to {}", host);
+                circuit.state = State.HALF_OPEN;
+                circuit.trialInFlight = true;
+                return;
+            }
+            if (circuit.state == State.HALF_OPEN && !circuit.trialInFlight) {
+                circuit.trialInFlight = true;
+                return;
+            }
+            final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(now - circuit.openedAtNanos);
+            throw new CircuitBreakerOpenException(host, Math.max(openMillis - elapsedMillis, 0));
+        }
+    }
+
+    /**
+     * The host answered; it may still have refused the request, but it is up.
+     */
+    void onSuccess(final String host) {
+        final Circuit circuit = getCircuit(host);
+        synchronized (circuit) {
+            if (circuit.state != State.CLOSED) {
+                logger.debug("Requests to {} are succeeding again", host);
+            }
+            circuit.state = State.CLOSED;
+            circuit.consecutiveFailures = 0;
+            circuit.trialInFlight = false;
+        }
+    }
+
+    /**
+     * The host could not be reached or answered with a server error.
+     */
+    void onFailure(final String host) {
+        final Circuit circuit = getCircuit(host);
+        synchronized (circuit) {
+            circuit.consecutiveFailures++;
+            circuit.trialInFlight = false;
+            if (circuit.state == State.HALF_OPEN || circuit.consecutiveFailures >= failureThreshold) {
+                if (circuit.state != State.OPEN) {
+                    logger.warn("{} consecutive requests to {} failed, refusing requests for {} ms",
+                            circuit.consecutiveFailures, host, openMillis);
+                }
+                circuit.state = State.OPEN;
+                circuit.openedAtNanos = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * The request ended without telling anything about the host, for instance because the caller's deadline passed.
+     */
+    void onAbandoned(final String host) {
+        final Circuit circuit = getCircuit(host);
+        synchronized (circuit) {
+            circuit.trialInFlight = false;
+        }
+    }
+
+    private Circuit getCircuit(final String host) {
+        Circuit circuit = circuits.get(host);
+        if (circuit == null) {
+            final Circuit created = new Circuit();
+            circuit = circuits.putIfAbsent(host, created);
+            if (circuit == null) {
+                circuit = created;
+            }
+        }
+        return circuit;
+    }
+
+    private static class Circuit {
+        State state = State.CLOSED;
+        int consecutiveFailures;
+        long openedAtNanos;
+        boolean trialInFlight;
+    }
+}
@@ -0,0 +1,23 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of sending a request to a host whose {@link CircuitBreaker} is open.
+ */
+public class CircuitBreakerOpenException extends IOException {
+
+    private final String host;
+
+    public CircuitBreakerOpenException(final String host, final long retryInMillis) {
+        super(String.format("Requests to %1$s are failing, not trying again for another %2$d ms.", host, retryInMillis));
+        this.host = host;
+    }
+
+    public String getHost() {
+        return host;
+    }
+}
@@ -0,0 +1,196 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Negotiates and undoes the gzip and deflate Content-Encodings, decompressing as the body is read.
+ */
+final class ContentEncoding {
+
+    static final String ACCEPT_ENCODING = "Accept-Encoding";
+    static final String SUPPORTED_ENCODINGS = "gzip, deflate";
+
+    private static final int GZIP = 1;
+    private static final int DEFLATE = 2;
+
+    private ContentEncoding() {
+        // not intended to be used as an instance class
+    }
+
+    /**
+     * Wraps a response body so it reads decompressed, counting what goes through into the statistics.
+     *
+     * Encodings other than gzip and deflate, which we never ask for, are passed through as they are.
+     *
+     * @param body            the body as received
+     * @param contentEncoding the Content-Encoding header of the response, may be null
+     * @param statistics      receives the byte counts
+     * @return the decoded body
+     */
+    static InputStream decode(final InputStream body, final String contentEncoding, final TransferStatistics statistics) {
+        final int encoding = parse(contentEncoding);
+        statistics.recordResponse(encoding != 0);
+
+        final InputStream received = new CountingInputStream(body, statistics, true);
+        final InputStream decoded = encoding == 0 ? received : new DecodingInputStream(received, encoding);
+        return new CountingInputStream(decoded, statistics, false);
+    }
+
+    private static int parse(final String contentEncoding) {
+        if (contentEncoding == null) {
+            return 0;
+        }
+        final String encoding = contentEncoding.trim().toLowerCase(Locale.ENGLISH);
+        if ("gzip".equals(encoding) || "x-gzip".equals(encoding)) {
+            return GZIP;
+        }
+        if ("deflate".equals(encoding)) {
+            return DEFLATE;
+        }
+        return 0;
+    }
+
+    /**
+     * Adds the bytes read to either the received or the decoded total.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private final TransferStatistics statistics;
+        private final boolean received;
+
+        CountingInputStream(final InputStream in, final TransferStatistics statistics, final boolean received) {
+            super(in);
+            this.statistics = statistics;
+            this.received = received;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int result = super.read();
+            if (result != -1) {
+                count(1);
+            }
+            return result;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            final int result = super.read(buffer, offset, length);
+            if (result > 0) {
+                count(result);
+            }
+            return result;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long result = super.skip(n);
+            count(result);
+            return result;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void count(final long bytes) {
+            (received ? statistics.bytesReceived : statistics.bytesDecoded).addAndGet(bytes);
+        }
+    }
+
+    /**
+     * Sets up the decompressor on the first read, because reading the gzip header up front would fail on the
+     * empty bodies of HEAD, 204 and 304 responses.
+     */
+    private static class DecodingInputStream extends InputStream {
+        private final PushbackInputStream received;
+        private final int encoding;
+        private InputStream decoded;
+
+        DecodingInputStream(final InputStream received, final int encoding) {
+            this.received = new PushbackInputStream(received, 2);
+            this.encoding = encoding;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final InputStream in = open();
+            return in == null ? -1 : in.read();
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            final InputStream in = open();
+            return in == null ? -1 : in.read(buffer, offset, length);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return decoded == null ? 0 : decoded.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (decoded != null) {
+                decoded.close();
+            } else {
+                received.close();
+            }
+        }
+
+        private InputStream open() throws IOException {
+            if (decoded == null) {
+                final int first = received.read();
+                if (first == -1) {
+                    return null;
+                }
+                received.unread(first);
+                if (encoding == GZIP) {
+                    decoded = new GZIPInputStream(received);
+                } else {
+                    decoded = openDeflate();
+                }
+            }
+            return decoded;
+        }
+
+        /**
+         * "deflate" is meant to be zlib-wrapped, but some servers send a raw deflate stream; the zlib header
+         * tells the two apart.
+         */
+        private InputStream openDeflate() throws IOException {
+            final byte[] header = new byte[2];
+            int count = 0;
+            int read;
+            while (count < header.length && (read = received.read(header, count, header.length - count)) != -1) {
+                count += read;
+            }
+            received.unread(header, 0, count);
+
+            final int cmf = header[0] & 0xFF;
+            final int flg = header[1] & 0xFF;
+            final boolean zlib = count == 2 && (cmf & 0x0F) == 8 && ((cmf << 8) | flg) % 31 == 0;
+            final Inflater inflater = new Inflater(!zlib);
+            return new InflaterInputStream(received, inflater) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inflater.end();
+                    }
+                }
+            };
+        }
+    }
+}
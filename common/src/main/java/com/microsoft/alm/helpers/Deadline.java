@@ -0,0 +1,137 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A point in time by which an operation, and every network call it makes, has to be finished.
+ *
+ * The deadline of the current thread is picked up by the {@link HttpClient} implementations of this library: each
+ * call gets what is left of the budget as its connect and read timeouts, and fails with a
+ * {@link DeadlineExceededException} without touching the network once nothing is left.  Install one around an
+ * {@code Authenticator} call like this:
+ *
+ * <pre>
+ *     final Deadline previous = Deadline.setCurrent(Deadline.after(30 * 1000));
+ *     try {
+ *         token = authenticator.getPersonalAccessToken(uri, scope, displayName, PromptBehavior.AUTO);
+ *     } finally {
+ *         Deadline.setCurrent(previous);
+ *     }
+ * </pre>
+ */
+public final class Deadline {
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<Deadline>();
+
+    private final long deadlineNanos;
+    private final long budgetMillis;
+
+    private Deadline(final long budgetMillis) {
+        this.budgetMillis = budgetMillis;
+        this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+    }
+
+    /**
+     * @param budgetMillis how long from now the operation may take
+     * @return a deadline that passes {@code budgetMillis} from now
+     */
+    public static Deadline after(final long budgetMillis) {
+        if (budgetMillis < 0) {
+            throw new IllegalArgumentException("budgetMillis cannot be negative");
+        }
+        return new Deadline(budgetMillis);
+    }
+
+    /**
+     * @param budgetMillis the budget to use when the current thread has no deadline
+     * @return the deadline of the current thread, or a new one that passes {@code budgetMillis} from now
+     */
+    public static Deadline currentOrAfter(final long budgetMillis) {
+        final Deadline deadline = current();
+        return deadline != null ? deadline : after(budgetMillis);
+    }
+
+    /**
+     * @return the deadline of the current thread, or null if there is none
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Installs the deadline of the current thread.
+     *
+     * @param deadline the new deadline, null to remove it
+     * @return the deadline it replaced, to be restored when the operation is over
+     */
+    public static Deadline setCurrent(final Deadline deadline) {
+        final Deadline previous = CURRENT.get();
+        if (deadline == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(deadline);
+        }
+        return previous;
+    }
+
+    /**
+     * Caps a timeout to what is left of the current thread's deadline.
+     *
+     * @param timeoutMillis a timeout where 0 means none, as in {@link java.net.URLConnection#setConnectTimeout(int)}
+     * @return the smaller of the timeout and the time left, never 0 when there is a deadline
+     * @throws DeadlineExceededException if the deadline has already passed
+     */
+    public static int capTimeout(final int timeoutMillis) throws DeadlineExceededException {
+        final Deadline deadline = current();
+        if (deadline == null) {
+            return timeoutMillis;
+        }
+        final long remaining = deadline.checkRemainingMillis();
+        if (timeoutMillis > 0 && timeoutMillis < remaining) {
+            return timeoutMillis;
+        }
+        return (int) Math.min(remaining, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Fails if the current thread's deadline has passed; does nothing when there is no deadline.
+     */
+    public static void checkCurrent() throws DeadlineExceededException {
+        final Deadline deadline = current();
+        if (deadline != null) {
+            deadline.checkRemainingMillis();
+        }
+    }
+
+    /**
+     * @return the milliseconds left, 0 once the deadline has passed
+     */
+    public long getRemainingMillis() {
+        final long remainingNanos = deadlineNanos - System.nanoTime();
+        return remainingNanos <= 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(remainingNanos);
+    }
+
+    public boolean isExpired() {
+        return getRemainingMillis() == 0;
+    }
+
+    /**
+     * @return the milliseconds left, at least 1
+     * @throws DeadlineExceededException if the deadline has passed
+     */
+    public long checkRemainingMillis() throws DeadlineExceededException {
+        final long remaining = getRemainingMillis();
+        if (remaining == 0) {
+            throw new DeadlineExceededException("The deadline of " + budgetMillis + " ms has passed.");
+        }
+        return remaining;
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline{budget=" + budgetMillis + " ms, remaining=" + getRemainingMillis() + " ms}";
+    }
+}
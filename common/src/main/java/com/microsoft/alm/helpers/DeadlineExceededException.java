@@ -0,0 +1,16 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Thrown when a network call is about to start, or is still running, after the current {@link Deadline} has passed.
+ */
+public class DeadlineExceededException extends InterruptedIOException {
+
+    public DeadlineExceededException(final String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,86 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Checks that the certificate presented by a server was issued for the host we connected to.
+ *
+ * {@link HttpsURLConnection} does this for us; clients that create their own TLS sockets and engines ask the
+ * platform to do it during the handshake, through the "HTTPS" endpoint identification algorithm of
+ * {@link SSLParameters}.  That setting only exists from Java 7 on: on Java 6 the session is handed to
+ * {@link HttpsURLConnection#getDefaultHostnameVerifier()} after the handshake instead.
+ */
+final class EndpointIdentification {
+
+    private static final Method SET_ENDPOINT_IDENTIFICATION_ALGORITHM = findSetter();
+
+    private EndpointIdentification() {
+        // not intended to be used as an instance class
+    }
+
+    private static Method findSetter() {
+        try {
+            return SSLParameters.class.getMethod("setEndpointIdentificationAlgorithm", String.class);
+        } catch (final NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    static boolean isSupported() {
+        return SET_ENDPOINT_IDENTIFICATION_ALGORITHM != null;
+    }
+
+    /**
+     * Has the handshake of the socket fail unless the certificate matches the host the socket was created for.
+     */
+    static void enable(final SSLSocket socket) {
+        if (isSupported()) {
+            socket.setSSLParameters(withHttpsIdentification(socket.getSSLParameters()));
+        }
+    }
+
+    /**
+     * Has the handshake of the engine fail unless the certificate matches the host the engine was created for.
+     */
+    static void enable(final SSLEngine engine) {
+        if (isSupported()) {
+            engine.setSSLParameters(withHttpsIdentification(engine.getSSLParameters()));
+        }
+    }
+
+    /**
+     * Verifies the peer of a session whose handshake could not check it.
+     *
+     * @throws SSLPeerUnverifiedException if the certificate does not match the host.
+     */
+    static void verify(final String host, final SSLSession session) throws SSLPeerUnverifiedException {
+        if (isSupported()) {
+            // the handshake has checked it already
+            return;
+        }
+        if (!HttpsURLConnection.getDefaultHostnameVerifier().verify(host, session)) {
+            throw new SSLPeerUnverifiedException("The certificate presented by the server does not match host '" + host + "'.");
+        }
+    }
+
+    static SSLParameters withHttpsIdentification(final SSLParameters parameters) {
+        try {
+            SET_ENDPOINT_IDENTIFICATION_ALGORITHM.invoke(parameters, "HTTPS");
+        } catch (final IllegalAccessException e) {
+            throw new Error(e);
+        } catch (final InvocationTargetException e) {
+            throw new Error(e.getCause());
+        }
+        return parameters;
+    }
+}
@@ -0,0 +1,161 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A thread-safe map whose entries expire a fixed time after they were added.
+ *
+ * A null value is cached like any other, as a negative result with a lifetime of its own, so "there is none" can
+ * be remembered as well as an answer.  {@link #get(Object)} tells the two apart from a miss.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+public class ExpiringCache<K, V> {
+
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    private final int maxEntries;
+    private final ConcurrentMap<K, Entry<V>> entries = new ConcurrentHashMap<K, Entry<V>>();
+
+    /**
+     * @param ttlMillis         how long values are kept
+     * @param negativeTtlMillis how long null values are kept; 0 to not cache them at all
+     */
+    public ExpiringCache(final long ttlMillis, final long negativeTtlMillis) {
+        this(ttlMillis, negativeTtlMillis, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxEntries how many entries are kept at most; expired ones are dropped first, then any
+     */
+    public ExpiringCache(final long ttlMillis, final long negativeTtlMillis, final int maxEntries) {
+        Debug.Assert(ttlMillis > 0, "ttlMillis must be positive");
+        Debug.Assert(negativeTtlMillis >= 0, "negativeTtlMillis cannot be negative");
+        Debug.Assert(maxEntries > 0, "maxEntries must be positive");
+
+        this.ttlMillis = ttlMillis;
+        this.negativeTtlMillis = negativeTtlMillis;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @return the cached entry for the key, whose value can be null, or null when there is none or it expired
+     */
+    public Entry<V> get(final K key) {
+        final Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(currentTimeMillis())) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Caches a value, or a negative result when it is null.
+     */
+    public void put(final K key, final V value) {
+        final long lifetime = value == null ? negativeTtlMillis : ttlMillis;
+        if (lifetime > 0) {
+            put(key, value, currentTimeMillis() + lifetime);
+        }
+    }
+
+    /**
+     * Caches a value until the given time, as when restoring entries that were saved earlier.
+     */
+    public void put(final K key, final V value, final long expiresAtMillis) {
+        if (expiresAtMillis <= currentTimeMillis()) {
+            return;
+        }
+        if (entries.size() >= maxEntries && !entries.containsKey(key)) {
+            makeRoom();
+        }
+        entries.put(key, new Entry<V>(value, expiresAtMillis));
+    }
+
+    public void remove(final K key) {
+        entries.remove(key);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the entries that have not expired, for saving them
+     */
+    public Map<K, Entry<V>> getEntries() {
+        final long now = currentTimeMillis();
+        final Map<K, Entry<V>> result = new LinkedHashMap<K, Entry<V>>();
+        for (final Map.Entry<K, Entry<V>> pair : entries.entrySet()) {
+            if (!pair.getValue().isExpired(now)) {
+                result.put(pair.getKey(), pair.getValue());
+            }
+        }
+        return result;
+    }
+
+    private void makeRoom() {
+        final long now = currentTimeMillis();
+        final Iterator<Entry<V>> values = entries.values().iterator();
+        while (values.hasNext()) {
+            if (values.next().isExpired(now)) {
+                values.remove();
+            }
+        }
+        final Iterator<K> keys = entries.keySet().iterator();
+        while (entries.size() >= maxEntries && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    /**
+     * Overridden in tests to move time along.
+     */
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * A cached value, null for a negative result.
+     */
+    public static class Entry<V> {
+        private final V value;
+        private final long expiresAtMillis;
+
+        Entry(final V value, final long expiresAtMillis) {
+            this.value = value;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public long getExpiresAtMillis() {
+            return expiresAtMillis;
+        }
+
+        boolean isExpired(final long now) {
+            return now >= expiresAtMillis;
+        }
+    }
+}
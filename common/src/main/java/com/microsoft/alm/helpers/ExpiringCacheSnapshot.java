@@ -0,0 +1,175 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Saves an {@link ExpiringCache} with string keys to a properties file and restores it, so what it learned
+ * survives restarts.
+ *
+ * Each entry is saved as {@code key=value,expiresAtMillis}, with {@code none} as the value of a negative result.
+ * Entries that expired, or whose value can no longer be parsed, are dropped when restoring.
+ *
+ * @param <V> the type of the cached values
+ */
+public abstract class ExpiringCacheSnapshot<V> {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExpiringCacheSnapshot.class);
+
+    private static final String NO_VALUE = "none";
+
+    private final File file;
+    private final String comment;
+
+    /**
+     * @param file    where the cache is saved, does not need to exist first
+     * @param comment what the file holds, written at its top
+     */
+    protected ExpiringCacheSnapshot(final File file, final String comment) {
+        Debug.Assert(file != null, "file cannot be null");
+
+        this.file = file;
+        this.comment = comment;
+    }
+
+    /**
+     * @return a snapshot of URIs
+     */
+    public static ExpiringCacheSnapshot<URI> ofUris(final File file, final String comment) {
+        return new ExpiringCacheSnapshot<URI>(file, comment) {
+            @Override
+            protected String format(final URI value) {
+                return value.toString();
+            }
+
+            @Override
+            protected URI parse(final String value) {
+                try {
+                    return URI.create(value);
+                } catch (final IllegalArgumentException e) {
+                    return null;
+                }
+            }
+        };
+    }
+
+    /**
+     * @return a snapshot of UUIDs
+     */
+    public static ExpiringCacheSnapshot<UUID> ofUuids(final File file, final String comment) {
+        return new ExpiringCacheSnapshot<UUID>(file, comment) {
+            @Override
+            protected String format(final UUID value) {
+                return value.toString();
+            }
+
+            @Override
+            protected UUID parse(final String value) {
+                final AtomicReference<UUID> uuid = new AtomicReference<UUID>();
+                return Guid.tryParse(value, uuid) ? uuid.get() : null;
+            }
+        };
+    }
+
+    /**
+     * @return the value as saved, never {@code none}
+     */
+    protected abstract String format(final V value);
+
+    /**
+     * @return the value as saved, or null if it cannot be parsed
+     */
+    protected abstract V parse(final String value);
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Adds the saved entries to a cache; does nothing if there is no snapshot yet or it cannot be read.
+     */
+    public void load(final ExpiringCache<String, V> cache) {
+        if (!file.isFile()) {
+            return;
+        }
+        final Properties properties = new Properties();
+        FileInputStream fis = null;
+        try {
+            fis = new FileInputStream(file);
+            properties.load(fis);
+        } catch (final IOException e) {
+            logger.warn("Ignoring unreadable cache {}", file, e);
+            return;
+        } finally {
+            IOHelper.closeQuietly(fis);
+        }
+
+        for (final String key : properties.stringPropertyNames()) {
+            final String entry = properties.getProperty(key);
+            final int comma = entry.lastIndexOf(',');
+            if (comma == -1) {
+                continue;
+            }
+            final String value = entry.substring(0, comma);
+            final long expiresAt;
+            try {
+                expiresAt = Long.parseLong(entry.substring(comma + 1));
+            } catch (final NumberFormatException e) {
+                continue;
+            }
+            if (NO_VALUE.equals(value)) {
+                cache.put(key, null, expiresAt);
+            } else {
+                final V parsed = parse(value);
+                if (parsed != null) {
+                    cache.put(key, parsed, expiresAt);
+                }
+            }
+        }
+        logger.debug("Loaded {} cached entries from {}", cache.size(), file);
+    }
+
+    /**
+     * Replaces the snapshot with the entries of a cache that have not expired.
+     */
+    public synchronized void save(final ExpiringCache<String, V> cache) {
+        final Properties properties = new Properties();
+        for (final Map.Entry<String, ExpiringCache.Entry<V>> pair : cache.getEntries().entrySet()) {
+            final V value = pair.getValue().getValue();
+            properties.setProperty(pair.getKey(), (value == null ? NO_VALUE : format(value))
+                    + "," + pair.getValue().getExpiresAtMillis());
+        }
+
+        // write a sibling first, so a crash never leaves a half written snapshot behind
+        final File temporary = new File(file.getPath() + ".tmp");
+        FileOutputStream fos = null;
+        try {
+            fos = new FileOutputStream(temporary);
+            properties.store(fos, comment);
+        } catch (final IOException e) {
+            logger.warn("Unable to save the cache to {}", file, e);
+            return;
+        } finally {
+            IOHelper.closeQuietly(fos);
+        }
+        if (!temporary.renameTo(file)) {
+            // renameTo does not replace an existing file on every platform
+            if (!file.delete() || !temporary.renameTo(file)) {
+                logger.warn("Unable to replace the cache {}", file);
+            }
+        }
+    }
+}
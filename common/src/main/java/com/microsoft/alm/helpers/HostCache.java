@@ -0,0 +1,102 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.Locale;
+
+/**
+ * Remembers something learned about each host for a while, such as where its identity service lives, in an
+ * {@link ExpiringCache} keyed by the host of a URI.
+ *
+ * Given a snapshot, the cache is read from it when created and written back to it whenever it changes, so it
+ * survives restarts.
+ *
+ * @param <V> the type of what is remembered; null values are negative results, kept if the cache was given a
+ *            negative TTL
+ */
+public abstract class HostCache<V> {
+
+    private static final Logger logger = LoggerFactory.getLogger(HostCache.class);
+
+    private final String description;
+    private final ExpiringCache<String, V> entries;
+    private final ExpiringCacheSnapshot<V> snapshot;
+
+    /**
+     * @param description       what is remembered, for the logs
+     * @param ttlMillis         how long a value is remembered
+     * @param negativeTtlMillis how long a null value is remembered; 0 to not remember it
+     * @param snapshot          where the cache is saved, null to keep it in memory only
+     */
+    protected HostCache(final String description, final long ttlMillis, final long negativeTtlMillis,
+                        final ExpiringCacheSnapshot<V> snapshot) {
+        this.description = description;
+        this.entries = new ExpiringCache<String, V>(ttlMillis, negativeTtlMillis);
+        this.snapshot = snapshot;
+        if (snapshot != null) {
+            snapshot.load(entries);
+        }
+    }
+
+    /**
+     * Tells which entry a URI belongs to.  By default it is the host and port, in lower case.
+     *
+     * This is an extensibility point.
+     */
+    protected String getKey(final URI uri) {
+        final String host = uri.getHost() == null ? "" : uri.getHost().toLowerCase(Locale.ENGLISH);
+        return uri.getPort() == -1 ? host : host + ":" + uri.getPort();
+    }
+
+    /**
+     * @return the entry of the URI, whose value is null for a negative result; null if nothing is known
+     */
+    public ExpiringCache.Entry<V> getEntry(final URI uri) {
+        final String key = getKey(uri);
+        final ExpiringCache.Entry<V> cached = entries.get(key);
+        if (cached != null) {
+            logger.debug("Using cached {} {} for {}", description, cached.getValue(), key);
+        }
+        return cached;
+    }
+
+    /**
+     * @return the value of the URI, or null if it is not known or is a negative result
+     */
+    public V get(final URI uri) {
+        final ExpiringCache.Entry<V> cached = getEntry(uri);
+        return cached == null ? null : cached.getValue();
+    }
+
+    /**
+     * @param value what was learned about the URI, null for a negative result
+     */
+    public void put(final URI uri, final V value) {
+        entries.put(getKey(uri), value);
+        save();
+    }
+
+    /**
+     * Forgets what is known about the URI, as when it no longer holds.
+     */
+    public void invalidate(final URI uri) {
+        entries.remove(getKey(uri));
+        save();
+    }
+
+    public void clear() {
+        entries.clear();
+        save();
+    }
+
+    private void save() {
+        if (snapshot != null) {
+            snapshot.save(entries);
+        }
+    }
+}
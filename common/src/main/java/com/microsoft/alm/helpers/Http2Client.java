@@ -0,0 +1,103 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+
+/**
+ * An {@link HttpClient} whose instances all share their connections, so concurrent token and validation calls
+ * to the same host do not each open a connection of their own.
+ *
+ * On Java 11 and later, the multi-release section of this library replaces this class with one that multiplexes
+ * every request to a host over a single HTTP/2 connection.  This Java 6 version is the fallback: it shares a pool
+ * of HTTP/1.1 keep-alive connections instead.
+ */
+public class Http2Client implements HttpClient, StreamingHttpClient {
+
+    private static final HttpConnectionPool SHARED_POOL = new HttpConnectionPool();
+
+    public final Map<String, String> Headers;
+
+    private final PooledHttpClient delegate;
+
+    public Http2Client(final String userAgent) {
+        this.delegate = new PooledHttpClient(SHARED_POOL, userAgent);
+        this.Headers = delegate.Headers;
+    }
+
+    /**
+     * @return {@code true} if concurrent requests to one host are multiplexed over a single HTTP/2 connection,
+     *         {@code false} if they are spread over a pool of HTTP/1.1 connections.
+     */
+    public static boolean isMultiplexing() {
+        return false;
+    }
+
+    /**
+     * @return the byte counts of the response bodies read by all instances of this class.
+     */
+    public static TransferStatistics getTransferStatistics() {
+        return SHARED_POOL.getTransferStatistics();
+    }
+
+    public boolean isCompressionEnabled() {
+        return delegate.isCompressionEnabled();
+    }
+
+    /**
+     * Compression is on by default: requests ask for gzip or deflate and responses are decompressed as they are
+     * read.
+     */
+    public void setCompressionEnabled(final boolean compressionEnabled) {
+        delegate.setCompressionEnabled(compressionEnabled);
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+        return Headers;
+    }
+
+    @Override
+    public String getHeaderField(final URI uri, final String header) throws IOException {
+        return delegate.getHeaderField(uri, header);
+    }
+
+    @Override
+    public String getGetResponseText(final URI uri) throws IOException {
+        return delegate.getGetResponseText(uri);
+    }
+
+    @Override
+    public String getGetResponseText(final URI uri, final int timeout) throws IOException {
+        return delegate.getGetResponseText(uri, timeout);
+    }
+
+    @Override
+    public String getPostResponseText(final URI uri, final StringContent content) throws IOException {
+        return delegate.getPostResponseText(uri, content);
+    }
+
+    @Override
+    public <T> T streamGetResponse(final URI uri, final ResponseHandler<T> handler) throws IOException {
+        return delegate.streamGetResponse(uri, handler);
+    }
+
+    @Override
+    public <T> T streamGetResponse(final URI uri, final int timeout, final ResponseHandler<T> handler) throws IOException {
+        return delegate.streamGetResponse(uri, timeout, handler);
+    }
+
+    @Override
+    public <T> T streamPostResponse(final URI uri, final StringContent content, final ResponseHandler<T> handler)
+            throws IOException {
+        return delegate.streamPostResponse(uri, content, handler);
+    }
+
+    @Override
+    public HttpResponse getPostResponse(final URI uri, final StringContent content) throws IOException {
+        return delegate.getPostResponse(uri, content);
+    }
+}
@@ -0,0 +1,99 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * What happened to one outbound request, as handed to {@link HttpMetricsSink}s.
+ */
+public class HttpCallRecord {
+
+    private final HttpEndpoint endpoint;
+    private final String method;
+    private final URI uri;
+    private final int statusCode;
+    private final long latencyNanos;
+    private final long requestBytes;
+    private final long responseCharacters;
+    private final int attempt;
+    private final IOException failure;
+
+    HttpCallRecord(final HttpEndpoint endpoint, final String method, final URI uri, final int statusCode,
+                   final long latencyNanos, final long requestBytes, final long responseCharacters,
+                   final int attempt, final IOException failure) {
+        this.endpoint = endpoint;
+        this.method = method;
+        this.uri = uri;
+        this.statusCode = statusCode;
+        this.latencyNanos = latencyNanos;
+        this.requestBytes = requestBytes;
+        this.responseCharacters = responseCharacters;
+        this.attempt = attempt;
+        this.failure = failure;
+    }
+
+    public HttpEndpoint getEndpoint() {
+        return endpoint;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * @return the target of the request; its query string can contain identifiers, but never secrets
+     */
+    public URI getUri() {
+        return uri;
+    }
+
+    /**
+     * @return the status code of the response, or 0 if no response was received or the call does not expose it,
+     *         as when only a header is read
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    /**
+     * @return the size of the request body
+     */
+    public long getRequestBytes() {
+        return requestBytes;
+    }
+
+    /**
+     * @return the length of the decoded response body that was read
+     */
+    public long getResponseCharacters() {
+        return responseCharacters;
+    }
+
+    /**
+     * @return 1 for the first attempt at a call, 2 and up for retries by a {@link RetryingHttpClient}
+     */
+    public int getAttempt() {
+        return attempt;
+    }
+
+    /**
+     * @return the exception the call failed with, null if it got a response; unsuccessful status codes show up as
+     *         {@link HttpStatusException}s
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    @Override
+    public String toString() {
+        return endpoint + " " + method + " " + uri + " -> " + statusCode + " in "
+                + (latencyNanos / 1000000) + " ms (attempt " + attempt + ")";
+    }
+}
@@ -0,0 +1,121 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+
+/**
+ * Streams responses through any {@link HttpClient}: clients implementing {@link StreamingHttpClient} hand the body
+ * over as it arrives, the others read it into a String first.
+ */
+public final class HttpClientHelper {
+
+    /**
+     * The largest response body, in characters, a {@link ResponseHandler} gets to read.
+     */
+    public static final int MAX_RESPONSE_CHARACTERS = 4 * 1024 * 1024;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private HttpClientHelper() {
+        // not intended to be used as an instance class
+    }
+
+    public static <T> T streamGetResponse(final HttpClient client, final URI uri, final ResponseHandler<T> handler)
+            throws IOException {
+        if (client instanceof StreamingHttpClient) {
+            return ((StreamingHttpClient) client).streamGetResponse(uri, handler);
+        }
+        return handler.handle(fromText(client.getGetResponseText(uri)));
+    }
+
+    public static <T> T streamGetResponse(final HttpClient client, final URI uri, final int timeout,
+                                          final ResponseHandler<T> handler) throws IOException {
+        if (client instanceof StreamingHttpClient) {
+            return ((StreamingHttpClient) client).streamGetResponse(uri, timeout, handler);
+        }
+        return handler.handle(fromText(client.getGetResponseText(uri, timeout)));
+    }
+
+    public static <T> T streamPostResponse(final HttpClient client, final URI uri, final StringContent content,
+                                           final ResponseHandler<T> handler) throws IOException {
+        if (client instanceof StreamingHttpClient) {
+            return ((StreamingHttpClient) client).streamPostResponse(uri, content, handler);
+        }
+        return handler.handle(fromText(client.getPostResponseText(uri, content)));
+    }
+
+    /**
+     * A handler that only cares about the status of the response and reads none of the body.
+     */
+    public static final ResponseHandler<Void> IGNORE_BODY = new ResponseHandler<Void>() {
+        @Override
+        public Void handle(final Reader body) {
+            return null;
+        }
+    };
+
+    /**
+     * A handler returning the first non-empty string member with the given name, see
+     * {@link JsonFieldExtractor#findString(Reader, String)}.
+     */
+    public static ResponseHandler<String> jsonStringField(final String name) {
+        return new ResponseHandler<String>() {
+            @Override
+            public String handle(final Reader body) throws IOException {
+                return JsonFieldExtractor.findString(body, name);
+            }
+        };
+    }
+
+    /**
+     * Decodes a response body with the charset of its Content-Type, UTF-8 if there is none, and bounds it
+     * to {@link #MAX_RESPONSE_CHARACTERS}.
+     */
+    public static Reader openReader(final InputStream body, final String contentType) {
+        return bounded(new InputStreamReader(body, getCharset(contentType)));
+    }
+
+    private static Reader fromText(final String text) {
+        return bounded(new StringReader(text == null ? StringHelper.Empty : text));
+    }
+
+    /**
+     * @return the host and port of the uri, the unit the per-host limits of this library apply to
+     */
+    static String getHostKey(final URI uri) {
+        return uri.getHost() + ":" + HttpConnectionPool.getPort(uri);
+    }
+
+    static Reader bounded(final Reader reader) {
+        return new BoundedReader(reader, MAX_RESPONSE_CHARACTERS);
+    }
+
+    static Charset getCharset(final String contentType) {
+        if (contentType != null) {
+            for (final String parameter : contentType.split(";")) {
+                final String trimmed = parameter.trim();
+                if (trimmed.regionMatches(true, 0, "charset=", 0, "charset=".length())) {
+                    final String name = trimmed.substring("charset=".length()).replace("\"", "").trim();
+                    try {
+                        return Charset.forName(name);
+                    } catch (final IllegalCharsetNameException ignored) {
+                        // fall back to UTF-8
+                    } catch (final UnsupportedCharsetException ignored) {
+                        // fall back to UTF-8
+                    }
+                }
+            }
+        }
+        return UTF8;
+    }
+}
@@ -16,29 +16,51 @@ import java.net.URL;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
-public class HttpClientImpl implements HttpClient {
+public class HttpClientImpl implements HttpClient, StreamingHttpClient {
 
     private static final Logger logger = LoggerFactory.getLogger(HttpClientImpl.class);
 
+    // instances are short-lived, so they all report to the same totals
+    private static final TransferStatistics TRANSFER_STATISTICS = new TransferStatistics();
+
     public final Map<String, String> Headers = new LinkedHashMap<String, String>();
 
+    private boolean compressionEnabled;
+
     public HttpClientImpl(final String userAgent) {
         Headers.put("User-Agent", userAgent);
     }
 
+    /**
+     * @return the byte counts of the response bodies read by all instances of this class.
+     */
+    public static TransferStatistics getTransferStatistics() {
+        return TRANSFER_STATISTICS;
+    }
+
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    /**
+     * Compression is off by default for this client: when enabled, requests ask for gzip or deflate.
+     * Compressed responses are decompressed as they are read either way.
+     */
+    public void setCompressionEnabled(final boolean compressionEnabled) {
+        this.compressionEnabled = compressionEnabled;
+    }
+
     private void ensureOK(final HttpURLConnection connection) throws IOException {
         final int statusCode = connection.getResponseCode();
         if (statusCode != HttpURLConnection.HTTP_OK) {
             InputStream errorStream = null;
             try {
-                errorStream = connection.getErrorStream();
+                errorStream = decode(connection, connection.getErrorStream());
                 String content = "";
                 if (errorStream != null) {
                     content = IOHelper.readToString(errorStream);
                 }
-                final String template = "HTTP request failed with code %1$d: %2$s";
-                final String message = String.format(template, statusCode, content);
-                throw new IOException(message);
+                throw new HttpStatusException(statusCode, content, connection.getHeaderField("Retry-After"));
             } finally {
                 IOHelper.closeQuietly(errorStream);
             }
@@ -46,11 +68,28 @@ public class HttpClientImpl implements HttpClient {
     }
 
     private static String readToString(final HttpURLConnection connection) throws IOException {
-        return readToString(connection.getInputStream());
+        return readToString(decode(connection, connection.getInputStream()));
     }
 
     private static String readErrorToString(final HttpURLConnection connection) throws IOException {
-        return readToString(connection.getErrorStream());
+        return readToString(decode(connection, connection.getErrorStream()));
+    }
+
+    private static InputStream decode(final HttpURLConnection connection, final InputStream responseStream) {
+        if (responseStream == null) {
+            return null;
+        }
+        return ContentEncoding.decode(responseStream, connection.getContentEncoding(), TRANSFER_STATISTICS);
+    }
+
+    private static <T> T stream(final HttpURLConnection connection, final ResponseHandler<T> handler) throws IOException {
+        InputStream responseStream = null;
+        try {
+            responseStream = decode(connection, connection.getInputStream());
+            return handler.handle(HttpClientHelper.openReader(responseStream, connection.getContentType()));
+        } finally {
+            IOHelper.closeQuietly(responseStream);
+        }
     }
 
     private static String readToString(final InputStream responseStream) throws IOException {
@@ -63,7 +102,8 @@ public class HttpClientImpl implements HttpClient {
         return responseContent;
     }
 
-    HttpURLConnection createConnection(final URI uri, final String method, final Action<HttpURLConnection> interceptor) {
+    HttpURLConnection createConnection(final URI uri, final String method, final Action<HttpURLConnection> interceptor)
+            throws DeadlineExceededException {
         final URL url;
         try {
             url = uri.toURL();
@@ -84,6 +124,10 @@ public class HttpClientImpl implements HttpClient {
             throw new Error(e);
         }
 
+        if (compressionEnabled) {
+            connection.setRequestProperty(ContentEncoding.ACCEPT_ENCODING, ContentEncoding.SUPPORTED_ENCODINGS);
+        }
+
         for (final Map.Entry<String, String> entry : Headers.entrySet()) {
             final String key = entry.getKey();
             final String value = entry.getValue();
@@ -94,6 +138,12 @@ public class HttpClientImpl implements HttpClient {
             interceptor.call(connection);
         }
 
+        // what is left of the caller's deadline bounds both the connect and every read
+        if (Deadline.current() != null) {
+            connection.setConnectTimeout(Deadline.capTimeout(connection.getConnectTimeout()));
+            connection.setReadTimeout(Deadline.capTimeout(connection.getReadTimeout()));
+        }
+
         return connection;
     }
 
@@ -161,6 +211,27 @@ public class HttpClientImpl implements HttpClient {
         return readToString(response);
     }
 
+    @Override
+    public <T> T streamGetResponse(final URI uri, final ResponseHandler<T> handler) throws IOException {
+        final HttpURLConnection response = this.get(uri);
+        this.ensureOK(response);
+
+        return stream(response, handler);
+    }
+
+    @Override
+    public <T> T streamGetResponse(final URI uri, final int timeout, final ResponseHandler<T> handler) throws IOException {
+        final HttpURLConnection response = this.get(uri, new Action<HttpURLConnection>() {
+            @Override
+            public void call(final HttpURLConnection httpURLConnection) {
+                httpURLConnection.setConnectTimeout(timeout);
+            }
+        });
+        this.ensureOK(response);
+
+        return stream(response, handler);
+    }
+
     private HttpURLConnection post(final URI uri, final StringContent content) throws IOException {
         return post(uri, content, new Action<HttpURLConnection>() {
             @Override
@@ -188,6 +259,14 @@ public class HttpClientImpl implements HttpClient {
         return readToString(response);
     }
 
+    @Override
+    public <T> T streamPostResponse(final URI uri, final StringContent content, final ResponseHandler<T> handler) throws IOException {
+        final HttpURLConnection response = this.post(uri, content);
+        this.ensureOK(response);
+
+        return stream(response, handler);
+    }
+
     @Override
     public HttpResponse getPostResponse(URI uri, StringContent content) throws IOException {
         final HttpResponse response = new HttpResponse();
@@ -198,6 +277,7 @@ public class HttpClientImpl implements HttpClient {
             response.responseText = readToString(conn);
         } else {
             response.errorText = readErrorToString(conn);
+            response.retryAfter = conn.getHeaderField("Retry-After");
         }
 
         return response;
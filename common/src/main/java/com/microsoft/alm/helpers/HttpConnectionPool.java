@@ -0,0 +1,556 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of keep-alive HTTP/1.1 connections, partitioned by host.
+ *
+ * Each host (scheme, host, port and proxy) gets at most {@code maxConnectionsPerHost} connections.  Connections
+ * are handed back to the pool once a response has been fully read, and reused by the next request to the same host,
+ * which saves the TCP and TLS handshakes.  Connections that stay idle longer than the idle timeout are closed by a
+ * background daemon thread.
+ *
+ * The system {@link ProxySelector} is honoured.  HTTPS through an HTTP proxy uses a CONNECT tunnel; proxies that
+ * require authentication are not supported.
+ */
+public class HttpConnectionPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpConnectionPool.class);
+
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 5;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60 * 1000L;
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 15 * 1000;
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = 60 * 1000;
+    public static final long DEFAULT_LEASE_TIMEOUT_MILLIS = 30 * 1000L;
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final long MIN_EVICTION_PERIOD_MILLIS = 1000L;
+
+    private final int maxConnectionsPerHost;
+    private final long idleTimeoutMillis;
+    private volatile int connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+    private volatile int readTimeoutMillis = DEFAULT_READ_TIMEOUT_MILLIS;
+    private volatile long leaseTimeoutMillis = DEFAULT_LEASE_TIMEOUT_MILLIS;
+
+    private final ConcurrentMap<String, Route> routes = new ConcurrentHashMap<String, Route>();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean shutdown;
+
+    private final AtomicLong connectionsCreated = new AtomicLong();
+    private final AtomicLong connectionsReused = new AtomicLong();
+    private final AtomicLong connectionsEvicted = new AtomicLong();
+    private final AtomicLong connectionsDiscarded = new AtomicLong();
+    private final AtomicLong leaseTimeouts = new AtomicLong();
+    private final TransferStatistics transferStatistics = new TransferStatistics();
+
+    public HttpConnectionPool() {
+        this(DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Creates a pool.
+     *
+     * @param maxConnectionsPerHost the maximum number of connections, leased or idle, to a single host
+     * @param idleTimeoutMillis     how long a connection may stay unused in the pool before it is closed
+     */
+    public HttpConnectionPool(final int maxConnectionsPerHost, final long idleTimeoutMillis) {
+        if (maxConnectionsPerHost < 1) {
+            throw new IllegalArgumentException("maxConnectionsPerHost must be at least 1");
+        }
+        if (idleTimeoutMillis < 0) {
+            throw new IllegalArgumentException("idleTimeoutMillis cannot be negative");
+        }
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("auth-library-pool-evictor"));
+        final long period = Math.max(idleTimeoutMillis / 2, MIN_EVICTION_PERIOD_MILLIS);
+        this.evictor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evictIdleConnections();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeoutMillis;
+    }
+
+    public void setConnectTimeout(final int connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    public int getReadTimeout() {
+        return readTimeoutMillis;
+    }
+
+    public void setReadTimeout(final int readTimeoutMillis) {
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    /**
+     * @param leaseTimeoutMillis how long a request waits for a connection when the host's limit has been reached
+     */
+    public void setLeaseTimeout(final long leaseTimeoutMillis) {
+        this.leaseTimeoutMillis = leaseTimeoutMillis;
+    }
+
+    /**
+     * Takes an idle connection to the host of the uri, or opens a new one, waiting for a free slot when the host
+     * already has {@code maxConnectionsPerHost} connections in use.
+     *
+     * Every leased connection must be handed back with {@link #release(Connection, boolean)}.  The waits and the
+     * read timeout of the connection are capped by the current thread's {@link Deadline}.
+     */
+    Connection lease(final URI uri, final int connectTimeout) throws IOException {
+        if (shutdown) {
+            throw new IllegalStateException("The connection pool has been shut down.");
+        }
+
+        final Proxy proxy = selectProxy(uri);
+        final Route route = getRoute(routeKey(uri, proxy));
+        final long leaseTimeout = Deadline.capTimeout((int) Math.min(leaseTimeoutMillis, Integer.MAX_VALUE));
+        try {
+            if (!route.permits.tryAcquire(leaseTimeout, TimeUnit.MILLISECONDS)) {
+                leaseTimeouts.incrementAndGet();
+                final String template = "Timed out after %1$d ms waiting for a connection to %2$s";
+                throw new SocketTimeoutException(String.format(template, leaseTimeout, route.key));
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a connection to " + route.key);
+        }
+
+        boolean leased = false;
+        try {
+            Connection connection = takeIdle(route);
+            if (connection != null) {
+                connectionsReused.incrementAndGet();
+                logger.debug("Reusing connection to {}", route.key);
+            } else {
+                connection = connect(uri, proxy, route, Deadline.capTimeout(connectTimeout));
+                connectionsCreated.incrementAndGet();
+                logger.debug("Opened connection to {}", route.key);
+            }
+            connection.socket.setSoTimeout(Deadline.capTimeout(readTimeoutMillis));
+            connection.useCount++;
+            connection.released = false;
+            leased = true;
+            return connection;
+        } finally {
+            if (!leased) {
+                route.permits.release();
+            }
+        }
+    }
+
+    /**
+     * Hands a leased connection back.
+     *
+     * @param connection the connection obtained from {@link #lease(URI, int)}
+     * @param reusable   {@code true} if the last response was read completely and the server keeps the connection
+     *                   open; {@code false} closes the connection
+     */
+    void release(final Connection connection, final boolean reusable) {
+        if (connection.released) {
+            return;
+        }
+        connection.released = true;
+        final Route route = connection.route;
+        try {
+            if (reusable && !shutdown) {
+                connection.idleSince = System.currentTimeMillis();
+                synchronized (route.idle) {
+                    route.idle.addFirst(connection);
+                }
+            } else {
+                connectionsDiscarded.incrementAndGet();
+                connection.close();
+            }
+        } finally {
+            route.permits.release();
+        }
+    }
+
+    /**
+     * Closes every connection that has been idle for longer than the idle timeout.
+     */
+    public void evictIdleConnections() {
+        final long now = System.currentTimeMillis();
+        for (final Route route : routes.values()) {
+            synchronized (route.idle) {
+                final Iterator<Connection> iterator = route.idle.iterator();
+                while (iterator.hasNext()) {
+                    final Connection connection = iterator.next();
+                    if (now - connection.idleSince > idleTimeoutMillis) {
+                        iterator.remove();
+                        connectionsEvicted.incrementAndGet();
+                        connection.close();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes all idle connections and stops the eviction thread.  Connections in use are closed when released.
+     */
+    public void shutdown() {
+        shutdown = true;
+        evictor.shutdownNow();
+        for (final Route route : routes.values()) {
+            synchronized (route.idle) {
+                for (final Connection connection : route.idle) {
+                    connection.close();
+                }
+                route.idle.clear();
+            }
+        }
+    }
+
+    /**
+     * @return the byte counts of the response bodies read over this pool's connections.
+     */
+    public TransferStatistics getTransferStatistics() {
+        return transferStatistics;
+    }
+
+    public Statistics getStatistics() {
+        int leased = 0;
+        int idle = 0;
+        final Map<String, Integer> leasedByHost = new LinkedHashMap<String, Integer>();
+        for (final Route route : routes.values()) {
+            final int routeIdle;
+            synchronized (route.idle) {
+                routeIdle = route.idle.size();
+            }
+            final int routeLeased = maxConnectionsPerHost - route.permits.availablePermits();
+            leased += routeLeased;
+            idle += routeIdle;
+            leasedByHost.put(route.key, routeLeased);
+        }
+        return new Statistics(connectionsCreated.get(), connectionsReused.get(), connectionsEvicted.get(),
+                connectionsDiscarded.get(), leaseTimeouts.get(), leased, idle, leasedByHost);
+    }
+
+    private Route getRoute(final String key) {
+        Route route = routes.get(key);
+        if (route == null) {
+            final Route candidate = new Route(key, maxConnectionsPerHost);
+            route = routes.putIfAbsent(key, candidate);
+            if (route == null) {
+                route = candidate;
+            }
+        }
+        return route;
+    }
+
+    private Connection takeIdle(final Route route) {
+        final long now = System.currentTimeMillis();
+        while (true) {
+            final Connection candidate;
+            synchronized (route.idle) {
+                candidate = route.idle.pollFirst();
+            }
+            if (candidate == null) {
+                return null;
+            }
+            if (now - candidate.idleSince > idleTimeoutMillis || candidate.isStale()) {
+                connectionsEvicted.incrementAndGet();
+                candidate.close();
+                continue;
+            }
+            return candidate;
+        }
+    }
+
+    static Proxy selectProxy(final URI uri) {
+        final ProxySelector selector = ProxySelector.getDefault();
+        if (selector != null) {
+            final List<Proxy> proxies = selector.select(uri);
+            if (proxies != null && !proxies.isEmpty() && proxies.get(0) != null) {
+                return proxies.get(0);
+            }
+        }
+        return Proxy.NO_PROXY;
+    }
+
+    static int getPort(final URI uri) {
+        if (uri.getPort() != -1) {
+            return uri.getPort();
+        }
+        return "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+    }
+
+    private static String routeKey(final URI uri, final Proxy proxy) {
+        final String key = uri.getScheme().toLowerCase() + "://" + uri.getHost().toLowerCase() + ":" + getPort(uri);
+        return proxy.type() == Proxy.Type.DIRECT ? key : key + " via " + proxy;
+    }
+
+    private Connection connect(final URI uri, final Proxy proxy, final Route route, final int connectTimeout)
+            throws IOException {
+        final String host = uri.getHost();
+        final int port = getPort(uri);
+        final boolean secure = "https".equalsIgnoreCase(uri.getScheme());
+
+        final Socket plain;
+        final SocketAddress address;
+        if (proxy.type() == Proxy.Type.HTTP) {
+            final InetSocketAddress proxyAddress = (InetSocketAddress) proxy.address();
+            plain = new Socket();
+            address = new InetSocketAddress(proxyAddress.getHostName(), proxyAddress.getPort());
+        } else if (proxy.type() == Proxy.Type.SOCKS) {
+            plain = new Socket(proxy);
+            address = InetSocketAddress.createUnresolved(host, port);
+        } else {
+            plain = new Socket();
+            address = new InetSocketAddress(host, port);
+        }
+
+        Socket socket = plain;
+        try {
+            plain.setTcpNoDelay(true);
+            plain.connect(address, connectTimeout);
+            plain.setSoTimeout(readTimeoutMillis);
+
+            if (secure) {
+                if (proxy.type() == Proxy.Type.HTTP) {
+                    tunnel(plain, host, port);
+                }
+                final SSLSocketFactory factory = HttpsURLConnection.getDefaultSSLSocketFactory();
+                final SSLSocket sslSocket = (SSLSocket) factory.createSocket(plain, host, port, true);
+                socket = sslSocket;
+                EndpointIdentification.enable(sslSocket);
+                sslSocket.startHandshake();
+                EndpointIdentification.verify(host, sslSocket.getSession());
+            }
+
+            final boolean absoluteForm = !secure && proxy.type() == Proxy.Type.HTTP;
+            return new Connection(route, socket, absoluteForm);
+        } catch (final IOException e) {
+            IOHelper.closeQuietly(socket);
+            throw e;
+        }
+    }
+
+    private static void tunnel(final Socket socket, final String host, final int port) throws IOException {
+        final Map<String, String> headers = new LinkedHashMap<String, String>();
+        final String authority = host + ":" + port;
+        headers.put("Host", authority);
+        final OutputStream out = socket.getOutputStream();
+        HttpWire.writeRequestHead(out, "CONNECT", authority, headers);
+        out.flush();
+
+        // read the proxy's answer byte by byte, so no bytes of the TLS handshake are consumed
+        final InputStream in = socket.getInputStream();
+        final HttpWire.ResponseHead head = HttpWire.readResponseHead(in);
+        if (head == null || head.status != 200) {
+            final String status = head == null ? "no response" : head.version + " " + head.status + " " + head.reason;
+            throw new IOException("Unable to tunnel through proxy. Proxy returns \"" + status + "\"");
+        }
+    }
+
+    /**
+     * A point-in-time view of the pool.
+     */
+    public static class Statistics {
+        private final long connectionsCreated;
+        private final long connectionsReused;
+        private final long connectionsEvicted;
+        private final long connectionsDiscarded;
+        private final long leaseTimeouts;
+        private final int leasedConnections;
+        private final int idleConnections;
+        private final Map<String, Integer> leasedConnectionsByHost;
+
+        Statistics(final long connectionsCreated, final long connectionsReused, final long connectionsEvicted,
+                   final long connectionsDiscarded, final long leaseTimeouts, final int leasedConnections,
+                   final int idleConnections, final Map<String, Integer> leasedConnectionsByHost) {
+            this.connectionsCreated = connectionsCreated;
+            this.connectionsReused = connectionsReused;
+            this.connectionsEvicted = connectionsEvicted;
+            this.connectionsDiscarded = connectionsDiscarded;
+            this.leaseTimeouts = leaseTimeouts;
+            this.leasedConnections = leasedConnections;
+            this.idleConnections = idleConnections;
+            this.leasedConnectionsByHost = leasedConnectionsByHost;
+        }
+
+        /**
+         * @return number of connections opened, each of which paid for a TCP (and usually TLS) handshake
+         */
+        public long getConnectionsCreated() {
+            return connectionsCreated;
+        }
+
+        /**
+         * @return number of requests that were sent over an already open connection
+         */
+        public long getConnectionsReused() {
+            return connectionsReused;
+        }
+
+        /**
+         * @return number of idle connections closed because they timed out or the server had closed them
+         */
+        public long getConnectionsEvicted() {
+            return connectionsEvicted;
+        }
+
+        /**
+         * @return number of connections closed after use because they could not carry another request
+         */
+        public long getConnectionsDiscarded() {
+            return connectionsDiscarded;
+        }
+
+        /**
+         * @return number of requests that gave up waiting for a connection
+         */
+        public long getLeaseTimeouts() {
+            return leaseTimeouts;
+        }
+
+        public int getLeasedConnections() {
+            return leasedConnections;
+        }
+
+        public int getIdleConnections() {
+            return idleConnections;
+        }
+
+        public Map<String, Integer> getLeasedConnectionsByHost() {
+            return leasedConnectionsByHost;
+        }
+
+        @Override
+        public String toString() {
+            return "created=" + connectionsCreated + ", reused=" + connectionsReused
+                    + ", evicted=" + connectionsEvicted + ", discarded=" + connectionsDiscarded
+                    + ", leaseTimeouts=" + leaseTimeouts + ", leased=" + leasedConnections
+                    + ", idle=" + idleConnections;
+        }
+    }
+
+    private static class Route {
+        final String key;
+        final Semaphore permits;
+        final LinkedList<Connection> idle = new LinkedList<Connection>();
+
+        Route(final String key, final int maxConnections) {
+            this.key = key;
+            this.permits = new Semaphore(maxConnections, true);
+        }
+    }
+
+    /**
+     * An open connection owned by the pool.
+     */
+    static class Connection {
+        final Route route;
+        final Socket socket;
+        final InputStream in;
+        final OutputStream out;
+        final boolean absoluteForm;
+
+        int useCount;
+        long idleSince;
+        boolean released;
+
+        Connection(final Route route, final Socket socket, final boolean absoluteForm) throws IOException {
+            this.route = route;
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+            this.out = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+            this.absoluteForm = absoluteForm;
+        }
+
+        boolean isReused() {
+            return useCount > 1;
+        }
+
+        /**
+         * The request-target of the request line: absolute when talking to an HTTP proxy, origin-form otherwise.
+         */
+        String requestTarget(final URI uri) {
+            if (absoluteForm) {
+                final String ascii = uri.toASCIIString();
+                final int fragment = ascii.indexOf('#');
+                return fragment < 0 ? ascii : ascii.substring(0, fragment);
+            }
+            final String path = uri.getRawPath();
+            final StringBuilder sb = new StringBuilder(StringHelper.isNullOrEmpty(path) ? "/" : path);
+            if (uri.getRawQuery() != null) {
+                sb.append('?').append(uri.getRawQuery());
+            }
+            return sb.toString();
+        }
+
+        void setReadTimeout(final int timeoutMillis) throws IOException {
+            socket.setSoTimeout(timeoutMillis);
+        }
+
+        /**
+         * An idle connection should have nothing to read.  This only looks at what is already known without
+         * touching the network: a connection the server has quietly closed still passes, and
+         * {@link PooledHttpClient} retries its request once on a new connection when it turns out to be closed.
+         */
+        boolean isStale() {
+            if (socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown()) {
+                return true;
+            }
+            try {
+                // either the server sent something we did not ask for, or a response we did not read
+                return in.available() > 0;
+            } catch (final IOException e) {
+                return true;
+            }
+        }
+
+        void close() {
+            IOHelper.closeQuietly(socket);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import java.net.URI;
+import java.util.Locale;
+
+/**
+ * The kinds of requests this library sends, so calls can be measured per endpoint rather than per URL.
+ */
+public enum HttpEndpoint {
+    /**
+     * Unauthenticated HEAD on an account, to read its X-VSS-ResourceTenant header
+     */
+    TENANT_HEAD,
+    /**
+     * Azure Active Directory token endpoint, for authorization codes, refresh tokens and device codes
+     */
+    TOKEN_POST,
+    /**
+     * Azure Active Directory device code endpoint, starting a device flow
+     */
+    DEVICE_CODE_POST,
+    /**
+     * Account connection data, to validate tokens and read the account's instance id
+     */
+    CONNECTION_DATA_GET,
+    /**
+     * Location service lookup of the account's identity service
+     */
+    LOCATION_SERVICE_GET,
+    /**
+     * Personal access token creation on the identity service
+     */
+    SESSION_TOKENS_POST,
+    /**
+     * The signed in user's profile
+     */
+    PROFILE_GET,
+    /**
+     * The accounts the signed in user is a member of
+     */
+    ACCOUNTS_GET,
+    /**
+     * Anything else
+     */
+    OTHER;
+
+    /**
+     * @param method the HTTP method
+     * @param uri    the target of the request
+     * @return the endpoint the request is addressed to
+     */
+    public static HttpEndpoint classify(final String method, final URI uri) {
+        final String path = uri.getPath() == null ? "" : uri.getPath().toLowerCase(Locale.ENGLISH);
+        if ("HEAD".equals(method)) {
+            return TENANT_HEAD;
+        }
+        if ("POST".equals(method)) {
+            if (path.endsWith("/oauth2/token")) {
+                return TOKEN_POST;
+            }
+            if (path.endsWith("/oauth2/devicecode")) {
+                return DEVICE_CODE_POST;
+            }
+            if (path.contains("/_apis/token/sessiontokens")) {
+                return SESSION_TOKENS_POST;
+            }
+        } else if ("GET".equals(method)) {
+            if (path.endsWith("/_apis/connectiondata")) {
+                return CONNECTION_DATA_GET;
+            }
+            if (path.contains("/locationservice2/")) {
+                return LOCATION_SERVICE_GET;
+            }
+            if (path.contains("/_apis/profile/profiles/")) {
+                return PROFILE_GET;
+            }
+            if (path.endsWith("/_apis/accounts")) {
+                return ACCOUNTS_GET;
+            }
+        }
+        return OTHER;
+    }
+}
@@ -0,0 +1,204 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the records of {@link MetricsHttpClient}s: keeps per-endpoint latency histograms, status counts, sizes
+ * and retries in memory, and passes every record on to the registered {@link HttpMetricsSink}s.
+ *
+ * Sinks listed for {@link ServiceLoader} are registered when the class is loaded; nothing else is needed to use it.
+ */
+public final class HttpMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpMetrics.class);
+
+    private static final HttpMetrics INSTANCE = new HttpMetrics(loadSinks());
+
+    private final List<HttpMetricsSink> sinks;
+    private volatile Map<HttpEndpoint, EndpointMetrics> endpoints = createEndpoints();
+
+    HttpMetrics(final List<HttpMetricsSink> sinks) {
+        this.sinks = new CopyOnWriteArrayList<HttpMetricsSink>(sinks);
+    }
+
+    public static HttpMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    private static List<HttpMetricsSink> loadSinks() {
+        final List<HttpMetricsSink> result = new ArrayList<HttpMetricsSink>();
+        try {
+            final Iterator<HttpMetricsSink> iterator = ServiceLoader.load(HttpMetricsSink.class).iterator();
+            while (iterator.hasNext()) {
+                try {
+                    final HttpMetricsSink sink = iterator.next();
+                    logger.debug("Registered metrics sink {}", sink.getClass().getName());
+                    result.add(sink);
+                } catch (final ServiceConfigurationError e) {
+                    logger.warn("Skipping a metrics sink that could not be loaded", e);
+                }
+            }
+        } catch (final ServiceConfigurationError e) {
+            logger.warn("Metrics sinks could not be listed", e);
+        }
+        return result;
+    }
+
+    public void addSink(final HttpMetricsSink sink) {
+        Debug.Assert(sink != null, "sink cannot be null");
+
+        sinks.add(sink);
+    }
+
+    public void removeSink(final HttpMetricsSink sink) {
+        sinks.remove(sink);
+    }
+
+    void record(final HttpCallRecord call) {
+        endpoints.get(call.getEndpoint()).record(call);
+
+        for (final HttpMetricsSink sink : sinks) {
+            try {
+                sink.onCallCompleted(call);
+            } catch (final RuntimeException e) {
+                // a broken sink must not fail the request it was measuring
+                logger.warn("Metrics sink {} failed", sink.getClass().getName(), e);
+            }
+        }
+    }
+
+    public EndpointStatistics getStatistics(final HttpEndpoint endpoint) {
+        return endpoints.get(endpoint).getStatistics();
+    }
+
+    /**
+     * Forgets everything recorded so far; the sinks stay registered.
+     */
+    public void reset() {
+        endpoints = createEndpoints();
+    }
+
+    private static Map<HttpEndpoint, EndpointMetrics> createEndpoints() {
+        final Map<HttpEndpoint, EndpointMetrics> result
+                = new EnumMap<HttpEndpoint, EndpointMetrics>(HttpEndpoint.class);
+        for (final HttpEndpoint endpoint : HttpEndpoint.values()) {
+            result.put(endpoint, new EndpointMetrics());
+        }
+        return result;
+    }
+
+    private static class EndpointMetrics {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final ConcurrentMap<Integer, AtomicLong> statusCodes = new ConcurrentHashMap<Integer, AtomicLong>();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+        private final AtomicLong requestBytes = new AtomicLong();
+        private final AtomicLong responseCharacters = new AtomicLong();
+
+        void record(final HttpCallRecord call) {
+            latency.record(call.getLatencyNanos());
+            final int status = call.getStatusCode();
+            if (status != 0) {
+                AtomicLong counter = statusCodes.get(status);
+                if (counter == null) {
+                    final AtomicLong created = new AtomicLong();
+                    counter = statusCodes.putIfAbsent(status, created);
+                    if (counter == null) {
+                        counter = created;
+                    }
+                }
+                counter.incrementAndGet();
+            } else if (call.getFailure() != null) {
+                failures.incrementAndGet();
+            }
+            if (call.getAttempt() > 1) {
+                retries.incrementAndGet();
+            }
+            requestBytes.addAndGet(call.getRequestBytes());
+            responseCharacters.addAndGet(call.getResponseCharacters());
+        }
+
+        EndpointStatistics getStatistics() {
+            final Map<Integer, Long> statuses = new TreeMap<Integer, Long>();
+            for (final Map.Entry<Integer, AtomicLong> entry : statusCodes.entrySet()) {
+                statuses.put(entry.getKey(), entry.getValue().get());
+            }
+            return new EndpointStatistics(latency.getSnapshot(), Collections.unmodifiableMap(statuses),
+                    failures.get(), retries.get(), requestBytes.get(), responseCharacters.get());
+        }
+    }
+
+    /**
+     * What was recorded for one endpoint, at one point in time.
+     */
+    public static class EndpointStatistics {
+        private final LatencyHistogram.Snapshot latency;
+        private final Map<Integer, Long> statusCodes;
+        private final long failures;
+        private final long retries;
+        private final long requestBytes;
+        private final long responseCharacters;
+
+        EndpointStatistics(final LatencyHistogram.Snapshot latency, final Map<Integer, Long> statusCodes,
+                           final long failures, final long retries, final long requestBytes,
+                           final long responseCharacters) {
+            this.latency = latency;
+            this.statusCodes = statusCodes;
+            this.failures = failures;
+            this.retries = retries;
+            this.requestBytes = requestBytes;
+            this.responseCharacters = responseCharacters;
+        }
+
+        public LatencyHistogram.Snapshot getLatency() {
+            return latency;
+        }
+
+        /**
+         * @return how many responses came back with each status code
+         */
+        public Map<Integer, Long> getStatusCodes() {
+            return statusCodes;
+        }
+
+        /**
+         * @return how many calls failed without a response
+         */
+        public long getFailures() {
+            return failures;
+        }
+
+        /**
+         * @return how many of the calls were retries
+         */
+        public long getRetries() {
+            return retries;
+        }
+
+        public long getRequestBytes() {
+            return requestBytes;
+        }
+
+        public long getResponseCharacters() {
+            return responseCharacters;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+/**
+ * Receives a record of every request made through a {@link MetricsHttpClient}, to forward to a metrics system.
+ *
+ * Implementations are found with {@link java.util.ServiceLoader}: list the class name in
+ * {@code META-INF/services/com.microsoft.alm.helpers.HttpMetricsSink}, or register an instance with
+ * {@link HttpMetrics#addSink(HttpMetricsSink)}.  Sinks are called on the thread that made the request, so they
+ * must be quick and thread-safe.
+ */
+public interface HttpMetricsSink {
+
+    void onCallCompleted(final HttpCallRecord call);
+}
@@ -10,4 +10,8 @@ public class HttpResponse {
     public int status;
     public String responseText;
     public String errorText;
+    /**
+     * The Retry-After header of an unsuccessful response, null if there was none
+     */
+    public String retryAfter;
 }
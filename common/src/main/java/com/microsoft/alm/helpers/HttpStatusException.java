@@ -0,0 +1,44 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import java.io.IOException;
+
+/**
+ * Thrown by the {@link HttpClient} implementations when the server answers with a status code other than 200.
+ *
+ * The message is the same the clients have always used, so code that only looks at the {@link IOException} keeps
+ * working, while callers that need to can tell a throttled or unavailable server from a network failure.
+ */
+public class HttpStatusException extends IOException {
+
+    private final int statusCode;
+    private final String retryAfter;
+
+    public HttpStatusException(final int statusCode, final String content, final String retryAfter) {
+        super(String.format("HTTP request failed with code %1$d: %2$s", statusCode, content));
+        this.statusCode = statusCode;
+        this.retryAfter = retryAfter;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return the raw Retry-After header of the response, either delay-seconds or an HTTP-date, or null if absent
+     */
+    public String getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * Keeps the string form of the plain {@link IOException} the clients used to throw, which ends up in the
+     * messages of the errors callers wrap it in; use {@link #getClass()} or {@code instanceof} to tell them apart.
+     */
+    @Override
+    public String toString() {
+        return IOException.class.getName() + ": " + getLocalizedMessage();
+    }
+}
@@ -0,0 +1,329 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Minimal HTTP/1.1 message framing used by the clients that manage their own connections.
+ *
+ * Only what the authentication endpoints need is supported: a request head followed by an optional
+ * fixed-length body, and responses delimited by Content-Length, chunked transfer coding or connection close.
+ */
+final class HttpWire {
+
+    static final Charset ASCII = Charset.forName("ISO-8859-1");
+
+    private static final int MAX_LINE_LENGTH = 8 * 1024;
+    private static final int MAX_HEADER_COUNT = 128;
+
+    private HttpWire() {
+        // not intended to be used as an instance class
+    }
+
+    /**
+     * The status line and headers of a response.  Header names are case-insensitive.
+     */
+    static final class ResponseHead {
+        final String version;
+        final int status;
+        final String reason;
+        final Map<String, String> headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+
+        ResponseHead(final String version, final int status, final String reason) {
+            this.version = version;
+            this.status = status;
+            this.reason = reason;
+        }
+
+        String getHeader(final String name) {
+            return headers.get(name);
+        }
+
+        boolean isKeepAlive() {
+            final String connection = getHeader("Connection");
+            if ("HTTP/1.0".equals(version)) {
+                return connection != null && "keep-alive".equalsIgnoreCase(connection.trim());
+            }
+            return connection == null || !"close".equalsIgnoreCase(connection.trim());
+        }
+
+        boolean isChunked() {
+            final String transferEncoding = getHeader("Transfer-Encoding");
+            return transferEncoding != null && transferEncoding.toLowerCase().contains("chunked");
+        }
+
+        long getContentLength() {
+            final String contentLength = getHeader("Content-Length");
+            if (contentLength == null) {
+                return -1;
+            }
+            try {
+                return Long.parseLong(contentLength.trim(), 10);
+            } catch (final NumberFormatException ignored) {
+                return -1;
+            }
+        }
+    }
+
+    static void writeRequestHead(final OutputStream destination, final String method, final String requestTarget,
+                                 final Map<String, String> headers) throws IOException {
+        final StringBuilder sb = new StringBuilder(256);
+        sb.append(method).append(' ').append(requestTarget).append(" HTTP/1.1\r\n");
+        for (final Map.Entry<String, String> entry : headers.entrySet()) {
+            if (entry.getValue() != null) {
+                sb.append(entry.getKey()).append(": ").append(entry.getValue()).append("\r\n");
+            }
+        }
+        sb.append("\r\n");
+        destination.write(sb.toString().getBytes(ASCII));
+    }
+
+    /**
+     * Reads the status line and the headers of the next response.
+     *
+     * @return the response head, or {@code null} if the stream ended before any byte was read,
+     *         which is what a server closing an idle keep-alive connection looks like.
+     */
+    static ResponseHead readResponseHead(final InputStream source) throws IOException {
+        final String statusLine = readLine(source, true);
+        if (statusLine == null) {
+            return null;
+        }
+        final ResponseHead head = parseStatusLine(statusLine);
+        for (int count = 0; ; count++) {
+            final String line = readLine(source, false);
+            if (line.length() == 0) {
+                break;
+            }
+            if (count == MAX_HEADER_COUNT) {
+                throw new ProtocolException("Too many response headers");
+            }
+            parseHeaderLine(line, head.headers);
+        }
+        return head;
+    }
+
+    static ResponseHead parseStatusLine(final String statusLine) throws ProtocolException {
+        final int firstSpace = statusLine.indexOf(' ');
+        if (!statusLine.startsWith("HTTP/") || firstSpace < 0) {
+            throw new ProtocolException("Invalid status line: " + statusLine);
+        }
+        final String version = statusLine.substring(0, firstSpace);
+        final int secondSpace = statusLine.indexOf(' ', firstSpace + 1);
+        final String code = secondSpace < 0
+                ? statusLine.substring(firstSpace + 1)
+                : statusLine.substring(firstSpace + 1, secondSpace);
+        final String reason = secondSpace < 0 ? StringHelper.Empty : statusLine.substring(secondSpace + 1);
+        try {
+            return new ResponseHead(version, Integer.parseInt(code.trim(), 10), reason);
+        } catch (final NumberFormatException e) {
+            throw new ProtocolException("Invalid status code in status line: " + statusLine);
+        }
+    }
+
+    static void parseHeaderLine(final String line, final Map<String, String> headers) throws ProtocolException {
+        final int colon = line.indexOf(':');
+        if (colon <= 0) {
+            throw new ProtocolException("Invalid header line: " + line);
+        }
+        final String name = line.substring(0, colon).trim();
+        final String value = line.substring(colon + 1).trim();
+        final String existing = headers.get(name);
+        // repeated headers are folded into one comma-separated value
+        headers.put(name, existing == null ? value : existing + ", " + value);
+    }
+
+    /**
+     * Determines whether a response to the given request method carries a body at all.
+     */
+    static boolean hasBody(final String method, final ResponseHead head) {
+        if ("HEAD".equals(method)) {
+            return false;
+        }
+        final int status = head.status;
+        return !((status >= 100 && status < 200) || status == 204 || status == 304);
+    }
+
+    /**
+     * Wraps the connection stream so that exactly the body of the current response can be read from it.
+     */
+    static InputStream openBody(final String method, final ResponseHead head, final InputStream source) {
+        if (!hasBody(method, head)) {
+            return new FixedLengthInputStream(source, 0);
+        }
+        if (head.isChunked()) {
+            return new ChunkedInputStream(source);
+        }
+        final long contentLength = head.getContentLength();
+        if (contentLength >= 0) {
+            return new FixedLengthInputStream(source, contentLength);
+        }
+        // delimited by the server closing the connection
+        return source;
+    }
+
+    /**
+     * Determines whether the connection can carry another request once the body has been fully read.
+     */
+    static boolean isReusable(final String method, final ResponseHead head) {
+        if (!head.isKeepAlive()) {
+            return false;
+        }
+        return !hasBody(method, head) || head.isChunked() || head.getContentLength() >= 0;
+    }
+
+    static String readLine(final InputStream source, final boolean eofAllowed) throws IOException {
+        final ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+        int b;
+        while ((b = source.read()) != -1) {
+            if (b == '\n') {
+                final byte[] bytes = line.toByteArray();
+                final int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r'
+                        ? bytes.length - 1
+                        : bytes.length;
+                return new String(bytes, 0, length, ASCII);
+            }
+            if (line.size() == MAX_LINE_LENGTH) {
+                throw new ProtocolException("Response line exceeds " + MAX_LINE_LENGTH + " bytes");
+            }
+            line.write(b);
+        }
+        if (eofAllowed && line.size() == 0) {
+            return null;
+        }
+        throw new EOFException("Unexpected end of stream while reading the response head");
+    }
+
+    /**
+     * Exposes a known number of bytes of the underlying stream.
+     */
+    static class FixedLengthInputStream extends InputStream {
+        private final InputStream source;
+        private long remaining;
+
+        FixedLengthInputStream(final InputStream source, final long length) {
+            this.source = source;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            final int b = source.read();
+            if (b == -1) {
+                throw new EOFException("Connection closed with " + remaining + " bytes of the body left");
+            }
+            remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            final int count = source.read(buffer, offset, (int) Math.min(length, remaining));
+            if (count == -1) {
+                throw new EOFException("Connection closed with " + remaining + " bytes of the body left");
+            }
+            remaining -= count;
+            return count;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(source.available(), remaining);
+        }
+
+        @Override
+        public void close() {
+            // the underlying connection is owned by the caller
+        }
+    }
+
+    /**
+     * Decodes the chunked transfer coding, discarding chunk extensions and trailers.
+     */
+    static class ChunkedInputStream extends InputStream {
+        private final InputStream source;
+        private long chunkRemaining;
+        private boolean finished;
+
+        ChunkedInputStream(final InputStream source) {
+            this.source = source;
+        }
+
+        private boolean ensureChunk() throws IOException {
+            if (finished) {
+                return false;
+            }
+            if (chunkRemaining > 0) {
+                return true;
+            }
+            String sizeLine = readLine(source, false);
+            if (sizeLine.length() == 0) {
+                // the CRLF that terminates the previous chunk's data
+                sizeLine = readLine(source, false);
+            }
+            final int extension = sizeLine.indexOf(';');
+            final String size = (extension < 0 ? sizeLine : sizeLine.substring(0, extension)).trim();
+            try {
+                chunkRemaining = Long.parseLong(size, 16);
+            } catch (final NumberFormatException e) {
+                throw new ProtocolException("Invalid chunk size: " + sizeLine);
+            }
+            if (chunkRemaining == 0) {
+                // skip trailers up to the terminating empty line
+                while (readLine(source, false).length() > 0) {
+                    // ignore
+                }
+                finished = true;
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!ensureChunk()) {
+                return -1;
+            }
+            final int b = source.read();
+            if (b == -1) {
+                throw new EOFException("Connection closed in the middle of a chunk");
+            }
+            chunkRemaining--;
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            if (!ensureChunk()) {
+                return -1;
+            }
+            final int count = source.read(buffer, offset, (int) Math.min(length, chunkRemaining));
+            if (count == -1) {
+                throw new EOFException("Connection closed in the middle of a chunk");
+            }
+            chunkRemaining -= count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+            // the underlying connection is owned by the caller
+        }
+    }
+}
@@ -11,6 +11,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.net.Socket;
 
 public class IOHelper {
 
@@ -25,6 +26,16 @@ public class IOHelper {
         }
     }
 
+    public static void closeQuietly(final Socket socket) {
+        // Socket only became Closeable in Java 7
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (final IOException ignored) {
+            }
+        }
+    }
+
     public static String readFileToString(final File file) throws IOException {
         FileInputStream fis = null;
         try {
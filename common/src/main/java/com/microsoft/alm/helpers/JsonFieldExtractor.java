@@ -0,0 +1,133 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Pulls a single string member out of a JSON document without building the document or even reading all of it:
+ * the scan stops as soon as the member has been found.
+ */
+public final class JsonFieldExtractor {
+
+    private JsonFieldExtractor() {
+        // not intended to be used as an instance class
+    }
+
+    /**
+     * Finds the first member, at any depth, whose name matches (ignoring case) and whose value is a non-empty
+     * string.
+     *
+     * @param json the JSON text
+     * @param name the name of the member
+     * @return the unescaped value of the member, or null if there is no such member
+     * @throws IOException if reading fails
+     */
+    public static String findString(final Reader json, final String name) throws IOException {
+        Debug.Assert(json != null, "json cannot be null");
+        Debug.Assert(name != null, "name cannot be null");
+
+        final Reader reader = json instanceof BufferedReader ? json : new BufferedReader(json);
+        int c = reader.read();
+        while (c != -1) {
+            if (c != '"') {
+                c = reader.read();
+                continue;
+            }
+            final String token = readString(reader);
+            if (token == null) {
+                return null;
+            }
+            c = skipWhitespace(reader);
+            if (c != ':') {
+                // the string was a value, not the name of a member
+                continue;
+            }
+            c = skipWhitespace(reader);
+            if (c != '"') {
+                // not a string value; objects and arrays are scanned like everything else
+                continue;
+            }
+            final String value = readString(reader);
+            if (value == null) {
+                return null;
+            }
+            if (value.length() > 0 && name.equalsIgnoreCase(token)) {
+                return value;
+            }
+            c = reader.read();
+        }
+        return null;
+    }
+
+    private static int skipWhitespace(final Reader reader) throws IOException {
+        int c;
+        do {
+            c = reader.read();
+        } while (SimpleJson.isInsignificantWhitespace((char) c) && c != -1);
+        return c;
+    }
+
+    /**
+     * Reads the rest of a string whose opening quote has been consumed.
+     *
+     * @return the unescaped string, or null if the text ends inside it
+     */
+    private static String readString(final Reader reader) throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        while (true) {
+            int c = reader.read();
+            if (c == -1) {
+                return null;
+            }
+            if (c == '"') {
+                return sb.toString();
+            }
+            if (c == '\\') {
+                c = reader.read();
+                switch (c) {
+                    case -1:
+                        return null;
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'u':
+                        final char[] hex = new char[4];
+                        for (int i = 0; i < hex.length; i++) {
+                            final int h = reader.read();
+                            if (h == -1) {
+                                return null;
+                            }
+                            hex[i] = (char) h;
+                        }
+                        try {
+                            sb.append((char) Integer.parseInt(new String(hex), 16));
+                        } catch (final NumberFormatException e) {
+                            throw new IOException("Invalid unicode escape in JSON string: \\u" + new String(hex));
+                        }
+                        break;
+                    default:
+                        // \" \\ \/ and anything unexpected stand for themselves
+                        sb.append((char) c);
+                }
+                continue;
+            }
+            sb.append((char) c);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts latencies into fixed buckets, so recording one costs a few atomic increments and no allocation.
+ *
+ * Percentiles are reported as the upper bound of the bucket they fall in.
+ */
+public class LatencyHistogram {
+
+    /**
+     * Upper bounds of the buckets, in milliseconds; a last, unbounded bucket holds anything slower.
+     */
+    static final long[] BUCKET_BOUNDS_MILLIS = {
+            1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000,
+    };
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_BOUNDS_MILLIS.length + 1);
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(final long latencyNanos) {
+        final long nanos = Math.max(0, latencyNanos);
+        counts.incrementAndGet(bucketOf(nanos / 1000000));
+        totalNanos.addAndGet(nanos);
+        long max;
+        while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+            // another thread raised the maximum, compare again
+        }
+    }
+
+    static int bucketOf(final long millis) {
+        for (int i = 0; i < BUCKET_BOUNDS_MILLIS.length; i++) {
+            if (millis <= BUCKET_BOUNDS_MILLIS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_BOUNDS_MILLIS.length;
+    }
+
+    public Snapshot getSnapshot() {
+        final long[] copy = new long[counts.length()];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy, totalNanos.get(), maxNanos.get());
+    }
+
+    /**
+     * The counts of a histogram at one point in time.
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+
+        Snapshot(final long[] counts, final long totalNanos, final long maxNanos) {
+            this.counts = counts;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            long sum = 0;
+            for (final long bucket : counts) {
+                sum += bucket;
+            }
+            this.count = sum;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMeanMillis() {
+            return count == 0 ? 0 : totalNanos / 1000000.0 / count;
+        }
+
+        public long getMaxMillis() {
+            return maxNanos / 1000000;
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return the upper bound of the bucket holding the given percentile, the maximum for the unbounded bucket,
+         *         or 0 when nothing was recorded
+         */
+        public long getPercentileMillis(final double percentile) {
+            Debug.Assert(percentile >= 0 && percentile <= 100, "percentile must be between 0 and 100");
+
+            if (count == 0) {
+                return 0;
+            }
+            final long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < BUCKET_BOUNDS_MILLIS.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(BUCKET_BOUNDS_MILLIS[i], getMaxMillis());
+                }
+            }
+            return getMaxMillis();
+        }
+
+        /**
+         * @return how many latencies fell in each bucket, the last one being unbounded
+         */
+        public long[] getBucketCounts() {
+            return counts.clone();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import java.util.concurrent.Future;
+
+/**
+ * A {@link Future} that can notify a {@link Callback} when it completes, so nobody has to block on {@link #get()}.
+ *
+ * @param <T> the type of the result
+ */
+public interface ListenableFuture<T> extends Future<T> {
+    /**
+     * Registers a callback, which is called on the thread that completes the future,
+     * or right away on the calling thread if the future is already done.
+     *
+     * @param callback the callback to notify
+     */
+    void addCallback(final Callback<? super T> callback);
+}
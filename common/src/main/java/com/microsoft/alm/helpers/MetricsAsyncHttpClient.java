@@ -0,0 +1,175 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+
+/**
+ * The {@link AsyncHttpClient} counterpart of {@link MetricsHttpClient}: every call is timed from the moment it is
+ * made until its future completes, and recorded in {@link HttpMetrics}, by endpoint.
+ *
+ * Wrapped by a {@link RetryingAsyncHttpClient}, directly or through other decorators, each attempt is recorded on
+ * its own with its attempt number.
+ */
+public class MetricsAsyncHttpClient implements AttemptAwareAsyncHttpClient {
+
+    private final AsyncHttpClient delegate;
+    private final HttpMetrics metrics;
+    private final int attempt;
+
+    public MetricsAsyncHttpClient(final AsyncHttpClient delegate) {
+        this(delegate, HttpMetrics.getInstance());
+    }
+
+    MetricsAsyncHttpClient(final AsyncHttpClient delegate, final HttpMetrics metrics) {
+        this(delegate, metrics, 1);
+    }
+
+    private MetricsAsyncHttpClient(final AsyncHttpClient delegate, final HttpMetrics metrics, final int attempt) {
+        Debug.Assert(delegate != null, "delegate cannot be null");
+        Debug.Assert(metrics != null, "metrics cannot be null");
+
+        this.delegate = delegate;
+        this.metrics = metrics;
+        this.attempt = attempt;
+    }
+
+    @Override
+    public AsyncHttpClient forAttempt(final int attempt) {
+        return new MetricsAsyncHttpClient(RetryingAsyncHttpClient.forAttempt(delegate, attempt), metrics, attempt);
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+        return delegate.getHeaders();
+    }
+
+    @Override
+    public ListenableFuture<String> getHeaderField(final URI uri, final String header) {
+        // the status of a HEAD request is not exposed, only that it got a response
+        final long start = System.nanoTime();
+        return measure(delegate.getHeaderField(uri, header), new Recorder<String>("HEAD", uri, null, start));
+    }
+
+    @Override
+    public ListenableFuture<String> getGetResponseText(final URI uri) {
+        final long start = System.nanoTime();
+        return measure(delegate.getGetResponseText(uri), new TextRecorder("GET", uri, null, start));
+    }
+
+    @Override
+    public ListenableFuture<String> getGetResponseText(final URI uri, final int timeout) {
+        final long start = System.nanoTime();
+        return measure(delegate.getGetResponseText(uri, timeout), new TextRecorder("GET", uri, null, start));
+    }
+
+    @Override
+    public ListenableFuture<String> getPostResponseText(final URI uri, final StringContent content) {
+        final long start = System.nanoTime();
+        return measure(delegate.getPostResponseText(uri, content), new TextRecorder("POST", uri, content, start));
+    }
+
+    @Override
+    public ListenableFuture<HttpResponse> getPostResponse(final URI uri, final StringContent content) {
+        final long start = System.nanoTime();
+        final ListenableFuture<HttpResponse> response = delegate.getPostResponse(uri, content);
+        return measure(response, new Recorder<HttpResponse>("POST", uri, content, start) {
+            @Override
+            void completed(final HttpResponse result) {
+                statusCode = result.status;
+                final String text = result.responseText != null ? result.responseText : result.errorText;
+                responseCharacters = text == null ? 0 : text.length();
+            }
+        });
+    }
+
+    /**
+     * @return a future that completes like the response, once the call has been recorded
+     */
+    private static <T> ListenableFuture<T> measure(final ListenableFuture<T> response, final Recorder<T> recorder) {
+        response.addCallback(recorder);
+        // cancelling the caller's future cancels the request, and the cancellation gets recorded
+        recorder.result.addCallback(new Callback<T>() {
+            @Override
+            public void onSuccess(final T value) {
+            }
+
+            @Override
+            public void onFailure(final Throwable throwable) {
+                if (recorder.result.isCancelled()) {
+                    response.cancel(true);
+                }
+            }
+        });
+        return recorder.result;
+    }
+
+    /**
+     * Records the call once its response arrives, then hands the outcome on.
+     */
+    private class Recorder<T> implements Callback<T> {
+        final SettableFuture<T> result = SettableFuture.create();
+        private final String method;
+        private final URI uri;
+        private final StringContent content;
+        private final long start;
+        int statusCode;
+        long responseCharacters;
+
+        Recorder(final String method, final URI uri, final StringContent content, final long start) {
+            this.method = method;
+            this.uri = uri;
+            this.content = content;
+            this.start = start;
+        }
+
+        void completed(final T result) {
+        }
+
+        @Override
+        public void onSuccess(final T value) {
+            completed(value);
+            record(null);
+            result.set(value);
+        }
+
+        @Override
+        public void onFailure(final Throwable throwable) {
+            final IOException failure;
+            if (throwable instanceof IOException) {
+                failure = (IOException) throwable;
+            } else {
+                // cancelled, or a bug: still a call that did not succeed
+                failure = new IOException(throwable);
+            }
+            if (failure instanceof HttpStatusException) {
+                statusCode = ((HttpStatusException) failure).getStatusCode();
+            }
+            record(failure);
+            result.setException(throwable);
+        }
+
+        private void record(final IOException failure) {
+            final long latency = System.nanoTime() - start;
+            final long requestBytes = content == null ? 0 : content.getBytes().length;
+            metrics.record(new HttpCallRecord(HttpEndpoint.classify(method, uri), method, uri, statusCode,
+                    latency, requestBytes, responseCharacters, attempt, failure));
+        }
+    }
+
+    private class TextRecorder extends Recorder<String> {
+        TextRecorder(final String method, final URI uri, final StringContent content, final long start) {
+            super(method, uri, content, start);
+        }
+
+        @Override
+        void completed(final String result) {
+            // the text methods only succeed for 200 OK
+            statusCode = 200;
+            responseCharacters = result == null ? 0 : result.length();
+        }
+    }
+}
@@ -0,0 +1,226 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URI;
+import java.util.Map;
+
+/**
+ * Decorates an {@link HttpClient} so every call is timed and recorded in {@link HttpMetrics}, by endpoint.
+ *
+ * Wrapped by a {@link RetryingHttpClient}, directly or through other decorators, each attempt is recorded on its
+ * own with its attempt number.
+ */
+public class MetricsHttpClient implements AttemptAwareHttpClient, StreamingHttpClient {
+
+    private final HttpClient delegate;
+    private final HttpMetrics metrics;
+    private final int attempt;
+
+    public MetricsHttpClient(final HttpClient delegate) {
+        this(delegate, HttpMetrics.getInstance());
+    }
+
+    MetricsHttpClient(final HttpClient delegate, final HttpMetrics metrics) {
+        this(delegate, metrics, 1);
+    }
+
+    private MetricsHttpClient(final HttpClient delegate, final HttpMetrics metrics, final int attempt) {
+        Debug.Assert(delegate != null, "delegate cannot be null");
+        Debug.Assert(metrics != null, "metrics cannot be null");
+
+        this.delegate = delegate;
+        this.metrics = metrics;
+        this.attempt = attempt;
+    }
+
+    @Override
+    public HttpClient forAttempt(final int attempt) {
+        return new MetricsHttpClient(RetryingHttpClient.forAttempt(delegate, attempt), metrics, attempt);
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+        return delegate.getHeaders();
+    }
+
+    @Override
+    public String getHeaderField(final URI uri, final String header) throws IOException {
+        // the status of a HEAD request is not exposed, only that it got a response
+        return measure("HEAD", uri, null, new Call<String>() {
+            @Override
+            String execute() throws IOException {
+                return delegate.getHeaderField(uri, header);
+            }
+        });
+    }
+
+    @Override
+    public String getGetResponseText(final URI uri) throws IOException {
+        return measure("GET", uri, null, new TextCall() {
+            @Override
+            String execute() throws IOException {
+                return delegate.getGetResponseText(uri);
+            }
+        });
+    }
+
+    @Override
+    public String getGetResponseText(final URI uri, final int timeout) throws IOException {
+        return measure("GET", uri, null, new TextCall() {
+            @Override
+            String execute() throws IOException {
+                return delegate.getGetResponseText(uri, timeout);
+            }
+        });
+    }
+
+    @Override
+    public String getPostResponseText(final URI uri, final StringContent content) throws IOException {
+        return measure("POST", uri, content, new TextCall() {
+            @Override
+            String execute() throws IOException {
+                return delegate.getPostResponseText(uri, content);
+            }
+        });
+    }
+
+    @Override
+    public HttpResponse getPostResponse(final URI uri, final StringContent content) throws IOException {
+        return measure("POST", uri, content, new Call<HttpResponse>() {
+            @Override
+            HttpResponse execute() throws IOException {
+                return delegate.getPostResponse(uri, content);
+            }
+
+            @Override
+            void completed(final HttpResponse result) {
+                statusCode = result.status;
+                final String text = result.responseText != null ? result.responseText : result.errorText;
+                responseCharacters = text == null ? 0 : text.length();
+            }
+        });
+    }
+
+    @Override
+    public <T> T streamGetResponse(final URI uri, final ResponseHandler<T> handler) throws IOException {
+        return measure("GET", uri, null, new StreamCall<T>(handler) {
+            @Override
+            T execute() throws IOException {
+                return HttpClientHelper.streamGetResponse(delegate, uri, counting);
+            }
+        });
+    }
+
+    @Override
+    public <T> T streamGetResponse(final URI uri, final int timeout, final ResponseHandler<T> handler)
+            throws IOException {
+        return measure("GET", uri, null, new StreamCall<T>(handler) {
+            @Override
+            T execute() throws IOException {
+                return HttpClientHelper.streamGetResponse(delegate, uri, timeout, counting);
+            }
+        });
+    }
+
+    @Override
+    public <T> T streamPostResponse(final URI uri, final StringContent content, final ResponseHandler<T> handler)
+            throws IOException {
+        return measure("POST", uri, content, new StreamCall<T>(handler) {
+            @Override
+            T execute() throws IOException {
+                return HttpClientHelper.streamPostResponse(delegate, uri, content, counting);
+            }
+        });
+    }
+
+    private <T> T measure(final String method, final URI uri, final StringContent content, final Call<T> call)
+            throws IOException {
+        final long start = System.nanoTime();
+        IOException failure = null;
+        try {
+            final T result = call.execute();
+            call.completed(result);
+            return result;
+        } catch (final IOException e) {
+            failure = e;
+            if (e instanceof HttpStatusException) {
+                call.statusCode = ((HttpStatusException) e).getStatusCode();
+            }
+            throw e;
+        } finally {
+            final long latency = System.nanoTime() - start;
+            final long requestBytes = content == null ? 0 : content.getBytes().length;
+            metrics.record(new HttpCallRecord(HttpEndpoint.classify(method, uri), method, uri, call.statusCode,
+                    latency, requestBytes, call.responseCharacters, attempt, failure));
+        }
+    }
+
+    private abstract static class Call<T> {
+        int statusCode;
+        long responseCharacters;
+
+        abstract T execute() throws IOException;
+
+        void completed(final T result) {
+        }
+    }
+
+    private abstract static class TextCall extends Call<String> {
+        @Override
+        void completed(final String result) {
+            // the text methods only return for 200 OK
+            statusCode = 200;
+            responseCharacters = result == null ? 0 : result.length();
+        }
+    }
+
+    private abstract static class StreamCall<T> extends Call<T> {
+        final ResponseHandler<T> counting;
+
+        StreamCall(final ResponseHandler<T> handler) {
+            counting = new ResponseHandler<T>() {
+                @Override
+                public T handle(final Reader body) throws IOException {
+                    statusCode = 200;
+                    return handler.handle(new CountingReader(body));
+                }
+            };
+        }
+
+        private class CountingReader extends FilterReader {
+            CountingReader(final Reader in) {
+                super(in);
+            }
+
+            @Override
+            public int read() throws IOException {
+                final int result = super.read();
+                if (result != -1) {
+                    responseCharacters++;
+                }
+                return result;
+            }
+
+            @Override
+            public int read(final char[] buffer, final int offset, final int length) throws IOException {
+                final int result = super.read(buffer, offset, length);
+                if (result > 0) {
+                    responseCharacters += result;
+                }
+                return result;
+            }
+
+            @Override
+            public long skip(final long count) throws IOException {
+                final long result = super.skip(count);
+                responseCharacters += result;
+                return result;
+            }
+        }
+    }
+}
@@ -0,0 +1,273 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * An {@link AsyncHttpClient} backed by a shared {@link NioHttpTransport}.
+ *
+ * Status handling, redirects and error messages follow {@link HttpClientImpl}, so wrapping this client in a
+ * {@link BlockingHttpClientAdapter} behaves like the blocking clients.
+ *
+ * Cancelling a returned future cancels the request on the transport, which closes its connection.
+ */
+public class NioHttpClient implements AsyncHttpClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(NioHttpClient.class);
+
+    private static final int MAX_REDIRECTS = 5;
+
+    public final Map<String, String> Headers = new LinkedHashMap<String, String>();
+
+    private final NioHttpTransport transport;
+    private volatile boolean compressionEnabled = true;
+
+    public NioHttpClient(final NioHttpTransport transport, final String userAgent) {
+        Debug.Assert(transport != null, "transport cannot be null");
+
+        this.transport = transport;
+        Headers.put("User-Agent", userAgent);
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+        return Headers;
+    }
+
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    /**
+     * Compression is on by default: requests ask for gzip or deflate and responses are decompressed before they
+     * are handed back.  The byte counts go to {@link NioHttpTransport#getTransferStatistics()}.
+     */
+    public void setCompressionEnabled(final boolean compressionEnabled) {
+        this.compressionEnabled = compressionEnabled;
+    }
+
+    @Override
+    public ListenableFuture<String> getHeaderField(final URI uri, final String header) {
+        final SettableFuture<String> result = new SettableFuture<String>();
+        send("HEAD", uri, null, transport.getConnectTimeout(), result).addCallback(
+                new Relay<NioHttpTransport.Response, String>(result) {
+                    @Override
+                    String convert(final NioHttpTransport.Response response) {
+                        return response.head.getHeader(header);
+                    }
+                });
+        return result;
+    }
+
+    @Override
+    public ListenableFuture<String> getGetResponseText(final URI uri) {
+        return getGetResponseText(uri, transport.getConnectTimeout());
+    }
+
+    @Override
+    public ListenableFuture<String> getGetResponseText(final URI uri, final int timeout) {
+        final SettableFuture<String> result = new SettableFuture<String>();
+        get(uri, timeout, 0, result);
+        return result;
+    }
+
+    @Override
+    public ListenableFuture<String> getPostResponseText(final URI uri, final StringContent content) {
+        final SettableFuture<String> result = new SettableFuture<String>();
+        send("POST", uri, content, transport.getConnectTimeout(), result).addCallback(
+                new Relay<NioHttpTransport.Response, String>(result) {
+                    @Override
+                    String convert(final NioHttpTransport.Response response) throws IOException {
+                        ensureOK(response);
+                        return readToString(response);
+                    }
+                });
+        return result;
+    }
+
+    @Override
+    public ListenableFuture<HttpResponse> getPostResponse(final URI uri, final StringContent content) {
+        final SettableFuture<HttpResponse> result = new SettableFuture<HttpResponse>();
+        send("POST", uri, content, transport.getConnectTimeout(), result).addCallback(
+                new Relay<NioHttpTransport.Response, HttpResponse>(result) {
+                    @Override
+                    HttpResponse convert(final NioHttpTransport.Response response) throws IOException {
+                        final HttpResponse httpResponse = new HttpResponse();
+                        httpResponse.status = response.head.status;
+                        if (isSuccessful(httpResponse.status)) {
+                            httpResponse.responseText = readToString(response);
+                        } else {
+                            httpResponse.errorText = readToString(response);
+                            httpResponse.retryAfter = response.head.getHeader("Retry-After");
+                        }
+                        return httpResponse;
+                    }
+                });
+        return result;
+    }
+
+    private void get(final URI uri, final int connectTimeout, final int redirects, final SettableFuture<String> result) {
+        send("GET", uri, null, connectTimeout, result).addCallback(new Callback<NioHttpTransport.Response>() {
+            @Override
+            public void onSuccess(final NioHttpTransport.Response response) {
+                final URI location = getRedirectTarget(uri, response);
+                if (location != null && redirects < MAX_REDIRECTS) {
+                    logger.debug("Following redirect from {} to {}", uri, location);
+                    get(location, connectTimeout, redirects + 1, result);
+                    return;
+                }
+                try {
+                    ensureOK(response);
+                    result.set(readToString(response));
+                } catch (final IOException e) {
+                    result.setException(e);
+                }
+            }
+
+            @Override
+            public void onFailure(final Throwable throwable) {
+                result.setException(throwable);
+            }
+        });
+    }
+
+    private ListenableFuture<NioHttpTransport.Response> send(final String method, final URI uri,
+                                                             final StringContent content, final int connectTimeout,
+                                                             final ListenableFuture<?> result) {
+        final Map<String, String> requestHeaders = new LinkedHashMap<String, String>();
+        requestHeaders.put("Host", getHostHeader(uri));
+        requestHeaders.put("Accept", "*/*");
+        if (compressionEnabled) {
+            requestHeaders.put(ContentEncoding.ACCEPT_ENCODING, ContentEncoding.SUPPORTED_ENCODINGS);
+        }
+        requestHeaders.putAll(Headers);
+        if (content != null) {
+            requestHeaders.putAll(content.Headers);
+        }
+        final byte[] body = content == null ? null : content.getBytes();
+        final int cappedTimeout;
+        try {
+            // the deadline stays on this thread, so only the connect timeout can carry it to the transport
+            cappedTimeout = Deadline.capTimeout(connectTimeout);
+        } catch (final DeadlineExceededException e) {
+            final SettableFuture<NioHttpTransport.Response> failed = SettableFuture.create();
+            failed.setException(e);
+            return failed;
+        }
+        final ListenableFuture<NioHttpTransport.Response> request =
+                transport.send(method, uri, requestHeaders, body, cappedTimeout);
+        cancelWith(result, request);
+        return request;
+    }
+
+    /**
+     * Cancels the request when the future handed to the caller gets cancelled.
+     */
+    private static void cancelWith(final ListenableFuture<?> result, final Future<?> request) {
+        result.addCallback(new Callback<Object>() {
+            @Override
+            public void onSuccess(final Object value) {
+            }
+
+            @Override
+            public void onFailure(final Throwable throwable) {
+                if (result.isCancelled()) {
+                    request.cancel(true);
+                }
+            }
+        });
+    }
+
+    /**
+     * Like {@link HttpURLConnection}, only redirects that stay on the same scheme are followed.
+     */
+    private static URI getRedirectTarget(final URI current, final NioHttpTransport.Response response) {
+        final int status = response.head.status;
+        if (status != 301 && status != 302 && status != 303 && status != 307 && status != 308) {
+            return null;
+        }
+        final String location = response.head.getHeader("Location");
+        if (location == null) {
+            return null;
+        }
+        final URI target;
+        try {
+            target = current.resolve(location);
+        } catch (final IllegalArgumentException e) {
+            logger.debug("Ignoring malformed redirect location {}", location);
+            return null;
+        }
+        if (target.getHost() == null || !current.getScheme().equalsIgnoreCase(target.getScheme())) {
+            return null;
+        }
+        return target;
+    }
+
+    private static String getHostHeader(final URI uri) {
+        final int port = uri.getPort();
+        final int defaultPort = "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+        if (port == -1 || port == defaultPort) {
+            return uri.getHost();
+        }
+        return uri.getHost() + ":" + port;
+    }
+
+    private void ensureOK(final NioHttpTransport.Response response) throws IOException {
+        final int statusCode = response.head.status;
+        if (statusCode != HttpURLConnection.HTTP_OK) {
+            final String content = readToString(response);
+            throw new HttpStatusException(statusCode, content, response.head.getHeader("Retry-After"));
+        }
+    }
+
+    private String readToString(final NioHttpTransport.Response response) throws IOException {
+        final InputStream body = ContentEncoding.decode(new ByteArrayInputStream(response.body),
+                response.head.getHeader("Content-Encoding"), transport.getTransferStatistics());
+        return IOHelper.readToString(body);
+    }
+
+    private static boolean isSuccessful(final int statusCode) {
+        return statusCode > 199 && statusCode < 300;
+    }
+
+    /**
+     * Completes a future with the converted result of another.
+     */
+    private abstract static class Relay<S, T> implements Callback<S> {
+        private final SettableFuture<T> target;
+
+        Relay(final SettableFuture<T> target) {
+            this.target = target;
+        }
+
+        abstract T convert(final S source) throws IOException;
+
+        @Override
+        public void onSuccess(final S source) {
+            try {
+                target.set(convert(source));
+            } catch (final IOException e) {
+                target.setException(e);
+            } catch (final RuntimeException e) {
+                target.setException(e);
+            }
+        }
+
+        @Override
+        public void onFailure(final Throwable throwable) {
+            target.setException(throwable);
+        }
+    }
+}
@@ -0,0 +1,1104 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.Proxy;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends HTTP/1.1 requests over non-blocking channels driven by a single selector thread, so any number of
+ * outstanding requests costs one thread instead of one thread each.
+ *
+ * Connections are kept alive and reused per host, like {@link HttpConnectionPool} does for blocking clients.
+ * HTTPS goes through an {@link SSLEngine} from the default {@link SSLContext}.  HTTP proxies returned by the
+ * system {@link java.net.ProxySelector} are supported, SOCKS proxies are not.
+ *
+ * Host names are resolved on a few helper threads, because Java offers no non-blocking name resolution, the
+ * CPU-heavy tasks of TLS handshakes run on a few more, and futures are completed on a callback thread, so neither
+ * slow callbacks nor key exchanges stall the selector.
+ *
+ * Cancelling the future returned by {@link #send} closes the connection carrying the request.  Responses larger
+ * than {@link #MAX_RESPONSE_SIZE} bytes fail instead of being buffered.
+ */
+public class NioHttpTransport {
+
+    private static final Logger logger = LoggerFactory.getLogger(NioHttpTransport.class);
+
+    public static final int DEFAULT_MAX_IDLE_CONNECTIONS_PER_HOST = 5;
+
+    /**
+     * The largest response, head included, buffered for one request: enough for
+     * {@link HttpClientHelper#MAX_RESPONSE_CHARACTERS} characters of UTF-8.
+     */
+    public static final int MAX_RESPONSE_SIZE = 64 * 1024 + 3 * HttpClientHelper.MAX_RESPONSE_CHARACTERS;
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    private static final int PLAIN_BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_HEAD_SIZE = 64 * 1024;
+    private static final long MAX_SELECT_MILLIS = 1000L;
+    private static final int MAX_HELPER_THREADS = 4;
+    private static final long HELPER_KEEP_ALIVE_SECONDS = 60L;
+
+    private final Selector selector;
+    private final SSLContext sslContext;
+    private final ExecutorService resolver;
+    private final ExecutorService tlsTasks;
+    private final ExecutorService completions;
+    private final Thread loop;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+    // only touched by the selector thread
+    private final Map<String, LinkedList<Channel>> idle = new HashMap<String, LinkedList<Channel>>();
+    private final Set<Channel> channels = new HashSet<Channel>();
+
+    private final int maxIdleConnectionsPerHost;
+    private final long idleTimeoutMillis;
+    private volatile int connectTimeoutMillis = HttpConnectionPool.DEFAULT_CONNECT_TIMEOUT_MILLIS;
+    private volatile int readTimeoutMillis = HttpConnectionPool.DEFAULT_READ_TIMEOUT_MILLIS;
+    private volatile boolean closed;
+    private volatile boolean terminated;
+
+    private final AtomicLong connectionsCreated = new AtomicLong();
+    private final AtomicLong connectionsReused = new AtomicLong();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final TransferStatistics transferStatistics = new TransferStatistics();
+
+    public NioHttpTransport() throws IOException {
+        this(DEFAULT_MAX_IDLE_CONNECTIONS_PER_HOST, HttpConnectionPool.DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    public NioHttpTransport(final int maxIdleConnectionsPerHost, final long idleTimeoutMillis) throws IOException {
+        this.maxIdleConnectionsPerHost = maxIdleConnectionsPerHost;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        try {
+            this.sslContext = SSLContext.getDefault();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new Error(e);
+        }
+        this.selector = Selector.open();
+        this.resolver = newHelperPool("auth-library-http-resolver");
+        this.tlsTasks = newHelperPool("auth-library-http-tls");
+        this.completions = Executors.newCachedThreadPool(new DaemonThreadFactory("auth-library-http-callback"));
+        this.loop = new DaemonThreadFactory("auth-library-http-selector").newThread(new Runnable() {
+            @Override
+            public void run() {
+                runLoop();
+            }
+        });
+        this.loop.start();
+    }
+
+    /**
+     * At most {@link #MAX_HELPER_THREADS} threads, which go away when there is nothing to do.
+     */
+    private static ExecutorService newHelperPool(final String namePrefix) {
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(MAX_HELPER_THREADS, MAX_HELPER_THREADS,
+                HELPER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new DaemonThreadFactory(namePrefix));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeoutMillis;
+    }
+
+    public void setConnectTimeout(final int connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    public int getReadTimeout() {
+        return readTimeoutMillis;
+    }
+
+    public void setReadTimeout(final int readTimeoutMillis) {
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    public long getConnectionsCreated() {
+        return connectionsCreated.get();
+    }
+
+    public long getConnectionsReused() {
+        return connectionsReused.get();
+    }
+
+    /**
+     * @return the number of connections currently open, busy or idle.
+     */
+    public int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    /**
+     * @return the byte counts of the response bodies read over this transport's connections.
+     */
+    public TransferStatistics getTransferStatistics() {
+        return transferStatistics;
+    }
+
+    /**
+     * Stops the selector thread, closing every connection and failing the requests still in flight.
+     */
+    public void close() {
+        closed = true;
+        selector.wakeup();
+    }
+
+    /**
+     * Queues a request; the returned future completes once the whole response has been received.
+     * Cancelling it abandons the request and closes its connection.
+     */
+    ListenableFuture<Response> send(final String method, final URI uri, final Map<String, String> headers,
+                                    final byte[] body, final int connectTimeout) {
+        final Exchange exchange = new Exchange(method, uri, headers, body, connectTimeout);
+        if (closed) {
+            exchange.future.setException(new IOException("The HTTP transport has been closed."));
+            return exchange.future;
+        }
+        exchange.future.addCallback(new Callback<Response>() {
+            @Override
+            public void onSuccess(final Response response) {
+            }
+
+            @Override
+            public void onFailure(final Throwable throwable) {
+                if (exchange.future.isCancelled()) {
+                    submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            abandon(exchange);
+                        }
+                    });
+                }
+            }
+        });
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                start(exchange);
+            }
+        });
+        return exchange.future;
+    }
+
+    /**
+     * The status line, headers and complete body of a response.
+     */
+    static final class Response {
+        final HttpWire.ResponseHead head;
+        final byte[] body;
+
+        Response(final HttpWire.ResponseHead head, final byte[] body) {
+            this.head = head;
+            this.body = body;
+        }
+    }
+
+    private static final class Exchange {
+        final String method;
+        final URI uri;
+        final Map<String, String> headers;
+        final byte[] body;
+        final int connectTimeout;
+        final SettableFuture<Response> future = new SettableFuture<Response>();
+        boolean retried;
+        // the connection carrying the exchange, only touched by the selector thread
+        Channel channel;
+
+        Exchange(final String method, final URI uri, final Map<String, String> headers, final byte[] body,
+                 final int connectTimeout) {
+            this.method = method;
+            this.uri = uri;
+            this.headers = headers;
+            this.body = body;
+            this.connectTimeout = connectTimeout;
+        }
+
+        ByteBuffer encode(final boolean absoluteForm) throws IOException {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(512 + (body == null ? 0 : body.length));
+            HttpWire.writeRequestHead(bytes, method, requestTarget(uri, absoluteForm), headers);
+            if (body != null) {
+                bytes.write(body);
+            }
+            return ByteBuffer.wrap(bytes.toByteArray());
+        }
+    }
+
+    private static String requestTarget(final URI uri, final boolean absoluteForm) {
+        if (absoluteForm) {
+            final String ascii = uri.toASCIIString();
+            final int fragment = ascii.indexOf('#');
+            return fragment < 0 ? ascii : ascii.substring(0, fragment);
+        }
+        final String path = uri.getRawPath();
+        final StringBuilder sb = new StringBuilder(StringHelper.isNullOrEmpty(path) ? "/" : path);
+        if (uri.getRawQuery() != null) {
+            sb.append('?').append(uri.getRawQuery());
+        }
+        return sb.toString();
+    }
+
+    private void submit(final Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+        if (terminated) {
+            // nobody is left to pick the task up
+            Runnable pending;
+            while ((pending = tasks.poll()) != null) {
+                runSafely(pending);
+            }
+        }
+    }
+
+    private void complete(final SettableFuture<Response> future, final Response response, final Throwable failure) {
+        final Runnable completion = new Runnable() {
+            @Override
+            public void run() {
+                if (failure != null) {
+                    future.setException(failure);
+                } else {
+                    future.set(response);
+                }
+            }
+        };
+        try {
+            completions.execute(completion);
+        } catch (final RejectedExecutionException e) {
+            // the transport is shutting down
+            completion.run();
+        }
+    }
+
+    private void runLoop() {
+        try {
+            while (!closed) {
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    runSafely(task);
+                }
+
+                selector.select(nextWakeUp());
+
+                final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    final SelectionKey key = keys.next();
+                    keys.remove();
+                    final Channel channel = (Channel) key.attachment();
+                    channel.onReady(key);
+                }
+
+                expire(System.currentTimeMillis());
+            }
+        } catch (final IOException e) {
+            logger.error("The HTTP selector failed.", e);
+        } catch (final RuntimeException e) {
+            logger.error("The HTTP selector failed.", e);
+        } finally {
+            closed = true;
+            final IOException failure = new IOException("The HTTP transport has been closed.");
+            for (final Channel channel : new ArrayList<Channel>(channels)) {
+                channel.fail(failure, false);
+            }
+            // from here on, submit() runs its tasks itself; they only fail their exchange once closed
+            terminated = true;
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                runSafely(task);
+            }
+            try {
+                selector.close();
+            } catch (final IOException ignored) {
+            }
+            resolver.shutdown();
+            tlsTasks.shutdown();
+            completions.shutdown();
+        }
+    }
+
+    private static void runSafely(final Runnable task) {
+        try {
+            task.run();
+        } catch (final RuntimeException e) {
+            logger.error("An HTTP transport task failed.", e);
+        }
+    }
+
+    private long nextWakeUp() {
+        final long now = System.currentTimeMillis();
+        long wait = MAX_SELECT_MILLIS;
+        for (final Channel channel : channels) {
+            final long due = channel.exchange != null ? channel.deadline : channel.idleSince + idleTimeoutMillis;
+            wait = Math.min(wait, due - now);
+        }
+        return Math.max(wait, 1L);
+    }
+
+    private void expire(final long now) {
+        for (final Channel channel : new ArrayList<Channel>(channels)) {
+            if (channel.exchange != null) {
+                if (now >= channel.deadline) {
+                    final String message = channel.connecting ? "connect timed out" : "Read timed out";
+                    channel.fail(new SocketTimeoutException(message), false);
+                }
+            } else if (now - channel.idleSince > idleTimeoutMillis) {
+                logger.debug("Closing idle connection to {}", channel.routeKey);
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Closes the connection of a cancelled exchange, so the server stops sending a response nobody reads.
+     */
+    private void abandon(final Exchange exchange) {
+        final Channel channel = exchange.channel;
+        if (channel != null && channel.exchange == exchange) {
+            logger.debug("Request to {} was cancelled, closing its connection", channel.routeKey);
+            channel.exchange = null;
+            channel.close();
+        }
+    }
+
+    private void start(final Exchange exchange) {
+        if (exchange.future.isDone()) {
+            // cancelled before it went out
+            return;
+        }
+        if (closed) {
+            complete(exchange.future, null, new IOException("The HTTP transport has been closed."));
+            return;
+        }
+        final URI uri = exchange.uri;
+        final Proxy proxy = HttpConnectionPool.selectProxy(uri);
+        if (proxy.type() == Proxy.Type.SOCKS) {
+            complete(exchange.future, null, new IOException("SOCKS proxies are not supported by the non-blocking HTTP client."));
+            return;
+        }
+        final String routeKey = uri.getScheme().toLowerCase() + "://" + uri.getHost().toLowerCase() + ":"
+                + HttpConnectionPool.getPort(uri) + (proxy.type() == Proxy.Type.HTTP ? " via " + proxy : "");
+
+        final Channel reusable = takeIdle(routeKey);
+        if (reusable != null) {
+            connectionsReused.incrementAndGet();
+            reusable.begin(exchange);
+            return;
+        }
+
+        final String host;
+        final int port;
+        if (proxy.type() == Proxy.Type.HTTP) {
+            final InetSocketAddress proxyAddress = (InetSocketAddress) proxy.address();
+            host = proxyAddress.getHostName();
+            port = proxyAddress.getPort();
+        } else {
+            host = uri.getHost();
+            port = HttpConnectionPool.getPort(uri);
+        }
+        final boolean viaProxy = proxy.type() == Proxy.Type.HTTP;
+        try {
+            resolver.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (exchange.future.isDone()) {
+                        return;
+                    }
+                    try {
+                        final InetSocketAddress address = new InetSocketAddress(InetAddress.getByName(host), port);
+                        submit(new Runnable() {
+                            @Override
+                            public void run() {
+                                open(exchange, routeKey, address, viaProxy);
+                            }
+                        });
+                    } catch (final IOException e) {
+                        complete(exchange.future, null, e);
+                    }
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            complete(exchange.future, null, new IOException("The HTTP transport has been closed."));
+        }
+    }
+
+    private Channel takeIdle(final String routeKey) {
+        final LinkedList<Channel> candidates = idle.get(routeKey);
+        while (candidates != null && !candidates.isEmpty()) {
+            final Channel candidate = candidates.removeFirst();
+            if (candidate.socket.isOpen()) {
+                return candidate;
+            }
+            candidate.close();
+        }
+        return null;
+    }
+
+    private void open(final Exchange exchange, final String routeKey, final InetSocketAddress address,
+                      final boolean viaProxy) {
+        if (exchange.future.isDone()) {
+            return;
+        }
+        if (closed) {
+            complete(exchange.future, null, new IOException("The HTTP transport has been closed."));
+            return;
+        }
+        final Channel channel;
+        SocketChannel socket = null;
+        try {
+            socket = SocketChannel.open();
+            socket.configureBlocking(false);
+            socket.socket().setTcpNoDelay(true);
+            channel = new Channel(routeKey, socket, exchange.uri, viaProxy);
+        } catch (final IOException e) {
+            IOHelper.closeQuietly(socket);
+            complete(exchange.future, null, e);
+            return;
+        }
+        connectionsCreated.incrementAndGet();
+        channel.exchange = exchange;
+        exchange.channel = channel;
+        channel.connecting = true;
+        channel.deadline = System.currentTimeMillis() + exchange.connectTimeout;
+        try {
+            if (socket.connect(address)) {
+                channel.onConnected();
+            } else {
+                channel.interest(SelectionKey.OP_CONNECT);
+            }
+        } catch (final IOException e) {
+            channel.fail(e, false);
+        } catch (final RuntimeException e) {
+            channel.fail(e, false);
+        }
+    }
+
+    /**
+     * One connection and the exchange it is currently carrying.
+     */
+    private final class Channel {
+        final String routeKey;
+        final SocketChannel socket;
+        final SelectionKey key;
+        final String host;
+        final int port;
+        final boolean secure;
+        final boolean absoluteForm;
+        boolean tunnelling;
+
+        SSLEngine engine;
+        boolean handshaking;
+        boolean delegating;
+        ByteBuffer netIn;
+        ByteBuffer netOut;
+        ByteBuffer appIn;
+
+        Exchange exchange;
+        ResponseParser parser;
+        ByteBuffer request;
+        boolean connecting;
+        boolean received;
+        int useCount;
+        long deadline;
+        long idleSince;
+
+        Channel(final String routeKey, final SocketChannel socket, final URI uri, final boolean viaProxy)
+                throws IOException {
+            this.routeKey = routeKey;
+            this.socket = socket;
+            this.host = uri.getHost();
+            this.port = HttpConnectionPool.getPort(uri);
+            this.secure = "https".equalsIgnoreCase(uri.getScheme());
+            this.absoluteForm = viaProxy && !secure;
+            this.tunnelling = viaProxy && secure;
+            this.netIn = ByteBuffer.allocate(PLAIN_BUFFER_SIZE);
+            this.netOut = ByteBuffer.allocate(PLAIN_BUFFER_SIZE);
+            this.netOut.flip();
+            this.key = socket.register(selector, 0, this);
+            channels.add(this);
+            openConnections.incrementAndGet();
+        }
+
+        void interest(final int ops) {
+            if (key.isValid()) {
+                key.interestOps(ops);
+            }
+        }
+
+        void onReady(final SelectionKey readyKey) {
+            if (!readyKey.isValid()) {
+                return;
+            }
+            if (exchange == null) {
+                // an idle connection has nothing to say; either the server closed it or it misbehaves
+                close();
+                return;
+            }
+            try {
+                if (connecting) {
+                    if (!socket.finishConnect()) {
+                        return;
+                    }
+                    onConnected();
+                } else {
+                    process();
+                }
+            } catch (final IOException e) {
+                fail(e, true);
+            } catch (final RuntimeException e) {
+                fail(e, false);
+            }
+        }
+
+        void onConnected() throws IOException {
+            connecting = false;
+            deadline = System.currentTimeMillis() + readTimeoutMillis;
+            if (tunnelling) {
+                final Map<String, String> headers = new HashMap<String, String>();
+                headers.put("Host", host + ":" + port);
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+                HttpWire.writeRequestHead(bytes, "CONNECT", host + ":" + port, headers);
+                request = ByteBuffer.wrap(bytes.toByteArray());
+                parser = new ResponseParser("CONNECT", MAX_HEAD_SIZE);
+            } else {
+                startTls();
+                prepare();
+            }
+            process();
+        }
+
+        void startTls() throws IOException {
+            if (!secure) {
+                return;
+            }
+            engine = sslContext.createSSLEngine(host, port);
+            engine.setUseClientMode(true);
+            EndpointIdentification.enable(engine);
+            netIn = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+            netOut = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+            netOut.flip();
+            appIn = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+            engine.beginHandshake();
+            handshaking = true;
+        }
+
+        void begin(final Exchange next) {
+            exchange = next;
+            next.channel = this;
+            deadline = System.currentTimeMillis() + readTimeoutMillis;
+            try {
+                prepare();
+                process();
+            } catch (final IOException e) {
+                fail(e, true);
+            } catch (final RuntimeException e) {
+                fail(e, false);
+            }
+        }
+
+        void prepare() throws IOException {
+            useCount++;
+            received = false;
+            request = exchange.encode(absoluteForm);
+            parser = new ResponseParser(exchange.method, MAX_RESPONSE_SIZE);
+        }
+
+        /**
+         * Moves data until the channel would block, then waits for the selector.
+         */
+        void process() throws IOException {
+            while (true) {
+                if (delegating) {
+                    return;
+                }
+                if (netOut.hasRemaining()) {
+                    socket.write(netOut);
+                    if (netOut.hasRemaining()) {
+                        interest(SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    deadline = System.currentTimeMillis() + readTimeoutMillis;
+                }
+                if (handshaking) {
+                    if (!handshake()) {
+                        return;
+                    }
+                    continue;
+                }
+                if (request.hasRemaining()) {
+                    encrypt();
+                    continue;
+                }
+
+                final int read = receive();
+                if (parser.isComplete()) {
+                    onResponse();
+                    return;
+                }
+                if (delegating) {
+                    return;
+                }
+                if (read == -1) {
+                    parser.endOfStream();
+                    onResponse();
+                    return;
+                }
+                if (read == 0) {
+                    interest(SelectionKey.OP_READ);
+                    return;
+                }
+            }
+        }
+
+        private void encrypt() throws IOException {
+            netOut.clear();
+            if (engine == null) {
+                final int count = Math.min(netOut.remaining(), request.remaining());
+                netOut.put(request.array(), request.position(), count);
+                request.position(request.position() + count);
+            } else {
+                final SSLEngineResult result = engine.wrap(request, netOut);
+                if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                    netOut.flip();
+                    throw new SSLException("The TLS session was closed while sending the request.");
+                }
+            }
+            netOut.flip();
+        }
+
+        /**
+         * @return {@code false} if the handshake has to wait for the network
+         */
+        private boolean handshake() throws IOException {
+            final SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+            switch (status) {
+                case NEED_TASK:
+                    runDelegatedTasks();
+                    return false;
+                case NEED_WRAP:
+                    netOut.clear();
+                    final SSLEngineResult wrapped = engine.wrap(EMPTY, netOut);
+                    netOut.flip();
+                    if (wrapped.getStatus() == SSLEngineResult.Status.CLOSED) {
+                        throw new SSLException("The server closed the TLS session during the handshake.");
+                    }
+                    return true;
+                case NEED_UNWRAP:
+                    netIn.flip();
+                    final SSLEngineResult unwrapped = engine.unwrap(netIn, appIn);
+                    netIn.compact();
+                    if (unwrapped.getStatus() == SSLEngineResult.Status.CLOSED) {
+                        throw new SSLException("The server closed the TLS session during the handshake.");
+                    }
+                    if (unwrapped.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                        final int read = socket.read(netIn);
+                        if (read == -1) {
+                            throw new EOFException("The server closed the connection during the TLS handshake.");
+                        }
+                        if (read == 0) {
+                            interest(SelectionKey.OP_READ);
+                            return false;
+                        }
+                        deadline = System.currentTimeMillis() + readTimeoutMillis;
+                    }
+                    return true;
+                default:
+                    handshaking = false;
+                    EndpointIdentification.verify(host, engine.getSession());
+                    return true;
+            }
+        }
+
+        /**
+         * Hands the engine's tasks to a helper thread and stops processing the channel until they are done.
+         */
+        private void runDelegatedTasks() throws IOException {
+            final Exchange current = exchange;
+            delegating = true;
+            interest(0);
+            try {
+                tlsTasks.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        RuntimeException failure = null;
+                        try {
+                            Runnable task;
+                            while ((task = engine.getDelegatedTask()) != null) {
+                                task.run();
+                            }
+                        } catch (final RuntimeException e) {
+                            failure = e;
+                        }
+                        final RuntimeException taskFailure = failure;
+                        submit(new Runnable() {
+                            @Override
+                            public void run() {
+                                resume(current, taskFailure);
+                            }
+                        });
+                    }
+                });
+            } catch (final RejectedExecutionException e) {
+                throw new IOException("The HTTP transport has been closed.");
+            }
+        }
+
+        private void resume(final Exchange expected, final RuntimeException taskFailure) {
+            delegating = false;
+            if (exchange != expected || !key.isValid()) {
+                // timed out, cancelled or closed meanwhile
+                return;
+            }
+            if (taskFailure != null) {
+                fail(taskFailure, false);
+                return;
+            }
+            try {
+                process();
+            } catch (final IOException e) {
+                fail(e, true);
+            } catch (final RuntimeException e) {
+                fail(e, false);
+            }
+        }
+
+        /**
+         * Reads what the network has and feeds it to the parser.
+         *
+         * @return -1 at end of stream, 0 when nothing could be read, otherwise the number of bytes read
+         */
+        private int receive() throws IOException {
+            if (engine == null) {
+                netIn.clear();
+                final int read = socket.read(netIn);
+                if (read > 0) {
+                    onReceived();
+                    parser.feed(netIn.array(), 0, read);
+                }
+                return read;
+            }
+
+            final int read = socket.read(netIn);
+            boolean closedByPeer = false;
+            netIn.flip();
+            while (netIn.hasRemaining()) {
+                final SSLEngineResult result = engine.unwrap(netIn, appIn);
+                if (appIn.position() > 0) {
+                    onReceived();
+                    parser.feed(appIn.array(), 0, appIn.position());
+                    appIn.clear();
+                }
+                if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                    break;
+                }
+                if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                    appIn = ByteBuffer.allocate(appIn.capacity() * 2);
+                    continue;
+                }
+                if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                    closedByPeer = true;
+                    break;
+                }
+                if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                    runDelegatedTasks();
+                    break;
+                }
+            }
+            netIn.compact();
+            if (read > 0) {
+                deadline = System.currentTimeMillis() + readTimeoutMillis;
+            }
+            return closedByPeer ? -1 : read;
+        }
+
+        private void onReceived() {
+            received = true;
+            deadline = System.currentTimeMillis() + readTimeoutMillis;
+        }
+
+        private void onResponse() throws IOException {
+            if (tunnelling) {
+                final int status = parser.head.status;
+                if (status != 200) {
+                    throw new IOException("Unable to tunnel through proxy. Proxy returns \""
+                            + parser.head.version + " " + status + " " + parser.head.reason + "\"");
+                }
+                tunnelling = false;
+                startTls();
+                prepare();
+                process();
+                return;
+            }
+
+            final Exchange done = exchange;
+            final Response response = parser.toResponse();
+            final boolean reusable = HttpWire.isReusable(done.method, response.head) && !parser.hasExtraBytes()
+                    && (engine == null || !engine.isInboundDone());
+            exchange = null;
+            parser = null;
+            request = null;
+            if (reusable) {
+                release();
+            } else {
+                close();
+            }
+            complete(done.future, response, null);
+        }
+
+        private void release() {
+            LinkedList<Channel> candidates = idle.get(routeKey);
+            if (candidates == null) {
+                candidates = new LinkedList<Channel>();
+                idle.put(routeKey, candidates);
+            }
+            if (candidates.size() >= maxIdleConnectionsPerHost) {
+                close();
+                return;
+            }
+            idleSince = System.currentTimeMillis();
+            candidates.addFirst(this);
+            interest(SelectionKey.OP_READ);
+        }
+
+        /**
+         * Closes the connection and fails its exchange, retrying it once on a new connection when a kept-alive
+         * connection turns out to have been closed by the server before answering.
+         */
+        void fail(final Throwable failure, final boolean retryable) {
+            final Exchange failed = exchange;
+            exchange = null;
+            close();
+            if (failed == null) {
+                return;
+            }
+            final boolean stale = retryable && useCount > 1 && !received && !failed.retried
+                    && !(failure instanceof SocketTimeoutException);
+            if (stale && !closed) {
+                logger.debug("Kept-alive connection to {} was closed, retrying on a new connection", routeKey);
+                failed.retried = true;
+                start(failed);
+                return;
+            }
+            complete(failed.future, null, failure);
+        }
+
+        void close() {
+            if (channels.remove(this)) {
+                openConnections.decrementAndGet();
+            }
+            final LinkedList<Channel> candidates = idle.get(routeKey);
+            if (candidates != null) {
+                candidates.remove(this);
+            }
+            key.cancel();
+            IOHelper.closeQuietly(socket);
+        }
+    }
+
+    /**
+     * Accumulates the bytes of one response and tells when it is complete.
+     */
+    static final class ResponseParser {
+        private final String method;
+        private final int maxSize;
+        private byte[] data = new byte[2048];
+        private int size;
+        private int start;
+        HttpWire.ResponseHead head;
+        private int bodyStart;
+        private int scan;
+        private int end = -1;
+        private boolean chunked;
+        private boolean closeDelimited;
+
+        ResponseParser(final String method, final int maxSize) {
+            this.method = method;
+            this.maxSize = maxSize;
+        }
+
+        void feed(final byte[] source, final int offset, final int length) throws IOException {
+            if ((long) size + length > maxSize) {
+                throw new ProtocolException("Response exceeds " + maxSize + " bytes");
+            }
+            if (size + length > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, size + length));
+            }
+            System.arraycopy(source, offset, data, size, length);
+            size += length;
+            parse();
+        }
+
+        boolean isComplete() {
+            return end >= 0;
+        }
+
+        boolean hasExtraBytes() {
+            return size > end;
+        }
+
+        void endOfStream() throws IOException {
+            if (end >= 0) {
+                return;
+            }
+            if (head != null && closeDelimited) {
+                end = size;
+                return;
+            }
+            throw new EOFException("Connection closed before the response was complete");
+        }
+
+        Response toResponse() throws IOException {
+            final byte[] body;
+            if (chunked) {
+                final InputStream decoder = new HttpWire.ChunkedInputStream(
+                        new ByteArrayInputStream(data, bodyStart, end - bodyStart));
+                final ByteArrayOutputStream decoded = new ByteArrayOutputStream(end - bodyStart);
+                IOHelper.copyStream(decoder, decoded);
+                body = decoded.toByteArray();
+            } else {
+                body = Arrays.copyOfRange(data, bodyStart, end);
+            }
+            return new Response(head, body);
+        }
+
+        private void parse() throws IOException {
+            while (head == null) {
+                final int headEnd = indexOfHeadEnd();
+                if (headEnd < 0) {
+                    if (size - start > MAX_HEAD_SIZE) {
+                        throw new ProtocolException("Response head exceeds " + MAX_HEAD_SIZE + " bytes");
+                    }
+                    return;
+                }
+                final HttpWire.ResponseHead candidate =
+                        HttpWire.readResponseHead(new ByteArrayInputStream(data, start, headEnd - start));
+                if (candidate == null) {
+                    throw new ProtocolException("Empty response head");
+                }
+                start = headEnd;
+                if (candidate.status >= 100 && candidate.status < 200) {
+                    // interim response, the real one follows
+                    continue;
+                }
+                head = candidate;
+                bodyStart = headEnd;
+                scan = headEnd;
+                if ("CONNECT".equals(method) || !HttpWire.hasBody(method, head)) {
+                    end = bodyStart;
+                } else if (head.isChunked()) {
+                    chunked = true;
+                } else if (head.getContentLength() < 0) {
+                    closeDelimited = true;
+                } else if (bodyStart + head.getContentLength() > maxSize) {
+                    throw new ProtocolException("Response exceeds " + maxSize + " bytes");
+                }
+            }
+            if (end >= 0) {
+                return;
+            }
+            if (chunked) {
+                scanChunks();
+            } else if (!closeDelimited) {
+                final long contentLength = head.getContentLength();
+                if (size - bodyStart >= contentLength) {
+                    end = (int) (bodyStart + contentLength);
+                }
+            }
+        }
+
+        private int indexOfHeadEnd() {
+            for (int i = start; i + 3 < size; i++) {
+                if (data[i] == '\r' && data[i + 1] == '\n' && data[i + 2] == '\r' && data[i + 3] == '\n') {
+                    return i + 4;
+                }
+            }
+            return -1;
+        }
+
+        private int indexOfLineEnd(final int from) {
+            for (int i = from; i < size; i++) {
+                if (data[i] == '\n') {
+                    return i + 1;
+                }
+            }
+            return -1;
+        }
+
+        private void scanChunks() throws ProtocolException {
+            while (true) {
+                final int lineEnd = indexOfLineEnd(scan);
+                if (lineEnd < 0) {
+                    return;
+                }
+                final String line = new String(data, scan, lineEnd - scan, HttpWire.ASCII).trim();
+                final int extension = line.indexOf(';');
+                final long chunkSize;
+                try {
+                    chunkSize = Long.parseLong(extension < 0 ? line : line.substring(0, extension).trim(), 16);
+                } catch (final NumberFormatException e) {
+                    throw new ProtocolException("Invalid chunk size: " + line);
+                }
+                if (chunkSize == 0) {
+                    // the last chunk is followed by optional trailers and an empty line
+                    int position = lineEnd;
+                    while (true) {
+                        final int trailerEnd = indexOfLineEnd(position);
+                        if (trailerEnd < 0) {
+                            return;
+                        }
+                        final boolean empty = trailerEnd - position <= 2;
+                        position = trailerEnd;
+                        if (empty) {
+                            end = position;
+                            return;
+                        }
+                    }
+                }
+                final long next = lineEnd + chunkSize + 2;
+                if (next > size) {
+                    return;
+                }
+                scan = (int) next;
+            }
+        }
+    }
+}
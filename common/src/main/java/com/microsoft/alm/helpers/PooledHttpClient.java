@@ -0,0 +1,354 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketException;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An {@link HttpClient} that sends its requests over the keep-alive connections of a shared
+ * {@link HttpConnectionPool}, so a sequence of calls to the same host pays for the TCP and TLS handshakes once.
+ *
+ * Responses are reported exactly like {@link HttpClientImpl} does, so the two are interchangeable.
+ */
+public class PooledHttpClient implements HttpClient, StreamingHttpClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(PooledHttpClient.class);
+
+    private static final int MAX_REDIRECTS = 5;
+    private static final int DRAIN_LIMIT = 16 * 1024;
+
+    public final Map<String, String> Headers = new LinkedHashMap<String, String>();
+
+    private final HttpConnectionPool pool;
+    private volatile boolean compressionEnabled = true;
+
+    public PooledHttpClient(final HttpConnectionPool pool, final String userAgent) {
+        Debug.Assert(pool != null, "pool cannot be null");
+
+        this.pool = pool;
+        Headers.put("User-Agent", userAgent);
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+        return Headers;
+    }
+
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    /**
+     * Compression is on by default: requests ask for gzip or deflate and responses are decompressed as they are
+     * read.  The byte counts go to {@link HttpConnectionPool#getTransferStatistics()}.
+     */
+    public void setCompressionEnabled(final boolean compressionEnabled) {
+        this.compressionEnabled = compressionEnabled;
+    }
+
+    @Override
+    public String getHeaderField(final URI uri, final String header) throws IOException {
+        final Response response = send("HEAD", uri, null, pool.getConnectTimeout());
+        try {
+            return response.head.getHeader(header);
+        } finally {
+            response.close();
+        }
+    }
+
+    @Override
+    public String getGetResponseText(final URI uri) throws IOException {
+        return getGetResponseText(uri, pool.getConnectTimeout());
+    }
+
+    @Override
+    public String getGetResponseText(final URI uri, final int timeout) throws IOException {
+        final Response response = get(uri, timeout);
+        ensureOK(response);
+
+        return readToString(response);
+    }
+
+    @Override
+    public String getPostResponseText(final URI uri, final StringContent content) throws IOException {
+        final Response response = send("POST", uri, content, pool.getConnectTimeout());
+        ensureOK(response);
+
+        return readToString(response);
+    }
+
+    @Override
+    public HttpResponse getPostResponse(final URI uri, final StringContent content) throws IOException {
+        final HttpResponse result = new HttpResponse();
+        final Response response = send("POST", uri, content, pool.getConnectTimeout());
+
+        result.status = response.head.status;
+        if (isSuccessful(result.status)) {
+            result.responseText = readToString(response);
+        } else {
+            result.errorText = readToString(response);
+            result.retryAfter = response.head.getHeader("Retry-After");
+        }
+
+        return result;
+    }
+
+    @Override
+    public <T> T streamGetResponse(final URI uri, final ResponseHandler<T> handler) throws IOException {
+        return streamGetResponse(uri, pool.getConnectTimeout(), handler);
+    }
+
+    @Override
+    public <T> T streamGetResponse(final URI uri, final int timeout, final ResponseHandler<T> handler) throws IOException {
+        final Response response = get(uri, timeout);
+        ensureOK(response);
+
+        return stream(response, handler);
+    }
+
+    @Override
+    public <T> T streamPostResponse(final URI uri, final StringContent content, final ResponseHandler<T> handler)
+            throws IOException {
+        final Response response = send("POST", uri, content, pool.getConnectTimeout());
+        ensureOK(response);
+
+        return stream(response, handler);
+    }
+
+    private Response get(final URI uri, final int connectTimeout) throws IOException {
+        URI target = uri;
+        for (int redirects = 0; ; redirects++) {
+            final Response response = send("GET", target, null, connectTimeout);
+            final URI location = getRedirectTarget(target, response);
+            if (location == null || redirects == MAX_REDIRECTS) {
+                return response;
+            }
+            logger.debug("Following redirect from {} to {}", target, location);
+            response.close();
+            target = location;
+        }
+    }
+
+    /**
+     * Like {@link HttpURLConnection}, only redirects that stay on the same scheme are followed.
+     */
+    private static URI getRedirectTarget(final URI current, final Response response) {
+        final int status = response.head.status;
+        if (status != 301 && status != 302 && status != 303 && status != 307 && status != 308) {
+            return null;
+        }
+        final String location = response.head.getHeader("Location");
+        if (location == null) {
+            return null;
+        }
+        final URI target;
+        try {
+            target = current.resolve(location);
+        } catch (final IllegalArgumentException e) {
+            logger.debug("Ignoring malformed redirect location {}", location);
+            return null;
+        }
+        if (target.getHost() == null || !current.getScheme().equalsIgnoreCase(target.getScheme())) {
+            return null;
+        }
+        return target;
+    }
+
+    private Response send(final String method, final URI uri, final StringContent content, final int connectTimeout)
+            throws IOException {
+        boolean retried = false;
+        while (true) {
+            final HttpConnectionPool.Connection connection = pool.lease(uri, connectTimeout);
+            HttpWire.ResponseHead head = null;
+            try {
+                writeRequest(connection, method, uri, content);
+                do {
+                    head = HttpWire.readResponseHead(connection.in);
+                } while (head != null && head.status >= 100 && head.status < 200);
+
+                if (head == null) {
+                    throw new SocketException("Connection closed by the server before a response was received");
+                }
+                return new Response(method, head, connection);
+            } catch (final IOException e) {
+                pool.release(connection, false);
+                // the server may have closed a pooled connection just as we picked it up; a new one will do
+                final boolean stale = head == null && connection.isReused() && e instanceof SocketException;
+                if (stale && !retried) {
+                    logger.debug("Pooled connection to {} was closed, retrying on a new connection", uri.getHost());
+                    retried = true;
+                    continue;
+                }
+                throw e;
+            }
+        }
+    }
+
+    private void writeRequest(final HttpConnectionPool.Connection connection, final String method, final URI uri,
+                              final StringContent content) throws IOException {
+        final Map<String, String> requestHeaders = new LinkedHashMap<String, String>();
+        requestHeaders.put("Host", getHostHeader(uri));
+        requestHeaders.put("Accept", "*/*");
+        if (compressionEnabled) {
+            requestHeaders.put(ContentEncoding.ACCEPT_ENCODING, ContentEncoding.SUPPORTED_ENCODINGS);
+        }
+        requestHeaders.putAll(Headers);
+        if (content != null) {
+            requestHeaders.putAll(content.Headers);
+        }
+
+        HttpWire.writeRequestHead(connection.out, method, connection.requestTarget(uri), requestHeaders);
+        if (content != null) {
+            connection.out.write(content.getBytes());
+        }
+        connection.out.flush();
+    }
+
+    private static String getHostHeader(final URI uri) {
+        final int port = uri.getPort();
+        final int defaultPort = "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+        if (port == -1 || port == defaultPort) {
+            return uri.getHost();
+        }
+        return uri.getHost() + ":" + port;
+    }
+
+    private static void ensureOK(final Response response) throws IOException {
+        final int statusCode = response.head.status;
+        if (statusCode != HttpURLConnection.HTTP_OK) {
+            final String content = readToString(response);
+            throw new HttpStatusException(statusCode, content, response.head.getHeader("Retry-After"));
+        }
+    }
+
+    private static String readToString(final Response response) throws IOException {
+        try {
+            return IOHelper.readToString(response.body);
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Closing the response once the handler returns drains a small remainder, so stopping early can still keep
+     * the connection.
+     */
+    private static <T> T stream(final Response response, final ResponseHandler<T> handler) throws IOException {
+        try {
+            return handler.handle(HttpClientHelper.openReader(response.body, response.head.getHeader("Content-Type")));
+        } finally {
+            response.close();
+        }
+    }
+
+    private static boolean isSuccessful(final int statusCode) {
+        return statusCode > 199 && statusCode < 300;
+    }
+
+    /**
+     * A response whose body is read straight off a pooled connection.  The connection goes back to the pool
+     * once the body has been read to the end or the response is closed.
+     */
+    class Response {
+        final HttpWire.ResponseHead head;
+        final InputStream body;
+
+        private final String method;
+        private final HttpConnectionPool.Connection connection;
+        private final InputStream framed;
+        private boolean finished;
+
+        Response(final String method, final HttpWire.ResponseHead head, final HttpConnectionPool.Connection connection) {
+            this.method = method;
+            this.head = head;
+            this.connection = connection;
+            this.framed = HttpWire.openBody(method, head, connection.in);
+            final InputStream received = new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    if (finished) {
+                        return -1;
+                    }
+                    return readFramed(null, 0, 1);
+                }
+
+                @Override
+                public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+                    if (finished) {
+                        return -1;
+                    }
+                    return readFramed(buffer, offset, length);
+                }
+
+                @Override
+                public int available() throws IOException {
+                    return finished ? 0 : framed.available();
+                }
+
+                @Override
+                public void close() {
+                    Response.this.close();
+                }
+            };
+            this.body = ContentEncoding.decode(received, head.getHeader("Content-Encoding"),
+                    pool.getTransferStatistics());
+        }
+
+        /**
+         * Reads a single byte when buffer is null, otherwise a block, handing the connection back at the end.
+         */
+        private int readFramed(final byte[] buffer, final int offset, final int length) throws IOException {
+            final int result;
+            try {
+                result = buffer == null ? framed.read() : framed.read(buffer, offset, length);
+            } catch (final IOException e) {
+                finish(false);
+                throw e;
+            }
+            if (result == -1) {
+                finish(true);
+            }
+            return result;
+        }
+
+        private void finish(final boolean complete) {
+            if (!finished) {
+                finished = true;
+                pool.release(connection, complete && HttpWire.isReusable(method, head));
+            }
+        }
+
+        /**
+         * Releases the connection, reading off a small unread remainder first so the connection can be reused.
+         */
+        void close() {
+            if (finished) {
+                return;
+            }
+            boolean complete = false;
+            try {
+                final byte[] buffer = new byte[IOHelper.BUFFER_SIZE];
+                int drained = 0;
+                int count;
+                while (drained <= DRAIN_LIMIT && (count = framed.read(buffer)) != -1) {
+                    drained += count;
+                }
+                complete = drained <= DRAIN_LIMIT;
+            } catch (final IOException ignored) {
+                // the connection will be closed
+            } finally {
+                finish(complete);
+            }
+        }
+    }
+}
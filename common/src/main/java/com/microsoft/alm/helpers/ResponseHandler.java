@@ -0,0 +1,25 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Consumes the body of a successful response while it is still being received.
+ *
+ * A handler may stop reading as soon as it has what it needs; the rest of the body is discarded.
+ *
+ * @param <T> the type of the result
+ */
+public interface ResponseHandler<T> {
+    /**
+     * Reads what is needed from the body of the response.
+     *
+     * @param body the decoded body; reading past {@link HttpClientHelper#MAX_RESPONSE_CHARACTERS} fails
+     * @return the result extracted from the body
+     * @throws IOException if reading the body fails
+     */
+    T handle(final Reader body) throws IOException;
+}
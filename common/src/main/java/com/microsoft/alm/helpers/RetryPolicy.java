@@ -0,0 +1,88 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Random;
+
+/**
+ * When and how long {@link RetryingHttpClient} and {@link RetryingAsyncHttpClient} wait before another attempt.
+ */
+final class RetryPolicy {
+
+    private static final Logger logger = LoggerFactory.getLogger(RetryPolicy.class);
+
+    private static final Random RANDOM = new Random();
+
+    private int maxAttempts = RetryingHttpClient.DEFAULT_MAX_ATTEMPTS;
+    private long baseDelayMillis = RetryingHttpClient.DEFAULT_BASE_DELAY_MILLIS;
+    private long maxDelayMillis = RetryingHttpClient.DEFAULT_MAX_DELAY_MILLIS;
+    private long maxRetryAfterMillis = RetryingHttpClient.DEFAULT_MAX_RETRY_AFTER_MILLIS;
+
+    void setMaxAttempts(final int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1");
+        }
+        this.maxAttempts = maxAttempts;
+    }
+
+    void setBackoff(final long baseDelayMillis, final long maxDelayMillis) {
+        if (baseDelayMillis < 0 || maxDelayMillis < baseDelayMillis) {
+            throw new IllegalArgumentException("The delays must satisfy 0 <= baseDelayMillis <= maxDelayMillis");
+        }
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    void setMaxRetryAfter(final long maxRetryAfterMillis) {
+        this.maxRetryAfterMillis = maxRetryAfterMillis;
+    }
+
+    /**
+     * @param deadline the deadline of the call, null if it has none
+     * @return how long to wait before the next attempt, or -1 if the failure should be reported instead
+     */
+    long getRetryDelayMillis(final URI uri, final int attempt, final boolean idempotent, final IOException cause,
+                             final Deadline deadline) {
+        if (attempt >= maxAttempts || !RetryingHttpClient.isRetryable(cause, idempotent)) {
+            return -1;
+        }
+        long delay = getBackoffMillis(attempt);
+        if (cause instanceof HttpStatusException && ((HttpStatusException) cause).getRetryAfter() != null) {
+            final long retryAfter = RetryingHttpClient.parseRetryAfterMillis(
+                    ((HttpStatusException) cause).getRetryAfter(), System.currentTimeMillis());
+            if (retryAfter > maxRetryAfterMillis) {
+                logger.debug("Not retrying {}, the server asked to wait {} ms", uri, retryAfter);
+                return -1;
+            }
+            if (retryAfter >= 0) {
+                delay = retryAfter;
+            }
+        }
+        if (deadline != null && delay >= deadline.getRemainingMillis()) {
+            logger.debug("Not retrying {}, the deadline would pass first", uri);
+            return -1;
+        }
+
+        logger.debug("Attempt {} of {} failed: {}, retrying in {} ms", attempt, uri, cause.getMessage(), delay);
+        return delay;
+    }
+
+    /**
+     * Exponential backoff with "equal jitter": a random pause between half and all of the exponential delay, so
+     * clients that failed together do not retry together.
+     */
+    long getBackoffMillis(final int attempt) {
+        final long exponential = baseDelayMillis << Math.min(attempt - 1, 30);
+        final long cap = exponential < 0 ? maxDelayMillis : Math.min(maxDelayMillis, exponential);
+        final long half = cap / 2;
+        synchronized (RANDOM) {
+            return half + (long) (RANDOM.nextDouble() * (cap - half));
+        }
+    }
+}
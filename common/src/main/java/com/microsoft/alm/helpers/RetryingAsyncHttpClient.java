@@ -0,0 +1,260 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link AsyncHttpClient} counterpart of {@link RetryingHttpClient}: the same calls are retried after the same
+ * failures, through the same kind of {@link CircuitBreaker}.
+ *
+ * No thread waits between attempts; the next one is scheduled instead.  The {@link Deadline} of the thread that
+ * made the call applies to every attempt, and cancelling the returned future cancels the attempt in flight.
+ */
+public class RetryingAsyncHttpClient implements AsyncHttpClient {
+
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            new DaemonThreadFactory("auth-library-http-retry"));
+
+    private final AsyncHttpClient delegate;
+    private final CircuitBreaker circuitBreaker;
+    private final RetryPolicy policy = new RetryPolicy();
+
+    public RetryingAsyncHttpClient(final AsyncHttpClient delegate, final CircuitBreaker circuitBreaker) {
+        Debug.Assert(delegate != null, "delegate cannot be null");
+        Debug.Assert(circuitBreaker != null, "circuitBreaker cannot be null");
+
+        this.delegate = delegate;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * @see RetryingHttpClient#setMaxAttempts(int)
+     */
+    public void setMaxAttempts(final int maxAttempts) {
+        policy.setMaxAttempts(maxAttempts);
+    }
+
+    /**
+     * @see RetryingHttpClient#setBackoff(long, long)
+     */
+    public void setBackoff(final long baseDelayMillis, final long maxDelayMillis) {
+        policy.setBackoff(baseDelayMillis, maxDelayMillis);
+    }
+
+    /**
+     * @see RetryingHttpClient#setMaxRetryAfter(long)
+     */
+    public void setMaxRetryAfter(final long maxRetryAfterMillis) {
+        policy.setMaxRetryAfter(maxRetryAfterMillis);
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+        return delegate.getHeaders();
+    }
+
+    @Override
+    public ListenableFuture<String> getHeaderField(final URI uri, final String header) {
+        return execute(uri, true, new Call<String>() {
+            @Override
+            ListenableFuture<String> execute(final AsyncHttpClient client) {
+                return client.getHeaderField(uri, header);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<String> getGetResponseText(final URI uri) {
+        return execute(uri, true, new Call<String>() {
+            @Override
+            ListenableFuture<String> execute(final AsyncHttpClient client) {
+                return client.getGetResponseText(uri);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<String> getGetResponseText(final URI uri, final int timeout) {
+        return execute(uri, true, new Call<String>() {
+            @Override
+            ListenableFuture<String> execute(final AsyncHttpClient client) {
+                return client.getGetResponseText(uri, timeout);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<String> getPostResponseText(final URI uri, final StringContent content) {
+        return execute(uri, false, new Call<String>() {
+            @Override
+            ListenableFuture<String> execute(final AsyncHttpClient client) {
+                return client.getPostResponseText(uri, content);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<HttpResponse> getPostResponse(final URI uri, final StringContent content) {
+        return execute(uri, false, new Call<HttpResponse>() {
+            @Override
+            ListenableFuture<HttpResponse> execute(final AsyncHttpClient client) {
+                return client.getPostResponse(uri, content);
+            }
+
+            @Override
+            HttpStatusException getFailure(final HttpResponse response) {
+                if (response.status > 199 && response.status < 300) {
+                    return null;
+                }
+                return new HttpStatusException(response.status, response.errorText, response.retryAfter);
+            }
+        });
+    }
+
+    private <T> ListenableFuture<T> execute(final URI uri, final boolean idempotent, final Call<T> call) {
+        final SettableFuture<T> result = SettableFuture.create();
+        final Attempts<T> attempts = new Attempts<T>(uri, idempotent, call, Deadline.current(), result);
+        attempts.start(1);
+        return result;
+    }
+
+    /**
+     * @return the client to make an attempt with, the given one unless it wants to know the attempt
+     */
+    static AsyncHttpClient forAttempt(final AsyncHttpClient client, final int attempt) {
+        if (client instanceof AttemptAwareAsyncHttpClient) {
+            return ((AttemptAwareAsyncHttpClient) client).forAttempt(attempt);
+        }
+        return client;
+    }
+
+    /**
+     * The attempts at one call, each started when the previous one has failed and its pause is over.
+     */
+    private final class Attempts<T> {
+        private final URI uri;
+        private final String host;
+        private final boolean idempotent;
+        private final Call<T> call;
+        private final Deadline deadline;
+        private final SettableFuture<T> result;
+
+        Attempts(final URI uri, final boolean idempotent, final Call<T> call, final Deadline deadline,
+                 final SettableFuture<T> result) {
+            this.uri = uri;
+            this.host = HttpClientHelper.getHostKey(uri);
+            this.idempotent = idempotent;
+            this.call = call;
+            this.deadline = deadline;
+            this.result = result;
+        }
+
+        void start(final int attempt) {
+            if (result.isDone()) {
+                // cancelled during the pause
+                return;
+            }
+            final ListenableFuture<T> response;
+            // the delegate reads the deadline from the thread it is called on, which is not the caller's for retries
+            final Deadline previousDeadline = Deadline.setCurrent(deadline);
+            try {
+                circuitBreaker.acquire(host);
+                response = call.execute(forAttempt(delegate, attempt));
+            } catch (final CircuitBreakerOpenException e) {
+                result.setException(e);
+                return;
+            } catch (final RuntimeException e) {
+                circuitBreaker.onAbandoned(host);
+                result.setException(e);
+                return;
+            } finally {
+                Deadline.setCurrent(previousDeadline);
+            }
+            cancelWith(response);
+            response.addCallback(new Callback<T>() {
+                @Override
+                public void onSuccess(final T value) {
+                    // getPostResponse reports unsuccessful responses instead of failing
+                    final HttpStatusException failure = call.getFailure(value);
+                    if (failure == null) {
+                        circuitBreaker.onSuccess(host);
+                        result.set(value);
+                        return;
+                    }
+                    RetryingHttpClient.record(circuitBreaker, host, failure);
+                    if (!retry(attempt, failure)) {
+                        result.set(value);
+                    }
+                }
+
+                @Override
+                public void onFailure(final Throwable throwable) {
+                    if (!(throwable instanceof IOException)) {
+                        circuitBreaker.onAbandoned(host);
+                        result.setException(throwable);
+                        return;
+                    }
+                    final IOException failure = (IOException) throwable;
+                    RetryingHttpClient.record(circuitBreaker, host, failure);
+                    if (!retry(attempt, failure)) {
+                        result.setException(failure);
+                    }
+                }
+            });
+        }
+
+        /**
+         * @return {@code false} if the failure should be reported instead
+         */
+        private boolean retry(final int attempt, final IOException cause) {
+            final long delay = policy.getRetryDelayMillis(uri, attempt, idempotent, cause, deadline);
+            if (delay < 0) {
+                return false;
+            }
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    start(attempt + 1);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+            return true;
+        }
+
+        /**
+         * Cancels the attempt in flight when the future handed to the caller gets cancelled.
+         */
+        private void cancelWith(final ListenableFuture<T> response) {
+            result.addCallback(new Callback<T>() {
+                @Override
+                public void onSuccess(final T value) {
+                }
+
+                @Override
+                public void onFailure(final Throwable throwable) {
+                    if (throwable instanceof CancellationException) {
+                        response.cancel(true);
+                    }
+                }
+            });
+        }
+    }
+
+    private abstract static class Call<T> {
+        abstract ListenableFuture<T> execute(final AsyncHttpClient client);
+
+        /**
+         * @return the failure a returned result stands for, or null if it is a success
+         */
+        HttpStatusException getFailure(final T result) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,312 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLHandshakeException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Decorates an {@link HttpClient} so transient failures are retried and hosts that keep failing are avoided.
+ *
+ * <ul>
+ *     <li>GET and HEAD calls are retried after network errors and 429, 502, 503 and 504 responses; POST calls
+ *     only after 429 and 503, where the server has declined to process the request.</li>
+ *     <li>The pause between attempts grows exponentially with random jitter, or follows the server's Retry-After
+ *     header.  No pause runs past the current thread's {@link Deadline}.</li>
+ *     <li>Every call goes through a {@link CircuitBreaker}, which makes calls to a host that keeps failing fail
+ *     at once.  Share one breaker between all clients so they learn from each other.</li>
+ * </ul>
+ */
+public class RetryingHttpClient implements HttpClient, StreamingHttpClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(RetryingHttpClient.class);
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final long DEFAULT_BASE_DELAY_MILLIS = 250;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 10 * 1000;
+    public static final long DEFAULT_MAX_RETRY_AFTER_MILLIS = 60 * 1000;
+
+    private final HttpClient delegate;
+    private final CircuitBreaker circuitBreaker;
+    private final RetryPolicy policy = new RetryPolicy();
+
+    public RetryingHttpClient(final HttpClient delegate, final CircuitBreaker circuitBreaker) {
+        Debug.Assert(delegate != null, "delegate cannot be null");
+        Debug.Assert(circuitBreaker != null, "circuitBreaker cannot be null");
+
+        this.delegate = delegate;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * @param maxAttempts how many times a call is made at most, including the first attempt
+     */
+    public void setMaxAttempts(final int maxAttempts) {
+        policy.setMaxAttempts(maxAttempts);
+    }
+
+    /**
+     * @param baseDelayMillis the pause before the first retry, doubled for every following one
+     * @param maxDelayMillis  the longest pause, before jitter
+     */
+    public void setBackoff(final long baseDelayMillis, final long maxDelayMillis) {
+        policy.setBackoff(baseDelayMillis, maxDelayMillis);
+    }
+
+    /**
+     * @param maxRetryAfterMillis the longest Retry-After we are prepared to wait; a longer one fails the call
+     */
+    public void setMaxRetryAfter(final long maxRetryAfterMillis) {
+        policy.setMaxRetryAfter(maxRetryAfterMillis);
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+        return delegate.getHeaders();
+    }
+
+    @Override
+    public String getHeaderField(final URI uri, final String header) throws IOException {
+        return execute(uri, true, new Call<String>() {
+            @Override
+            String execute(final HttpClient client) throws IOException {
+                return client.getHeaderField(uri, header);
+            }
+        });
+    }
+
+    @Override
+    public String getGetResponseText(final URI uri) throws IOException {
+        return execute(uri, true, new Call<String>() {
+            @Override
+            String execute(final HttpClient client) throws IOException {
+                return client.getGetResponseText(uri);
+            }
+        });
+    }
+
+    @Override
+    public String getGetResponseText(final URI uri, final int timeout) throws IOException {
+        return execute(uri, true, new Call<String>() {
+            @Override
+            String execute(final HttpClient client) throws IOException {
+                return client.getGetResponseText(uri, timeout);
+            }
+        });
+    }
+
+    @Override
+    public String getPostResponseText(final URI uri, final StringContent content) throws IOException {
+        return execute(uri, false, new Call<String>() {
+            @Override
+            String execute(final HttpClient client) throws IOException {
+                return client.getPostResponseText(uri, content);
+            }
+        });
+    }
+
+    @Override
+    public HttpResponse getPostResponse(final URI uri, final StringContent content) throws IOException {
+        return execute(uri, false, new Call<HttpResponse>() {
+            @Override
+            HttpResponse execute(final HttpClient client) throws IOException {
+                return client.getPostResponse(uri, content);
+            }
+
+            @Override
+            HttpStatusException getFailure(final HttpResponse response) {
+                if (response.status > 199 && response.status < 300) {
+                    return null;
+                }
+                return new HttpStatusException(response.status, response.errorText, response.retryAfter);
+            }
+        });
+    }
+
+    @Override
+    public <T> T streamGetResponse(final URI uri, final ResponseHandler<T> handler) throws IOException {
+        return execute(uri, true, new Call<T>() {
+            @Override
+            T execute(final HttpClient client) throws IOException {
+                return HttpClientHelper.streamGetResponse(client, uri, handler);
+            }
+        });
+    }
+
+    @Override
+    public <T> T streamGetResponse(final URI uri, final int timeout, final ResponseHandler<T> handler)
+            throws IOException {
+        return execute(uri, true, new Call<T>() {
+            @Override
+            T execute(final HttpClient client) throws IOException {
+                return HttpClientHelper.streamGetResponse(client, uri, timeout, handler);
+            }
+        });
+    }
+
+    @Override
+    public <T> T streamPostResponse(final URI uri, final StringContent content, final ResponseHandler<T> handler)
+            throws IOException {
+        return execute(uri, false, new Call<T>() {
+            @Override
+            T execute(final HttpClient client) throws IOException {
+                return HttpClientHelper.streamPostResponse(client, uri, content, handler);
+            }
+        });
+    }
+
+    private <T> T execute(final URI uri, final boolean idempotent, final Call<T> call) throws IOException {
+        final String host = HttpClientHelper.getHostKey(uri);
+        for (int attempt = 1; ; attempt++) {
+            circuitBreaker.acquire(host);
+            final T result;
+            try {
+                result = call.execute(forAttempt(delegate, attempt));
+            } catch (final IOException e) {
+                record(circuitBreaker, host, e);
+                if (!pause(uri, attempt, idempotent, e)) {
+                    throw e;
+                }
+                continue;
+            } catch (final RuntimeException e) {
+                circuitBreaker.onAbandoned(host);
+                throw e;
+            } catch (final Error e) {
+                circuitBreaker.onAbandoned(host);
+                throw e;
+            }
+
+            // getPostResponse reports unsuccessful responses instead of throwing them
+            final HttpStatusException failure = call.getFailure(result);
+            if (failure == null) {
+                circuitBreaker.onSuccess(host);
+                return result;
+            }
+            record(circuitBreaker, host, failure);
+            if (!pause(uri, attempt, idempotent, failure)) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * @return the client to make an attempt with, the given one unless it wants to know the attempt
+     */
+    static HttpClient forAttempt(final HttpClient client, final int attempt) {
+        if (client instanceof AttemptAwareHttpClient) {
+            return ((AttemptAwareHttpClient) client).forAttempt(attempt);
+        }
+        return client;
+    }
+
+    /**
+     * Tells the breaker how an attempt went.
+     */
+    static void record(final CircuitBreaker circuitBreaker, final String host, final IOException e) {
+        if (e instanceof HttpStatusException) {
+            if (((HttpStatusException) e).getStatusCode() >= 500) {
+                circuitBreaker.onFailure(host);
+            } else {
+                circuitBreaker.onSuccess(host);
+            }
+        } else if (e instanceof DeadlineExceededException || e instanceof BulkheadRejectedException
+                || isInterruption(e)) {
+            circuitBreaker.onAbandoned(host);
+        } else {
+            circuitBreaker.onFailure(host);
+        }
+    }
+
+    static boolean isRetryable(final IOException e, final boolean idempotent) {
+        if (e instanceof HttpStatusException) {
+            final int status = ((HttpStatusException) e).getStatusCode();
+            if (status == 429 || status == 503) {
+                return true;
+            }
+            return idempotent && (status == 502 || status == 504);
+        }
+        if (e instanceof DeadlineExceededException || e instanceof CircuitBreakerOpenException
+                || e instanceof BulkheadRejectedException || e instanceof SSLHandshakeException
+                || isInterruption(e)) {
+            return false;
+        }
+        // the request may or may not have reached the server
+        return idempotent;
+    }
+
+    private static boolean isInterruption(final IOException e) {
+        return e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException);
+    }
+
+    /**
+     * Waits before the next attempt, if there is to be one.
+     *
+     * @return {@code false}, without waiting, if the failure should be reported instead
+     */
+    private boolean pause(final URI uri, final int attempt, final boolean idempotent, final IOException cause)
+            throws InterruptedIOException {
+        final long delay = policy.getRetryDelayMillis(uri, attempt, idempotent, cause, Deadline.current());
+        if (delay < 0) {
+            return false;
+        }
+        try {
+            Thread.sleep(delay);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            final InterruptedIOException exception = new InterruptedIOException("Interrupted while waiting to retry");
+            exception.initCause(e);
+            throw exception;
+        }
+        return true;
+    }
+
+    long getBackoffMillis(final int attempt) {
+        return policy.getBackoffMillis(attempt);
+    }
+
+    /**
+     * @param retryAfter either delay-seconds or an HTTP-date, as allowed by RFC 7231
+     * @return the milliseconds to wait, or -1 if the value cannot be parsed
+     */
+    static long parseRetryAfterMillis(final String retryAfter, final long nowMillis) {
+        final String value = retryAfter.trim();
+        try {
+            return Math.max(Long.parseLong(value), 0) * 1000;
+        } catch (final NumberFormatException ignored) {
+            // not delay-seconds, try a date
+        }
+        final SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            final Date date = format.parse(value);
+            return Math.max(date.getTime() - nowMillis, 0);
+        } catch (final ParseException e) {
+            logger.debug("Ignoring malformed Retry-After {}", value);
+            return -1;
+        }
+    }
+
+    private abstract static class Call<T> {
+        abstract T execute(final HttpClient client) throws IOException;
+
+        /**
+         * @return the failure a returned result stands for, or null if it is a success
+         */
+        HttpStatusException getFailure(final T result) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A {@link ListenableFuture} that is completed by whoever holds it, with {@link #set(Object)} or
+ * {@link #setException(Throwable)}.  Only the first completion counts.
+ *
+ * @param <T> the type of the result
+ */
+public class SettableFuture<T> implements ListenableFuture<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(SettableFuture.class);
+
+    private final Object lock = new Object();
+    private List<Callback<? super T>> callbacks = new ArrayList<Callback<? super T>>();
+    private boolean done;
+    private boolean cancelled;
+    private T value;
+    private Throwable failure;
+
+    public static <T> SettableFuture<T> create() {
+        return new SettableFuture<T>();
+    }
+
+    /**
+     * @return {@code true} if this call completed the future
+     */
+    public boolean set(final T value) {
+        return complete(value, null, false);
+    }
+
+    /**
+     * @return {@code true} if this call completed the future
+     */
+    public boolean setException(final Throwable throwable) {
+        Debug.Assert(throwable != null, "throwable cannot be null");
+
+        return complete(null, throwable, false);
+    }
+
+    /**
+     * Completes the future with a {@link CancellationException}.  There is no task to interrupt; whoever does the
+     * work learns of the cancellation through its callbacks, which receive that exception, and stops there.
+     */
+    @Override
+    public boolean cancel(final boolean mayInterruptIfRunning) {
+        return complete(null, new CancellationException("The operation was cancelled."), true);
+    }
+
+    @Override
+    public boolean isCancelled() {
+        synchronized (lock) {
+            return cancelled;
+        }
+    }
+
+    @Override
+    public boolean isDone() {
+        synchronized (lock) {
+            return done;
+        }
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        synchronized (lock) {
+            while (!done) {
+                lock.wait();
+            }
+            return report();
+        }
+    }
+
+    @Override
+    public T get(final long timeout, final TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (lock) {
+            while (!done) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new TimeoutException();
+                }
+                TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+            }
+            return report();
+        }
+    }
+
+    @Override
+    public void addCallback(final Callback<? super T> callback) {
+        Debug.Assert(callback != null, "callback cannot be null");
+
+        synchronized (lock) {
+            if (!done) {
+                callbacks.add(callback);
+                return;
+            }
+        }
+        notify(callback);
+    }
+
+    private T report() throws ExecutionException {
+        if (cancelled) {
+            throw (CancellationException) failure;
+        }
+        if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+        return value;
+    }
+
+    private boolean complete(final T value, final Throwable failure, final boolean cancelled) {
+        final List<Callback<? super T>> toNotify;
+        synchronized (lock) {
+            if (done) {
+                return false;
+            }
+            this.value = value;
+            this.failure = failure;
+            this.cancelled = cancelled;
+            this.done = true;
+            toNotify = callbacks;
+            callbacks = null;
+            lock.notifyAll();
+        }
+        for (final Callback<? super T> callback : toNotify) {
+            notify(callback);
+        }
+        return true;
+    }
+
+    private void notify(final Callback<? super T> callback) {
+        try {
+            if (failure != null) {
+                callback.onFailure(failure);
+            } else {
+                callback.onSuccess(value);
+            }
+        } catch (final RuntimeException e) {
+            logger.warn("A callback threw an exception.", e);
+        }
+    }
+}
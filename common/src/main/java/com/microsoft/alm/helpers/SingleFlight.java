@@ -0,0 +1,91 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Makes concurrent calls for the same key share one execution: the first caller runs the work, the others wait
+ * for it and get its result, or its exception.  A call that starts after the work completed runs it again.
+ *
+ * Work must not call back into the same {@link SingleFlight} with its own key, it would wait for itself.
+ *
+ * @param <K> the type of the keys, which must implement equals and hashCode
+ * @param <V> the type of the results
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, FutureTask<V>> inFlight = new ConcurrentHashMap<K, FutureTask<V>>();
+
+    /**
+     * Runs the work, or waits for the run already in flight for the key.
+     *
+     * Waiting is not interruptible, a waiter interrupted keeps its interrupt status.  A waiter whose thread has a
+     * {@link Deadline} stops waiting when it passes, while the run carries on for the others.
+     *
+     * @return the result of the run
+     * @throws DeadlineExceededException if the deadline of the current thread passed while waiting
+     */
+    public V execute(final K key, final Callable<V> work) throws DeadlineExceededException {
+        Debug.Assert(key != null, "key cannot be null");
+        Debug.Assert(work != null, "work cannot be null");
+
+        final FutureTask<V> task = new FutureTask<V>(work);
+        FutureTask<V> flight = inFlight.putIfAbsent(key, task);
+        if (flight == null) {
+            flight = task;
+            try {
+                task.run();
+            } finally {
+                inFlight.remove(key, task);
+            }
+        }
+        return await(flight);
+    }
+
+    /**
+     * @return how many keys have work in flight
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    private static <V> V await(final FutureTask<V> flight) throws DeadlineExceededException {
+        final Deadline deadline = Deadline.current();
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    if (deadline == null) {
+                        return flight.get();
+                    }
+                    return flight.get(deadline.checkRemainingMillis(), TimeUnit.MILLISECONDS);
+                } catch (final TimeoutException e) {
+                    throw new DeadlineExceededException("The deadline passed while waiting for another caller.");
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                } catch (final ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new Error(cause);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * Implemented by {@link HttpClient}s that can hand the body of a response to a {@link ResponseHandler} as it
+ * arrives, instead of reading all of it into a String first.
+ *
+ * Callers should go through {@link HttpClientHelper}, which falls back to the String methods of clients
+ * that do not implement this interface.
+ */
+public interface StreamingHttpClient {
+
+    /**
+     * Make a GET call and let the handler read the body of the response
+     *
+     * @param uri target uri
+     * @param handler reads the body of a successful response
+     * @return what the handler returned
+     * @throws IOException if the response status code is not 200, the error message is the error from server.
+     */
+    <T> T streamGetResponse(URI uri, ResponseHandler<T> handler) throws IOException;
+    <T> T streamGetResponse(URI uri, int timeout, ResponseHandler<T> handler) throws IOException;
+
+    /**
+     * Make a POST call and let the handler read the body of the response
+     *
+     * @param uri target uri
+     * @param content the body of the request
+     * @param handler reads the body of a successful response
+     * @return what the handler returned
+     * @throws IOException if the response status code is not 200, the error message is the error from server.
+     */
+    <T> T streamPostResponse(URI uri, StringContent content, ResponseHandler<T> handler) throws IOException;
+}
@@ -35,6 +35,10 @@ public class StringContent {
         return this.content;
     }
 
+    byte[] getBytes() {
+        return this.bytes;
+    }
+
     public static StringContent createUrlEncoded(final QueryString parameters) {
         return new StringContent(parameters.toString(), "application/x-www-form-urlencoded");
     }
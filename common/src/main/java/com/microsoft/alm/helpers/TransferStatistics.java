@@ -0,0 +1,59 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Running totals of the response bodies read by the clients sharing this object, before and after
+ * Content-Encoding decompression, showing how much bandwidth compression saves.
+ */
+public class TransferStatistics {
+
+    private final AtomicLong responses = new AtomicLong();
+    private final AtomicLong compressedResponses = new AtomicLong();
+    final AtomicLong bytesReceived = new AtomicLong();
+    final AtomicLong bytesDecoded = new AtomicLong();
+
+    void recordResponse(final boolean compressed) {
+        responses.incrementAndGet();
+        if (compressed) {
+            compressedResponses.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return the number of response bodies read.
+     */
+    public long getResponses() {
+        return responses.get();
+    }
+
+    /**
+     * @return the number of response bodies that arrived gzip or deflate compressed.
+     */
+    public long getCompressedResponses() {
+        return compressedResponses.get();
+    }
+
+    /**
+     * @return the number of body bytes read off the wire, compressed or not.
+     */
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    /**
+     * @return the number of body bytes handed to callers, after decompression.
+     */
+    public long getBytesDecoded() {
+        return bytesDecoded.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("responses=%d, compressed=%d, bytesReceived=%d, bytesDecoded=%d",
+                getResponses(), getCompressedResponses(), getBytesReceived(), getBytesDecoded());
+    }
+}
@@ -3,6 +3,7 @@
 
 package com.microsoft.alm.secret;
 
+import com.microsoft.alm.helpers.Base64Helper;
 import com.microsoft.alm.helpers.ObjectExtensions;
 import com.microsoft.alm.helpers.StringHelper;
 import com.microsoft.alm.helpers.XmlHelper;
@@ -12,7 +13,6 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.w3c.dom.Text;
 
-import javax.xml.bind.DatatypeConverter;
 import java.nio.charset.Charset;
 import java.util.Map;
 
@@ -56,6 +56,11 @@ public final class Credential extends Secret {
      */
     public final String Username;
 
+    /**
+     * The value of the Authorization header, built on first use since credentials never change.
+     */
+    private volatile String headerValue;
+
     public static Credential fromXml(final Node credentialNode) {
         Credential value;
         String password = null;
@@ -119,11 +124,23 @@ public final class Credential extends Secret {
     }
 
     public void contributeHeader(final Map<String, String> headers) {
-        // credentials are packed into the 'Authorization' header as a base64 encoded pair
-        final String credPair = Username + ":" + Password;
-        final byte[] credBytes = credPair.getBytes(ASCII);
-        final String base64enc = DatatypeConverter.printBase64Binary(credBytes);
-        headers.put("Authorization", "Basic" + " " + base64enc);
+        headers.put("Authorization", getHeaderValue());
+    }
+
+    /**
+     * @return the value of the Authorization header that carries these credentials
+     */
+    public String getHeaderValue() {
+        String result = headerValue;
+        if (result == null) {
+            // credentials are packed into the 'Authorization' header as a base64 encoded pair
+            final String credPair = Username + ":" + Password;
+            final byte[] credBytes = credPair.getBytes(ASCII);
+            final String base64enc = Base64Helper.encode(credBytes);
+            result = "Basic" + " " + base64enc;
+            headerValue = result;
+        }
+        return result;
     }
 
     public static void validate(final Credential credentials) {
@@ -3,6 +3,7 @@
 
 package com.microsoft.alm.secret;
 
+import com.microsoft.alm.helpers.Base64Helper;
 import com.microsoft.alm.helpers.Debug;
 import com.microsoft.alm.helpers.Guid;
 import com.microsoft.alm.helpers.NotImplementedException;
@@ -16,7 +17,6 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.w3c.dom.Text;
 
-import javax.xml.bind.DatatypeConverter;
 import java.nio.ByteBuffer;
 import java.util.EnumSet;
 import java.util.Map;
@@ -96,6 +96,12 @@ public class Token extends Secret {
 
     UUID targetIdentity = Guid.Empty;
 
+    /**
+     * The value of the Authorization header, built on first use: a token never changes, and its header is sent
+     * with every request it authenticates.
+     */
+    private volatile String headerValue;
+
     public static Token fromXml(final Node tokenNode) {
         Token value;
 
@@ -193,17 +199,32 @@ public class Token extends Secret {
     }
 
     public void contributeHeader(final Map<String, String> headers) {
+        headers.put("Authorization", getHeaderValue());
+    }
+
+    /**
+     * @return the value of the Authorization header that carries this token
+     */
+    public String getHeaderValue() {
+        String result = headerValue;
+        if (result == null) {
+            // racing threads compute the same string, either may win
+            result = createHeaderValue();
+            headerValue = result;
+        }
+        return result;
+    }
+
+    private String createHeaderValue() {
         // different types of tokens are packed differently
         switch (Type) {
             case Access:
                 final String prefix = "Bearer";
-                headers.put("Authorization", prefix + " " + Value);
-                break;
+                return prefix + " " + Value;
             case Personal:
                 final byte[] authData = StringHelper.UTF8GetBytes("PersonalAccessToken:" + Value);
-                final String base64EncodedAuthData = DatatypeConverter.printBase64Binary(authData);
-                headers.put("Authorization", "Basic " + base64EncodedAuthData);
-                break;
+                final String base64EncodedAuthData = Base64Helper.encode(authData);
+                return "Basic " + base64EncodedAuthData;
             case Federated:
                 throw new NotImplementedException(449222);
             default:
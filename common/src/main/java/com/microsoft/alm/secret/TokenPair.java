@@ -25,6 +25,8 @@ public class TokenPair extends Secret {
     private static final Map<String, String> EMPTY_MAP = Collections.unmodifiableMap(new LinkedHashMap<String, String>(0));
     private static final String ACCESS_TOKEN = "access_token";
     private static final String REFRESH_TOKEN = "refresh_token";
+    private static final String EXPIRES_IN = "expires_in";
+    private static final String EXPIRES_ON = "expires_on";
 
     /**
      * Creates a new {@link TokenPair} from raw access and refresh token data.
@@ -33,12 +35,26 @@ public class TokenPair extends Secret {
      * @param refreshToken The base64 encoded value of the refresh token's raw data
      */
     public TokenPair(final String accessToken, final String refreshToken) {
+        this(accessToken, refreshToken, -1, -1);
+    }
+
+    /**
+     * Creates a new {@link TokenPair} from raw token data and what is known of when it was issued and expires, as
+     * when reading it back from a store.
+     *
+     * @param expiresOnMillis when the access token expires, in milliseconds since the epoch; -1 if unknown
+     * @param issuedAtMillis  when the pair was issued, in milliseconds since the epoch; -1 if unknown
+     */
+    public TokenPair(final String accessToken, final String refreshToken,
+                     final long expiresOnMillis, final long issuedAtMillis) {
         Debug.Assert(!StringHelper.isNullOrWhiteSpace(accessToken), "The accessToken parameter is null or invalid.");
         Debug.Assert(!StringHelper.isNullOrWhiteSpace(refreshToken), "The refreshToken parameter is null or invalid.");
 
         this.AccessToken = new Token(accessToken, TokenType.Access);
         this.RefreshToken = new Token(refreshToken, TokenType.Refresh);
         this.Parameters = EMPTY_MAP;
+        this.expiresOnMillis = expiresOnMillis;
+        this.issuedAtMillis = issuedAtMillis;
     }
 
     public TokenPair(final String accessTokenResponse) {
@@ -66,6 +82,26 @@ public class TokenPair extends Secret {
         this.AccessToken = new Token(accessToken, TokenType.Access);
         this.RefreshToken = new Token(refreshToken, TokenType.Refresh);
         this.Parameters = Collections.unmodifiableMap(parameters);
+
+        // the response was received moments ago, expires_in counts from now
+        this.issuedAtMillis = System.currentTimeMillis();
+        final long expiresOn = parseSeconds(parameters.get(EXPIRES_ON));
+        final long expiresIn = parseSeconds(parameters.get(EXPIRES_IN));
+        this.expiresOnMillis = expiresOn != -1 ? expiresOn * 1000
+                : expiresIn != -1 ? issuedAtMillis + expiresIn * 1000
+                : -1;
+    }
+
+    private static long parseSeconds(final String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            // PropertyBag turns JSON numbers into doubles, so "3599" may arrive as "3599.0"
+            return (long) Double.parseDouble(value);
+        } catch (final NumberFormatException e) {
+            return -1;
+        }
     }
 
     /**
@@ -78,11 +114,35 @@ public class TokenPair extends Secret {
     public final Token RefreshToken;
     public final Map<String, String> Parameters;
 
+    private final long expiresOnMillis;
+    private final long issuedAtMillis;
+
+    /**
+     * When the access token expires, as told by the token response, and kept by the stores that can, so it is
+     * still known once the pair is read back.
+     *
+     * @return milliseconds since the epoch, or -1 if unknown
+     */
+    public long getExpiresOnMillis() {
+        return expiresOnMillis;
+    }
+
+    /**
+     * When the pair was received from the token endpoint.
+     *
+     * @return milliseconds since the epoch, or -1 if unknown
+     */
+    public long getIssuedAtMillis() {
+        return issuedAtMillis;
+    }
+
     public static TokenPair fromXml(final Node tokenPairNode) {
         TokenPair value;
 
         String accessToken = null;
         String refreshToken = null;
+        long expiresOn = -1;
+        long issuedAt = -1;
 
         final NodeList propertyNodes = tokenPairNode.getChildNodes();
         for (int v = 0; v < propertyNodes.getLength(); v++) {
@@ -92,10 +152,14 @@ public class TokenPair extends Secret {
                 accessToken = XmlHelper.getText(propertyNode);
             } else if ("refreshToken".equals(propertyName)) {
                 refreshToken = XmlHelper.getText(propertyNode);
+            } else if ("expiresOn".equals(propertyName)) {
+                expiresOn = parseMillis(XmlHelper.getText(propertyNode));
+            } else if ("issuedAt".equals(propertyName)) {
+                issuedAt = parseMillis(XmlHelper.getText(propertyNode));
             }
         }
 
-        value = new TokenPair(accessToken, refreshToken);
+        value = new TokenPair(accessToken, refreshToken, expiresOn, issuedAt);
         return value;
     }
 
@@ -112,9 +176,29 @@ public class TokenPair extends Secret {
         refreshTokenNode.appendChild(refreshTokenValue);
         valueNode.appendChild(refreshTokenNode);
 
+        // older versions skip these when reading
+        if (expiresOnMillis != -1) {
+            final Element expiresOnNode = document.createElement("expiresOn");
+            expiresOnNode.appendChild(document.createTextNode(Long.toString(expiresOnMillis)));
+            valueNode.appendChild(expiresOnNode);
+        }
+        if (issuedAtMillis != -1) {
+            final Element issuedAtNode = document.createElement("issuedAt");
+            issuedAtNode.appendChild(document.createTextNode(Long.toString(issuedAtMillis)));
+            valueNode.appendChild(issuedAtNode);
+        }
+
         return valueNode;
     }
 
+    private static long parseMillis(final String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (final NumberFormatException e) {
+            return -1;
+        }
+    }
+
     public static String toXmlString(final TokenPair tokenPair) {
         final DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
         try {
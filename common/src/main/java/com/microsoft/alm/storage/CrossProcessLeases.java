@@ -0,0 +1,149 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.storage;
+
+import com.microsoft.alm.helpers.Debug;
+import com.microsoft.alm.helpers.IOHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+
+/**
+ * Lets processes sharing secrets take turns doing something to the secret stored under a key, such as refreshing
+ * it, through exclusive locks on one small file per key.
+ *
+ * The operating system releases a lock when the process holding it dies, so a crashed process never blocks the
+ * others for longer than it lived.
+ */
+public class CrossProcessLeases {
+
+    private static final Logger logger = LoggerFactory.getLogger(CrossProcessLeases.class);
+
+    private static final long POLL_INTERVAL_MILLIS = 50;
+
+    private static CrossProcessLeases defaultInstance;
+
+    private final File folder;
+
+    /**
+     * @param folder where to keep the lock files, created when first needed
+     */
+    public CrossProcessLeases(final File folder) {
+        Debug.Assert(folder != null, "folder cannot be null");
+
+        this.folder = folder;
+    }
+
+    /**
+     * @return the leases kept in the folder of the insecure file store, shared by every process of the user
+     */
+    public static synchronized CrossProcessLeases getDefault() {
+        if (defaultInstance == null) {
+            defaultInstance = new CrossProcessLeases(new File(InsecureFileBackend.getProgramFolder(), "locks"));
+        }
+        return defaultInstance;
+    }
+
+    /**
+     * Waits for the lease of a key.
+     *
+     * @param timeoutMillis how long to wait for another process to release the lease
+     * @return the lease, to be released once done; null if it could not be had in time, or at all
+     */
+    public Lease tryAcquire(final String key, final long timeoutMillis) {
+        Debug.Assert(key != null, "key cannot be null");
+
+        if (!folder.isDirectory() && !folder.mkdirs() && !folder.isDirectory()) {
+            logger.warn("Unable to create folder {} for leases", folder);
+            return null;
+        }
+        final File lockFile = new File(folder, toFileName(key));
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (true) {
+            RandomAccessFile file = null;
+            try {
+                file = new RandomAccessFile(lockFile, "rw");
+                final FileChannel channel = file.getChannel();
+                FileLock lock;
+                try {
+                    lock = channel.tryLock();
+                } catch (final OverlappingFileLockException e) {
+                    // held by another thread of this process
+                    lock = null;
+                }
+                if (lock != null) {
+                    return new Lease(file, lock);
+                }
+            } catch (final IOException e) {
+                logger.warn("Unable to lock {}", lockFile, e);
+                IOHelper.closeQuietly(file);
+                return null;
+            }
+            IOHelper.closeQuietly(file);
+
+            final long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                logger.debug("Gave up waiting for the lease of {}", key);
+                return null;
+            }
+            try {
+                Thread.sleep(Math.min(POLL_INTERVAL_MILLIS, remaining));
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Keeps the file name readable, and safe on every platform, whatever the key.
+     */
+    static String toFileName(final String key) {
+        final StringBuilder sb = new StringBuilder(key.length() + 5);
+        for (int i = 0; i < key.length(); i++) {
+            final char c = key.charAt(i);
+            final boolean safe = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '.' || c == '-';
+            sb.append(safe ? c : '_');
+        }
+        // different keys can end up with the same name, they then just share the lease
+        return sb.append(".lock").toString();
+    }
+
+    /**
+     * The exclusive right to act on a key, until released.
+     */
+    public static final class Lease implements Closeable {
+        private final RandomAccessFile file;
+        private final FileLock lock;
+
+        private Lease(final RandomAccessFile file, final FileLock lock) {
+            this.file = file;
+            this.lock = lock;
+        }
+
+        public void release() {
+            try {
+                lock.release();
+            } catch (final IOException e) {
+                logger.debug("Unable to release lock", e);
+            } finally {
+                // closing the file releases the lock anyway
+                IOHelper.closeQuietly(file);
+            }
+        }
+
+        @Override
+        public void close() {
+            release();
+        }
+    }
+}
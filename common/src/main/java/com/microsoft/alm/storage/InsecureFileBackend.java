@@ -42,6 +42,9 @@ class InsecureFileBackend {
     public static final String PROGRAM_FOLDER_NAME = "VSTeamServicesAuthPlugin";
 
     private final File backingFile;
+    // when the backing file was last read or written, to notice other processes writing it
+    private long lastModified;
+    private long lastLength;
 
     final Map<String, Token> Tokens = new HashMap<String, Token>();
     final Map<String, Credential> Credentials = new HashMap<String, Credential>();
@@ -70,6 +73,8 @@ class InsecureFileBackend {
         if (backingFile != null && backingFile.isFile() && backingFile.length() > 0) {
             FileInputStream fis = null;
             try {
+                lastModified = backingFile.lastModified();
+                lastLength = backingFile.length();
                 fis = new FileInputStream(backingFile);
                 final InsecureFileBackend clone = fromXml(fis);
                 if (clone != null) {
@@ -99,6 +104,8 @@ class InsecureFileBackend {
             } finally {
                 IOHelper.closeQuietly(fos);
             }
+            lastModified = backingFile.lastModified();
+            lastLength = backingFile.length();
 
             if (!backingFile.setReadable(false, false)
                     || !backingFile.setWritable(false, false)
@@ -185,6 +192,19 @@ class InsecureFileBackend {
         result.Tokens.put(key, value);
     }
 
+    /**
+     * Picks up what other processes wrote since we last read or wrote the file, so we neither hand out secrets
+     * they replaced nor overwrite them with ours.
+     */
+    void reloadIfChanged() {
+        // some file systems only keep modification times to the second, the length catches most of the rest
+        if (backingFile != null
+                && (backingFile.lastModified() != lastModified || backingFile.length() != lastLength)) {
+            logger.debug("backingFile {} was changed by another process, reloading", backingFile);
+            reload();
+        }
+    }
+
     void toXml(final OutputStream destination) {
         try {
             final DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
@@ -252,6 +272,7 @@ class InsecureFileBackend {
     }
 
     public synchronized boolean delete(final String targetName) {
+        reloadIfChanged();
         if (Tokens.containsKey(targetName)) {
             Tokens.remove(targetName);
             save();
@@ -264,24 +285,32 @@ class InsecureFileBackend {
     }
 
     public synchronized Credential readCredentials(final String targetName) {
+        reloadIfChanged();
         return Credentials.get(targetName);
     }
 
     public synchronized Token readToken(final String targetName) {
+        reloadIfChanged();
         return Tokens.get(targetName);
     }
 
     public synchronized void writeCredential(final String targetName, final Credential credentials) {
+        reloadIfChanged();
         Credentials.put(targetName, credentials);
         save();
     }
 
     public synchronized void writeToken(final String targetName, final Token token) {
+        reloadIfChanged();
         Tokens.put(targetName, token);
         save();
     }
 
     private static File getBackingFile() {
+        return new File(getProgramFolder(), "insecureStore.xml");
+    }
+
+    static File getProgramFolder() {
         final File parentFolder = determineParentFolder();
 
         // .hidden this folder on *nix system
@@ -292,9 +321,7 @@ class InsecureFileBackend {
             programFolder.mkdirs();
         }
 
-        final File insecureFile = new File(programFolder, "insecureStore.xml");
-
-        return insecureFile;
+        return programFolder;
     }
 
     private static File determineParentFolder() {
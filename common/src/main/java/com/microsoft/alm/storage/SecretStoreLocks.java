@@ -0,0 +1,40 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.storage;
+
+/**
+ * The monitors to hold while changing what a {@link SecretStore} has under a key, such as replacing a secret with a
+ * delete followed by an add, so no one reads the key half way through.
+ *
+ * Keys are spread over a fixed set of monitors: changes to unrelated keys, and to different stores, go on in
+ * parallel, while two keys sharing a monitor merely take turns.  The stores are expected to be safe to use from
+ * several threads at once.
+ */
+public final class SecretStoreLocks {
+
+    // a power of two, so the stripe is a mask of the hash
+    private static final int STRIPES = 64;
+
+    private static final Object[] LOCKS = new Object[STRIPES];
+
+    static {
+        for (int i = 0; i < STRIPES; i++) {
+            LOCKS[i] = new Object();
+        }
+    }
+
+    private SecretStoreLocks() {
+    }
+
+    /**
+     * @return the monitor guarding the key in the store
+     */
+    public static Object of(final SecretStore<?> store, final String key) {
+        int hash = System.identityHashCode(store) * 31 + (key == null ? 0 : key.hashCode());
+        // spread the high bits, as HashMap does, since similar keys differ mostly at their end
+        hash ^= (hash >>> 20) ^ (hash >>> 12);
+        hash ^= (hash >>> 7) ^ (hash >>> 4);
+        return LOCKS[hash & (STRIPES - 1)];
+    }
+}
@@ -0,0 +1,29 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import java.util.Base64;
+
+/**
+ * Encodes and decodes standard base64, as in {@code Basic} authorization headers.
+ *
+ * This is the Java 11 version, built on {@link Base64}, which needs no {@code javax.xml.bind} on the class path.
+ */
+public final class Base64Helper {
+
+    private Base64Helper() {
+    }
+
+    public static String encode(final byte[] bytes) {
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the value is not base64
+     */
+    public static byte[] decode(final String value) {
+        // as lenient as DatatypeConverter about line breaks
+        return Base64.getMimeDecoder().decode(value);
+    }
+}
@@ -0,0 +1,259 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * An {@link HttpClient} whose instances all share their connections, so concurrent token and validation calls
+ * to the same host do not each open a connection of their own.
+ *
+ * This is the Java 11 version: every instance goes through one {@link java.net.http.HttpClient}, which
+ * negotiates HTTP/2 and multiplexes all concurrent requests to a host over a single connection.  Servers that
+ * only speak HTTP/1.1 get pooled keep-alive connections instead.
+ */
+public class Http2Client implements HttpClient, StreamingHttpClient {
+
+    private static final Set<String> RESTRICTED_HEADERS = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        // java.net.http computes these itself and refuses to have them set
+        RESTRICTED_HEADERS.add("Connection");
+        RESTRICTED_HEADERS.add("Content-Length");
+        RESTRICTED_HEADERS.add("Expect");
+        RESTRICTED_HEADERS.add("Host");
+        RESTRICTED_HEADERS.add("Upgrade");
+    }
+
+    private static final java.net.http.HttpClient SHARED = newClient(java.net.http.HttpClient.Redirect.NORMAL);
+    // HttpClientImpl does not follow redirects when only reading a header
+    private static final java.net.http.HttpClient SHARED_NO_REDIRECTS = newClient(java.net.http.HttpClient.Redirect.NEVER);
+
+    private static final TransferStatistics TRANSFER_STATISTICS = new TransferStatistics();
+
+    public final Map<String, String> Headers = new LinkedHashMap<String, String>();
+
+    private volatile boolean compressionEnabled = true;
+
+    public Http2Client(final String userAgent) {
+        Headers.put("User-Agent", userAgent);
+    }
+
+    /**
+     * @return {@code true} if concurrent requests to one host are multiplexed over a single HTTP/2 connection,
+     *         {@code false} if they are spread over a pool of HTTP/1.1 connections.
+     */
+    public static boolean isMultiplexing() {
+        return true;
+    }
+
+    private static java.net.http.HttpClient newClient(final java.net.http.HttpClient.Redirect redirect) {
+        return java.net.http.HttpClient.newBuilder()
+                .version(java.net.http.HttpClient.Version.HTTP_2)
+                .followRedirects(redirect)
+                .proxy(ProxySelector.getDefault())
+                .connectTimeout(Duration.ofMillis(HttpConnectionPool.DEFAULT_CONNECT_TIMEOUT_MILLIS))
+                .build();
+    }
+
+    /**
+     * @return the byte counts of the response bodies read by all instances of this class.
+     */
+    public static TransferStatistics getTransferStatistics() {
+        return TRANSFER_STATISTICS;
+    }
+
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    /**
+     * Compression is on by default: requests ask for gzip or deflate and responses are decompressed as they are
+     * read.  java.net.http leaves Content-Encoding to the caller, so this class undoes it.
+     */
+    public void setCompressionEnabled(final boolean compressionEnabled) {
+        this.compressionEnabled = compressionEnabled;
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+        return Headers;
+    }
+
+    @Override
+    public String getHeaderField(final URI uri, final String header) throws IOException {
+        final HttpRequest request = newRequest(uri, null)
+                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                .build();
+        final java.net.http.HttpResponse<byte[]> response = send(SHARED_NO_REDIRECTS, request);
+        return response.headers().firstValue(header).orElse(null);
+    }
+
+    @Override
+    public String getGetResponseText(final URI uri) throws IOException {
+        final HttpRequest request = newRequest(uri, null).GET().build();
+        final java.net.http.HttpResponse<byte[]> response = send(SHARED, request);
+        ensureOK(response);
+
+        return readToString(response);
+    }
+
+    /**
+     * java.net.http has no per-request connect timeout, so the timeout bounds the whole exchange instead.
+     */
+    @Override
+    public String getGetResponseText(final URI uri, final int timeout) throws IOException {
+        final HttpRequest request = newRequest(uri, null).GET().timeout(Duration.ofMillis(Deadline.capTimeout(timeout))).build();
+        final java.net.http.HttpResponse<byte[]> response = send(SHARED, request);
+        ensureOK(response);
+
+        return readToString(response);
+    }
+
+    @Override
+    public String getPostResponseText(final URI uri, final StringContent content) throws IOException {
+        final java.net.http.HttpResponse<byte[]> response = send(SHARED, newPost(uri, content));
+        ensureOK(response);
+
+        return readToString(response);
+    }
+
+    @Override
+    public <T> T streamGetResponse(final URI uri, final ResponseHandler<T> handler) throws IOException {
+        return stream(newRequest(uri, null).GET().build(), handler);
+    }
+
+    @Override
+    public <T> T streamGetResponse(final URI uri, final int timeout, final ResponseHandler<T> handler) throws IOException {
+        return stream(newRequest(uri, null).GET().timeout(Duration.ofMillis(Deadline.capTimeout(timeout))).build(), handler);
+    }
+
+    @Override
+    public <T> T streamPostResponse(final URI uri, final StringContent content, final ResponseHandler<T> handler)
+            throws IOException {
+        return stream(newPost(uri, content), handler);
+    }
+
+    @Override
+    public HttpResponse getPostResponse(final URI uri, final StringContent content) throws IOException {
+        final HttpResponse result = new HttpResponse();
+        final java.net.http.HttpResponse<byte[]> response = send(SHARED, newPost(uri, content));
+
+        result.status = response.statusCode();
+        if (isSuccessful(result.status)) {
+            result.responseText = readToString(response);
+        } else {
+            result.errorText = readToString(response);
+            result.retryAfter = getRetryAfter(response);
+        }
+
+        return result;
+    }
+
+    private HttpRequest newPost(final URI uri, final StringContent content) throws DeadlineExceededException {
+        return newRequest(uri, content)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(content.getBytes()))
+                .build();
+    }
+
+    /**
+     * The request timeout, which java.net.http applies until the response headers arrive, is capped by the current
+     * thread's {@link Deadline}.
+     */
+    private HttpRequest.Builder newRequest(final URI uri, final StringContent content) throws DeadlineExceededException {
+        final HttpRequest.Builder builder = HttpRequest.newBuilder(uri);
+        if (Deadline.current() != null) {
+            builder.timeout(Duration.ofMillis(Deadline.capTimeout(0)));
+        }
+        if (compressionEnabled) {
+            builder.setHeader(ContentEncoding.ACCEPT_ENCODING, ContentEncoding.SUPPORTED_ENCODINGS);
+        }
+        addHeaders(builder, Headers);
+        if (content != null) {
+            addHeaders(builder, content.Headers);
+        }
+        return builder;
+    }
+
+    private static void addHeaders(final HttpRequest.Builder builder, final Map<String, String> headers) {
+        for (final Map.Entry<String, String> entry : headers.entrySet()) {
+            if (entry.getValue() != null && !RESTRICTED_HEADERS.contains(entry.getKey())) {
+                builder.setHeader(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private static java.net.http.HttpResponse<byte[]> send(final java.net.http.HttpClient client,
+                                                          final HttpRequest request) throws IOException {
+        return send(client, request, BodyHandlers.ofByteArray());
+    }
+
+    private static <T> T stream(final HttpRequest request, final ResponseHandler<T> handler) throws IOException {
+        final java.net.http.HttpResponse<InputStream> response = send(SHARED, request, BodyHandlers.ofInputStream());
+        final InputStream body = decode(response, response.body());
+        try {
+            final int statusCode = response.statusCode();
+            if (statusCode != HttpURLConnection.HTTP_OK) {
+                final String content = IOHelper.readToString(body);
+                throw new HttpStatusException(statusCode, content, getRetryAfter(response));
+            }
+            final String contentType = response.headers().firstValue("Content-Type").orElse(null);
+            return handler.handle(HttpClientHelper.openReader(body, contentType));
+        } finally {
+            IOHelper.closeQuietly(body);
+        }
+    }
+
+    private static <T> java.net.http.HttpResponse<T> send(final java.net.http.HttpClient client,
+                                                         final HttpRequest request,
+                                                         final BodyHandler<T> bodyHandler) throws IOException {
+        try {
+            return client.send(request, bodyHandler);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            final InterruptedIOException exception = new InterruptedIOException("Interrupted while waiting for the response");
+            exception.initCause(e);
+            throw exception;
+        }
+    }
+
+    private static void ensureOK(final java.net.http.HttpResponse<byte[]> response) throws IOException {
+        final int statusCode = response.statusCode();
+        if (statusCode != HttpURLConnection.HTTP_OK) {
+            final String content = readToString(response);
+            throw new HttpStatusException(statusCode, content, getRetryAfter(response));
+        }
+    }
+
+    private static String getRetryAfter(final java.net.http.HttpResponse<?> response) {
+        return response.headers().firstValue("Retry-After").orElse(null);
+    }
+
+    private static String readToString(final java.net.http.HttpResponse<byte[]> response) throws IOException {
+        return IOHelper.readToString(decode(response, new ByteArrayInputStream(response.body())));
+    }
+
+    private static InputStream decode(final java.net.http.HttpResponse<?> response, final InputStream body) {
+        final String contentEncoding = response.headers().firstValue("Content-Encoding").orElse(null);
+        return ContentEncoding.decode(body, contentEncoding, TRANSFER_STATISTICS);
+    }
+
+    private static boolean isSuccessful(final int statusCode) {
+        return statusCode > 199 && statusCode < 300;
+    }
+}
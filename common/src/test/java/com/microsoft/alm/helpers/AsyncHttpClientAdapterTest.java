@@ -0,0 +1,103 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * A class to test {@link AsyncHttpClientAdapter}.
+ */
+public class AsyncHttpClientAdapterTest {
+
+    private static final URI TOKEN_URI = URI.create("https://login.example.com/common/oauth2/token");
+
+    private HttpClient delegate;
+    private ExecutorService executor;
+    private AsyncHttpClientAdapter cut;
+
+    @Before public void setUp() {
+        delegate = mock(HttpClient.class);
+        executor = Executors.newSingleThreadExecutor();
+        cut = new AsyncHttpClientAdapter(delegate, executor);
+    }
+
+    @After public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test public void getGetResponseText_runsOnExecutorWithCallersDeadline() throws Exception {
+        final List<Deadline> deadlinesSeen = new ArrayList<Deadline>();
+        final List<Thread> threadsSeen = new ArrayList<Thread>();
+        when(delegate.getGetResponseText(TOKEN_URI)).thenAnswer(new Answer<String>() {
+            @Override
+            public String answer(final InvocationOnMock invocation) {
+                deadlinesSeen.add(Deadline.current());
+                threadsSeen.add(Thread.currentThread());
+                return "ok";
+            }
+        });
+        final Deadline deadline = Deadline.after(60 * 1000);
+
+        final ListenableFuture<String> actual;
+        final Deadline previous = Deadline.setCurrent(deadline);
+        try {
+            actual = cut.getGetResponseText(TOKEN_URI);
+        } finally {
+            Deadline.setCurrent(previous);
+        }
+
+        Assert.assertEquals("ok", actual.get(10, TimeUnit.SECONDS));
+        Assert.assertSame(deadline, deadlinesSeen.get(0));
+        Assert.assertNotSame(Thread.currentThread(), threadsSeen.get(0));
+    }
+
+    @Test public void getGetResponseText_failsFutureWithBlockingFailure() throws Exception {
+        final IOException failure = new IOException("Connection refused");
+        when(delegate.getGetResponseText(TOKEN_URI)).thenThrow(failure);
+
+        try {
+            cut.getGetResponseText(TOKEN_URI).get(10, TimeUnit.SECONDS);
+            Assert.fail("An ExecutionException should have been thrown");
+        } catch (final ExecutionException e) {
+            Assert.assertSame(failure, e.getCause());
+        }
+    }
+
+    @Test public void getGetResponseText_cancelledBeforeStartIsSkipped() throws Exception {
+        final List<Runnable> queued = new ArrayList<Runnable>();
+        cut = new AsyncHttpClientAdapter(delegate, new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                queued.add(command);
+            }
+        });
+
+        final ListenableFuture<String> actual = cut.getGetResponseText(TOKEN_URI);
+        actual.cancel(true);
+        queued.get(0).run();
+
+        Assert.assertTrue(actual.isCancelled());
+        verify(delegate, never()).getGetResponseText(TOKEN_URI);
+    }
+}
@@ -0,0 +1,22 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class Base64HelperTest {
+
+    @Test
+    public void encode_padded() {
+        Assert.assertEquals("ZG91Z2xhcy5hZGFtczo0Mg==", Base64Helper.encode(StringHelper.UTF8GetBytes("douglas.adams:42")));
+    }
+
+    @Test
+    public void decode_roundTrip() {
+        final byte[] bytes = {0, -1, 62, 63, 127, -128, 42};
+
+        Assert.assertArrayEquals(bytes, Base64Helper.decode(Base64Helper.encode(bytes)));
+    }
+}
@@ -0,0 +1,37 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+/**
+ * A class to test {@link BoundedReader}.
+ */
+public class BoundedReaderTest {
+
+    @Test public void read_upToLimit() throws Exception {
+        final char[] buffer = new char[16];
+        final Reader cut = new BoundedReader(new StringReader("12345"), 5);
+
+        Assert.assertEquals(5, cut.read(buffer));
+        Assert.assertEquals(-1, cut.read(buffer));
+    }
+
+    @Test public void read_pastLimit() throws Exception {
+        final char[] buffer = new char[16];
+        final Reader cut = new BoundedReader(new StringReader("123456"), 5);
+
+        try {
+            cut.read(buffer);
+            Assert.fail("An IOException should have been thrown");
+        } catch (final IOException e) {
+            Assert.assertEquals("The response is larger than 5 characters.", e.getMessage());
+        }
+    }
+}
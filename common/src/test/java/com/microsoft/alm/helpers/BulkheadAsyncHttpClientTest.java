@@ -0,0 +1,70 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.concurrent.ExecutionException;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * A class to test {@link BulkheadAsyncHttpClient}.
+ */
+public class BulkheadAsyncHttpClientTest {
+
+    private static final URI TOKEN_URI = URI.create("https://login.example.com/common/oauth2/token");
+    private static final String HOST = "login.example.com:443";
+
+    private AsyncHttpClient delegate;
+    private SettableFuture<String> response;
+    private Bulkhead bulkhead;
+    private BulkheadAsyncHttpClient cut;
+
+    @Before public void setUp() {
+        delegate = mock(AsyncHttpClient.class);
+        response = SettableFuture.create();
+        when(delegate.getGetResponseText(TOKEN_URI)).thenReturn(response);
+        bulkhead = new Bulkhead(1, 0, 0);
+        cut = new BulkheadAsyncHttpClient(delegate, bulkhead);
+    }
+
+    private int inFlight() {
+        return bulkhead.getStatistics().getInFlightCallsByHost().get(HOST);
+    }
+
+    @Test public void getGetResponseText_holdsTurnUntilResponseArrives() throws Exception {
+        final ListenableFuture<String> actual = cut.getGetResponseText(TOKEN_URI);
+
+        Assert.assertEquals(1, inFlight());
+        response.set("ok");
+        Assert.assertEquals("ok", actual.get());
+        Assert.assertEquals(0, inFlight());
+    }
+
+    @Test public void getGetResponseText_failsFutureWhenRejected() throws Exception {
+        final ListenableFuture<String> first = cut.getGetResponseText(TOKEN_URI);
+
+        try {
+            cut.getGetResponseText(TOKEN_URI).get();
+            Assert.fail("An ExecutionException should have been thrown");
+        } catch (final ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof BulkheadRejectedException);
+        }
+        Assert.assertFalse(first.isDone());
+    }
+
+    @Test public void cancel_givesTurnBack() throws Exception {
+        final ListenableFuture<String> actual = cut.getGetResponseText(TOKEN_URI);
+
+        actual.cancel(true);
+
+        Assert.assertTrue(response.isCancelled());
+        Assert.assertEquals(0, inFlight());
+    }
+}
@@ -0,0 +1,93 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A class to test {@link Bulkhead}.
+ */
+public class BulkheadTest {
+
+    private static final String HOST = "login.example.com:443";
+
+    @Test public void acquire_queuesThenRejects() throws Exception {
+        final Bulkhead cut = new Bulkhead(1, 1, 5000);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            cut.acquire(HOST);
+
+            final Future<Void> queued = executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    cut.acquire(HOST);
+                    cut.release(HOST);
+                    return null;
+                }
+            });
+            while (cut.getStatistics().getQueuedCallsByHost().get(HOST) != 1) {
+                Thread.sleep(5);
+            }
+
+            try {
+                cut.acquire(HOST);
+                Assert.fail("A BulkheadRejectedException should have been thrown");
+            } catch (final BulkheadRejectedException e) {
+                Assert.assertEquals(HOST, e.getHost());
+            }
+
+            cut.release(HOST);
+            queued.get(5, TimeUnit.SECONDS);
+            final Bulkhead.Statistics statistics = cut.getStatistics();
+            Assert.assertEquals(1, statistics.getRejectedCalls());
+            Assert.assertEquals(Integer.valueOf(0), statistics.getInFlightCallsByHost().get(HOST));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test public void acquire_rejectsAfterWait() throws Exception {
+        final Bulkhead cut = new Bulkhead(1, 10, 50);
+        cut.acquire(HOST);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<Void> waiting = executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    cut.acquire(HOST);
+                    return null;
+                }
+            });
+            waiting.get(5, TimeUnit.SECONDS);
+            Assert.fail("The wait should have ended in a rejection");
+        } catch (final ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof BulkheadRejectedException);
+            Assert.assertEquals(1, cut.getStatistics().getRejectedCalls());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test public void acquire_waitEndsAtDeadline() throws Exception {
+        final Bulkhead cut = new Bulkhead(1, 10, 60 * 1000);
+        cut.acquire(HOST);
+        final Deadline previous = Deadline.setCurrent(Deadline.after(50));
+        try {
+            cut.acquire(HOST);
+            Assert.fail("The wait should have ended at the deadline");
+        } catch (final DeadlineExceededException expected) {
+            Assert.assertEquals(0, cut.getStatistics().getRejectedCalls());
+        } finally {
+            Deadline.setCurrent(previous);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A class to test {@link ContentEncoding}.
+ */
+public class ContentEncodingTest {
+
+    private static final String TEXT = "{\"count\":2,\"value\":[{\"accountName\":\"a\"},{\"accountName\":\"b\"}]}";
+
+    static byte[] gzip(final String text) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final GZIPOutputStream out = new GZIPOutputStream(bytes);
+        out.write(text.getBytes("UTF-8"));
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] deflate(final String text, final boolean nowrap) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DeflaterOutputStream out = new DeflaterOutputStream(bytes, new Deflater(Deflater.DEFAULT_COMPRESSION, nowrap));
+        out.write(text.getBytes("UTF-8"));
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static String read(final byte[] body, final String contentEncoding, final TransferStatistics statistics)
+            throws IOException {
+        final InputStream decoded = ContentEncoding.decode(new ByteArrayInputStream(body), contentEncoding, statistics);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        IOHelper.copyStream(decoded, bytes);
+        decoded.close();
+        return bytes.toString("UTF-8");
+    }
+
+    @Test public void decode_gzip() throws Exception {
+        final TransferStatistics statistics = new TransferStatistics();
+        final byte[] body = gzip(TEXT);
+
+        Assert.assertEquals(TEXT, read(body, "GZIP", statistics));
+        Assert.assertEquals(1, statistics.getCompressedResponses());
+        Assert.assertEquals(body.length, statistics.getBytesReceived());
+        Assert.assertEquals(TEXT.length(), statistics.getBytesDecoded());
+    }
+
+    @Test public void decode_zlibAndRawDeflate() throws Exception {
+        final TransferStatistics statistics = new TransferStatistics();
+
+        Assert.assertEquals(TEXT, read(deflate(TEXT, false), "deflate", statistics));
+        Assert.assertEquals(TEXT, read(deflate(TEXT, true), "deflate", statistics));
+        Assert.assertEquals(2, statistics.getCompressedResponses());
+    }
+
+    @Test public void decode_identityAndEmptyBodies() throws Exception {
+        final TransferStatistics statistics = new TransferStatistics();
+
+        Assert.assertEquals(TEXT, read(TEXT.getBytes("UTF-8"), null, statistics));
+        Assert.assertEquals("", read(new byte[0], "gzip", statistics));
+        Assert.assertEquals(2, statistics.getResponses());
+        Assert.assertEquals(TEXT.length(), statistics.getBytesReceived());
+        Assert.assertEquals(TEXT.length(), statistics.getBytesDecoded());
+    }
+}
@@ -0,0 +1,51 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * A class to test {@link Deadline}.
+ */
+public class DeadlineTest {
+
+    @After public void tearDown() {
+        Deadline.setCurrent(null);
+    }
+
+    @Test public void capTimeout_withoutDeadline() throws Exception {
+        Assert.assertEquals(0, Deadline.capTimeout(0));
+        Assert.assertEquals(15000, Deadline.capTimeout(15000));
+    }
+
+    @Test public void capTimeout_withDeadline() throws Exception {
+        Deadline.setCurrent(Deadline.after(5000));
+
+        Assert.assertEquals(1000, Deadline.capTimeout(1000));
+        final int capped = Deadline.capTimeout(60000);
+        Assert.assertTrue(capped > 0 && capped <= 5000);
+        final int unbounded = Deadline.capTimeout(0);
+        Assert.assertTrue(unbounded > 0 && unbounded <= 5000);
+    }
+
+    @Test(expected = DeadlineExceededException.class)
+    public void capTimeout_afterDeadline() throws Exception {
+        Deadline.setCurrent(Deadline.after(0));
+
+        Deadline.capTimeout(15000);
+    }
+
+    @Test public void setCurrent_returnsPrevious() throws Exception {
+        final Deadline outer = Deadline.after(10000);
+        Deadline.setCurrent(outer);
+
+        Assert.assertSame(outer, Deadline.currentOrAfter(1));
+        final Deadline previous = Deadline.setCurrent(Deadline.after(1000));
+        Assert.assertSame(outer, previous);
+        Deadline.setCurrent(previous);
+        Assert.assertSame(outer, Deadline.current());
+    }
+}
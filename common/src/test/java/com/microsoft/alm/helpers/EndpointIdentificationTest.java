@@ -0,0 +1,26 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+
+/**
+ * A class to test {@link EndpointIdentification}.
+ */
+public class EndpointIdentificationTest {
+
+    @Test public void enable_asksTheHandshakeToCheckTheHost() throws Exception {
+        final SSLEngine engine = SSLContext.getDefault().createSSLEngine("login.microsoftonline.com", 443);
+        engine.setUseClientMode(true);
+
+        EndpointIdentification.enable(engine);
+
+        Assert.assertTrue(EndpointIdentification.isSupported());
+        Assert.assertEquals("HTTPS", engine.getSSLParameters().getEndpointIdentificationAlgorithm());
+    }
+}
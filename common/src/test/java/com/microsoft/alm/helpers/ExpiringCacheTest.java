@@ -0,0 +1,67 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * A class to test {@link ExpiringCache}.
+ */
+public class ExpiringCacheTest {
+
+    private static class ManualCache extends ExpiringCache<String, String> {
+        long now = 1000;
+
+        ManualCache(final int maxEntries) {
+            super(100, 10, maxEntries);
+        }
+
+        @Override
+        long currentTimeMillis() {
+            return now;
+        }
+    }
+
+    @Test public void get_expiresValuesAndNegativeResultsSeparately() {
+        final ManualCache cut = new ManualCache(10);
+        cut.put("tenant", "value");
+        cut.put("none", null);
+
+        Assert.assertEquals("value", cut.get("tenant").getValue());
+        Assert.assertNotNull(cut.get("none"));
+        Assert.assertNull(cut.get("none").getValue());
+        Assert.assertNull(cut.get("missing"));
+
+        cut.now += 10;
+        Assert.assertNull(cut.get("none"));
+        Assert.assertEquals("value", cut.get("tenant").getValue());
+
+        cut.now += 90;
+        Assert.assertNull(cut.get("tenant"));
+        Assert.assertEquals(0, cut.size());
+    }
+
+    @Test public void put_makesRoomWhenFull() {
+        final ManualCache cut = new ManualCache(2);
+        cut.put("old", null);
+        cut.put("a", "a");
+        cut.now += 50;
+
+        cut.put("b", "b");
+
+        Assert.assertEquals(2, cut.size());
+        Assert.assertNull(cut.get("old"));
+        Assert.assertEquals("b", cut.get("b").getValue());
+    }
+
+    @Test public void put_ignoresEntriesThatAlreadyExpired() {
+        final ManualCache cut = new ManualCache(10);
+
+        cut.put("stale", "value", cut.now);
+
+        Assert.assertNull(cut.get("stale"));
+        Assert.assertEquals(0, cut.getEntries().size());
+    }
+}
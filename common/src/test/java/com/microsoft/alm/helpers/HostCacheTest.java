@@ -0,0 +1,75 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.UUID;
+
+/**
+ * A class to test {@link HostCache}.
+ */
+public class HostCacheTest {
+
+    private static final UUID TENANT = UUID.fromString("d1a9c4a6-6f2d-4c1b-9a4e-5b2f3c6d7e8f");
+
+    private static class TenantsByHost extends HostCache<UUID> {
+        TenantsByHost(final File snapshotFile) {
+            super("tenant id", 60 * 1000L, 10 * 1000L,
+                    snapshotFile == null ? null : ExpiringCacheSnapshot.ofUuids(snapshotFile, "Tenants"));
+        }
+    }
+
+    @Test public void get_isKeyedByHostAndPort() {
+        final TenantsByHost cut = new TenantsByHost(null);
+
+        cut.put(URI.create("https://aad.visualstudio.com/DefaultCollection"), TENANT);
+
+        Assert.assertEquals(TENANT, cut.get(URI.create("https://AAD.visualstudio.com/")));
+        Assert.assertNull(cut.get(URI.create("https://aad.visualstudio.com:8443/")));
+        Assert.assertNull(cut.getEntry(URI.create("https://other.visualstudio.com")));
+    }
+
+    @Test public void getEntry_tellsNegativeResultFromMiss() {
+        final TenantsByHost cut = new TenantsByHost(null);
+        final URI account = URI.create("https://msa.visualstudio.com");
+
+        cut.put(account, null);
+
+        Assert.assertNotNull(cut.getEntry(account));
+        Assert.assertNull(cut.getEntry(account).getValue());
+    }
+
+    @Test public void invalidate_forgetsHost() {
+        final TenantsByHost cut = new TenantsByHost(null);
+        final URI account = URI.create("https://aad.visualstudio.com");
+        cut.put(account, TENANT);
+
+        cut.invalidate(account);
+
+        Assert.assertNull(cut.getEntry(account));
+    }
+
+    @Test public void snapshot_survivesRestart() throws IOException {
+        final File snapshot = File.createTempFile("HostCacheTest", ".properties");
+        snapshot.delete();
+        try {
+            final TenantsByHost first = new TenantsByHost(snapshot);
+            first.put(URI.create("https://aad.visualstudio.com"), TENANT);
+            first.put(URI.create("https://msa.visualstudio.com"), null);
+            Assert.assertTrue(snapshot.isFile());
+
+            final TenantsByHost second = new TenantsByHost(snapshot);
+
+            Assert.assertEquals(TENANT, second.get(URI.create("https://aad.visualstudio.com")));
+            Assert.assertNotNull(second.getEntry(URI.create("https://msa.visualstudio.com")));
+        } finally {
+            snapshot.delete();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.zip.GZIPOutputStream;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.any;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+
+/**
+ * A class to test {@link Http2Client}.  On Java 11 and later the build runs it twice, once against each version of
+ * the class.
+ */
+public class Http2ClientTest {
+
+    @Rule public WireMockRule wireMockRule = new WireMockRule(0);
+
+    private Http2Client cut;
+
+    @Before public void setUp() {
+        cut = new Http2Client("test-agent");
+    }
+
+    private URI uri(final String path) {
+        return URI.create("http://localhost:" + wireMockRule.port() + path);
+    }
+
+    @Test public void isMultiplexing_onlyInJava11Version() {
+        // set by the run against the Java 11 version
+        final boolean java11Version = Boolean.getBoolean("http2ClientTest.multiplexing");
+
+        Assert.assertEquals(java11Version, Http2Client.isMultiplexing());
+    }
+
+    @Test public void getGetResponseText_sendsHeaders() throws Exception {
+        stubFor(get(urlEqualTo("/_apis/connectionData")).withHeader("User-Agent", equalTo("test-agent"))
+                .withHeader("Authorization", equalTo("Bearer token"))
+                .willReturn(aResponse().withStatus(200).withBody("{}")));
+        cut.getHeaders().put("Authorization", "Bearer token");
+
+        final String actual = cut.getGetResponseText(uri("/_apis/connectionData"), 5000);
+
+        Assert.assertEquals("{}" + Environment.NewLine, actual);
+    }
+
+    @Test public void getGetResponseText_failsWithStatus() throws Exception {
+        stubFor(get(urlEqualTo("/denied")).willReturn(aResponse().withStatus(401).withBody("denied")));
+
+        try {
+            cut.getGetResponseText(uri("/denied"));
+            Assert.fail("An HttpStatusException should have been thrown");
+        } catch (final HttpStatusException e) {
+            Assert.assertEquals(401, e.getStatusCode());
+        }
+    }
+
+    @Test public void getPostResponse_reportsFailureWithRetryAfter() throws Exception {
+        stubFor(post(urlEqualTo("/oauth2/token")).willReturn(aResponse().withStatus(429)
+                .withHeader("Retry-After", "5").withBody("slow down")));
+
+        final HttpResponse actual = cut.getPostResponse(uri("/oauth2/token"), StringContent.createJson("{}"));
+
+        Assert.assertEquals(429, actual.status);
+        Assert.assertEquals("slow down" + Environment.NewLine, actual.errorText);
+        Assert.assertEquals("5", actual.retryAfter);
+        verify(postRequestedFor(urlEqualTo("/oauth2/token")).withRequestBody(equalTo("{}")));
+    }
+
+    @Test public void getHeaderField_doesNotFollowRedirects() throws Exception {
+        stubFor(any(urlEqualTo("/tenant")).willReturn(aResponse().withStatus(302)
+                .withHeader("Location", "https://login.example.com/")));
+
+        final String actual = cut.getHeaderField(uri("/tenant"), "Location");
+
+        Assert.assertEquals("https://login.example.com/", actual);
+    }
+
+    @Test public void streamGetResponse_decompresses() throws Exception {
+        stubFor(get(urlEqualTo("/compressed")).willReturn(aResponse().withStatus(200)
+                .withHeader("Content-Encoding", "gzip").withHeader("Content-Type", "application/json")
+                .withBody(gzip("{ \"instanceId\" : \"id\" }"))));
+
+        final String actual = cut.streamGetResponse(uri("/compressed"), HttpClientHelper.jsonStringField("instanceId"));
+
+        Assert.assertEquals("id", actual);
+        verify(getRequestedFor(urlEqualTo("/compressed")).withHeader(ContentEncoding.ACCEPT_ENCODING,
+                equalTo(ContentEncoding.SUPPORTED_ENCODINGS)));
+    }
+
+    private static byte[] gzip(final String text) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+        gzip.write(text.getBytes("UTF-8"));
+        gzip.close();
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,70 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+/**
+ * A class to test {@link JsonFieldExtractor}.
+ */
+public class JsonFieldExtractorTest {
+
+    private static String find(final String json, final String name) throws IOException {
+        return JsonFieldExtractor.findString(new StringReader(json), name);
+    }
+
+    @Test public void findString_nestedAndCaseInsensitive() throws Exception {
+        final String json = "{\"count\":1,\"value\":[{\"Location\" : \"https://example.com/\"}]}";
+
+        Assert.assertEquals("https://example.com/", find(json, "location"));
+    }
+
+    @Test public void findString_skipsValuesThatLookLikeNames() throws Exception {
+        final String json = "{\"name\":\"id\",\"tags\":[\"id\",\"x\"],\"id\":\"42\"}";
+
+        Assert.assertEquals("42", find(json, "id"));
+    }
+
+    @Test public void findString_skipsEmptyAndNonStringValues() throws Exception {
+        final String json = "{\"token\":null,\"inner\":{\"token\":\"\"},\"token\":\"abc\"}";
+
+        Assert.assertEquals("abc", find(json, "token"));
+    }
+
+    @Test public void findString_unescapes() throws Exception {
+        final String json = "{\"key\\\"\":\"no\",\"key\":\"a\\\"b\\\\c\\/d\\u0041\"}";
+
+        Assert.assertEquals("a\"b\\c/dA", find(json, "key"));
+    }
+
+    @Test public void findString_missingOrTruncated() throws Exception {
+        Assert.assertNull(find("{\"other\":\"value\"}", "id"));
+        Assert.assertNull(find("{\"id\":\"unterminated", "id"));
+        Assert.assertNull(find("", "id"));
+    }
+
+    @Test public void findString_stopsReadingOnceFound() throws Exception {
+        final String json = "{\"instanceId\":\"abc\",";
+        final Reader reader = new StringReader(json) {
+            private int remaining = json.length();
+
+            @Override
+            public int read(final char[] buffer, final int offset, final int length) throws IOException {
+                if (remaining == 0) {
+                    throw new IOException("Read past the member");
+                }
+                final int count = super.read(buffer, offset, Math.min(length, remaining));
+                remaining -= count;
+                return count;
+            }
+        };
+
+        Assert.assertEquals("abc", JsonFieldExtractor.findString(reader, "instanceId"));
+    }
+}
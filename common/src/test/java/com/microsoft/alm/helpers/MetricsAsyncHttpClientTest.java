@@ -0,0 +1,111 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+
+/**
+ * A class to test {@link MetricsAsyncHttpClient}.
+ */
+public class MetricsAsyncHttpClientTest {
+
+    @Rule public WireMockRule wireMockRule = new WireMockRule(0);
+
+    private final List<HttpCallRecord> records = Collections.synchronizedList(new ArrayList<HttpCallRecord>());
+    private NioHttpTransport transport;
+    private HttpMetrics metrics;
+    private MetricsAsyncHttpClient cut;
+
+    @Before public void setUp() throws IOException {
+        transport = new NioHttpTransport();
+        metrics = new HttpMetrics(Collections.<HttpMetricsSink>emptyList());
+        metrics.addSink(new HttpMetricsSink() {
+            @Override
+            public void onCallCompleted(final HttpCallRecord call) {
+                records.add(call);
+            }
+        });
+        cut = new MetricsAsyncHttpClient(new NioHttpClient(transport, "test-agent"), metrics);
+    }
+
+    @After public void tearDown() {
+        transport.close();
+    }
+
+    private URI uri(final String path) {
+        return URI.create("http://localhost:" + wireMockRule.port() + path);
+    }
+
+    @Test public void getGetResponseText_recordsSuccess() throws Exception {
+        stubFor(get(urlEqualTo("/account/_apis/connectionData"))
+                .willReturn(aResponse().withStatus(200).withBody("{}")));
+
+        cut.getGetResponseText(uri("/account/_apis/connectionData")).get(10, TimeUnit.SECONDS);
+
+        Assert.assertEquals(1, records.size());
+        final HttpCallRecord record = records.get(0);
+        Assert.assertEquals(HttpEndpoint.CONNECTION_DATA_GET, record.getEndpoint());
+        Assert.assertEquals(200, record.getStatusCode());
+        Assert.assertEquals(1, record.getAttempt());
+        Assert.assertNull(record.getFailure());
+    }
+
+    @Test public void getPostResponseText_recordsStatusOfFailure() throws Exception {
+        stubFor(post(urlEqualTo("/common/oauth2/token"))
+                .willReturn(aResponse().withStatus(400).withBody("bad request")));
+
+        try {
+            cut.getPostResponseText(uri("/common/oauth2/token"), StringContent.createJson("{}"))
+                    .get(10, TimeUnit.SECONDS);
+            Assert.fail("An ExecutionException should have been thrown");
+        } catch (final ExecutionException expected) {
+            // the status still reaches the metrics
+        }
+
+        final HttpCallRecord record = records.get(0);
+        Assert.assertEquals(HttpEndpoint.TOKEN_POST, record.getEndpoint());
+        Assert.assertEquals(400, record.getStatusCode());
+        Assert.assertEquals(2, record.getRequestBytes());
+        Assert.assertTrue(record.getFailure() instanceof HttpStatusException);
+    }
+
+    @Test public void retriedCalls_recordEveryAttempt() throws Exception {
+        stubFor(get(urlEqualTo("/_apis/accounts")).inScenario("flaky").whenScenarioStateIs(Scenario.STARTED)
+                .willReturn(aResponse().withStatus(503).withHeader("Retry-After", "0"))
+                .willSetStateTo("up"));
+        stubFor(get(urlEqualTo("/_apis/accounts")).inScenario("flaky").whenScenarioStateIs("up")
+                .willReturn(aResponse().withStatus(200).withBody("[]")));
+        final RetryingAsyncHttpClient retrying = new RetryingAsyncHttpClient(cut, new CircuitBreaker());
+        retrying.setBackoff(1, 2);
+
+        retrying.getGetResponseText(uri("/_apis/accounts")).get(10, TimeUnit.SECONDS);
+
+        Assert.assertEquals(2, records.size());
+        Assert.assertEquals(503, records.get(0).getStatusCode());
+        Assert.assertEquals(1, records.get(0).getAttempt());
+        Assert.assertEquals(200, records.get(1).getStatusCode());
+        Assert.assertEquals(2, records.get(1).getAttempt());
+        Assert.assertEquals(1, metrics.getStatistics(HttpEndpoint.ACCOUNTS_GET).getRetries());
+    }
+}
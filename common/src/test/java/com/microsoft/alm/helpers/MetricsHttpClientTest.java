@@ -0,0 +1,176 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+
+/**
+ * A class to test {@link MetricsHttpClient}, {@link HttpMetrics} and {@link HttpEndpoint}.
+ */
+public class MetricsHttpClientTest {
+
+    @Rule public WireMockRule wireMockRule = new WireMockRule(0);
+
+    private final List<HttpCallRecord> records = new ArrayList<HttpCallRecord>();
+    private HttpMetrics metrics;
+    private MetricsHttpClient cut;
+
+    @Before public void setUp() {
+        metrics = new HttpMetrics(Collections.<HttpMetricsSink>emptyList());
+        metrics.addSink(new HttpMetricsSink() {
+            @Override
+            public void onCallCompleted(final HttpCallRecord call) {
+                records.add(call);
+            }
+        });
+        cut = new MetricsHttpClient(new HttpClientImpl("test-agent"), metrics);
+    }
+
+    private URI uri(final String path) {
+        return URI.create("http://localhost:" + wireMockRule.port() + path);
+    }
+
+    @Test public void getGetResponseText_recordsSuccess() throws Exception {
+        stubFor(get(urlEqualTo("/account/_apis/connectionData"))
+                .willReturn(aResponse().withStatus(200).withBody("{}")));
+
+        cut.getGetResponseText(uri("/account/_apis/connectionData"));
+
+        Assert.assertEquals(1, records.size());
+        final HttpCallRecord record = records.get(0);
+        Assert.assertEquals(HttpEndpoint.CONNECTION_DATA_GET, record.getEndpoint());
+        Assert.assertEquals(200, record.getStatusCode());
+        Assert.assertEquals(1, record.getAttempt());
+        Assert.assertNull(record.getFailure());
+        final HttpMetrics.EndpointStatistics statistics = metrics.getStatistics(HttpEndpoint.CONNECTION_DATA_GET);
+        Assert.assertEquals(1, statistics.getLatency().getCount());
+        Assert.assertEquals(Long.valueOf(1), statistics.getStatusCodes().get(200));
+    }
+
+    @Test public void streamPostResponse_recordsStatusOfFailure() throws Exception {
+        stubFor(post(urlEqualTo("/common/oauth2/token"))
+                .willReturn(aResponse().withStatus(400).withBody("bad request")));
+
+        try {
+            cut.streamPostResponse(uri("/common/oauth2/token"), StringContent.createJson("{}"),
+                    HttpClientHelper.IGNORE_BODY);
+            Assert.fail("An HttpStatusException should have been thrown");
+        } catch (final HttpStatusException expected) {
+            // the status still reaches the metrics
+        }
+
+        final HttpCallRecord record = records.get(0);
+        Assert.assertEquals(HttpEndpoint.TOKEN_POST, record.getEndpoint());
+        Assert.assertEquals(400, record.getStatusCode());
+        Assert.assertEquals(2, record.getRequestBytes());
+        Assert.assertTrue(record.getFailure() instanceof HttpStatusException);
+        Assert.assertEquals(0, metrics.getStatistics(HttpEndpoint.TOKEN_POST).getFailures());
+    }
+
+    @Test public void retriedCalls_recordEveryAttempt() throws Exception {
+        stubFor(get(urlEqualTo("/_apis/accounts")).inScenario("flaky").whenScenarioStateIs(Scenario.STARTED)
+                .willReturn(aResponse().withStatus(503).withHeader("Retry-After", "0"))
+                .willSetStateTo("up"));
+        stubFor(get(urlEqualTo("/_apis/accounts")).inScenario("flaky").whenScenarioStateIs("up")
+                .willReturn(aResponse().withStatus(200).withBody("[]")));
+        final RetryingHttpClient retrying = new RetryingHttpClient(cut, new CircuitBreaker());
+        retrying.setBackoff(1, 2);
+
+        retrying.getGetResponseText(uri("/_apis/accounts"));
+
+        Assert.assertEquals(2, records.size());
+        Assert.assertEquals(503, records.get(0).getStatusCode());
+        Assert.assertEquals(1, records.get(0).getAttempt());
+        Assert.assertEquals(200, records.get(1).getStatusCode());
+        Assert.assertEquals(2, records.get(1).getAttempt());
+        Assert.assertEquals(1, metrics.getStatistics(HttpEndpoint.ACCOUNTS_GET).getRetries());
+    }
+
+    @Test public void retriedCalls_attemptPassesThroughOtherDecorators() throws Exception {
+        stubFor(get(urlEqualTo("/_apis/accounts")).inScenario("flaky").whenScenarioStateIs(Scenario.STARTED)
+                .willReturn(aResponse().withStatus(503).withHeader("Retry-After", "0"))
+                .willSetStateTo("up"));
+        stubFor(get(urlEqualTo("/_apis/accounts")).inScenario("flaky").whenScenarioStateIs("up")
+                .willReturn(aResponse().withStatus(200).withBody("[]")));
+        final RetryingHttpClient retrying =
+                new RetryingHttpClient(new BulkheadHttpClient(cut, new Bulkhead()), new CircuitBreaker());
+        retrying.setBackoff(1, 2);
+
+        retrying.getGetResponseText(uri("/_apis/accounts"));
+        cut.getGetResponseText(uri("/_apis/accounts"));
+
+        Assert.assertEquals(3, records.size());
+        Assert.assertEquals(1, records.get(0).getAttempt());
+        Assert.assertEquals(2, records.get(1).getAttempt());
+        Assert.assertEquals("calls outside the retrying client are first attempts", 1, records.get(2).getAttempt());
+    }
+
+    @Test public void brokenSink_doesNotFailTheCall() throws Exception {
+        stubFor(get(urlEqualTo("/ok")).willReturn(aResponse().withStatus(200).withBody("ok")));
+        metrics.addSink(new HttpMetricsSink() {
+            @Override
+            public void onCallCompleted(final HttpCallRecord call) {
+                throw new IllegalStateException("broken");
+            }
+        });
+
+        Assert.assertEquals("ok" + Environment.NewLine, cut.getGetResponseText(uri("/ok")));
+        Assert.assertEquals(HttpEndpoint.OTHER, records.get(0).getEndpoint());
+    }
+
+    @Test public void classify() {
+        final String vsts = "https://account.visualstudio.com";
+        final String identity = "https://account.vssps.visualstudio.com";
+        final String aad = "https://login.microsoftonline.com/common/oauth2";
+        Assert.assertEquals(HttpEndpoint.TENANT_HEAD, HttpEndpoint.classify("HEAD", URI.create(vsts)));
+        Assert.assertEquals(HttpEndpoint.TOKEN_POST, HttpEndpoint.classify("POST", URI.create(aad + "/token")));
+        Assert.assertEquals(HttpEndpoint.DEVICE_CODE_POST,
+                HttpEndpoint.classify("POST", URI.create(aad + "/devicecode")));
+        Assert.assertEquals(HttpEndpoint.CONNECTION_DATA_GET,
+                HttpEndpoint.classify("GET", URI.create(vsts + "/_apis/connectionData?connectOptions=0")));
+        Assert.assertEquals(HttpEndpoint.LOCATION_SERVICE_GET, HttpEndpoint.classify("GET",
+                URI.create(vsts + "/_apis/ServiceDefinitions/LocationService2/951917AC-A960-4999-8464-E3F0AA25B381")));
+        Assert.assertEquals(HttpEndpoint.SESSION_TOKENS_POST, HttpEndpoint.classify("POST",
+                URI.create(identity + "/_apis/token/sessiontokens?api-version=1.0&tokentype=compact")));
+        Assert.assertEquals(HttpEndpoint.PROFILE_GET,
+                HttpEndpoint.classify("GET", URI.create("https://app.vssps.visualstudio.com/_apis/profile/profiles/me")));
+        Assert.assertEquals(HttpEndpoint.ACCOUNTS_GET,
+                HttpEndpoint.classify("GET", URI.create("https://app.vssps.visualstudio.com/_apis/accounts?memberId=1")));
+        Assert.assertEquals(HttpEndpoint.OTHER, HttpEndpoint.classify("GET", URI.create(vsts + "/_apis/projects")));
+    }
+
+    @Test public void latencyHistogram_percentiles() throws IOException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 98; i++) {
+            histogram.record(3 * 1000000L);
+        }
+        histogram.record(400 * 1000000L);
+        histogram.record(70 * 1000 * 1000000L);
+
+        final LatencyHistogram.Snapshot snapshot = histogram.getSnapshot();
+
+        Assert.assertEquals(100, snapshot.getCount());
+        Assert.assertEquals(5, snapshot.getPercentileMillis(50));
+        Assert.assertEquals(500, snapshot.getPercentileMillis(99));
+        Assert.assertEquals(70 * 1000, snapshot.getPercentileMillis(100));
+        Assert.assertEquals(70 * 1000, snapshot.getMaxMillis());
+    }
+}
@@ -0,0 +1,182 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.any;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+
+/**
+ * A class to test {@link NioHttpClient} and {@link BlockingHttpClientAdapter}.
+ */
+public class NioHttpClientTest {
+
+    @Rule public WireMockRule wireMockRule = new WireMockRule(0);
+
+    private NioHttpTransport transport;
+    private NioHttpClient cut;
+
+    @Before public void setUp() throws IOException {
+        transport = new NioHttpTransport();
+        cut = new NioHttpClient(transport, "test-agent");
+    }
+
+    @After public void tearDown() {
+        transport.close();
+    }
+
+    private URI uri(final String path) {
+        return URI.create("http://localhost:" + wireMockRule.port() + path);
+    }
+
+    @Test public void getGetResponseText_manyConcurrentRequests() throws Exception {
+        stubFor(get(urlEqualTo("/data")).withHeader("User-Agent", equalTo("test-agent"))
+                .willReturn(aResponse().withStatus(200).withBody("hello")));
+
+        final List<ListenableFuture<String>> futures = new ArrayList<ListenableFuture<String>>();
+        for (int i = 0; i < 50; i++) {
+            futures.add(cut.getGetResponseText(uri("/data")));
+        }
+
+        for (final ListenableFuture<String> future : futures) {
+            Assert.assertEquals("hello" + Environment.NewLine, future.get(10, TimeUnit.SECONDS));
+        }
+        Assert.assertTrue(transport.getConnectionsReused() + transport.getConnectionsCreated() == 50);
+    }
+
+    @Test public void getGetResponseText_sequentialRequestsReuseConnection() throws Exception {
+        stubFor(get(urlEqualTo("/data")).willReturn(aResponse().withStatus(200).withBody("hello")));
+
+        for (int i = 0; i < 3; i++) {
+            cut.getGetResponseText(uri("/data")).get(10, TimeUnit.SECONDS);
+        }
+
+        Assert.assertEquals(1, transport.getConnectionsCreated());
+        Assert.assertEquals(2, transport.getConnectionsReused());
+    }
+
+    @Test public void getGetResponseText_callbackReceivesFailure() throws Exception {
+        stubFor(get(urlEqualTo("/missing")).willReturn(aResponse().withStatus(404).withBody("not here")));
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        cut.getGetResponseText(uri("/missing")).addCallback(new Callback<String>() {
+            @Override
+            public void onSuccess(final String result) {
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(final Throwable throwable) {
+                failure.set(throwable);
+                latch.countDown();
+            }
+        });
+
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        Assert.assertTrue(failure.get() instanceof IOException);
+        Assert.assertEquals("HTTP request failed with code 404: not here" + Environment.NewLine,
+                failure.get().getMessage());
+    }
+
+    @Test public void getGetResponseText_readTimeout() throws Exception {
+        stubFor(get(urlEqualTo("/slow")).willReturn(aResponse().withStatus(200).withFixedDelay(2000)));
+        transport.setReadTimeout(200);
+
+        try {
+            cut.getGetResponseText(uri("/slow")).get(10, TimeUnit.SECONDS);
+            Assert.fail("The request should have timed out");
+        } catch (final ExecutionException e) {
+            Assert.assertEquals("Read timed out", e.getCause().getMessage());
+        }
+    }
+
+    @Test public void getGetResponseText_cancelClosesConnection() throws Exception {
+        stubFor(get(urlEqualTo("/slow")).willReturn(aResponse().withStatus(200).withFixedDelay(5000)));
+        final ListenableFuture<String> future = cut.getGetResponseText(uri("/slow"));
+        final long giveUp = System.currentTimeMillis() + 5000;
+        while (transport.getOpenConnections() == 0 && System.currentTimeMillis() < giveUp) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, transport.getOpenConnections());
+
+        Assert.assertTrue(future.cancel(true));
+
+        while (transport.getOpenConnections() > 0 && System.currentTimeMillis() < giveUp) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(0, transport.getOpenConnections());
+        Assert.assertTrue(future.isCancelled());
+    }
+
+    @Test public void responseParser_declaredLengthTooLarge() throws Exception {
+        final NioHttpTransport.ResponseParser parser = new NioHttpTransport.ResponseParser("GET", 1024);
+        final byte[] head = "HTTP/1.1 200 OK\r\nContent-Length: 2048\r\n\r\n".getBytes("US-ASCII");
+
+        try {
+            parser.feed(head, 0, head.length);
+            Assert.fail("A ProtocolException should have been thrown");
+        } catch (final ProtocolException e) {
+            Assert.assertEquals("Response exceeds 1024 bytes", e.getMessage());
+        }
+    }
+
+    @Test public void responseParser_bodyTooLarge() throws Exception {
+        final NioHttpTransport.ResponseParser parser = new NioHttpTransport.ResponseParser("GET", 1024);
+        final byte[] head = "HTTP/1.1 200 OK\r\nConnection: close\r\n\r\n".getBytes("US-ASCII");
+        final byte[] chunk = new byte[256];
+        parser.feed(head, 0, head.length);
+
+        try {
+            for (int i = 0; i < 4; i++) {
+                parser.feed(chunk, 0, chunk.length);
+            }
+            Assert.fail("A ProtocolException should have been thrown");
+        } catch (final ProtocolException e) {
+            Assert.assertEquals("Response exceeds 1024 bytes", e.getMessage());
+        }
+        Assert.assertFalse(parser.isComplete());
+    }
+
+    @Test public void blockingAdapter_behavesLikeBlockingClient() throws Exception {
+        stubFor(post(urlEqualTo("/token")).willReturn(aResponse().withStatus(400).withBody("bad")));
+        stubFor(any(urlEqualTo("/tenant")).willReturn(aResponse().withStatus(401)
+                .withHeader("X-VSS-ResourceTenant", "tenant")));
+        final HttpClient adapter = new BlockingHttpClientAdapter(cut);
+
+        final HttpResponse response = adapter.getPostResponse(uri("/token"), StringContent.createJson("{}"));
+        final String tenant = adapter.getHeaderField(uri("/tenant"), "X-VSS-ResourceTenant");
+
+        Assert.assertEquals(400, response.status);
+        Assert.assertEquals("bad" + Environment.NewLine, response.errorText);
+        Assert.assertEquals("tenant", tenant);
+        try {
+            adapter.getPostResponseText(uri("/token"), StringContent.createJson("{}"));
+            Assert.fail("An IOException should have been thrown");
+        } catch (final IOException e) {
+            Assert.assertEquals("HTTP request failed with code 400: bad" + Environment.NewLine, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,242 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.any;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+
+/**
+ * A class to test {@link PooledHttpClient}.
+ */
+public class PooledHttpClientTest {
+
+    @Rule public WireMockRule wireMockRule = new WireMockRule(0);
+
+    private HttpConnectionPool pool;
+    private PooledHttpClient cut;
+
+    @Before public void setUp() {
+        pool = new HttpConnectionPool(2, 30 * 1000L);
+        cut = new PooledHttpClient(pool, "test-agent");
+    }
+
+    @After public void tearDown() {
+        pool.shutdown();
+    }
+
+    private URI uri(final String path) {
+        return URI.create("http://localhost:" + wireMockRule.port() + path);
+    }
+
+    @Test public void getGetResponseText_reusesConnection() throws Exception {
+        stubFor(get(urlEqualTo("/data")).willReturn(aResponse().withStatus(200).withBody("hello")));
+
+        for (int i = 0; i < 3; i++) {
+            final String actual = cut.getGetResponseText(uri("/data"));
+            Assert.assertEquals("hello" + Environment.NewLine, actual);
+        }
+
+        final HttpConnectionPool.Statistics statistics = pool.getStatistics();
+        Assert.assertEquals(1, statistics.getConnectionsCreated());
+        Assert.assertEquals(2, statistics.getConnectionsReused());
+        Assert.assertEquals(0, statistics.getLeasedConnections());
+        Assert.assertEquals(1, statistics.getIdleConnections());
+        verify(3, getRequestedFor(urlEqualTo("/data")).withHeader("User-Agent", equalTo("test-agent")));
+    }
+
+    @Test public void getGetResponseText_failureHasSameMessageAsHttpClientImpl() throws Exception {
+        stubFor(get(urlEqualTo("/missing")).willReturn(aResponse().withStatus(404).withBody("not here")));
+
+        try {
+            cut.getGetResponseText(uri("/missing"));
+            Assert.fail("An IOException should have been thrown");
+        } catch (final IOException e) {
+            Assert.assertEquals("HTTP request failed with code 404: not here" + Environment.NewLine, e.getMessage());
+        }
+        // the error body was read, so the connection is still good
+        Assert.assertEquals(1, pool.getStatistics().getIdleConnections());
+    }
+
+    @Test public void getGetResponseText_followsRedirect() throws Exception {
+        stubFor(get(urlEqualTo("/old")).willReturn(aResponse().withStatus(302).withHeader("Location", "/new")));
+        stubFor(get(urlEqualTo("/new")).willReturn(aResponse().withStatus(200).withBody("moved")));
+
+        final String actual = cut.getGetResponseText(uri("/old"));
+
+        Assert.assertEquals("moved" + Environment.NewLine, actual);
+        Assert.assertEquals(1, pool.getStatistics().getConnectionsCreated());
+    }
+
+    @Test public void streamGetResponse_stopsReadingAndKeepsConnection() throws Exception {
+        stubFor(get(urlEqualTo("/connectionData")).willReturn(aResponse().withStatus(200)
+                .withHeader("Content-Type", "application/json; charset=utf-8")
+                .withBody("{\"instanceId\":\"abc\",\"locationServiceData\":{\"serviceOwner\":\"x\"}}")));
+
+        final String actual = cut.streamGetResponse(uri("/connectionData"), HttpClientHelper.jsonStringField("instanceId"));
+
+        Assert.assertEquals("abc", actual);
+        // the unread remainder was drained, so the connection is still good
+        Assert.assertEquals(1, pool.getStatistics().getIdleConnections());
+    }
+
+    @Test public void streamGetResponse_failureHasSameMessageAsHttpClientImpl() throws Exception {
+        stubFor(get(urlEqualTo("/missing")).willReturn(aResponse().withStatus(401).withBody("denied")));
+
+        try {
+            cut.streamGetResponse(uri("/missing"), HttpClientHelper.IGNORE_BODY);
+            Assert.fail("An IOException should have been thrown");
+        } catch (final IOException e) {
+            Assert.assertEquals("HTTP request failed with code 401: denied" + Environment.NewLine, e.getMessage());
+        }
+    }
+
+    @Test public void getGetResponseText_decompressesGzip() throws Exception {
+        final String json = "{\"value\":[{\"accountName\":\"a\"},{\"accountName\":\"a\"},{\"accountName\":\"a\"}]}";
+        final byte[] compressed = ContentEncodingTest.gzip(json);
+        stubFor(get(urlEqualTo("/accounts")).willReturn(aResponse().withStatus(200)
+                .withHeader("Content-Encoding", "gzip").withBody(compressed)));
+
+        final String actual = cut.getGetResponseText(uri("/accounts"));
+
+        Assert.assertEquals(json + Environment.NewLine, actual);
+        verify(getRequestedFor(urlEqualTo("/accounts")).withHeader("Accept-Encoding", equalTo("gzip, deflate")));
+        final TransferStatistics statistics = pool.getTransferStatistics();
+        Assert.assertEquals(1, statistics.getCompressedResponses());
+        Assert.assertEquals(compressed.length, statistics.getBytesReceived());
+        Assert.assertEquals(json.length(), statistics.getBytesDecoded());
+        Assert.assertEquals(1, pool.getStatistics().getIdleConnections());
+    }
+
+    @Test public void getGetResponseText_boundedByDeadline() throws Exception {
+        stubFor(get(urlEqualTo("/slow")).willReturn(aResponse().withStatus(200).withFixedDelay(5000).withBody("late")));
+        final Deadline previous = Deadline.setCurrent(Deadline.after(300));
+        try {
+            final long start = System.currentTimeMillis();
+            try {
+                cut.getGetResponseText(uri("/slow"));
+                Assert.fail("An IOException should have been thrown");
+            } catch (final InterruptedIOException e) {
+                Assert.assertTrue(System.currentTimeMillis() - start < 3000);
+            }
+
+            // nothing is sent once the budget is spent
+            try {
+                cut.getGetResponseText(uri("/slow"));
+                Assert.fail("A DeadlineExceededException should have been thrown");
+            } catch (final DeadlineExceededException expected) {
+                verify(1, getRequestedFor(urlEqualTo("/slow")));
+            }
+        } finally {
+            Deadline.setCurrent(previous);
+        }
+    }
+
+    @Test public void getPostResponse_reportsErrorText() throws Exception {
+        stubFor(post(urlEqualTo("/token"))
+                .withRequestBody(equalTo("grant_type=x"))
+                .withHeader("Content-Type", equalTo("application/x-www-form-urlencoded; charset=UTF-8"))
+                .willReturn(aResponse().withStatus(400).withBody("{\"error\":\"invalid_grant\"}")));
+        final QueryString parameters = new QueryString();
+        parameters.put("grant_type", "x");
+
+        final HttpResponse actual = cut.getPostResponse(uri("/token"), StringContent.createUrlEncoded(parameters));
+
+        Assert.assertEquals(400, actual.status);
+        Assert.assertNull(actual.responseText);
+        Assert.assertEquals("{\"error\":\"invalid_grant\"}" + Environment.NewLine, actual.errorText);
+    }
+
+    @Test public void getHeaderField_readsHeaderOfHeadResponse() throws Exception {
+        stubFor(any(urlEqualTo("/tenant")).willReturn(aResponse().withStatus(401)
+                .withHeader("X-VSS-ResourceTenant", "e5a7e1b6-0f4f-4c1e-9f3c-bb1f3b5d8a2f")));
+
+        final String actual = cut.getHeaderField(uri("/tenant"), "X-VSS-ResourceTenant");
+
+        Assert.assertEquals("e5a7e1b6-0f4f-4c1e-9f3c-bb1f3b5d8a2f", actual);
+        Assert.assertEquals(1, pool.getStatistics().getIdleConnections());
+    }
+
+    @Test public void evictIdleConnections_closesExpiredConnections() throws Exception {
+        pool.shutdown();
+        pool = new HttpConnectionPool(2, 0L);
+        cut = new PooledHttpClient(pool, "test-agent");
+        stubFor(get(urlEqualTo("/data")).willReturn(aResponse().withStatus(200).withBody("hello")));
+        cut.getGetResponseText(uri("/data"));
+        Thread.sleep(5);
+
+        pool.evictIdleConnections();
+
+        final HttpConnectionPool.Statistics statistics = pool.getStatistics();
+        Assert.assertEquals(0, statistics.getIdleConnections());
+        Assert.assertEquals(1, statistics.getConnectionsEvicted());
+    }
+
+    @Test public void getGetResponseText_retriesConnectionClosedWhileIdle() throws Exception {
+        final ServerSocket server = new ServerSocket(0);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // answers one request per connection, then hangs up without saying so
+            final Future<Void> serving = executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    for (int i = 0; i < 2; i++) {
+                        final Socket socket = server.accept();
+                        try {
+                            final BufferedReader reader = new BufferedReader(
+                                    new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+                            String line;
+                            while ((line = reader.readLine()) != null && line.length() > 0) {
+                                // skip the request head
+                            }
+                            final OutputStream out = socket.getOutputStream();
+                            out.write("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok".getBytes("US-ASCII"));
+                            out.flush();
+                        } finally {
+                            socket.close();
+                        }
+                    }
+                    return null;
+                }
+            });
+            final URI uri = URI.create("http://localhost:" + server.getLocalPort() + "/data");
+
+            Assert.assertEquals("ok" + Environment.NewLine, cut.getGetResponseText(uri));
+            Assert.assertEquals("ok" + Environment.NewLine, cut.getGetResponseText(uri));
+
+            serving.get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(2, pool.getStatistics().getConnectionsCreated());
+        } finally {
+            executor.shutdownNow();
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+
+/**
+ * A class to test {@link RetryingAsyncHttpClient}.
+ */
+public class RetryingAsyncHttpClientTest {
+
+    @Rule public WireMockRule wireMockRule = new WireMockRule(0);
+
+    private NioHttpTransport transport;
+    private CircuitBreaker circuitBreaker;
+    private RetryingAsyncHttpClient cut;
+
+    @Before public void setUp() throws IOException {
+        transport = new NioHttpTransport();
+        circuitBreaker = new CircuitBreaker(2, 60 * 1000L);
+        cut = new RetryingAsyncHttpClient(new NioHttpClient(transport, "test-agent"), circuitBreaker);
+        cut.setBackoff(1, 2);
+    }
+
+    @After public void tearDown() {
+        transport.close();
+    }
+
+    private URI uri(final String path) {
+        return URI.create("http://localhost:" + wireMockRule.port() + path);
+    }
+
+    @Test public void getGetResponseText_retriesUnavailable() throws Exception {
+        stubFor(get(urlEqualTo("/flaky")).inScenario("flaky").whenScenarioStateIs(Scenario.STARTED)
+                .willReturn(aResponse().withStatus(503).withHeader("Retry-After", "0"))
+                .willSetStateTo("up"));
+        stubFor(get(urlEqualTo("/flaky")).inScenario("flaky").whenScenarioStateIs("up")
+                .willReturn(aResponse().withStatus(200).withBody("ok")));
+
+        final String actual = cut.getGetResponseText(uri("/flaky")).get(10, TimeUnit.SECONDS);
+
+        Assert.assertEquals("ok" + Environment.NewLine, actual);
+        verify(2, getRequestedFor(urlEqualTo("/flaky")));
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState("localhost:" + wireMockRule.port()));
+    }
+
+    @Test public void getGetResponseText_doesNotRetryClientErrors() throws Exception {
+        stubFor(get(urlEqualTo("/denied")).willReturn(aResponse().withStatus(401).withBody("denied")));
+
+        try {
+            cut.getGetResponseText(uri("/denied")).get(10, TimeUnit.SECONDS);
+            Assert.fail("An ExecutionException should have been thrown");
+        } catch (final ExecutionException e) {
+            Assert.assertEquals(401, ((HttpStatusException) e.getCause()).getStatusCode());
+        }
+        verify(1, getRequestedFor(urlEqualTo("/denied")));
+    }
+
+    @Test public void getPostResponse_retriesThrottledButNotServerErrors() throws Exception {
+        stubFor(post(urlEqualTo("/token")).inScenario("throttled").whenScenarioStateIs(Scenario.STARTED)
+                .willReturn(aResponse().withStatus(429).withHeader("Retry-After", "0"))
+                .willSetStateTo("allowed"));
+        stubFor(post(urlEqualTo("/token")).inScenario("throttled").whenScenarioStateIs("allowed")
+                .willReturn(aResponse().withStatus(500).withBody("broken")));
+
+        final HttpResponse actual = cut.getPostResponse(uri("/token"), StringContent.createJson("{}"))
+                .get(10, TimeUnit.SECONDS);
+
+        Assert.assertEquals(500, actual.status);
+        verify(2, postRequestedFor(urlEqualTo("/token")));
+    }
+}
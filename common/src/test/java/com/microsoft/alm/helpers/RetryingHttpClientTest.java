@@ -0,0 +1,139 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.net.URI;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+
+/**
+ * A class to test {@link RetryingHttpClient}.
+ */
+public class RetryingHttpClientTest {
+
+    @Rule public WireMockRule wireMockRule = new WireMockRule(0);
+
+    private CircuitBreaker circuitBreaker;
+    private RetryingHttpClient cut;
+
+    @Before public void setUp() {
+        circuitBreaker = new CircuitBreaker(2, 60 * 1000L);
+        cut = new RetryingHttpClient(new HttpClientImpl("test-agent"), circuitBreaker);
+        cut.setBackoff(1, 2);
+    }
+
+    private URI uri(final String path) {
+        return URI.create("http://localhost:" + wireMockRule.port() + path);
+    }
+
+    @Test public void getGetResponseText_retriesUnavailable() throws Exception {
+        stubFor(get(urlEqualTo("/flaky")).inScenario("flaky").whenScenarioStateIs(Scenario.STARTED)
+                .willReturn(aResponse().withStatus(503).withHeader("Retry-After", "0"))
+                .willSetStateTo("up"));
+        stubFor(get(urlEqualTo("/flaky")).inScenario("flaky").whenScenarioStateIs("up")
+                .willReturn(aResponse().withStatus(200).withBody("ok")));
+
+        final String actual = cut.getGetResponseText(uri("/flaky"));
+
+        Assert.assertEquals("ok" + Environment.NewLine, actual);
+        verify(2, getRequestedFor(urlEqualTo("/flaky")));
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState("localhost:" + wireMockRule.port()));
+    }
+
+    @Test public void getGetResponseText_doesNotRetryClientErrors() throws Exception {
+        stubFor(get(urlEqualTo("/denied")).willReturn(aResponse().withStatus(401).withBody("denied")));
+
+        try {
+            cut.getGetResponseText(uri("/denied"));
+            Assert.fail("An HttpStatusException should have been thrown");
+        } catch (final HttpStatusException e) {
+            Assert.assertEquals(401, e.getStatusCode());
+            Assert.assertEquals("HTTP request failed with code 401: denied" + Environment.NewLine, e.getMessage());
+        }
+        verify(1, getRequestedFor(urlEqualTo("/denied")));
+    }
+
+    @Test public void getPostResponse_retriesThrottledButNotServerErrors() throws Exception {
+        stubFor(post(urlEqualTo("/token")).inScenario("throttled").whenScenarioStateIs(Scenario.STARTED)
+                .willReturn(aResponse().withStatus(429).withHeader("Retry-After", "0"))
+                .willSetStateTo("allowed"));
+        stubFor(post(urlEqualTo("/token")).inScenario("throttled").whenScenarioStateIs("allowed")
+                .willReturn(aResponse().withStatus(500).withBody("broken")));
+
+        final HttpResponse actual = cut.getPostResponse(uri("/token"), StringContent.createJson("{}"));
+
+        Assert.assertEquals(500, actual.status);
+        verify(2, postRequestedFor(urlEqualTo("/token")));
+    }
+
+    @Test public void circuitOpensAfterRepeatedFailures() throws Exception {
+        stubFor(get(urlEqualTo("/down")).willReturn(aResponse().withStatus(502)));
+        cut.setMaxAttempts(1);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                cut.getGetResponseText(uri("/down"));
+                Assert.fail("An HttpStatusException should have been thrown");
+            } catch (final HttpStatusException expected) {
+                // the host is failing
+            }
+        }
+        try {
+            cut.getGetResponseText(uri("/down"));
+            Assert.fail("A CircuitBreakerOpenException should have been thrown");
+        } catch (final CircuitBreakerOpenException expected) {
+            // refused without a request
+        }
+        verify(2, getRequestedFor(urlEqualTo("/down")));
+    }
+
+    @Test public void circuitLetsTrialThroughAfterOpenPeriod() throws Exception {
+        final CircuitBreaker breaker = new CircuitBreaker(1, 0L);
+        breaker.onFailure("host:443");
+        Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState("host:443"));
+
+        breaker.acquire("host:443");
+        Assert.assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState("host:443"));
+        try {
+            breaker.acquire("host:443");
+            Assert.fail("Only one trial request should be let through");
+        } catch (final CircuitBreakerOpenException expected) {
+            // the trial is still running
+        }
+        breaker.onSuccess("host:443");
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState("host:443"));
+    }
+
+    @Test public void parseRetryAfterMillis() throws Exception {
+        final long now = 784111777000L - 30 * 1000;
+
+        Assert.assertEquals(120 * 1000, RetryingHttpClient.parseRetryAfterMillis(" 120 ", now));
+        Assert.assertEquals(30 * 1000, RetryingHttpClient.parseRetryAfterMillis("Sun, 06 Nov 1994 08:49:37 GMT", now));
+        Assert.assertEquals(-1, RetryingHttpClient.parseRetryAfterMillis("soon", now));
+    }
+
+    @Test public void getBackoffMillis_growsWithJitter() throws Exception {
+        cut.setBackoff(100, 1000);
+
+        for (int attempt = 1; attempt < 8; attempt++) {
+            final long cap = Math.min(1000, 100L << (attempt - 1));
+            final long actual = cut.getBackoffMillis(attempt);
+            Assert.assertTrue(actual >= cap / 2 && actual <= cap);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.helpers;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A class to test {@link SingleFlight}.
+ */
+public class SingleFlightTest {
+
+    private final SingleFlight<String, String> cut = new SingleFlight<String, String>();
+
+    @Test public void execute_concurrentCallersShareOneRun() throws Exception {
+        final int callers = 8;
+        final AtomicInteger runs = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<String> work = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                runs.incrementAndGet();
+                release.await();
+                return "secret";
+            }
+        };
+        final ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            final List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < callers; i++) {
+                results.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return cut.execute("key", work);
+                    }
+                }));
+            }
+            while (runs.get() == 0) {
+                Thread.sleep(5);
+            }
+            // give the other callers time to join the flight
+            Thread.sleep(100);
+            release.countDown();
+
+            for (final Future<String> result : results) {
+                Assert.assertEquals("secret", result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(1, runs.get());
+        Assert.assertEquals(0, cut.getInFlightCount());
+    }
+
+    @Test public void execute_runsAgainOnceCompleted() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        final Callable<String> work = new Callable<String>() {
+            @Override
+            public String call() {
+                return "run " + runs.incrementAndGet();
+            }
+        };
+
+        Assert.assertEquals("run 1", cut.execute("key", work));
+        Assert.assertEquals("run 2", cut.execute("key", work));
+    }
+
+    @Test public void execute_waiterStopsAtItsDeadline() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<String> first = executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return cut.execute("key", new Callable<String>() {
+                        @Override
+                        public String call() throws Exception {
+                            started.countDown();
+                            release.await();
+                            return "secret";
+                        }
+                    });
+                }
+            });
+            Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            final Deadline previous = Deadline.setCurrent(Deadline.after(100));
+            try {
+                cut.execute("key", new Callable<String>() {
+                    @Override
+                    public String call() {
+                        throw new IllegalStateException("the waiter should not run the work");
+                    }
+                });
+                Assert.fail("A DeadlineExceededException should have been thrown");
+            } catch (final DeadlineExceededException expected) {
+                // the run carries on without this waiter
+            } finally {
+                Deadline.setCurrent(previous);
+            }
+
+            release.countDown();
+            Assert.assertEquals("secret", first.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test public void execute_rethrowsFailure() throws Exception {
+        try {
+            cut.execute("key", new Callable<String>() {
+                @Override
+                public String call() {
+                    throw new IllegalStateException("failed");
+                }
+            });
+            Assert.fail("An IllegalStateException should have been thrown");
+        } catch (final IllegalStateException e) {
+            Assert.assertEquals("failed", e.getMessage());
+        }
+        Assert.assertEquals(0, cut.getInFlightCount());
+    }
+}
@@ -68,4 +68,44 @@ public class TokenPairTest {
         Assert.assertEquals("example", actual.Parameters.get("token_type"));
     }
 
+    @Test
+    public void xmlSerialization_keepsExpiry() throws Exception {
+        final TokenPair tokenPair = new TokenPair("access", "refresh", 1500003600000L, 1500000000000L);
+
+        final String xmlString = TokenPair.toXmlString(tokenPair);
+        final TokenPair actual = TokenPair.fromXmlString(xmlString);
+
+        Assert.assertEquals(tokenPair, actual);
+        Assert.assertEquals(1500003600000L, actual.getExpiresOnMillis());
+        Assert.assertEquals(1500000000000L, actual.getIssuedAtMillis());
+    }
+
+    @Test
+    public void xmlDeserialization_withoutExpiry() throws Exception {
+        final String xmlString =
+                "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n" +
+                        "<value>\n" +
+                        "    <accessToken>access</accessToken>\n" +
+                        "    <refreshToken>refresh</refreshToken>\n" +
+                        "</value>";
+
+        final TokenPair actual = TokenPair.fromXmlString(xmlString);
+
+        Assert.assertEquals("access", actual.AccessToken.Value);
+        Assert.assertEquals(-1, actual.getExpiresOnMillis());
+        Assert.assertEquals(-1, actual.getIssuedAtMillis());
+    }
+
+    @Test
+    public void accessTokenResponse_expiry() {
+        final long before = System.currentTimeMillis();
+
+        final TokenPair relative = new TokenPair("{\"access_token\":\"a\",\"refresh_token\":\"r\",\"expires_in\":3600}");
+        final TokenPair absolute = new TokenPair(
+                "{\"access_token\":\"a\",\"refresh_token\":\"r\",\"expires_in\":\"3600\",\"expires_on\":\"1500003600\"}");
+
+        Assert.assertTrue(relative.getIssuedAtMillis() >= before);
+        Assert.assertEquals(relative.getIssuedAtMillis() + 3600 * 1000, relative.getExpiresOnMillis());
+        Assert.assertEquals(1500003600000L, absolute.getExpiresOnMillis());
+    }
 }
@@ -15,6 +15,8 @@ import org.w3c.dom.Element;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.ByteArrayInputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -135,4 +137,23 @@ public class TokenTest {
 
         Token.validate(token);
     }
+
+    @Test
+    public void contributeHeader_personal() {
+        final Token token = new Token("42", TokenType.Personal);
+        final Map<String, String> headers = new LinkedHashMap<String, String>();
+
+        token.contributeHeader(headers);
+
+        Assert.assertEquals("Basic UGVyc29uYWxBY2Nlc3NUb2tlbjo0Mg==", headers.get("Authorization"));
+        // built once, then reused
+        Assert.assertSame(token.getHeaderValue(), headers.get("Authorization"));
+    }
+
+    @Test
+    public void getHeaderValue_access() {
+        final Token token = new Token("eyJ0eXAiOiJKV1QifQ", TokenType.Access);
+
+        Assert.assertEquals("Bearer eyJ0eXAiOiJKV1QifQ", token.getHeaderValue());
+    }
 }
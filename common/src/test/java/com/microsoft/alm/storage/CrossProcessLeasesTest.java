@@ -0,0 +1,47 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.storage;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+/**
+ * A class to test {@link CrossProcessLeases}.
+ */
+public class CrossProcessLeasesTest {
+
+    @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test public void tryAcquire_isExclusiveUntilReleased() throws Exception {
+        final CrossProcessLeases cut = new CrossProcessLeases(temporaryFolder.newFolder("locks"));
+
+        final CrossProcessLeases.Lease first = cut.tryAcquire("OAuth2:https://app.vssps.visualstudio.com", 0);
+        Assert.assertNotNull(first);
+        Assert.assertNull(cut.tryAcquire("OAuth2:https://app.vssps.visualstudio.com", 100));
+        Assert.assertNotNull(cut.tryAcquire("OAuth2:https://other.visualstudio.com", 0));
+
+        first.release();
+        final CrossProcessLeases.Lease second = cut.tryAcquire("OAuth2:https://app.vssps.visualstudio.com", 0);
+        Assert.assertNotNull(second);
+        second.release();
+    }
+
+    @Test public void tryAcquire_createsFolder() throws Exception {
+        final CrossProcessLeases cut = new CrossProcessLeases(new File(temporaryFolder.getRoot(), "a/b"));
+
+        final CrossProcessLeases.Lease lease = cut.tryAcquire("key", 0);
+
+        Assert.assertNotNull(lease);
+        lease.release();
+    }
+
+    @Test public void toFileName() throws Exception {
+        Assert.assertEquals("OAuth2_https___app.vssps.visualstudio.com.lock",
+                CrossProcessLeases.toFileName("OAuth2:https://app.vssps.visualstudio.com"));
+    }
+}
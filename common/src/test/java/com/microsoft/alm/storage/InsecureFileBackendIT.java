@@ -3,6 +3,8 @@
 
 package com.microsoft.alm.storage;
 
+import com.microsoft.alm.secret.Token;
+import com.microsoft.alm.secret.TokenType;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -44,4 +46,22 @@ public class InsecureFileBackendIT {
         }
     }
 
-}
\ No newline at end of file
+    @Test
+    public void read_seesWritesOfAnotherProcess() throws IOException {
+        File tempFile = null;
+        try {
+            tempFile = File.createTempFile(this.getClass().getSimpleName(), null);
+            final InsecureFileBackend ours = new InsecureFileBackend(tempFile);
+            final InsecureFileBackend theirs = new InsecureFileBackend(tempFile);
+            Assert.assertNull(ours.readToken("key"));
+
+            theirs.writeToken("key", new Token("value", TokenType.Personal));
+
+            Assert.assertEquals("value", ours.readToken("key").Value);
+        } finally {
+            if (tempFile != null)
+                tempFile.delete();
+        }
+    }
+
+}
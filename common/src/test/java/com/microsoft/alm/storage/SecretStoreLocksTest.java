@@ -0,0 +1,35 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.storage;
+
+import com.microsoft.alm.secret.Token;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+public class SecretStoreLocksTest {
+
+    @Test
+    public void of_sameKey_sameMonitor() {
+        final SecretStore<Token> store = new InsecureInMemoryStore<Token>();
+
+        Assert.assertSame(SecretStoreLocks.of(store, "git:https://account.visualstudio.com"),
+                SecretStoreLocks.of(store, "git:https://account.visualstudio.com"));
+    }
+
+    @Test
+    public void of_similarKeys_spreadOverMonitors() {
+        final SecretStore<Token> store = new InsecureInMemoryStore<Token>();
+        final Set<Object> monitors = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+
+        for (int i = 0; i < 1000; i++) {
+            monitors.add(SecretStoreLocks.of(store, "git:https://account" + i + ".visualstudio.com"));
+        }
+
+        Assert.assertTrue("only " + monitors.size() + " monitors used", monitors.size() > 32);
+    }
+}
@@ -8,12 +8,17 @@ import com.microsoft.alm.secret.Secret;
 import com.microsoft.alm.secret.Token;
 import com.microsoft.alm.secret.TokenPair;
 import com.microsoft.alm.secret.VsoTokenScope;
+import com.microsoft.alm.helpers.Deadline;
+import com.microsoft.alm.helpers.DeadlineExceededException;
 import com.microsoft.alm.helpers.Debug;
+import com.microsoft.alm.helpers.SingleFlight;
 import com.microsoft.alm.storage.SecretStore;
+import com.microsoft.alm.storage.SecretStoreLocks;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.URI;
+import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -28,6 +33,8 @@ public abstract class BaseAuthenticator implements Authenticator {
 
     protected Secret.IUriNameConversion uriToKeyConversion = Secret.DefaultUriNameConversion;
 
+    private volatile ValidationLeaseCache validationLeaseCache;
+
     @Override
     public Secret.IUriNameConversion getUriToKeyConversion() {
         return uriToKeyConversion;
@@ -110,7 +117,7 @@ public abstract class BaseAuthenticator implements Authenticator {
         final String key = getKey(uri);
         Debug.Assert(key != null, "key conversion failed");
 
-        synchronized (getStore()) {
+        synchronized (SecretStoreLocks.of(getStore(), key)) {
             logger.debug("Deleting secret for {}", key);
             return getStore().delete(key);
         }
@@ -133,13 +140,49 @@ public abstract class BaseAuthenticator implements Authenticator {
 
     protected abstract SecretStore getStore();
 
+    /**
+     * @return the leases of secrets this authenticator validated recently, null, the default, if every use
+     *         validates again
+     */
+    public ValidationLeaseCache getValidationLeaseCache() {
+        return validationLeaseCache;
+    }
+
+    /**
+     * Trusts a secret that passed validation for the length of its lease instead of asking the server again each
+     * time it is read, so a secret revoked in the meantime is still handed out until the lease ends.  Callers that
+     * enable leasing should call {@link #reportRejected(Secret)} whenever a request made with a secret is refused.
+     *
+     * @param validationLeaseCache the leases to use, possibly shared with other authenticators; {@code null}, the
+     *                             default, to validate secrets every time they are read
+     */
+    public void setValidationLeaseCache(final ValidationLeaseCache validationLeaseCache) {
+        this.validationLeaseCache = validationLeaseCache;
+    }
+
+    /**
+     * Reports that a secret handed out by this authenticator was refused, so it is validated again before it is
+     * handed out next time.  Does nothing unless a {@link ValidationLeaseCache} was set.
+     *
+     * @param secret the secret a request was rejected with, typically with a 401
+     */
+    public void reportRejected(final Secret secret) {
+        final ValidationLeaseCache leases = validationLeaseCache;
+        if (secret != null && leases != null) {
+            leases.revoke(secret);
+        }
+    }
+
     /**
      * Common pattern to retrieve a secret from store based on supplied prompt behavior
      */
     public static abstract class SecretRetriever<E extends Secret> {
+
+        private static final SingleFlight<Flight, Secret> RETRIEVALS = new SingleFlight<Flight, Secret>();
+
         /**
-         * Standard synchronized access to store.  Extensibility point that
-         * can be overridden
+         * Standard synchronized access to store, which only waits for changes to the same key.  Extensibility
+         * point that can be overridden
          *
          * @param key
          *      key for that credentials are saved under
@@ -149,7 +192,7 @@ public abstract class BaseAuthenticator implements Authenticator {
          * @return stored secret based on key, nullable
          */
         protected E readFromStore(final String key, final SecretStore<E> store) {
-            synchronized (store) {
+            synchronized (SecretStoreLocks.of(store, key)) {
                 return store.get(key);
             }
         }
@@ -180,6 +223,29 @@ public abstract class BaseAuthenticator implements Authenticator {
          */
         protected abstract E doRetrieve();
 
+        /**
+         * Where successful validations are leased, so a secret validated recently is not validated again.
+         *
+         * This is an extensibility point; by default every secret read from the store is validated.
+         *
+         * @return the leases to use, or null
+         */
+        protected ValidationLeaseCache getValidationLeaseCache() {
+            return null;
+        }
+
+        /**
+         * What, besides the key, store and prompt behavior, decides the secret this retriever comes back with.
+         * Concurrent retrievals only share one run when these are equal.
+         *
+         * This is an extensibility point.
+         *
+         * @return the parameters of the retrieval, compared with equals; null when there are none
+         */
+        protected Object getRetrievalParameters() {
+            return null;
+        }
+
         /**
          * Standard storing the secret based on the key
          *
@@ -196,7 +262,7 @@ public abstract class BaseAuthenticator implements Authenticator {
         protected void store(final String key, final SecretStore<E> store, E secret) {
             if (secret != null) {
                 logger.debug("Storing secret for key: {}.", key);
-                synchronized (store) {
+                synchronized (SecretStoreLocks.of(store, key)) {
                     // could be update
                     store.delete(key);
                     store.add(key, secret);
@@ -219,18 +285,46 @@ public abstract class BaseAuthenticator implements Authenticator {
          *
          * @return secret
          *      secret to be saved in the store
+         *
+         * @throws Error
+         *      with a {@link DeadlineExceededException} as its cause when the {@link Deadline} of the current thread
+         *      passes while waiting for the same retrieval run by another caller; the exception is a checked
+         *      {@link java.io.IOException}, which the authenticators report as errors like their other I/O failures
          */
         public E retrieve(final String key, final SecretStore<E> store,
                                                 final PromptBehavior promptBehavior) {
             logger.debug("Retrieving secret with key: {}, and prompt behavior: {}.", key, promptBehavior.name());
 
+            // concurrent callers wait for the one already validating, refreshing or prompting for this key
+            final Flight flight = new Flight(store, key, promptBehavior, getRetrievalParameters());
+            final Secret secret;
+            try {
+                secret = RETRIEVALS.execute(flight, new Callable<Secret>() {
+                    @Override
+                    public Secret call() {
+                        return retrieveNow(key, store, promptBehavior);
+                    }
+                });
+            } catch (final DeadlineExceededException e) {
+                throw new Error(e);
+            }
+            @SuppressWarnings("unchecked")
+            final E result = (E) secret;
+            return result;
+        }
+
+        private E retrieveNow(final String key, final SecretStore<E> store, final PromptBehavior promptBehavior) {
+
             E secret = null;
             if (promptBehavior != PromptBehavior.ALWAYS) {
                 // Not ALWAYS prompt, so let's read from the store for any cached secret
                 logger.debug("Reading secret from store for key: {}", key);
                 secret = readFromStore(key, store);
 
-                if (secret != null) {
+                final ValidationLeaseCache leases = getValidationLeaseCache();
+                if (secret != null && leases != null && leases.isLeased(secret)) {
+                    logger.debug("Secret was validated recently, skipping validation.");
+                } else if (secret != null) {
                     final AtomicReference<E> secretHolder = new AtomicReference<E>();
                     secretHolder.set(secret);
 
@@ -241,12 +335,23 @@ public abstract class BaseAuthenticator implements Authenticator {
                         // The secret maybe different now, e.g. we could use the refresh token to generate
                         // a new Access Token
                         if (!validatedSecret.equals(secret)) {
-                            store.delete(key);
-                            store.add(key, validatedSecret);
+                            synchronized (SecretStoreLocks.of(store, key)) {
+                                // unless tryGetValidated stored it already, for other processes to find
+                                if (!validatedSecret.equals(store.get(key))) {
+                                    store.delete(key);
+                                    store.add(key, validatedSecret);
+                                }
+                            }
 
                             secret = validatedSecret;
                         }
+                        if (leases != null) {
+                            leases.grant(secret);
+                        }
                     } else {
+                        if (leases != null) {
+                            leases.revoke(secret);
+                        }
                         secret = null;
                         // Remove the invalid secret from store
                         store.delete(key);
@@ -269,9 +374,50 @@ public abstract class BaseAuthenticator implements Authenticator {
 
                 // Store it so we don't have to retrieve again
                 store(key, store, secret);
+
+                // it was just issued, there is no need to validate it on its next use
+                final ValidationLeaseCache leases = getValidationLeaseCache();
+                if (secret != null && leases != null) {
+                    leases.grant(secret);
+                }
             }
 
             return secret;
         }
     }
+
+    /**
+     * Retrievals that can share a result: same store, same key and same prompt behavior, so a caller that must
+     * not prompt never waits for one that does.
+     */
+    private static final class Flight {
+        private final SecretStore<?> store;
+        private final String key;
+        private final PromptBehavior promptBehavior;
+        private final Object parameters;
+
+        Flight(final SecretStore<?> store, final String key, final PromptBehavior promptBehavior,
+               final Object parameters) {
+            this.store = store;
+            this.key = key;
+            this.promptBehavior = promptBehavior;
+            this.parameters = parameters;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Flight)) {
+                return false;
+            }
+            final Flight other = (Flight) obj;
+            return store == other.store && key.equals(other.key) && promptBehavior == other.promptBehavior
+                    && (parameters == null ? other.parameters == null : parameters.equals(other.parameters));
+        }
+
+        @Override
+        public int hashCode() {
+            final int hash = (System.identityHashCode(store) * 31 + key.hashCode()) * 31 + promptBehavior.hashCode();
+            return hash * 31 + (parameters == null ? 0 : parameters.hashCode());
+        }
+    }
 }
@@ -0,0 +1,63 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.auth;
+
+import com.microsoft.alm.helpers.AsyncHttpClient;
+import com.microsoft.alm.helpers.Bulkhead;
+import com.microsoft.alm.helpers.BulkheadAsyncHttpClient;
+import com.microsoft.alm.helpers.BulkheadHttpClient;
+import com.microsoft.alm.helpers.Debug;
+import com.microsoft.alm.helpers.HttpClient;
+
+/**
+ * Wraps the clients of another factory in {@link BulkheadHttpClient}s, and its asynchronous clients in
+ * {@link BulkheadAsyncHttpClient}s, all sharing one {@link Bulkhead}, capping the authentication requests in flight
+ * to each host across the whole process.
+ *
+ * To use it, register it once at startup; placed inside a {@link RetryingHttpClientFactory}, every retry takes a
+ * turn of its own:
+ * <pre>
+ *     Global.setHttpClientFactory(new RetryingHttpClientFactory(
+ *             new BulkheadHttpClientFactory(new PooledHttpClientFactory(), new Bulkhead(4, 100, 10 * 1000))));
+ * </pre>
+ */
+public class BulkheadHttpClientFactory extends HttpClientFactory {
+
+    private final HttpClientFactory delegate;
+    private final Bulkhead bulkhead;
+
+    public BulkheadHttpClientFactory() {
+        this(new HttpClientFactory());
+    }
+
+    public BulkheadHttpClientFactory(final HttpClientFactory delegate) {
+        this(delegate, new Bulkhead());
+    }
+
+    public BulkheadHttpClientFactory(final HttpClientFactory delegate, final Bulkhead bulkhead) {
+        Debug.Assert(delegate != null, "delegate cannot be null");
+        Debug.Assert(bulkhead != null, "bulkhead cannot be null");
+
+        this.delegate = delegate;
+        this.bulkhead = bulkhead;
+    }
+
+    @Override
+    public HttpClient createHttpClient() {
+        return new BulkheadHttpClient(delegate.createHttpClient(), bulkhead);
+    }
+
+    @Override
+    public AsyncHttpClient createAsyncHttpClient() {
+        return new BulkheadAsyncHttpClient(delegate.createAsyncHttpClient(), bulkhead);
+    }
+
+    public Bulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    public Bulkhead.Statistics getBulkheadStatistics() {
+        return bulkhead.getStatistics();
+    }
+}
@@ -0,0 +1,26 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.auth;
+
+import com.microsoft.alm.auth.oauth.Global;
+import com.microsoft.alm.helpers.Http2Client;
+import com.microsoft.alm.helpers.HttpClient;
+
+/**
+ * Creates {@link Http2Client}s, so that token requests from {@code AzureAuthority} and the connectionData
+ * validation calls of the authenticators share one connection per host.  On Java 11 and later that is a single
+ * multiplexed HTTP/2 connection; on older runtimes, a pool of HTTP/1.1 keep-alive connections.
+ *
+ * To use it, register it once at startup:
+ * <pre>
+ *     Global.setHttpClientFactory(new Http2ClientFactory());
+ * </pre>
+ */
+public class Http2ClientFactory extends HttpClientFactory {
+
+    @Override
+    public HttpClient createHttpClient() {
+        return new Http2Client(Global.getUserAgent());
+    }
+}
@@ -4,12 +4,36 @@
 package com.microsoft.alm.auth;
 
 import com.microsoft.alm.auth.oauth.Global;
+import com.microsoft.alm.helpers.AsyncHttpClient;
+import com.microsoft.alm.helpers.AsyncHttpClientAdapter;
+import com.microsoft.alm.helpers.DaemonThreadFactory;
 import com.microsoft.alm.helpers.HttpClient;
 import com.microsoft.alm.helpers.HttpClientImpl;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 public class HttpClientFactory {
 
+    private static ExecutorService asyncExecutor;
+
     public HttpClient createHttpClient() {
         return new HttpClientImpl(Global.getUserAgent());
     }
+
+    /**
+     * Creates a client whose calls return futures.  By default each call is made with a client from
+     * {@link #createHttpClient()} on a shared pool of daemon threads, so it sees the same SSL, proxy and
+     * authentication set-up as the blocking calls; {@link NioHttpClientFactory} makes them without a thread each.
+     */
+    public AsyncHttpClient createAsyncHttpClient() {
+        return new AsyncHttpClientAdapter(createHttpClient(), getAsyncExecutor());
+    }
+
+    private static synchronized ExecutorService getAsyncExecutor() {
+        if (asyncExecutor == null) {
+            asyncExecutor = Executors.newCachedThreadPool(new DaemonThreadFactory("auth-library-http-async"));
+        }
+        return asyncExecutor;
+    }
 }
@@ -0,0 +1,48 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.auth;
+
+import com.microsoft.alm.helpers.AsyncHttpClient;
+import com.microsoft.alm.helpers.Debug;
+import com.microsoft.alm.helpers.HttpClient;
+import com.microsoft.alm.helpers.HttpMetrics;
+import com.microsoft.alm.helpers.MetricsAsyncHttpClient;
+import com.microsoft.alm.helpers.MetricsHttpClient;
+
+/**
+ * Wraps the clients of another factory in {@link MetricsHttpClient}s, and its asynchronous clients in
+ * {@link MetricsAsyncHttpClient}s, so every authentication request is recorded in {@link HttpMetrics}.
+ *
+ * To use it, register it once at startup; placed inside a {@link RetryingHttpClientFactory}, every attempt is
+ * recorded with its attempt number, and placed outside a {@link BulkheadHttpClientFactory}, latencies include the
+ * time spent waiting for a turn:
+ * <pre>
+ *     Global.setHttpClientFactory(new RetryingHttpClientFactory(
+ *             new MetricsHttpClientFactory(new BulkheadHttpClientFactory(new PooledHttpClientFactory()))));
+ * </pre>
+ */
+public class MetricsHttpClientFactory extends HttpClientFactory {
+
+    private final HttpClientFactory delegate;
+
+    public MetricsHttpClientFactory() {
+        this(new HttpClientFactory());
+    }
+
+    public MetricsHttpClientFactory(final HttpClientFactory delegate) {
+        Debug.Assert(delegate != null, "delegate cannot be null");
+
+        this.delegate = delegate;
+    }
+
+    @Override
+    public HttpClient createHttpClient() {
+        return new MetricsHttpClient(delegate.createHttpClient());
+    }
+
+    @Override
+    public AsyncHttpClient createAsyncHttpClient() {
+        return new MetricsAsyncHttpClient(delegate.createAsyncHttpClient());
+    }
+}
@@ -0,0 +1,44 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.auth;
+
+import com.microsoft.alm.auth.oauth.Global;
+import com.microsoft.alm.helpers.AsyncHttpClient;
+import com.microsoft.alm.helpers.NioHttpClient;
+import com.microsoft.alm.helpers.NioHttpTransport;
+
+import java.io.IOException;
+
+/**
+ * Creates {@link NioHttpClient}s for the asynchronous calls, so that requests in flight, such as the identity
+ * service lookup of a personal access token, hold no thread.  All clients from the same factory share one selector
+ * thread; the blocking clients are those of {@link HttpClientFactory}.
+ *
+ * The transport opens its own connections: it uses the default {@link javax.net.ssl.SSLContext}, goes through HTTP
+ * proxies but not SOCKS proxies, and does not consult {@link java.net.Authenticator}, so keep the default factory
+ * where the network needs any of these.  To use it, register it once at startup:
+ * <pre>
+ *     Global.setHttpClientFactory(new NioHttpClientFactory());
+ * </pre>
+ */
+public class NioHttpClientFactory extends HttpClientFactory {
+
+    private NioHttpTransport transport;
+
+    @Override
+    public AsyncHttpClient createAsyncHttpClient() {
+        return new NioHttpClient(getTransport(), Global.getUserAgent());
+    }
+
+    synchronized NioHttpTransport getTransport() {
+        if (transport == null) {
+            try {
+                transport = new NioHttpTransport();
+            } catch (final IOException e) {
+                throw new Error(e);
+            }
+        }
+        return transport;
+    }
+}
@@ -0,0 +1,51 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.auth;
+
+import com.microsoft.alm.auth.oauth.Global;
+import com.microsoft.alm.helpers.HttpClient;
+import com.microsoft.alm.helpers.HttpConnectionPool;
+import com.microsoft.alm.helpers.PooledHttpClient;
+
+/**
+ * Creates clients that share one {@link HttpConnectionPool}, so consecutive authentication calls to the same
+ * host reuse their connections instead of opening new ones.
+ *
+ * To use it, register it once at startup:
+ * <pre>
+ *     Global.setHttpClientFactory(new PooledHttpClientFactory());
+ * </pre>
+ */
+public class PooledHttpClientFactory extends HttpClientFactory {
+
+    private final HttpConnectionPool pool;
+
+    public PooledHttpClientFactory() {
+        this(new HttpConnectionPool());
+    }
+
+    public PooledHttpClientFactory(final HttpConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public HttpClient createHttpClient() {
+        return new PooledHttpClient(pool, Global.getUserAgent());
+    }
+
+    public HttpConnectionPool getPool() {
+        return pool;
+    }
+
+    public HttpConnectionPool.Statistics getPoolStatistics() {
+        return pool.getStatistics();
+    }
+
+    /**
+     * Closes the idle connections; the factory must not be used afterwards.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,57 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.auth;
+
+import com.microsoft.alm.helpers.AsyncHttpClient;
+import com.microsoft.alm.helpers.CircuitBreaker;
+import com.microsoft.alm.helpers.Debug;
+import com.microsoft.alm.helpers.HttpClient;
+import com.microsoft.alm.helpers.RetryingAsyncHttpClient;
+import com.microsoft.alm.helpers.RetryingHttpClient;
+
+/**
+ * Wraps the clients of another factory in {@link RetryingHttpClient}s, and its asynchronous clients in
+ * {@link RetryingAsyncHttpClient}s, all sharing one {@link CircuitBreaker}, so transient failures are retried and
+ * a host that keeps failing is avoided by every authentication call at once.
+ *
+ * To use it, register it once at startup:
+ * <pre>
+ *     Global.setHttpClientFactory(new RetryingHttpClientFactory(new PooledHttpClientFactory()));
+ * </pre>
+ */
+public class RetryingHttpClientFactory extends HttpClientFactory {
+
+    private final HttpClientFactory delegate;
+    private final CircuitBreaker circuitBreaker;
+
+    public RetryingHttpClientFactory() {
+        this(new HttpClientFactory());
+    }
+
+    public RetryingHttpClientFactory(final HttpClientFactory delegate) {
+        this(delegate, new CircuitBreaker());
+    }
+
+    public RetryingHttpClientFactory(final HttpClientFactory delegate, final CircuitBreaker circuitBreaker) {
+        Debug.Assert(delegate != null, "delegate cannot be null");
+        Debug.Assert(circuitBreaker != null, "circuitBreaker cannot be null");
+
+        this.delegate = delegate;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    @Override
+    public HttpClient createHttpClient() {
+        return new RetryingHttpClient(delegate.createHttpClient(), circuitBreaker);
+    }
+
+    @Override
+    public AsyncHttpClient createAsyncHttpClient() {
+        return new RetryingAsyncHttpClient(delegate.createAsyncHttpClient(), circuitBreaker);
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+}
@@ -0,0 +1,126 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.auth;
+
+import com.microsoft.alm.auth.oauth.AccessTokenExpiry;
+import com.microsoft.alm.helpers.BitConverter;
+import com.microsoft.alm.helpers.Debug;
+import com.microsoft.alm.helpers.ExpiringCache;
+import com.microsoft.alm.secret.Credential;
+import com.microsoft.alm.secret.Secret;
+import com.microsoft.alm.secret.Token;
+import com.microsoft.alm.secret.TokenPair;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Remembers which secrets were validated recently, so a secret read from a store is trusted for a while instead
+ * of being checked against the server every time it is used.
+ *
+ * Leasing is off by default; {@link BaseAuthenticator#setValidationLeaseCache} turns it on for an authenticator,
+ * whose callers then report refused secrets through {@link BaseAuthenticator#reportRejected}.
+ *
+ * Secrets are only held as SHA-256 fingerprints.  A lease ends when it expires or is revoked, which should happen
+ * as soon as a request made with the secret is refused with a 401.  The lease of a token pair whose expiry is known
+ * never outlasts its access token.
+ */
+public class ValidationLeaseCache {
+
+    public static final long DEFAULT_LEASE_MILLIS = 5 * 60 * 1000L;
+
+    private final long leaseMillis;
+    private final ExpiringCache<String, Boolean> leases;
+
+    public ValidationLeaseCache() {
+        this(DEFAULT_LEASE_MILLIS);
+    }
+
+    /**
+     * @param leaseMillis how long a validated secret is trusted
+     */
+    public ValidationLeaseCache(final long leaseMillis) {
+        this.leaseMillis = leaseMillis;
+        this.leases = new ExpiringCache<String, Boolean>(leaseMillis, 0);
+    }
+
+    /**
+     * @return {@code true} if the secret was validated within the lease
+     */
+    public boolean isLeased(final Secret secret) {
+        final String fingerprint = fingerprint(secret);
+        return fingerprint != null && leases.get(fingerprint) != null;
+    }
+
+    /**
+     * Trusts the secret for the length of a lease, starting now, or until its access token is about to expire if
+     * that comes first.
+     */
+    public void grant(final Secret secret) {
+        final String fingerprint = fingerprint(secret);
+        if (fingerprint == null) {
+            return;
+        }
+        final long usableUntil = secret instanceof TokenPair
+                ? AccessTokenExpiry.usableUntilMillis((TokenPair) secret) : -1;
+        final long now = System.currentTimeMillis();
+        if (usableUntil == -1) {
+            leases.put(fingerprint, Boolean.TRUE);
+        } else if (usableUntil > now) {
+            leases.put(fingerprint, Boolean.TRUE, Math.min(usableUntil, now + leaseMillis));
+        } else {
+            // about to expire, only a refresh can help
+            leases.remove(fingerprint);
+        }
+    }
+
+    /**
+     * Ends the lease of the secret, so it is validated again the next time it is read.
+     */
+    public void revoke(final Secret secret) {
+        final String fingerprint = fingerprint(secret);
+        if (fingerprint != null) {
+            leases.remove(fingerprint);
+        }
+    }
+
+    public void clear() {
+        leases.clear();
+    }
+
+    /**
+     * @return a hash of what makes the secret valid, or null for secrets that cannot be told apart
+     */
+    static String fingerprint(final Secret secret) {
+        Debug.Assert(secret != null, "secret cannot be null");
+
+        final String material;
+        if (secret instanceof Token) {
+            final Token token = (Token) secret;
+            material = token.Value == null ? null : token.Type + ":" + token.Value;
+        } else if (secret instanceof TokenPair) {
+            // the refresh token is only used once the access token stops working
+            final Token accessToken = ((TokenPair) secret).AccessToken;
+            material = accessToken == null || accessToken.Value == null ? null : "Access:" + accessToken.Value;
+        } else if (secret instanceof Credential) {
+            final Credential credential = (Credential) secret;
+            material = "Credential:" + credential.Username + "\u0000" + credential.Password;
+        } else {
+            material = null;
+        }
+        if (material == null) {
+            return null;
+        }
+
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return BitConverter.toString(digest.digest(material.getBytes("UTF-8")));
+        } catch (final NoSuchAlgorithmException e) {
+            throw new Error(e);
+        } catch (final UnsupportedEncodingException e) {
+            throw new Error(e);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.auth.oauth;
+
+import com.microsoft.alm.secret.TokenPair;
+
+/**
+ * Tells until when an access token can be used without asking the server, for code outside this package that
+ * remembers things about a token only as long as the token lasts.
+ *
+ * As for {@link AccessTokenFreshness}, the signature is not checked.
+ */
+public final class AccessTokenExpiry {
+
+    private AccessTokenExpiry() {
+    }
+
+    /**
+     * @return when the access token of the pair stops being worth sending, the safety margin of
+     *         {@link AccessTokenFreshness} before it expires; -1 if its expiry cannot be told
+     */
+    public static long usableUntilMillis(final TokenPair tokenPair) {
+        if (tokenPair == null) {
+            return -1;
+        }
+        final long expiresOn = AccessTokenFreshness.getExpiresOnMillis(tokenPair);
+        return expiresOn == -1 ? -1 : expiresOn - AccessTokenFreshness.EXPIRY_MARGIN_MILLIS;
+    }
+}
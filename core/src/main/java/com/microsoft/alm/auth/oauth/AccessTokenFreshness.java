@@ -0,0 +1,149 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.auth.oauth;
+
+import com.microsoft.alm.helpers.Base64Helper;
+import com.microsoft.alm.helpers.PropertyBag;
+import com.microsoft.alm.secret.Token;
+import com.microsoft.alm.secret.TokenPair;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Tells from the {@code exp} and {@code nbf} claims of an Azure Active Directory access token, which is a JSON Web
+ * Token, whether it can still be used, without asking the server.  Other access tokens are judged by the expiry
+ * their {@link TokenPair} kept since it was issued, if any.
+ *
+ * The signature is not checked: this only decides whether a token is worth sending, the server still decides
+ * whether to accept it.
+ */
+enum AccessTokenFreshness {
+    /**
+     * The token is valid for longer than the safety margin
+     */
+    FRESH,
+    /**
+     * The token has expired or will within the safety margin, only a refresh can help
+     */
+    EXPIRED,
+    /**
+     * The token is not a JSON Web Token with an expiry, or is not valid yet; only the server can tell
+     */
+    UNKNOWN;
+
+    /**
+     * How long before it expires a token is treated as expired, so it does not run out while in use
+     */
+    static final long EXPIRY_MARGIN_MILLIS = 5 * 60 * 1000L;
+
+    /**
+     * How far the clocks of this machine and the token issuer are allowed to disagree about not-before
+     */
+    static final long CLOCK_SKEW_MILLIS = 5 * 60 * 1000L;
+
+    static AccessTokenFreshness of(final TokenPair tokenPair) {
+        return of(tokenPair, System.currentTimeMillis());
+    }
+
+    /**
+     * Judges the access token of a pair by its claims or, when it has none to read, by the expiry kept with the
+     * pair since it was issued.
+     */
+    static AccessTokenFreshness of(final TokenPair tokenPair, final long nowMillis) {
+        final AccessTokenFreshness fromClaims = of(tokenPair.AccessToken, nowMillis);
+        final long expiresOn = tokenPair.getExpiresOnMillis();
+        if (fromClaims != UNKNOWN || expiresOn == -1) {
+            return fromClaims;
+        }
+        return nowMillis >= expiresOn - EXPIRY_MARGIN_MILLIS ? EXPIRED : FRESH;
+    }
+
+    /**
+     * @return when the access token of a pair expires, by the expiry kept with the pair or else its {@code exp}
+     *         claim; -1 if neither tells
+     */
+    static long getExpiresOnMillis(final TokenPair tokenPair) {
+        if (tokenPair.getExpiresOnMillis() != -1) {
+            return tokenPair.getExpiresOnMillis();
+        }
+        if (tokenPair.AccessToken.Value == null) {
+            return -1;
+        }
+        final PropertyBag claims = decodeClaims(tokenPair.AccessToken.Value);
+        return claims == null ? -1 : readSecondsAsMillis(claims, "exp");
+    }
+
+    static AccessTokenFreshness of(final Token accessToken) {
+        return of(accessToken, System.currentTimeMillis());
+    }
+
+    static AccessTokenFreshness of(final Token accessToken, final long nowMillis) {
+        if (accessToken == null || accessToken.Value == null) {
+            return UNKNOWN;
+        }
+        final PropertyBag claims = decodeClaims(accessToken.Value);
+        if (claims == null) {
+            return UNKNOWN;
+        }
+        final long expiresAt = readSecondsAsMillis(claims, "exp");
+        if (expiresAt == -1) {
+            return UNKNOWN;
+        }
+        if (nowMillis >= expiresAt - EXPIRY_MARGIN_MILLIS) {
+            return EXPIRED;
+        }
+        final long notBefore = readSecondsAsMillis(claims, "nbf");
+        if (notBefore != -1 && nowMillis < notBefore - CLOCK_SKEW_MILLIS) {
+            return UNKNOWN;
+        }
+        return FRESH;
+    }
+
+    /**
+     * @return the claims of a JSON Web Token, or null if the value is not one
+     */
+    static PropertyBag decodeClaims(final String value) {
+        final int firstDot = value.indexOf('.');
+        final int secondDot = firstDot == -1 ? -1 : value.indexOf('.', firstDot + 1);
+        if (secondDot == -1) {
+            return null;
+        }
+        try {
+            final byte[] payload = decodeBase64Url(value.substring(firstDot + 1, secondDot));
+            return PropertyBag.fromJson(new String(payload, "UTF-8"));
+        } catch (final UnsupportedEncodingException e) {
+            throw new Error(e);
+        } catch (final RuntimeException e) {
+            // not base64 or not JSON, so not a token we can read
+            return null;
+        }
+    }
+
+    private static byte[] decodeBase64Url(final String segment) {
+        final StringBuilder sb = new StringBuilder(segment.length() + 3);
+        for (int i = 0; i < segment.length(); i++) {
+            final char c = segment.charAt(i);
+            sb.append(c == '-' ? '+' : c == '_' ? '/' : c);
+        }
+        while (sb.length() % 4 != 0) {
+            sb.append('=');
+        }
+        return Base64Helper.decode(sb.toString());
+    }
+
+    private static long readSecondsAsMillis(final PropertyBag claims, final String name) {
+        final Object value = claims.get(name);
+        if (value instanceof Double) {
+            return (long) (((Double) value) * 1000);
+        }
+        if (value instanceof String) {
+            try {
+                return Long.parseLong((String) value) * 1000;
+            } catch (final NumberFormatException e) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,38 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.auth.oauth;
+
+import com.microsoft.alm.helpers.PropertyBag;
+import com.microsoft.alm.secret.Token;
+
+/**
+ * Tells who an Azure Active Directory access token was issued to, from its claims, so what was learned about a
+ * user can be remembered across the access tokens they are issued over time.
+ *
+ * As for {@link AccessTokenFreshness}, the signature is not checked.
+ */
+public final class AccessTokenIdentity {
+
+    private AccessTokenIdentity() {
+    }
+
+    /**
+     * @return the tenant and object id of the user, as {@code tid/oid}; null if the token does not say
+     */
+    public static String of(final Token accessToken) {
+        if (accessToken == null || accessToken.Value == null) {
+            return null;
+        }
+        final PropertyBag claims = AccessTokenFreshness.decodeClaims(accessToken.Value);
+        if (claims == null) {
+            return null;
+        }
+        final Object tenantId = claims.get("tid");
+        final Object objectId = claims.get("oid");
+        if (!(tenantId instanceof String) || !(objectId instanceof String)) {
+            return null;
+        }
+        return tenantId + "/" + objectId;
+    }
+}
@@ -69,17 +69,11 @@ public class DeviceFlowImpl implements DeviceFlow {
 
     @Override
     public TokenPair requestToken(final URI tokenEndpoint, final String clientId, final DeviceFlowResponse deviceFlowResponse) throws AuthorizationException {
-        final QueryString bodyParameters = new QueryString();
-        bodyParameters.put(OAuthParameter.GRANT_TYPE, OAuthParameter.DEVICE_CODE);
-        bodyParameters.put(OAuthParameter.CODE, deviceFlowResponse.getDeviceCode());
-        bodyParameters.put(OAuthParameter.CLIENT_ID, clientId);
-        contributeTokenRequestParameters(bodyParameters);
-        final StringContent requestBody = StringContent.createUrlEncoded(bodyParameters);
+        final StringContent requestBody = createTokenRequestBody(clientId, deviceFlowResponse);
 
         final int intervalSeconds = deviceFlowResponse.getInterval();
         int intervalMilliseconds = intervalSeconds * 1000;
         final HttpClient client = Global.getHttpClientFactory().createHttpClient();
-        String responseText = null;
         final Calendar expiresAt = deviceFlowResponse.getExpiresAt();
 
         do {
@@ -87,58 +81,118 @@ public class DeviceFlowImpl implements DeviceFlow {
                 throw new AuthorizationException("request_cancelled", "Stop polling for Token.", null, null);
             }
 
-            try {
-                final HttpResponse response = client.getPostResponse(tokenEndpoint, requestBody);
-
-                if (response.status == HttpURLConnection.HTTP_OK) {
-                    responseText = response.responseText;
-                    break;
-                }
-                else {
-                    final String errorResponseText = response.errorText;
-                    if (response.status == HttpURLConnection.HTTP_BAD_REQUEST) {
-                        final PropertyBag bag = PropertyBag.fromJson(errorResponseText);
-                        final String errorCode = bag.readOptionalString(OAuthParameter.ERROR_CODE, "unknown_error");
-                        if (OAuthParameter.ERROR_AUTHORIZATION_PENDING.equals(errorCode)) {
-                            try {
-                                Thread.sleep(intervalMilliseconds);
-                            } catch (final InterruptedException e) {
-                                throw new Error(e);
-                            }
-                            continue;
-                        }
-                        else if (OAuthParameter.ERROR_SLOW_DOWN.equals(errorCode)) {
-                            intervalMilliseconds *= 2;
-                            try {
-                                Thread.sleep(intervalMilliseconds);
-                            } catch (final InterruptedException e) {
-                                throw new Error(e);
-                            }
-                            continue;
-                        }
-                        final String errorDescription = bag.readOptionalString(OAuthParameter.ERROR_DESCRIPTION, null);
-                        final String errorUriString = bag.readOptionalString(OAuthParameter.ERROR_URI, null);
-                        final URI errorUri = errorUriString == null ? null : URI.create(errorUriString);
-                        throw new AuthorizationException(errorCode, errorDescription, errorUri, null);
-                    }
-                    else {
-                        throw new Error("Token endpoint returned HTTP " + response.status + ":\n" + errorResponseText);
-                    }
-                }
+            final PollResult result = pollToken(client, tokenEndpoint, requestBody, deviceFlowResponse);
+            if (result.outcome == PollOutcome.GRANTED) {
+                return result.tokenPair;
+            }
+            if (result.outcome == PollOutcome.SLOW_DOWN) {
+                intervalMilliseconds *= 2;
             }
-            catch (final IOException e) {
+            try {
+                Thread.sleep(intervalMilliseconds);
+            } catch (final InterruptedException e) {
                 throw new Error(e);
             }
         }
         while (Calendar.getInstance().compareTo(expiresAt) <= 0);
 
-        if (responseText == null) {
-            throw new AuthorizationException("code_expired", "The verification code expired.", null, null);
+        throw new AuthorizationException("code_expired", "The verification code expired.", null, null);
+    }
+
+    /**
+     * What the token endpoint made of one request for the token of a device flow.
+     */
+    enum PollOutcome {
+        /**
+         * The user signed in, the token pair was issued.
+         */
+        GRANTED,
+        /**
+         * The user has not signed in yet, ask again after the interval.
+         */
+        PENDING,
+        /**
+         * As {@link #PENDING}, and the interval should be doubled.
+         */
+        SLOW_DOWN,
+    }
+
+    /**
+     * The {@link PollOutcome} of one request for the token, with the token pair when it was {@link PollOutcome#GRANTED}.
+     */
+    static final class PollResult {
+        static final PollResult PENDING = new PollResult(PollOutcome.PENDING, null);
+        static final PollResult SLOW_DOWN = new PollResult(PollOutcome.SLOW_DOWN, null);
+
+        final PollOutcome outcome;
+        final TokenPair tokenPair;
+
+        private PollResult(final PollOutcome outcome, final TokenPair tokenPair) {
+            this.outcome = outcome;
+            this.tokenPair = tokenPair;
         }
-        final TokenPair tokenPair = buildTokenPair(responseText);
 
-        deviceFlowResponse.setTokenAcquired();
-        return tokenPair;
+        static PollResult granted(final TokenPair tokenPair) {
+            return new PollResult(PollOutcome.GRANTED, tokenPair);
+        }
+    }
+
+    StringContent createTokenRequestBody(final String clientId, final DeviceFlowResponse deviceFlowResponse) {
+        final QueryString bodyParameters = new QueryString();
+        bodyParameters.put(OAuthParameter.GRANT_TYPE, OAuthParameter.DEVICE_CODE);
+        bodyParameters.put(OAuthParameter.CODE, deviceFlowResponse.getDeviceCode());
+        bodyParameters.put(OAuthParameter.CLIENT_ID, clientId);
+        contributeTokenRequestParameters(bodyParameters);
+        return StringContent.createUrlEncoded(bodyParameters);
+    }
+
+    /**
+     * Asks the token endpoint once for the token of a device flow, without waiting.
+     *
+     * @return the outcome, with the token pair once the user signed in
+     * @throws AuthorizationException if the endpoint refused the request for good, such as when the user declined
+     */
+    PollResult pollToken(final HttpClient client, final URI tokenEndpoint, final StringContent requestBody,
+                         final DeviceFlowResponse deviceFlowResponse) throws AuthorizationException {
+        final HttpResponse response;
+        try {
+            response = client.getPostResponse(tokenEndpoint, requestBody);
+        } catch (final IOException e) {
+            throw new Error(e);
+        }
+        return toPollResult(response, deviceFlowResponse);
+    }
+
+    /**
+     * Reads the answer of the token endpoint to one request for the token of a device flow.
+     *
+     * @throws AuthorizationException if the endpoint refused the request for good, such as when the user declined
+     */
+    PollResult toPollResult(final HttpResponse response, final DeviceFlowResponse deviceFlowResponse)
+            throws AuthorizationException {
+        if (response.status == HttpURLConnection.HTTP_OK) {
+            final TokenPair tokenPair = buildTokenPair(response.responseText);
+            deviceFlowResponse.setTokenAcquired();
+            return PollResult.granted(tokenPair);
+        }
+        final String errorResponseText = response.errorText;
+        if (response.status == HttpURLConnection.HTTP_BAD_REQUEST) {
+            final PropertyBag bag = PropertyBag.fromJson(errorResponseText);
+            final String errorCode = bag.readOptionalString(OAuthParameter.ERROR_CODE, "unknown_error");
+            if (OAuthParameter.ERROR_AUTHORIZATION_PENDING.equals(errorCode)) {
+                return PollResult.PENDING;
+            }
+            else if (OAuthParameter.ERROR_SLOW_DOWN.equals(errorCode)) {
+                return PollResult.SLOW_DOWN;
+            }
+            final String errorDescription = bag.readOptionalString(OAuthParameter.ERROR_DESCRIPTION, null);
+            final String errorUriString = bag.readOptionalString(OAuthParameter.ERROR_URI, null);
+            final URI errorUri = errorUriString == null ? null : URI.create(errorUriString);
+            throw new AuthorizationException(errorCode, errorDescription, errorUri, null);
+        }
+        else {
+            throw new Error("Token endpoint returned HTTP " + response.status + ":\n" + errorResponseText);
+        }
     }
 
     /**
@@ -0,0 +1,253 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.auth.oauth;
+
+import com.microsoft.alm.helpers.AsyncHttpClient;
+import com.microsoft.alm.helpers.Callback;
+import com.microsoft.alm.helpers.DaemonThreadFactory;
+import com.microsoft.alm.helpers.Deadline;
+import com.microsoft.alm.helpers.Debug;
+import com.microsoft.alm.helpers.HttpResponse;
+import com.microsoft.alm.helpers.ListenableFuture;
+import com.microsoft.alm.helpers.SettableFuture;
+import com.microsoft.alm.helpers.StringContent;
+import com.microsoft.alm.oauth2.useragent.AuthorizationException;
+import com.microsoft.alm.secret.TokenPair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Waits for the users of many device flows to sign in at once, without a thread per flow: every pending flow is
+ * polled from one shared scheduler, and its token pair handed over through a future.
+ *
+ * <pre>
+ *     final DeviceFlowResponse response = deviceFlow.requestAuthorization(deviceEndpoint, clientId, scope);
+ *     // show response.getUserCode() and response.getVerificationUri() to the user
+ *     manager.requestToken(tokenEndpoint, clientId, response).addCallback(callback);
+ * </pre>
+ *
+ * Polling honours the {@code interval} of the flow and doubles it on {@code slow_down}, as
+ * {@link DeviceFlowImpl#requestToken} does.  A future fails with an {@link AuthorizationException} when the code
+ * expires, the user declines or {@link DeviceFlowResponse#requestCancel()} is called; cancelling it stops polling.
+ *
+ * The polls are sent with the {@link AsyncHttpClient} of the {@link Global#getHttpClientFactory() factory}, so the
+ * scheduler's threads only start them and read their answers, and a token endpoint that is slow to answer one flow
+ * does not hold up the others.  A poll still unanswered after {@link #PollTimeout} ms is cancelled and asked again
+ * after the interval.
+ */
+public class DeviceFlowManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeviceFlowManager.class);
+
+    /**
+     * The time in milliseconds one poll of the token endpoint may take.
+     */
+    public static final int PollTimeout = 30 * 1000;
+
+    private final DeviceFlowImpl deviceFlow;
+    private final ScheduledExecutorService executor;
+    private final Set<PendingFlow> pendingFlows
+            = Collections.newSetFromMap(new ConcurrentHashMap<PendingFlow, Boolean>());
+
+    public DeviceFlowManager() {
+        this(new AzureDeviceFlow(),
+                Executors.newScheduledThreadPool(2, new DaemonThreadFactory("auth-library-device-flow")));
+    }
+
+    /**
+     * @param deviceFlow builds the token requests and the token pairs
+     * @param executor   starts the polls and times them out, neither of which waits on the network, so a couple of
+     *                   threads serve many flows
+     */
+    public DeviceFlowManager(final DeviceFlowImpl deviceFlow, final ScheduledExecutorService executor) {
+        Debug.Assert(deviceFlow != null, "deviceFlow cannot be null");
+        Debug.Assert(executor != null, "executor cannot be null");
+
+        this.deviceFlow = deviceFlow;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts polling for the token of a device flow, the first poll after one interval.
+     *
+     * @return completed with the token pair once the user signed in
+     */
+    public ListenableFuture<TokenPair> requestToken(final URI tokenEndpoint, final String clientId,
+                                                    final DeviceFlowResponse deviceFlowResponse) {
+        Debug.Assert(tokenEndpoint != null, "tokenEndpoint cannot be null");
+        Debug.Assert(deviceFlowResponse != null, "deviceFlowResponse cannot be null");
+
+        final PendingFlow flow = new PendingFlow(tokenEndpoint, deviceFlow.createTokenRequestBody(clientId,
+                deviceFlowResponse), deviceFlowResponse);
+        pendingFlows.add(flow);
+        flow.scheduleNext();
+        return flow.future;
+    }
+
+    /**
+     * @return how many flows are still being polled
+     */
+    public int getPendingCount() {
+        return pendingFlows.size();
+    }
+
+    /**
+     * Stops the executor and fails the futures of the flows still pending with a
+     * {@link RejectedExecutionException}.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        for (final PendingFlow flow : pendingFlows) {
+            flow.finish(null, new RejectedExecutionException("The device flow manager was shut down."));
+        }
+    }
+
+    private final class PendingFlow implements Runnable {
+        final SettableFuture<TokenPair> future = SettableFuture.create();
+        private final URI tokenEndpoint;
+        private final StringContent requestBody;
+        private final DeviceFlowResponse deviceFlowResponse;
+        private final AsyncHttpClient client = Global.getHttpClientFactory().createAsyncHttpClient();
+        private long intervalMillis;
+        private volatile ListenableFuture<HttpResponse> poll;
+
+        PendingFlow(final URI tokenEndpoint, final StringContent requestBody,
+                    final DeviceFlowResponse deviceFlowResponse) {
+            this.tokenEndpoint = tokenEndpoint;
+            this.requestBody = requestBody;
+            this.deviceFlowResponse = deviceFlowResponse;
+            this.intervalMillis = deviceFlowResponse.getInterval() * 1000L;
+        }
+
+        void scheduleNext() {
+            try {
+                executor.schedule(this, intervalMillis, TimeUnit.MILLISECONDS);
+            } catch (final RejectedExecutionException e) {
+                finish(null, e);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (future.isDone()) {
+                // cancelled by the caller
+                pendingFlows.remove(this);
+                return;
+            }
+            if (deviceFlowResponse.cancelRequestedByUser()) {
+                finish(null, new AuthorizationException("request_cancelled", "Stop polling for Token.", null, null));
+                return;
+            }
+
+            final ListenableFuture<HttpResponse> response;
+            final Deadline previousDeadline = Deadline.setCurrent(Deadline.after(PollTimeout));
+            try {
+                response = client.getPostResponse(tokenEndpoint, requestBody);
+            } finally {
+                Deadline.setCurrent(previousDeadline);
+            }
+            poll = response;
+            // only one of the answer and the timeout gets to decide what happens next
+            final AtomicBoolean answered = new AtomicBoolean();
+            final ScheduledFuture<?> timeout;
+            try {
+                timeout = executor.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (answered.compareAndSet(false, true)) {
+                            response.cancel(true);
+                            logger.debug("The poll took longer than {} ms, asking again after the interval.",
+                                    PollTimeout);
+                            onPollResult(DeviceFlowImpl.PollResult.PENDING);
+                        }
+                    }
+                }, PollTimeout, TimeUnit.MILLISECONDS);
+            } catch (final RejectedExecutionException e) {
+                response.cancel(true);
+                finish(null, e);
+                return;
+            }
+            response.addCallback(new Callback<HttpResponse>() {
+                @Override
+                public void onSuccess(final HttpResponse result) {
+                    if (!answered.compareAndSet(false, true)) {
+                        return;
+                    }
+                    timeout.cancel(false);
+                    final DeviceFlowImpl.PollResult pollResult;
+                    try {
+                        pollResult = deviceFlow.toPollResult(result, deviceFlowResponse);
+                    } catch (final Throwable t) {
+                        // a refusal ends the flow as it does in a loop
+                        finish(null, t);
+                        return;
+                    }
+                    onPollResult(pollResult);
+                }
+
+                @Override
+                public void onFailure(final Throwable throwable) {
+                    if (!answered.compareAndSet(false, true)) {
+                        return;
+                    }
+                    timeout.cancel(false);
+                    if (throwable instanceof InterruptedIOException) {
+                        logger.debug("The poll timed out, asking again after the interval.", throwable);
+                        onPollResult(DeviceFlowImpl.PollResult.PENDING);
+                        return;
+                    }
+                    // a network problem is reported as an error, as it is in a loop
+                    finish(null, throwable instanceof IOException ? new Error(throwable) : throwable);
+                }
+            });
+        }
+
+        private void onPollResult(final DeviceFlowImpl.PollResult result) {
+            if (result.outcome == DeviceFlowImpl.PollOutcome.GRANTED) {
+                finish(result.tokenPair, null);
+                return;
+            }
+            if (result.outcome == DeviceFlowImpl.PollOutcome.SLOW_DOWN) {
+                intervalMillis *= 2;
+                logger.debug("Asked to slow down, polling every {} ms.", intervalMillis);
+            }
+            if (Calendar.getInstance().compareTo(deviceFlowResponse.getExpiresAt()) > 0) {
+                finish(null, new AuthorizationException("code_expired", "The verification code expired.", null,
+                        null));
+                return;
+            }
+            scheduleNext();
+        }
+
+        void finish(final TokenPair tokenPair, final Throwable failure) {
+            if (!pendingFlows.remove(this)) {
+                // already finished, by the poll or by shutdown()
+                return;
+            }
+            final ListenableFuture<HttpResponse> inFlight = poll;
+            if (inFlight != null) {
+                inFlight.cancel(true);
+            }
+            if (failure == null) {
+                future.set(tokenPair);
+            } else {
+                future.setException(failure);
+            }
+        }
+    }
+}
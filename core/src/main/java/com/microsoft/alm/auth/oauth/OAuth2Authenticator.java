@@ -5,19 +5,24 @@ package com.microsoft.alm.auth.oauth;
 
 import com.microsoft.alm.auth.BaseAuthenticator;
 import com.microsoft.alm.auth.PromptBehavior;
+import com.microsoft.alm.auth.ValidationLeaseCache;
 import com.microsoft.alm.auth.oauth.helper.AzureAuthorityProvider;
 import com.microsoft.alm.auth.oauth.helper.SwtJarLoader;
 import com.microsoft.alm.helpers.Action;
 import com.microsoft.alm.helpers.Debug;
+import com.microsoft.alm.helpers.Func;
 import com.microsoft.alm.helpers.HttpClient;
+import com.microsoft.alm.helpers.HttpClientHelper;
 import com.microsoft.alm.helpers.HttpClientImpl;
 import com.microsoft.alm.helpers.SettingsHelper;
 import com.microsoft.alm.helpers.StringHelper;
 import com.microsoft.alm.oauth2.useragent.AuthorizationException;
 import com.microsoft.alm.secret.Token;
 import com.microsoft.alm.secret.TokenPair;
+import com.microsoft.alm.storage.CrossProcessLeases;
 import com.microsoft.alm.storage.InsecureInMemoryStore;
 import com.microsoft.alm.storage.SecretStore;
+import com.microsoft.alm.storage.SecretStoreLocks;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,6 +50,8 @@ public class OAuth2Authenticator extends BaseAuthenticator {
 
     private final static String TYPE = "OAuth2";
 
+    private static final long REFRESH_LEASE_TIMEOUT_MILLIS = 10 * 1000;
+
     // oauth2-useragent should expose this property as public property, it shouldn't be exposed from here,
     // hence "private" modifier
     private static final String USER_AGENT_PROVIDER_PROPERTY_NAME = "userAgentProvider";
@@ -61,6 +68,10 @@ public class OAuth2Authenticator extends BaseAuthenticator {
 
     private AzureAuthorityProvider azureAuthorityProvider = new AzureAuthorityProvider();
 
+    private volatile TokenRefreshScheduler tokenRefreshScheduler;
+
+    private volatile CrossProcessLeases crossProcessLeases;
+
     /**
      * Get an OAuth2 authenticator
      *
@@ -166,12 +177,24 @@ public class OAuth2Authenticator extends BaseAuthenticator {
         final String key = getKey(APP_VSSPS_VISUALSTUDIO);
 
         final SecretRetriever<TokenPair> secretRetriever = new SecretRetriever<TokenPair>() {
+            @Override
+            protected ValidationLeaseCache getValidationLeaseCache() {
+                return OAuth2Authenticator.this.getValidationLeaseCache();
+            }
+
+            @Override
+            protected Object getRetrievalParameters() {
+                // the token comes from the authority of the tenant behind the uri
+                return uri;
+            }
+
 
             private boolean validateAccessToken(final Token accessToken, final URI validationEndpoint) {
                 final HttpClient client = Global.getHttpClientFactory().createHttpClient();
                 accessToken.contributeHeader(client.getHeaders());
                 try {
-                    final String response = client.getGetResponseText(validationEndpoint);
+                    // only the status matters, the profile itself is never read
+                    HttpClientHelper.streamGetResponse(client, validationEndpoint, HttpClientHelper.IGNORE_BODY);
 
                     return true;
                 } catch (IOException e) {
@@ -190,23 +213,64 @@ public class OAuth2Authenticator extends BaseAuthenticator {
                 boolean valid = false;
 
                 if (tokenPair.AccessToken != null && !StringHelper.isNullOrEmpty(tokenPair.AccessToken.Value)) {
-                    logger.debug("Validating stored OAuth2 Access Token...");
-                    valid = validateAccessToken(tokenPair.AccessToken, validationEndpoint);
+                    // the token, or its store, says how long it lasts; only ask the server when neither can tell
+                    final AccessTokenFreshness freshness = AccessTokenFreshness.of(tokenPair);
+                    if (freshness == AccessTokenFreshness.FRESH) {
+                        logger.debug("Stored OAuth2 Access Token has not expired.");
+                        valid = true;
+                    } else if (freshness == AccessTokenFreshness.EXPIRED) {
+                        logger.debug("Stored OAuth2 Access Token has expired.");
+                    } else {
+                        logger.debug("Validating stored OAuth2 Access Token...");
+                        valid = validateAccessToken(tokenPair.AccessToken, validationEndpoint);
+                    }
                 }
 
                 if (!valid && tokenPair.RefreshToken != null
                         && !StringHelper.isNullOrEmpty(tokenPair.RefreshToken.Value)) {
                     logger.debug("OAuth2 Access Token is not valid, and we have a refresh token, try refreshing...");
 
-                    final TokenPair renewedTokenPair =
-                            getAzureAuthority(uri).acquireTokenByRefreshToken(clientId, resource, tokenPair.RefreshToken);
+                    // refresh tokens are rotated: of the processes sharing the store, only one may use it
+                    final CrossProcessLeases leases = crossProcessLeases;
+                    final CrossProcessLeases.Lease lease =
+                            leases == null ? null : leases.tryAcquire(key, REFRESH_LEASE_TIMEOUT_MILLIS);
+                    try {
+                        TokenPair current = tokenPair;
+                        if (leases != null) {
+                            final TokenPair stored = readFromStore(key, getStore());
+                            if (stored != null && !stored.equals(tokenPair)) {
+                                current = stored;
+                            }
+                        }
 
-                    if (renewedTokenPair != null
-                            && renewedTokenPair.AccessToken.Value != null
-                            && renewedTokenPair.RefreshToken.Value != null) {
-                        logger.debug("OAuth2 Access Token refreshed successfully.");
-                        valid = true;
-                        holder.set(renewedTokenPair);
+                        if (current != tokenPair
+                                && AccessTokenFreshness.of(current) != AccessTokenFreshness.EXPIRED) {
+                            logger.debug("OAuth2 Access Token was refreshed by another process.");
+                            valid = true;
+                            holder.set(current);
+                        } else {
+                            final TokenPair renewedTokenPair = getAzureAuthority(uri)
+                                    .acquireTokenByRefreshToken(clientId, resource, current.RefreshToken);
+
+                            if (renewedTokenPair != null
+                                    && renewedTokenPair.AccessToken.Value != null
+                                    && renewedTokenPair.RefreshToken.Value != null) {
+                                logger.debug("OAuth2 Access Token refreshed successfully.");
+                                valid = true;
+                                holder.set(renewedTokenPair);
+                                if (lease != null) {
+                                    // the others waiting for the lease must find the renewed pair
+                                    store(key, getStore(), renewedTokenPair);
+                                }
+                            } else {
+                                // the account may have moved to another directory since its tenant was cached
+                                azureAuthorityProvider.invalidate(uri);
+                            }
+                        }
+                    } finally {
+                        if (lease != null) {
+                            lease.release();
+                        }
                     }
                 }
 
@@ -281,13 +345,86 @@ public class OAuth2Authenticator extends BaseAuthenticator {
             }
         };
 
-        return secretRetriever.retrieve(key, getStore(), promptBehavior);
+        final TokenPair tokenPair = secretRetriever.retrieve(key, getStore(), promptBehavior);
+
+        final TokenRefreshScheduler scheduler = this.tokenRefreshScheduler;
+        if (scheduler != null && tokenPair != null) {
+            scheduler.track(key, tokenPair, getStore(), new Func<TokenPair, TokenPair>() {
+                @Override
+                public TokenPair call(final TokenPair current) {
+                    final CrossProcessLeases processLeases = crossProcessLeases;
+                    final CrossProcessLeases.Lease lease = processLeases == null
+                            ? null : processLeases.tryAcquire(key, REFRESH_LEASE_TIMEOUT_MILLIS);
+                    if (processLeases != null && (lease == null || !current.equals(getStore().get(key)))) {
+                        // another process is refreshing it, or already has
+                        if (lease != null) {
+                            lease.release();
+                        }
+                        return null;
+                    }
+                    try {
+                        final TokenPair renewed = getAzureAuthority(uri)
+                                .acquireTokenByRefreshToken(clientId, resource, current.RefreshToken);
+                        final ValidationLeaseCache leases = getValidationLeaseCache();
+                        if (renewed != null && leases != null) {
+                            // just issued, so as good as validated
+                            leases.grant(renewed);
+                        }
+                        if (renewed != null && lease != null) {
+                            // stored before the lease is released, for the other processes to find
+                            synchronized (SecretStoreLocks.of(getStore(), key)) {
+                                getStore().delete(key);
+                                getStore().add(key, renewed);
+                            }
+                        }
+                        return renewed;
+                    } finally {
+                        if (lease != null) {
+                            lease.release();
+                        }
+                    }
+                }
+            });
+        }
+        return tokenPair;
     }
 
     public boolean signOut() {
+        final TokenRefreshScheduler scheduler = this.tokenRefreshScheduler;
+        if (scheduler != null) {
+            scheduler.cancel(getKey(APP_VSSPS_VISUALSTUDIO));
+        }
         return super.signOut(APP_VSSPS_VISUALSTUDIO);
     }
 
+    public CrossProcessLeases getCrossProcessLeases() {
+        return crossProcessLeases;
+    }
+
+    /**
+     * Has the processes sharing the store take turns refreshing its token pair: a refresh first waits, for up to
+     * 10 seconds, for the lock file of its key, such as those {@link CrossProcessLeases#getDefault()} keeps under
+     * {@code ~/.VSTeamServicesAuthPlugin/locks}, and then reuses the pair another process stored meanwhile.
+     *
+     * @param crossProcessLeases the lock files to take turns on; null, the default, to refresh without asking the
+     *                           others
+     */
+    public void setCrossProcessLeases(final CrossProcessLeases crossProcessLeases) {
+        this.crossProcessLeases = crossProcessLeases;
+    }
+
+    public TokenRefreshScheduler getTokenRefreshScheduler() {
+        return tokenRefreshScheduler;
+    }
+
+    /**
+     * @param tokenRefreshScheduler refreshes the token pairs this authenticator hands out before they expire;
+     *                              null, the default, leaves refreshing to the callers that find them expired
+     */
+    public void setTokenRefreshScheduler(final TokenRefreshScheduler tokenRefreshScheduler) {
+        this.tokenRefreshScheduler = tokenRefreshScheduler;
+    }
+
     // For unit test
     /*default*/ void setAzureAuthorityProvider(final AzureAuthorityProvider azureAuthorityProvider) {
         this.azureAuthorityProvider = azureAuthorityProvider;
@@ -308,6 +445,8 @@ public class OAuth2Authenticator extends BaseAuthenticator {
         private SecretStore store;
         private String tenantId = AzureAuthority.CommonTenant;
         private Action<DeviceFlowResponse> deviceFlowCallback;
+        private TokenRefreshScheduler tokenRefreshScheduler;
+        private CrossProcessLeases crossProcessLeases;
 
         public OAuth2AuthenticatorBuilder manage(final String resource) {
             Debug.Assert(resource != null, "resource cannot be null");
@@ -346,6 +485,19 @@ public class OAuth2Authenticator extends BaseAuthenticator {
             return this;
         }
 
+        public OAuth2AuthenticatorBuilder refreshedBy(final TokenRefreshScheduler tokenRefreshScheduler) {
+            this.tokenRefreshScheduler = tokenRefreshScheduler;
+            return this;
+        }
+
+        /**
+         * @see OAuth2Authenticator#setCrossProcessLeases(CrossProcessLeases)
+         */
+        public OAuth2AuthenticatorBuilder coordinatedBy(final CrossProcessLeases crossProcessLeases) {
+            this.crossProcessLeases = crossProcessLeases;
+            return this;
+        }
+
         public OAuth2Authenticator build() {
             if (this.clientId == null) {
                 throw new IllegalStateException("ClientId not set");
@@ -361,8 +513,11 @@ public class OAuth2Authenticator extends BaseAuthenticator {
 
             final OAuth2UseragentValidator oAuth2UseragentValidator = new OAuth2UseragentValidator();
 
-            return new OAuth2Authenticator(this.resource, this.clientId, this.redirectUri, this.store,
-                    oAuth2UseragentValidator, this.deviceFlowCallback);
+            final OAuth2Authenticator authenticator = new OAuth2Authenticator(this.resource, this.clientId,
+                    this.redirectUri, this.store, oAuth2UseragentValidator, this.deviceFlowCallback);
+            authenticator.setTokenRefreshScheduler(this.tokenRefreshScheduler);
+            authenticator.setCrossProcessLeases(this.crossProcessLeases);
+            return authenticator;
         }
     }
 }
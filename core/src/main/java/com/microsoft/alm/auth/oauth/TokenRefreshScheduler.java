@@ -0,0 +1,179 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.auth.oauth;
+
+import com.microsoft.alm.helpers.DaemonThreadFactory;
+import com.microsoft.alm.helpers.Debug;
+import com.microsoft.alm.helpers.Func;
+import com.microsoft.alm.secret.TokenPair;
+import com.microsoft.alm.storage.SecretStore;
+import com.microsoft.alm.storage.SecretStoreLocks;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Refreshes stored OAuth2 token pairs in the background shortly before their access tokens expire, so callers
+ * find a valid access token in the store instead of waiting for a refresh themselves.
+ *
+ * To use it, give one scheduler to the authenticators that should keep their tokens fresh:
+ * <pre>
+ *     authenticator.setTokenRefreshScheduler(new TokenRefreshScheduler());
+ * </pre>
+ *
+ * The expiry of a token pair is the one it kept from the token response or its store, or else the {@code exp}
+ * claim of the access token, as {@link AccessTokenFreshness} reads them.  A pair whose expiry cannot be told is
+ * not tracked.  A refresh that fails is not retried: the next caller refreshes on its own, as without a scheduler.
+ */
+public class TokenRefreshScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenRefreshScheduler.class);
+
+    public static final long DEFAULT_LEAD_MILLIS = 10 * 60 * 1000L;
+
+    private final ScheduledExecutorService executor;
+    private final long leadMillis;
+    private final ConcurrentMap<String, Tracked> tracked = new ConcurrentHashMap<String, Tracked>();
+
+    public TokenRefreshScheduler() {
+        this(Executors.newScheduledThreadPool(2, new DaemonThreadFactory("auth-library-token-refresh")),
+                DEFAULT_LEAD_MILLIS);
+    }
+
+    /**
+     * @param executor   runs the refreshes
+     * @param leadMillis how long before the access token expires it is refreshed; keep it above
+     *                   {@link AccessTokenFreshness#EXPIRY_MARGIN_MILLIS}, or callers may refresh first
+     */
+    public TokenRefreshScheduler(final ScheduledExecutorService executor, final long leadMillis) {
+        Debug.Assert(executor != null, "executor cannot be null");
+        if (leadMillis < 0) {
+            throw new IllegalArgumentException("leadMillis cannot be negative");
+        }
+
+        this.executor = executor;
+        this.leadMillis = leadMillis;
+    }
+
+    /**
+     * Schedules the refresh of a token pair found in, or just written to, a store; does nothing if that pair is
+     * already tracked under the key.
+     *
+     * @param refresher trades the pair for a renewed one, returning null if it cannot
+     */
+    void track(final String key, final TokenPair tokenPair, final SecretStore<TokenPair> store,
+               final Func<TokenPair, TokenPair> refresher) {
+        Debug.Assert(key != null, "key cannot be null");
+        Debug.Assert(store != null, "store cannot be null");
+        Debug.Assert(refresher != null, "refresher cannot be null");
+
+        final Tracked current = tracked.get(key);
+        if (tokenPair == null || current != null && current.tokenPair.equals(tokenPair)) {
+            return;
+        }
+        final long expiresAt = AccessTokenFreshness.getExpiresOnMillis(tokenPair);
+        if (expiresAt == -1) {
+            logger.debug("Not refreshing {} ahead of time, its expiry is unknown.", key);
+            return;
+        }
+
+        final Tracked next = new Tracked(tokenPair);
+        if (current == null ? tracked.putIfAbsent(key, next) != null : !tracked.replace(key, current, next)) {
+            // another caller got in first with the same, or a newer, pair
+            return;
+        }
+        if (current != null && current.future != null) {
+            current.future.cancel(false);
+        }
+        final long delay = Math.max(expiresAt - leadMillis - System.currentTimeMillis(), 0);
+        logger.debug("Refreshing {} in {} ms.", key, delay);
+        next.future = executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                refresh(key, next, store, refresher);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void refresh(final String key, final Tracked expected, final SecretStore<TokenPair> store,
+                         final Func<TokenPair, TokenPair> refresher) {
+        if (tracked.get(key) != expected) {
+            return;
+        }
+        final TokenPair renewed;
+        try {
+            renewed = refresher.call(expected.tokenPair);
+        } catch (final RuntimeException e) {
+            logger.debug("Refreshing {} ahead of time failed.", key, e);
+            tracked.remove(key, expected);
+            return;
+        } catch (final Error e) {
+            // AzureAuthority reports I/O problems as errors
+            logger.debug("Refreshing {} ahead of time failed.", key, e);
+            tracked.remove(key, expected);
+            return;
+        }
+        if (renewed == null || renewed.AccessToken.Value == null || renewed.RefreshToken.Value == null) {
+            logger.debug("Refreshing {} ahead of time failed.", key);
+            tracked.remove(key, expected);
+            return;
+        }
+
+        synchronized (SecretStoreLocks.of(store, key)) {
+            // unless the refresher stored the renewed pair itself, a sign out or a sign in with another account
+            // wins over a refresh of what was there before
+            final TokenPair stored = store.get(key);
+            if (!renewed.equals(stored)) {
+                if (!expected.tokenPair.equals(stored)) {
+                    tracked.remove(key, expected);
+                    return;
+                }
+                store.delete(key);
+                store.add(key, renewed);
+            }
+        }
+        logger.debug("Refreshed {} ahead of time.", key);
+        track(key, renewed, store, refresher);
+    }
+
+    /**
+     * Stops refreshing the token pair stored under a key, such as after signing out.
+     */
+    public void cancel(final String key) {
+        final Tracked current = tracked.remove(key);
+        if (current != null && current.future != null) {
+            current.future.cancel(false);
+        }
+    }
+
+    /**
+     * @return how many keys have a refresh scheduled
+     */
+    public int getTrackedCount() {
+        return tracked.size();
+    }
+
+    /**
+     * Cancels all refreshes and stops the executor.
+     */
+    public void shutdown() {
+        tracked.clear();
+        executor.shutdownNow();
+    }
+
+    private static final class Tracked {
+        final TokenPair tokenPair;
+        volatile ScheduledFuture<?> future;
+
+        Tracked(final TokenPair tokenPair) {
+            this.tokenPair = tokenPair;
+        }
+    }
+}
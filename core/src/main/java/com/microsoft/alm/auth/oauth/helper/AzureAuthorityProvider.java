@@ -5,33 +5,73 @@ package com.microsoft.alm.auth.oauth.helper;
 
 import com.microsoft.alm.auth.oauth.AzureAuthority;
 import com.microsoft.alm.auth.oauth.OAuth2Authenticator;
+import com.microsoft.alm.helpers.Debug;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.URI;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Provide tenant appropriate AzureAuthority
+ *
+ * Tenants are looked up through a {@link TenantCache}, and there is one AzureAuthority per tenant.
  */
 public class AzureAuthorityProvider {
     private static final Logger logger = LoggerFactory.getLogger(AzureAuthorityProvider.class);
 
+    private static final ConcurrentMap<UUID, AzureAuthority> authorities
+            = new ConcurrentHashMap<UUID, AzureAuthority>();
+
+    private final TenantCache tenantCache;
+
+    /**
+     * Uses the shared {@link TenantCache#getDefault()}.
+     */
+    public AzureAuthorityProvider() {
+        this.tenantCache = null;
+    }
+
+    public AzureAuthorityProvider(final TenantCache tenantCache) {
+        Debug.Assert(tenantCache != null, "tenantCache cannot be null");
+        this.tenantCache = tenantCache;
+    }
+
     public AzureAuthority getAzureAuthority(final URI uri) throws IOException {
         if (uri == OAuth2Authenticator.APP_VSSPS_VISUALSTUDIO) {
             return AzureAuthority.DefaultAzureAuthority;
         }
 
         logger.debug("Lookup tenant id for {}", uri);
-        final UUID tenantId = AzureAuthority.detectTenantId(uri);
+        final TenantCache cache = tenantCache != null ? tenantCache : TenantCache.getDefault();
+        final UUID tenantId = cache.getTenantId(uri);
         logger.debug("tenant id for {} is {}", uri, tenantId);
         if (tenantId == null) {
             // backed by MSA account
             return AzureAuthority.DefaultAzureAuthority;
         }
 
-        return new AzureAuthority(AzureAuthority.AuthorityHostUrlBase + "/" + tenantId);
+        AzureAuthority authority = authorities.get(tenantId);
+        if (authority == null) {
+            final AzureAuthority created = new AzureAuthority(AzureAuthority.AuthorityHostUrlBase + "/" + tenantId);
+            authority = authorities.putIfAbsent(tenantId, created);
+            if (authority == null) {
+                authority = created;
+            }
+        }
+        return authority;
+    }
+
+    /**
+     * Forgets the tenant of the account at the URI, so the next lookup asks the account again.
+     */
+    public void invalidate(final URI uri) {
+        if (uri != OAuth2Authenticator.APP_VSSPS_VISUALSTUDIO) {
+            (tenantCache != null ? tenantCache : TenantCache.getDefault()).invalidate(uri);
+        }
     }
 
 }
@@ -0,0 +1,96 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.auth.oauth.helper;
+
+import com.microsoft.alm.auth.oauth.AzureAuthority;
+import com.microsoft.alm.helpers.Debug;
+import com.microsoft.alm.helpers.ExpiringCache;
+import com.microsoft.alm.helpers.ExpiringCacheSnapshot;
+import com.microsoft.alm.helpers.HostCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.UUID;
+
+/**
+ * Remembers which Azure Active Directory tenant backs an account, so the HEAD request of
+ * {@link AzureAuthority#detectTenantId(URI)} is sent once per host rather than on every token refresh.
+ *
+ * Accounts without a tenant, backed by Microsoft accounts, are remembered too, for a shorter time.  Lookups that
+ * fail are not cached.
+ *
+ * Given a snapshot file, the cache is read from it when created and written back to it whenever it learns a
+ * tenant, so it survives restarts.  The file only holds host names and tenant ids.
+ */
+public class TenantCache extends HostCache<UUID> {
+
+    public static final long DEFAULT_TTL_MILLIS = 24 * 60 * 60 * 1000L;
+    public static final long DEFAULT_NEGATIVE_TTL_MILLIS = 60 * 60 * 1000L;
+
+    private static volatile TenantCache defaultCache = new TenantCache();
+
+    /**
+     * Creates a cache that is only kept in memory.
+     */
+    public TenantCache() {
+        this(DEFAULT_TTL_MILLIS, DEFAULT_NEGATIVE_TTL_MILLIS, null);
+    }
+
+    /**
+     * Creates a cache saved to the given file.
+     *
+     * @param snapshotFile where the cache is saved, does not need to exist first
+     */
+    public TenantCache(final File snapshotFile) {
+        this(DEFAULT_TTL_MILLIS, DEFAULT_NEGATIVE_TTL_MILLIS, snapshotFile);
+    }
+
+    /**
+     * @param ttlMillis         how long a tenant is remembered
+     * @param negativeTtlMillis how long an account without a tenant is remembered
+     * @param snapshotFile      where the cache is saved, null to keep it in memory only
+     */
+    public TenantCache(final long ttlMillis, final long negativeTtlMillis, final File snapshotFile) {
+        super("tenant id", ttlMillis, negativeTtlMillis, snapshotFile == null ? null
+                : ExpiringCacheSnapshot.ofUuids(snapshotFile,
+                        "Azure Active Directory tenants of Team Services accounts"));
+    }
+
+    /**
+     * @return the cache shared by every {@link AzureAuthorityProvider} created without one
+     */
+    public static TenantCache getDefault() {
+        return defaultCache;
+    }
+
+    /**
+     * Replaces the shared cache, for example with one backed by a snapshot file.
+     */
+    public static void setDefault(final TenantCache cache) {
+        Debug.Assert(cache != null, "cache cannot be null");
+        defaultCache = cache;
+    }
+
+    /**
+     * @return the tenant of the account at the URI, from the cache or else from the account itself;
+     *         {@code null} if it has none
+     * @throws IOException when the account could not be asked
+     */
+    public UUID getTenantId(final URI uri) throws IOException {
+        final ExpiringCache.Entry<UUID> cached = getEntry(uri);
+        if (cached != null) {
+            return cached.getValue();
+        }
+
+        final UUID tenantId = detectTenantId(uri);
+        put(uri, tenantId);
+        return tenantId;
+    }
+
+    // For unit test
+    /*default*/ UUID detectTenantId(final URI uri) throws IOException {
+        return AzureAuthority.detectTenantId(uri);
+    }
+}
@@ -0,0 +1,95 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.auth.pat;
+
+import com.microsoft.alm.auth.oauth.AccessTokenIdentity;
+import com.microsoft.alm.helpers.Debug;
+import com.microsoft.alm.helpers.ExpiringCache;
+
+import java.net.URI;
+
+/**
+ * Remembers the profile id of each user and the account their global personal access tokens are created for, so
+ * the Profile and Accounts APIs are not asked every time one is generated.
+ *
+ * Users are told apart by {@link AccessTokenIdentity}, which stays the same across refreshed access tokens.  A
+ * profile id never changes and is kept for a day; the account is kept for an hour, since the user can leave it.
+ * Nothing is saved to disk.
+ */
+public class AccountCache {
+
+    public static final long DEFAULT_PROFILE_TTL_MILLIS = 24 * 60 * 60 * 1000L;
+    public static final long DEFAULT_ACCOUNT_TTL_MILLIS = 60 * 60 * 1000L;
+
+    private static volatile AccountCache defaultCache = new AccountCache();
+
+    private final ExpiringCache<String, String> profileIds;
+    private final ExpiringCache<String, URI> accountUris;
+
+    public AccountCache() {
+        this(DEFAULT_PROFILE_TTL_MILLIS, DEFAULT_ACCOUNT_TTL_MILLIS);
+    }
+
+    /**
+     * @param profileTtlMillis how long a profile id is remembered
+     * @param accountTtlMillis how long an account is remembered
+     */
+    public AccountCache(final long profileTtlMillis, final long accountTtlMillis) {
+        // failed lookups throw, there are no negative results to remember
+        this.profileIds = new ExpiringCache<String, String>(profileTtlMillis, 0);
+        this.accountUris = new ExpiringCache<String, URI>(accountTtlMillis, 0);
+    }
+
+    /**
+     * @return the cache used when generating global personal access tokens
+     */
+    public static AccountCache getDefault() {
+        return defaultCache;
+    }
+
+    public static void setDefault(final AccountCache cache) {
+        Debug.Assert(cache != null, "cache cannot be null");
+        defaultCache = cache;
+    }
+
+    /**
+     * @param identity as told by {@link AccessTokenIdentity#of}
+     * @return the profile id of the user, or null if it is not known
+     */
+    public String getProfileId(final String identity) {
+        final ExpiringCache.Entry<String> cached = profileIds.get(identity);
+        return cached == null ? null : cached.getValue();
+    }
+
+    public void putProfileId(final String identity, final String profileId) {
+        Debug.Assert(profileId != null, "profileId cannot be null");
+        profileIds.put(identity, profileId);
+    }
+
+    /**
+     * @param identity as told by {@link AccessTokenIdentity#of}
+     * @return the account global tokens of the user are created for, or null if it is not known
+     */
+    public URI getAccountUri(final String identity) {
+        final ExpiringCache.Entry<URI> cached = accountUris.get(identity);
+        return cached == null ? null : cached.getValue();
+    }
+
+    public void putAccountUri(final String identity, final URI accountUri) {
+        Debug.Assert(accountUri != null, "accountUri cannot be null");
+        accountUris.put(identity, accountUri);
+    }
+
+    /**
+     * Forgets the account of the user, as when a token could not be generated for it.
+     */
+    public void invalidateAccount(final String identity) {
+        accountUris.remove(identity);
+    }
+
+    public void clear() {
+        profileIds.clear();
+        accountUris.clear();
+    }
+}
@@ -0,0 +1,73 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.auth.pat;
+
+import com.microsoft.alm.helpers.Debug;
+import com.microsoft.alm.helpers.ExpiringCacheSnapshot;
+import com.microsoft.alm.helpers.HostCache;
+import com.microsoft.alm.helpers.UriHelper;
+
+import java.io.File;
+import java.net.URI;
+import java.util.Locale;
+
+/**
+ * Remembers where the identity service of an account lives, so generating a personal access token does not
+ * need a LocationService2 request every time.
+ *
+ * Given a snapshot file, the cache is read from it when created and written back to it whenever it learns a
+ * location, so it survives restarts.  The file only holds account names and identity service URIs.
+ */
+public class IdentityServiceCache extends HostCache<URI> {
+
+    public static final long DEFAULT_TTL_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private static volatile IdentityServiceCache defaultCache = new IdentityServiceCache();
+
+    /**
+     * Creates a cache that is only kept in memory.
+     */
+    public IdentityServiceCache() {
+        this(DEFAULT_TTL_MILLIS, null);
+    }
+
+    /**
+     * Creates a cache saved to the given file.
+     *
+     * @param snapshotFile where the cache is saved, does not need to exist first
+     */
+    public IdentityServiceCache(final File snapshotFile) {
+        this(DEFAULT_TTL_MILLIS, snapshotFile);
+    }
+
+    /**
+     * @param ttlMillis    how long a location is remembered
+     * @param snapshotFile where the cache is saved, null to keep it in memory only
+     */
+    public IdentityServiceCache(final long ttlMillis, final File snapshotFile) {
+        // a missing location is an error, not an answer worth remembering
+        super("identity service", ttlMillis, 0, snapshotFile == null ? null
+                : ExpiringCacheSnapshot.ofUris(snapshotFile, "Identity services of Team Services accounts"));
+    }
+
+    /**
+     * @return the cache used when generating personal access tokens
+     */
+    public static IdentityServiceCache getDefault() {
+        return defaultCache;
+    }
+
+    /**
+     * Replaces the shared cache, for example with one backed by a snapshot file.
+     */
+    public static void setDefault(final IdentityServiceCache cache) {
+        Debug.Assert(cache != null, "cache cannot be null");
+        defaultCache = cache;
+    }
+
+    @Override
+    protected String getKey(final URI targetUri) {
+        return UriHelper.getFullAccount(targetUri).toLowerCase(Locale.ENGLISH);
+    }
+}
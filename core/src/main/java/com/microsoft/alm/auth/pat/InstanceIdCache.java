@@ -0,0 +1,74 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.auth.pat;
+
+import com.microsoft.alm.helpers.Debug;
+import com.microsoft.alm.helpers.ExpiringCacheSnapshot;
+import com.microsoft.alm.helpers.HostCache;
+import com.microsoft.alm.helpers.UriHelper;
+
+import java.io.File;
+import java.net.URI;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Remembers the instanceId of the deployment behind each account, which personal access tokens are scoped to, so
+ * generating one does not need to read the connectionData of the account every time.
+ *
+ * Given a snapshot file, the cache is read from it when created and written back to it whenever it learns an
+ * instanceId, so it survives restarts.  The file only holds account names and instanceIds.
+ */
+public class InstanceIdCache extends HostCache<UUID> {
+
+    public static final long DEFAULT_TTL_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private static volatile InstanceIdCache defaultCache = new InstanceIdCache();
+
+    /**
+     * Creates a cache that is only kept in memory.
+     */
+    public InstanceIdCache() {
+        this(DEFAULT_TTL_MILLIS, null);
+    }
+
+    /**
+     * Creates a cache saved to the given file.
+     *
+     * @param snapshotFile where the cache is saved, does not need to exist first
+     */
+    public InstanceIdCache(final File snapshotFile) {
+        this(DEFAULT_TTL_MILLIS, snapshotFile);
+    }
+
+    /**
+     * @param ttlMillis    how long an instanceId is remembered
+     * @param snapshotFile where the cache is saved, null to keep it in memory only
+     */
+    public InstanceIdCache(final long ttlMillis, final File snapshotFile) {
+        // every account has an instanceId, a missing one is an error rather than an answer worth remembering
+        super("instanceId", ttlMillis, 0, snapshotFile == null ? null
+                : ExpiringCacheSnapshot.ofUuids(snapshotFile, "Deployment instanceIds of Team Services accounts"));
+    }
+
+    /**
+     * @return the cache used when generating personal access tokens
+     */
+    public static InstanceIdCache getDefault() {
+        return defaultCache;
+    }
+
+    /**
+     * Replaces the shared cache, for example with one backed by a snapshot file.
+     */
+    public static void setDefault(final InstanceIdCache cache) {
+        Debug.Assert(cache != null, "cache cannot be null");
+        defaultCache = cache;
+    }
+
+    @Override
+    protected String getKey(final URI targetUri) {
+        return UriHelper.getFullAccount(targetUri).toLowerCase(Locale.ENGLISH);
+    }
+}
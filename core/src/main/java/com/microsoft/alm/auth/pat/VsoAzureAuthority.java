@@ -5,9 +5,15 @@ package com.microsoft.alm.auth.pat;
 
 import com.microsoft.alm.auth.oauth.AzureAuthority;
 import com.microsoft.alm.auth.oauth.Global;
+import com.microsoft.alm.helpers.AsyncHttpClient;
+import com.microsoft.alm.helpers.BlockingHttpClientAdapter;
+import com.microsoft.alm.helpers.Deadline;
 import com.microsoft.alm.helpers.Debug;
 import com.microsoft.alm.helpers.Guid;
 import com.microsoft.alm.helpers.HttpClient;
+import com.microsoft.alm.helpers.HttpClientHelper;
+import com.microsoft.alm.helpers.JsonFieldExtractor;
+import com.microsoft.alm.helpers.ResponseHandler;
 import com.microsoft.alm.helpers.StringContent;
 import com.microsoft.alm.helpers.StringHelper;
 import com.microsoft.alm.helpers.UriHelper;
@@ -18,11 +24,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.net.URI;
 import java.util.UUID;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 class VsoAzureAuthority extends AzureAuthority {
 
@@ -33,6 +40,12 @@ class VsoAzureAuthority extends AzureAuthority {
      */
     public static final int RequestTimeout = 15 * 1000; // 15 second limit
 
+    /**
+     * The time budget for generating a personal access token, from looking up the account to receiving the token,
+     * unless the caller has already set a {@link Deadline}
+     */
+    public static final int PersonalAccessTokenTimeout = 60 * 1000; // 60 second limit
+
     private final static String ALL_ACCOUNTS = "all_accounts";
 
     /**
@@ -54,41 +67,56 @@ class VsoAzureAuthority extends AzureAuthority {
 
         logger.debug("VsoAzureAuthority::generatePersonalAccessToken");
 
+        // every call below gets what is left of this budget as its timeouts, so generation cannot hang
+        final Deadline previousDeadline = Deadline.setCurrent(Deadline.currentOrAfter(PersonalAccessTokenTimeout));
         try {
-            // TODO: 449524: create a `HttpClient` with a minimum number of redirects, default creds, and a reasonable timeout (access token generation seems to hang occasionally)
+            // TODO: 449524: create a `HttpClient` with a minimum number of redirects and default creds
             final HttpClient client = Global.getHttpClientFactory().createHttpClient();
             logger.debug("   using token to acquire personal access token");
             accessToken.contributeHeader(client.getHeaders());
 
-            if (shouldCreateGlobalToken || populateTokenTargetId(targetUri, accessToken)) {
-                final URI requestUrl = createPersonalAccessTokenRequestUri(client, targetUri, requireCompactToken);
+            // the identity service and the instanceId of the account do not depend on each other: the former is
+            // looked up in the background while the latter is read, and the token request waits for both
+            final IdentityServiceLookup identityServiceLookup = startIdentityServiceLookup(targetUri, accessToken);
+            try {
+                if (!shouldCreateGlobalToken && !populateTokenTargetId(targetUri, accessToken)) {
+                    return null;
+                }
+                final URI requestUrl = createPersonalAccessTokenRequestUri(identityServiceLookup.await(),
+                        targetUri, requireCompactToken);
 
                 final StringContent content = getAccessTokenRequestBody(accessToken, tokenScope,
                         shouldCreateGlobalToken, displayName);
 
-                final String responseText = client.getPostResponseText(requestUrl, content);
-
-                final Token token = parsePersonalAccessTokenFromJson(responseText);
+                final Token token;
+                try {
+                    token = HttpClientHelper.streamPostResponse(client, requestUrl, content,
+                            PERSONAL_ACCESS_TOKEN_HANDLER);
+                } catch (final IOException e) {
+                    // the account may have moved to another identity service since it was cached
+                    IdentityServiceCache.getDefault().invalidate(targetUri);
+                    throw e;
+                }
                 if (token != null) {
                     logger.debug("   personal access token acquisition succeeded.");
                 }
 
                 return token;
+            } finally {
+                identityServiceLookup.cancel();
             }
         } catch (IOException e) {
             throw new Error(e);
+        } finally {
+            Deadline.setCurrent(previousDeadline);
         }
-        return null;
     }
 
-    private URI createPersonalAccessTokenRequestUri(final HttpClient client, final URI targetUri,
-                                                    final boolean requireCompactToken) throws IOException {
+    private URI createPersonalAccessTokenRequestUri(final URI identityServiceUri, final URI targetUri,
+                                                    final boolean requireCompactToken) {
         final String SessionTokenUrl = "_apis/token/sessiontokens?api-version=1.0";
         final String CompactTokenUrl = SessionTokenUrl + "&tokentype=compact";
 
-        Debug.Assert(client != null, "The client is null");
-
-        final URI identityServiceUri = getIdentityServiceUri(client, targetUri);
         if (identityServiceUri == null) {
             throw new RuntimeException("Failed to find Identity Service for " + targetUri.toString());
         }
@@ -104,24 +132,72 @@ class VsoAzureAuthority extends AzureAuthority {
         return URI.create(url);
     }
 
-    private URI getIdentityServiceUri(final HttpClient client, final URI targetUri) throws IOException {
-        final String locationServiceUrlFormat = "https://%1$s/_apis/ServiceDefinitions/LocationService2/951917AC-A960-4999-8464-E3F0AA25B381?api-version=1.0";
-
-        Debug.Assert(client != null, ("The client parameter is null."));
+    /**
+     * Starts looking up the identity service of the account on the factory's asynchronous client.
+     */
+    private IdentityServiceLookup startIdentityServiceLookup(final URI targetUri, final Token accessToken)
+            throws IOException {
         Debug.Assert(targetUri != null && targetUri.isAbsolute(), "The targetUri parameter is null or invalid");
 
+        final URI cached = IdentityServiceCache.getDefault().get(targetUri);
+        if (cached != null) {
+            return new IdentityServiceLookup(targetUri, cached, null);
+        }
+
+        final URI locationServiceUri = createLocationServiceUri(targetUri);
+        final AsyncHttpClient asyncClient = Global.getHttpClientFactory().createAsyncHttpClient();
+        accessToken.contributeHeader(asyncClient.getHeaders());
+        final Future<String> response = asyncClient.getGetResponseText(locationServiceUri,
+                Deadline.capTimeout(RequestTimeout));
+        return new IdentityServiceLookup(targetUri, null, response);
+    }
+
+    private static URI createLocationServiceUri(final URI targetUri) {
+        final String locationServiceUrlFormat = "https://%1$s/_apis/ServiceDefinitions/LocationService2/951917AC-A960-4999-8464-E3F0AA25B381?api-version=1.0";
+
         String host =  UriHelper.getFullAccount(targetUri);
 
-        final String locationServiceUrl = String.format(locationServiceUrlFormat, host);
-        URI identityServiceUri = null;
+        return URI.create(String.format(locationServiceUrlFormat, host));
+    }
 
-        final String responseText = client.getGetResponseText(URI.create(locationServiceUrl));
-        identityServiceUri = parseLocationFromJson(responseText);
-        if (identityServiceUri != null) {
-            logger.debug("   parsed identity service url: {}", identityServiceUri);
+    /**
+     * The identity service of an account, known already or on its way.
+     */
+    private static final class IdentityServiceLookup {
+        private final URI targetUri;
+        private final URI identityServiceUri;
+        private final Future<String> response;
+
+        IdentityServiceLookup(final URI targetUri, final URI identityServiceUri, final Future<String> response) {
+            this.targetUri = targetUri;
+            this.identityServiceUri = identityServiceUri;
+            this.response = response;
         }
 
-        return identityServiceUri;
+        /**
+         * @return the identity service, or null if the account did not name one
+         */
+        URI await() throws IOException {
+            if (response == null) {
+                return identityServiceUri;
+            }
+            final String body = BlockingHttpClientAdapter.await(response);
+            return remember(targetUri, parseLocationFromJson(new StringReader(body)));
+        }
+
+        void cancel() {
+            if (response != null) {
+                response.cancel(true);
+            }
+        }
+
+        static URI remember(final URI targetUri, final URI identityServiceUri) {
+            if (identityServiceUri != null) {
+                logger.debug("   parsed identity service url: {}", identityServiceUri);
+                IdentityServiceCache.getDefault().put(targetUri, identityServiceUri);
+            }
+            return identityServiceUri;
+        }
     }
 
     public boolean populateTokenTargetId(final URI targetUri, final Token accessToken) {
@@ -132,13 +208,16 @@ class VsoAzureAuthority extends AzureAuthority {
 
         logger.debug("VsoAzureAuthority::populateTokenTargetId");
 
+        final UUID cachedId = InstanceIdCache.getDefault().get(targetUri);
+        if (cachedId != null) {
+            accessToken.setTargetIdentity(cachedId);
+            return true;
+        }
+
         String resultId = null;
         try {
             // request to the VSO deployment data end-point
-            final String content = readConnectionDataRequest(targetUri, accessToken);
-
-
-            resultId = parseInstanceIdFromJson(content);
+            resultId = readConnectionDataRequest(targetUri, accessToken);
         } catch (final IOException e) {
             logger.debug("   server returned " + e.getMessage());
         }
@@ -147,6 +226,7 @@ class VsoAzureAuthority extends AzureAuthority {
         if (Guid.tryParse(resultId, instanceId)) {
             logger.debug("   target identity is " + resultId);
             accessToken.setTargetIdentity(instanceId.get());
+            InstanceIdCache.getDefault().put(targetUri, instanceId.get());
 
             return true;
         }
@@ -154,54 +234,42 @@ class VsoAzureAuthority extends AzureAuthority {
         return false;
     }
 
-    private static final Pattern TOKEN_PATTERN = Pattern.compile(
-            "\"token\"\\s*:\\s*\"([^\"]+)\"",
-            Pattern.CASE_INSENSITIVE
-    );
+    // the responses below can be large, their handlers stop reading once the member they need has been found
 
-    static Token parsePersonalAccessTokenFromJson(final String json) {
-        Token token = null;
-        if (!StringHelper.isNullOrWhiteSpace(json)) {
-            // find the 'token : <value>' portion of the result content, if any
-            final Matcher matcher = TOKEN_PATTERN.matcher(json);
-            if (matcher.find()) {
-                final String tokenValue = matcher.group(1);
-                token = new Token(tokenValue, TokenType.Personal);
-            }
+    private static final ResponseHandler<Token> PERSONAL_ACCESS_TOKEN_HANDLER = new ResponseHandler<Token>() {
+        @Override
+        public Token handle(final Reader body) throws IOException {
+            return parsePersonalAccessTokenFromJson(body);
         }
-        return token;
-    }
-
-    private static final Pattern INSTANCE_ID_PATTERN = Pattern.compile(
-            "\"instanceId\"\\s*:\\s*\"([^\"]+)\"",
-            Pattern.CASE_INSENSITIVE
-    );
+    };
 
-    static String parseInstanceIdFromJson(final String json) {
-        String result = null;
-
-        final Matcher matcher = INSTANCE_ID_PATTERN.matcher(json);
-        if (matcher.find()) {
-            result = matcher.group(1);
+    private static final ResponseHandler<String> INSTANCE_ID_HANDLER = new ResponseHandler<String>() {
+        @Override
+        public String handle(final Reader body) throws IOException {
+            return parseInstanceIdFromJson(body);
         }
+    };
 
-        return result;
+    static Token parsePersonalAccessTokenFromJson(final Reader json) throws IOException {
+        Token token = null;
+        // find the 'token : <value>' portion of the result content, if any
+        final String tokenValue = JsonFieldExtractor.findString(json, "token");
+        if (tokenValue != null) {
+            token = new Token(tokenValue, TokenType.Personal);
+        }
+        return token;
     }
 
-    private static final Pattern LOCATION_PATTERN = Pattern.compile(
-            "\"location\"\\s*:\\s*\"([^\"]+)\"",
-            Pattern.CASE_INSENSITIVE
-    );
+    static String parseInstanceIdFromJson(final Reader json) throws IOException {
+        return JsonFieldExtractor.findString(json, "instanceId");
+    }
 
-    static URI parseLocationFromJson(final String json) {
+    static URI parseLocationFromJson(final Reader json) throws IOException {
         URI locationServiceUri = null;
-        if (!StringHelper.isNullOrWhiteSpace(json)) {
-            // find the 'location : <value>' portion of the result content, if any
-            final Matcher matcher = LOCATION_PATTERN.matcher(json);
-            if (matcher.find()) {
-                final String location = matcher.group(1);
-                locationServiceUri = URI.create(location);
-            }
+        // find the 'location : <value>' portion of the result content, if any
+        final String location = JsonFieldExtractor.findString(json, "location");
+        if (location != null) {
+            locationServiceUri = URI.create(location);
         }
         return locationServiceUri;
     }
@@ -222,6 +290,9 @@ class VsoAzureAuthority extends AzureAuthority {
     }
 
 
+    /**
+     * @return the instanceId of the deployment, or null if the response has none
+     */
     private String readConnectionDataRequest(final URI targetUri, final Token token) throws IOException {
         Debug.Assert(targetUri != null && targetUri.isAbsolute(), "The targetUri parameter is null or invalid");
         Debug.Assert(token != null && (token.Type == TokenType.Access || token.Type == TokenType.Federated), "The token parameter is null or invalid");
@@ -236,10 +307,31 @@ class VsoAzureAuthority extends AzureAuthority {
         logger.debug("   validating token");
         token.contributeHeader(client.getHeaders());
 
-        return client.getGetResponseText(requestUri, RequestTimeout);
+        return HttpClientHelper.streamGetResponse(client, requestUri, RequestTimeout, INSTANCE_ID_HANDLER);
+    }
+
+    /**
+     * A handler for the connectionData response of a URI, which remembers the instanceId it holds when the URI is
+     * that of the account itself, so a validation also saves the lookup of the next personal access token.
+     */
+    static ResponseHandler<Void> rememberingInstanceId(final URI targetUri, final URI connectionDataUri) {
+        if (!createConnectionDataUri(targetUri).toString().equalsIgnoreCase(connectionDataUri.toString())) {
+            // the connection data of a collection has the instanceId of the collection
+            return HttpClientHelper.IGNORE_BODY;
+        }
+        return new ResponseHandler<Void>() {
+            @Override
+            public Void handle(final Reader body) throws IOException {
+                final AtomicReference<UUID> instanceId = new AtomicReference<UUID>();
+                if (Guid.tryParse(parseInstanceIdFromJson(body), instanceId)) {
+                    InstanceIdCache.getDefault().put(targetUri, instanceId.get());
+                }
+                return null;
+            }
+        };
     }
 
-    private URI createConnectionDataUri(final URI targetUri) {
+    private static URI createConnectionDataUri(final URI targetUri) {
         final String VsoValidationUrlFormat = "https://%1$s/_apis/connectiondata";
 
         Debug.Assert(targetUri != null & targetUri.isAbsolute(), "The targetUri parameter is null or invalid");
@@ -7,11 +7,17 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.microsoft.alm.auth.BaseAuthenticator;
 import com.microsoft.alm.auth.PromptBehavior;
+import com.microsoft.alm.auth.ValidationLeaseCache;
+import com.microsoft.alm.auth.oauth.AccessTokenIdentity;
 import com.microsoft.alm.auth.oauth.Global;
 import com.microsoft.alm.auth.oauth.OAuth2Authenticator;
+import com.microsoft.alm.helpers.Deadline;
 import com.microsoft.alm.helpers.Debug;
 import com.microsoft.alm.helpers.HttpClient;
+import com.microsoft.alm.helpers.HttpClientHelper;
 import com.microsoft.alm.helpers.HttpClientImpl;
+import com.microsoft.alm.helpers.JsonFieldExtractor;
+import com.microsoft.alm.helpers.ResponseHandler;
 import com.microsoft.alm.secret.Token;
 import com.microsoft.alm.secret.TokenPair;
 import com.microsoft.alm.secret.VsoTokenScope;
@@ -20,13 +26,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.net.HttpURLConnection;
 import java.net.URI;
+import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Authenticator based on Personal Access Token
@@ -155,6 +161,17 @@ public class VstsPatAuthenticator extends BaseAuthenticator {
         Debug.Assert(key != null, "Failed to convert uri to key");
 
         final SecretRetriever<Token> secretRetriever = new SecretRetriever<Token>() {
+            @Override
+            protected ValidationLeaseCache getValidationLeaseCache() {
+                return VstsPatAuthenticator.this.getValidationLeaseCache();
+            }
+
+            @Override
+            protected Object getRetrievalParameters() {
+                // a token is created with the scope and name of whoever asked first
+                return Arrays.<Object>asList(uri, isCreatingGlobalPat, tokenScope, patDisplayName, oauth2Token);
+            }
+
             @Override
             protected boolean tryGetValidated(final Token token, final AtomicReference<Token> holder) {
                 Debug.Assert(token != null, "Token is null");
@@ -167,7 +184,9 @@ public class VstsPatAuthenticator extends BaseAuthenticator {
                     final HttpClient client = Global.getHttpClientFactory().createHttpClient();
                     token.contributeHeader(client.getHeaders());
                     try {
-                        client.getGetResponseText(validationEndpoint);
+                        // the status tells whether the token is valid, the body saves looking up the account later
+                        HttpClientHelper.streamGetResponse(client, validationEndpoint,
+                                VsoAzureAuthority.rememberingInstanceId(uri, validationEndpoint));
                         valid = true;
                     } catch (IOException e) {
                         logger.debug("Validation failed with IOException.", e);
@@ -191,11 +210,23 @@ public class VstsPatAuthenticator extends BaseAuthenticator {
                 }
                 logger.debug("Got OAuth2 token, retrieving Personal Access Token with it.");
 
-                final URI accountSpecificUri = createAccountSpecificUri(uri, tokenPair);
-                final Token pat = vsoAzureAuthority.generatePersonalAccessToken(accountSpecificUri, tokenPair.AccessToken,
-                        tokenScope, true, isCreatingGlobalPat, patDisplayName);
-
-                return pat;
+                // the budget starts after any sign in prompt and covers the account lookup and the generation
+                final Deadline previousDeadline = Deadline.setCurrent(
+                        Deadline.currentOrAfter(VsoAzureAuthority.PersonalAccessTokenTimeout));
+                Token pat = null;
+                try {
+                    final URI accountSpecificUri = createAccountSpecificUri(uri, tokenPair);
+                    pat = vsoAzureAuthority.generatePersonalAccessToken(accountSpecificUri,
+                            tokenPair.AccessToken, tokenScope, true, isCreatingGlobalPat, patDisplayName);
+
+                    return pat;
+                } finally {
+                    Deadline.setCurrent(previousDeadline);
+                    if (pat == null && vstsOauthAuthenticator.APP_VSSPS_VISUALSTUDIO.equals(uri)) {
+                        // the user may no longer be a member of the remembered account
+                        forgetAccount(tokenPair);
+                    }
+                }
             }
         };
 
@@ -205,15 +236,34 @@ public class VstsPatAuthenticator extends BaseAuthenticator {
     private URI createAccountSpecificUri(final URI uri, final TokenPair tokenPair) {
         if (vstsOauthAuthenticator.APP_VSSPS_VISUALSTUDIO.equals(uri)) {
             logger.debug("Find an account level target url to generate Personal Access Token.");
+            final AccountCache accountCache = AccountCache.getDefault();
+            final String identity = AccessTokenIdentity.of(tokenPair.AccessToken);
+            if (identity != null) {
+                final URI cachedAccountUri = accountCache.getAccountUri(identity);
+                if (cachedAccountUri != null) {
+                    logger.debug("Using cached account: {}", cachedAccountUri);
+                    return cachedAccountUri;
+                }
+            }
+
             final HttpClient client = Global.getHttpClientFactory().createHttpClient();
             tokenPair.AccessToken.contributeHeader(client.getHeaders());
 
             try {
-                final String profileId = getProfileId(client);
-                final String accountUri = getAccountUri(client, profileId);
+                String profileId = identity == null ? null : accountCache.getProfileId(identity);
+                if (profileId == null) {
+                    profileId = getProfileId(client);
+                    if (identity != null) {
+                        accountCache.putProfileId(identity, profileId);
+                    }
+                }
+                final URI accountUri = URI.create(getAccountUri(client, profileId));
+                if (identity != null) {
+                    accountCache.putAccountUri(identity, accountUri);
+                }
 
                 logger.debug("Found account: {}", accountUri);
-                return URI.create(accountUri);
+                return accountUri;
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
@@ -223,15 +273,26 @@ public class VstsPatAuthenticator extends BaseAuthenticator {
         return uri;
     }
 
+    private static void forgetAccount(final TokenPair tokenPair) {
+        final String identity = AccessTokenIdentity.of(tokenPair.AccessToken);
+        if (identity != null) {
+            AccountCache.getDefault().invalidateAccount(identity);
+        }
+    }
+
     private String getProfileId(final HttpClient authenticatedClient) throws IOException {
         Debug.Assert(authenticatedClient != null, "authenticatedClient is null");
 
         final URI profileUri = URI.create("https://app.vssps.visualstudio.com/_apis/profile/profiles/me?api-version=1.0");
         final HttpURLConnection response;
         logger.debug("Getting user profile...");
-        final String responseText = authenticatedClient.getGetResponseText(profileUri);
-
-        final String id = parseIdFromJson(responseText);
+        final String id = HttpClientHelper.streamGetResponse(authenticatedClient, profileUri,
+                new ResponseHandler<String>() {
+                    @Override
+                    public String handle(final Reader body) throws IOException {
+                        return parseIdFromJson(body);
+                    }
+                });
         if (id != null) {
             logger.debug("Profile id: {}", id);
             return id;
@@ -240,20 +301,8 @@ public class VstsPatAuthenticator extends BaseAuthenticator {
         throw new RuntimeException("Failed to get profile id.");
     }
 
-    private static final Pattern ID_PATTERN = Pattern.compile(
-            "\"id\"\\s*:\\s*\"([^\"]+)\"",
-            Pattern.CASE_INSENSITIVE
-    );
-
-    static String parseIdFromJson(final String json) {
-        String result = null;
-
-        final Matcher matcher = ID_PATTERN.matcher(json);
-        if (matcher.find()) {
-            result = matcher.group(1);
-        }
-
-        return result;
+    static String parseIdFromJson(final Reader json) throws IOException {
+        return JsonFieldExtractor.findString(json, "id");
     }
 
     private String getAccountUri(final HttpClient authenticatedClient, final String profileId) throws IOException {
@@ -267,15 +316,18 @@ public class VstsPatAuthenticator extends BaseAuthenticator {
 
         logger.debug("Account API URL: {}", accountApiUrl);
 
-        final String content = authenticatedClient.getGetResponseText(accountApiUrl);
-
-        if (content != null) {
-            final AccountList accountList = this.objectMapper.readValue(content, AccountList.class);
-            if (accountList != null && accountList.value != null) {
-                for (final Account account : accountList.value) {
-                    if (account.accountStatus != null && account.accountUri != null) {
-                        return String.format(vstsAccountUrlFormat, account.accountName);
+        // bind straight from the response instead of reading it into a String first
+        final AccountList accountList = HttpClientHelper.streamGetResponse(authenticatedClient, accountApiUrl,
+                new ResponseHandler<AccountList>() {
+                    @Override
+                    public AccountList handle(final Reader body) throws IOException {
+                        return objectMapper.readValue(body, AccountList.class);
                     }
+                });
+        if (accountList != null && accountList.value != null) {
+            for (final Account account : accountList.value) {
+                if (account.accountStatus != null && account.accountUri != null) {
+                    return String.format(vstsAccountUrlFormat, account.accountName);
                 }
             }
         }
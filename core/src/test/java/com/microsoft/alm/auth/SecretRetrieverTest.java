@@ -0,0 +1,74 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.auth;
+
+import com.microsoft.alm.secret.Token;
+import com.microsoft.alm.secret.TokenType;
+import com.microsoft.alm.storage.InsecureInMemoryStore;
+import com.microsoft.alm.storage.SecretStore;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class SecretRetrieverTest {
+
+    private static final String KEY = "PersonalAccessToken:https://account.visualstudio.com";
+
+    private static BaseAuthenticator.SecretRetriever<Token> retrieving(final String displayName,
+                                                                      final CountDownLatch started,
+                                                                      final CountDownLatch release) {
+        return new BaseAuthenticator.SecretRetriever<Token>() {
+            @Override
+            protected Object getRetrievalParameters() {
+                return displayName;
+            }
+
+            @Override
+            protected Token doRetrieve() {
+                started.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new Token(displayName, TokenType.Personal);
+            }
+        };
+    }
+
+    @Test
+    public void retrieve_differentParametersDoNotShareARun() throws Exception {
+        final SecretStore<Token> store = new InsecureInMemoryStore<Token>();
+        final CountDownLatch firstStarted = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<Token> first = executor.submit(new Callable<Token>() {
+                @Override
+                public Token call() {
+                    return retrieving("first", firstStarted, release).retrieve(KEY, store, PromptBehavior.ALWAYS);
+                }
+            });
+            Assert.assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+
+            // would wait for the first run, and get its token, if the display name were not part of the flight
+            final CountDownLatch secondStarted = new CountDownLatch(1);
+            final Token second = retrieving("second", secondStarted, new CountDownLatch(0))
+                    .retrieve(KEY, store, PromptBehavior.ALWAYS);
+            release.countDown();
+
+            Assert.assertEquals("second", second.Value);
+            Assert.assertEquals("first", first.get(5, TimeUnit.SECONDS).Value);
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+}
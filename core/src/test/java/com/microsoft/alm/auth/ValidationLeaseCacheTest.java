@@ -0,0 +1,63 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.auth;
+
+import com.microsoft.alm.secret.Credential;
+import com.microsoft.alm.secret.Token;
+import com.microsoft.alm.secret.TokenPair;
+import com.microsoft.alm.secret.TokenType;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ValidationLeaseCacheTest {
+
+    @Test
+    public void grant_thenRevoke() {
+        final ValidationLeaseCache underTest = new ValidationLeaseCache();
+        final Token token = new Token("pat", TokenType.Personal);
+
+        assertFalse(underTest.isLeased(token));
+        underTest.grant(token);
+        assertTrue(underTest.isLeased(new Token("pat", TokenType.Personal)));
+        assertFalse(underTest.isLeased(new Token("other", TokenType.Personal)));
+
+        underTest.revoke(token);
+        assertFalse(underTest.isLeased(token));
+    }
+
+    @Test
+    public void grant_endsWithTheAccessToken() throws InterruptedException {
+        final ValidationLeaseCache underTest = new ValidationLeaseCache();
+        final long margin = 5 * 60 * 1000L;
+        final long now = System.currentTimeMillis();
+        final TokenPair lastsAnHour = new TokenPair("hour", "refresh", now + 60 * 60 * 1000L, now);
+        final TokenPair aboutToExpire = new TokenPair("minute", "refresh", now + 60 * 1000L, now);
+        final TokenPair expiresSoon = new TokenPair("soon", "refresh", now + margin + 200, now);
+
+        underTest.grant(lastsAnHour);
+        underTest.grant(aboutToExpire);
+        underTest.grant(expiresSoon);
+
+        assertTrue(underTest.isLeased(lastsAnHour));
+        assertFalse(underTest.isLeased(aboutToExpire));
+        assertTrue(underTest.isLeased(expiresSoon));
+        Thread.sleep(400);
+        assertFalse(underTest.isLeased(expiresSoon));
+        assertTrue(underTest.isLeased(lastsAnHour));
+    }
+
+    @Test
+    public void fingerprint_dependsOnWhatMakesTheSecretValid() {
+        assertEquals(ValidationLeaseCache.fingerprint(new TokenPair("access", "refresh")),
+                ValidationLeaseCache.fingerprint(new TokenPair("access", "renewed")));
+        assertNotEquals(ValidationLeaseCache.fingerprint(new Token("value", TokenType.Access)),
+                ValidationLeaseCache.fingerprint(new Token("value", TokenType.Personal)));
+        assertNotEquals(ValidationLeaseCache.fingerprint(new Credential("user", "one")),
+                ValidationLeaseCache.fingerprint(new Credential("user", "two")));
+    }
+}
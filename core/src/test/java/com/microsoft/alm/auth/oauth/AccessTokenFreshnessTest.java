@@ -0,0 +1,89 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.auth.oauth;
+
+import com.microsoft.alm.helpers.Base64Helper;
+import com.microsoft.alm.secret.Token;
+import com.microsoft.alm.secret.TokenPair;
+import com.microsoft.alm.secret.TokenType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+
+/**
+ * A class to test {@link AccessTokenFreshness}.
+ */
+public class AccessTokenFreshnessTest {
+
+    private static final long NOW = 1500000000L * 1000;
+    private static final long HOUR_SECONDS = 60 * 60;
+
+    static String createJwt(final String claims) {
+        return encode("{\"typ\":\"JWT\",\"alg\":\"RS256\"}") + "." + encode(claims) + ".c2lnbmF0dXJl";
+    }
+
+    private static String encode(final String json) {
+        final String base64 = Base64Helper.encode(json.getBytes(Charset.forName("UTF-8")));
+        return base64.replace('+', '-').replace('/', '_').replace("=", "");
+    }
+
+    private static AccessTokenFreshness evaluate(final String value) {
+        return AccessTokenFreshness.of(new Token(value, TokenType.Access), NOW);
+    }
+
+    @Test public void of_validForAnHour() throws Exception {
+        final long now = NOW / 1000;
+        final String jwt = createJwt("{\"aud\":\"499b84ac\",\"nbf\":" + (now - 60) + ",\"exp\":" + (now + HOUR_SECONDS)
+                + ",\"amr\":[\"pwd\"],\"name\":\"J?hn_Doe>\"}");
+
+        Assert.assertEquals(AccessTokenFreshness.FRESH, evaluate(jwt));
+    }
+
+    @Test public void of_expiredOrWithinMargin() throws Exception {
+        final long now = NOW / 1000;
+
+        Assert.assertEquals(AccessTokenFreshness.EXPIRED, evaluate(createJwt("{\"exp\":" + (now - 1) + "}")));
+        Assert.assertEquals(AccessTokenFreshness.EXPIRED, evaluate(createJwt("{\"exp\":" + (now + 60) + "}")));
+    }
+
+    @Test public void of_notYetValid() throws Exception {
+        final long now = NOW / 1000;
+        final String jwt = createJwt("{\"nbf\":" + (now + HOUR_SECONDS) + ",\"exp\":" + (now + 2 * HOUR_SECONDS) + "}");
+
+        Assert.assertEquals(AccessTokenFreshness.UNKNOWN, evaluate(jwt));
+    }
+
+    @Test public void of_notAJwt() throws Exception {
+        Assert.assertEquals(AccessTokenFreshness.UNKNOWN, evaluate("access"));
+        Assert.assertEquals(AccessTokenFreshness.UNKNOWN, evaluate("a.b.c"));
+        Assert.assertEquals(AccessTokenFreshness.UNKNOWN, evaluate(createJwt("{\"aud\":\"499b84ac\"}")));
+        Assert.assertEquals(AccessTokenFreshness.UNKNOWN, evaluate(createJwt("[1, 2]")));
+    }
+
+    @Test public void of_opaqueTokenWithStoredExpiry() throws Exception {
+        final TokenPair fresh = new TokenPair("opaque", "refresh", NOW + HOUR_SECONDS * 1000L, NOW);
+        final TokenPair expired = new TokenPair("opaque", "refresh", NOW + 60 * 1000L, NOW - HOUR_SECONDS * 1000L);
+        final TokenPair unknown = new TokenPair("opaque", "refresh");
+
+        Assert.assertEquals(AccessTokenFreshness.FRESH, AccessTokenFreshness.of(fresh, NOW));
+        Assert.assertEquals(AccessTokenFreshness.EXPIRED, AccessTokenFreshness.of(expired, NOW));
+        Assert.assertEquals(AccessTokenFreshness.UNKNOWN, AccessTokenFreshness.of(unknown, NOW));
+    }
+
+    @Test public void getExpiresOnMillis() throws Exception {
+        final long before = System.currentTimeMillis();
+        final TokenPair expiresIn =
+                new TokenPair("{\"access_token\":\"a\",\"refresh_token\":\"r\",\"expires_in\":3599}");
+        final long after = System.currentTimeMillis();
+
+        final long fromResponse = AccessTokenFreshness.getExpiresOnMillis(expiresIn);
+        Assert.assertTrue(fromResponse >= before + 3599 * 1000L && fromResponse <= after + 3599 * 1000L);
+        Assert.assertEquals(1500003600L * 1000, AccessTokenFreshness.getExpiresOnMillis(new TokenPair(
+                "{\"access_token\":\"a\",\"refresh_token\":\"r\",\"expires_on\":\"1500003600\"}")));
+        Assert.assertEquals(1500000060L * 1000, AccessTokenFreshness.getExpiresOnMillis(new TokenPair(
+                createJwt("{\"exp\":1500000060}"), "refresh")));
+        Assert.assertEquals(-1, AccessTokenFreshness.getExpiresOnMillis(new TokenPair("access", "refresh")));
+    }
+}
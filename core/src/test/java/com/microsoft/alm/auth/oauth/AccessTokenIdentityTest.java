@@ -0,0 +1,42 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.auth.oauth;
+
+import com.microsoft.alm.secret.Token;
+import com.microsoft.alm.secret.TokenType;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AccessTokenIdentityTest {
+
+    private static final String TENANT_ID = "72f988bf-86f1-41af-91ab-2d7cd011db47";
+    private static final String OBJECT_ID = "0c2e1f7a-3b4d-4e5f-8a9b-1c2d3e4f5a6b";
+
+    private static Token createAccessToken(final long exp) {
+        return new Token(AccessTokenFreshnessTest.createJwt("{\"tid\":\"" + TENANT_ID + "\",\"oid\":\"" + OBJECT_ID
+                + "\",\"exp\":" + exp + "}"), TokenType.Access);
+    }
+
+    @Test
+    public void of_sameUserAcrossRefreshes() {
+        final String first = AccessTokenIdentity.of(createAccessToken(1000));
+        final String second = AccessTokenIdentity.of(createAccessToken(4600));
+
+        Assert.assertEquals(TENANT_ID + "/" + OBJECT_ID, first);
+        Assert.assertEquals(first, second);
+    }
+
+    @Test
+    public void of_notAJwt() {
+        Assert.assertNull(AccessTokenIdentity.of(new Token("opaque", TokenType.Access)));
+    }
+
+    @Test
+    public void of_noObjectId() {
+        final Token accessToken = new Token(AccessTokenFreshnessTest.createJwt("{\"tid\":\"" + TENANT_ID + "\"}"),
+                TokenType.Access);
+
+        Assert.assertNull(AccessTokenIdentity.of(accessToken));
+    }
+}
@@ -0,0 +1,288 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.auth.oauth;
+
+import com.microsoft.alm.auth.HttpClientFactory;
+import com.microsoft.alm.helpers.AsyncHttpClient;
+import com.microsoft.alm.helpers.Deadline;
+import com.microsoft.alm.helpers.HttpResponse;
+import com.microsoft.alm.helpers.ListenableFuture;
+import com.microsoft.alm.helpers.SettableFuture;
+import com.microsoft.alm.helpers.StringContent;
+import com.microsoft.alm.oauth2.useragent.AuthorizationException;
+import com.microsoft.alm.secret.TokenPair;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+public class DeviceFlowManagerTest {
+
+    private static final URI TOKEN_ENDPOINT = URI.create("https://login.microsoftonline.com/common/oauth2/token");
+
+    /**
+     * Records the intervals asked for, and runs the polls right away; poll timeouts keep their delay unless
+     * {@link #hurryTimeouts} is set.
+     */
+    private static final class ImpatientExecutor extends ScheduledThreadPoolExecutor {
+        final List<Long> delaysMillis = new CopyOnWriteArrayList<Long>();
+        volatile boolean hurryTimeouts;
+
+        ImpatientExecutor() {
+            super(1);
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(final Runnable command, final long delay, final TimeUnit unit) {
+            if (unit.toMillis(delay) == DeviceFlowManager.PollTimeout) {
+                return super.schedule(command, hurryTimeouts ? 0 : delay, unit);
+            }
+            delaysMillis.add(unit.toMillis(delay));
+            return super.schedule(command, 0, unit);
+        }
+    }
+
+    /**
+     * Answers the polls of each device code from a script instead of a token endpoint.
+     */
+    private static final class ScriptedTokenEndpoint implements AsyncHttpClient {
+        final Map<String, Queue<Object>> answers = new HashMap<String, Queue<Object>>();
+        final List<Deadline> deadlines = new CopyOnWriteArrayList<Deadline>();
+
+        synchronized void script(final String deviceCode, final Object... script) {
+            final Queue<Object> queue = new LinkedList<Object>();
+            for (final Object answer : script) {
+                queue.add(answer);
+            }
+            answers.put(deviceCode, queue);
+        }
+
+        @Override
+        public Map<String, String> getHeaders() {
+            return new HashMap<String, String>();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public synchronized ListenableFuture<HttpResponse> getPostResponse(final URI uri,
+                                                                           final StringContent content) {
+            deadlines.add(Deadline.current());
+            Object answer = null;
+            for (final Map.Entry<String, Queue<Object>> script : answers.entrySet()) {
+                if (content.getContent().contains("code=" + script.getKey())) {
+                    answer = script.getValue().remove();
+                }
+            }
+            if (answer instanceof SettableFuture) {
+                return (SettableFuture<HttpResponse>) answer;
+            }
+            final SettableFuture<HttpResponse> response = SettableFuture.create();
+            if (answer instanceof Throwable) {
+                response.setException((Throwable) answer);
+            } else {
+                response.set((HttpResponse) answer);
+            }
+            return response;
+        }
+
+        @Override
+        public ListenableFuture<String> getHeaderField(final URI uri, final String header) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ListenableFuture<String> getGetResponseText(final URI uri) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ListenableFuture<String> getGetResponseText(final URI uri, final int timeout) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ListenableFuture<String> getPostResponseText(final URI uri, final StringContent content) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static HttpResponse respond(final int status, final String json) {
+        final HttpResponse response = new HttpResponse();
+        response.status = status;
+        if (status == 200) {
+            response.responseText = json;
+        } else {
+            response.errorText = json;
+        }
+        return response;
+    }
+
+    private static final HttpResponse PENDING = respond(400, "{\"error\":\"authorization_pending\"}");
+    private static final HttpResponse SLOW_DOWN = respond(400, "{\"error\":\"slow_down\"}");
+    private static final HttpResponse DECLINED =
+            respond(400, "{\"error\":\"access_denied\",\"error_description\":\"The user declined.\"}");
+
+    private static HttpResponse granted(final String accessToken) {
+        return respond(200, "{\"access_token\":\"" + accessToken + "\",\"refresh_token\":\"refresh\"}");
+    }
+
+    private HttpClientFactory previousFactory;
+    private ImpatientExecutor executor;
+    private ScriptedTokenEndpoint tokenEndpoint;
+    private DeviceFlowManager manager;
+
+    @Before
+    public void setUp() {
+        executor = new ImpatientExecutor();
+        tokenEndpoint = new ScriptedTokenEndpoint();
+        previousFactory = Global.getHttpClientFactory();
+        Global.setHttpClientFactory(new HttpClientFactory() {
+            @Override
+            public AsyncHttpClient createAsyncHttpClient() {
+                return tokenEndpoint;
+            }
+        });
+        manager = new DeviceFlowManager(new DeviceFlowImpl(), executor);
+    }
+
+    @After
+    public void tearDown() {
+        manager.shutdown();
+        Global.setHttpClientFactory(previousFactory);
+    }
+
+    private static DeviceFlowResponse createResponse(final String deviceCode) {
+        return new DeviceFlowResponse(deviceCode, "USERCODE", URI.create("https://aka.ms/devicelogin"), 900, 5);
+    }
+
+    @Test
+    public void requestToken_honoursIntervalAndSlowDown() throws Exception {
+        tokenEndpoint.script("device", PENDING, SLOW_DOWN, granted("access"));
+
+        final ListenableFuture<TokenPair> future = manager.requestToken(TOKEN_ENDPOINT, "client",
+                createResponse("device"));
+
+        Assert.assertEquals("access", future.get(10, TimeUnit.SECONDS).AccessToken.Value);
+        Assert.assertEquals(3, executor.delaysMillis.size());
+        Assert.assertEquals(5000L, (long) executor.delaysMillis.get(0));
+        Assert.assertEquals(5000L, (long) executor.delaysMillis.get(1));
+        Assert.assertEquals(10000L, (long) executor.delaysMillis.get(2));
+        Assert.assertEquals(0, manager.getPendingCount());
+    }
+
+    @Test
+    public void requestToken_declined() throws Exception {
+        tokenEndpoint.script("device", PENDING, DECLINED);
+
+        final ListenableFuture<TokenPair> future = manager.requestToken(TOKEN_ENDPOINT, "client",
+                createResponse("device"));
+
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            Assert.fail("the refusal should have been reported");
+        } catch (final ExecutionException e) {
+            Assert.assertEquals("access_denied", ((AuthorizationException) e.getCause()).getCode());
+        }
+    }
+
+    @Test
+    public void requestToken_cancelRequestedByUser() throws Exception {
+        final DeviceFlowResponse response = createResponse("device");
+        response.requestCancel();
+
+        final ListenableFuture<TokenPair> future = manager.requestToken(TOKEN_ENDPOINT, "client", response);
+
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            Assert.fail("the cancellation should have been reported");
+        } catch (final ExecutionException e) {
+            Assert.assertEquals("request_cancelled", ((AuthorizationException) e.getCause()).getCode());
+        }
+        Assert.assertTrue(tokenEndpoint.deadlines.isEmpty());
+    }
+
+    @Test
+    public void requestToken_boundsEachPollAndAsksAgainAfterATimeout() throws Exception {
+        tokenEndpoint.script("device", new SocketTimeoutException("Read timed out"), granted("access"));
+
+        final ListenableFuture<TokenPair> future = manager.requestToken(TOKEN_ENDPOINT, "client",
+                createResponse("device"));
+
+        Assert.assertEquals("access", future.get(10, TimeUnit.SECONDS).AccessToken.Value);
+        Assert.assertEquals(2, tokenEndpoint.deadlines.size());
+        for (final Deadline deadline : tokenEndpoint.deadlines) {
+            Assert.assertNotNull(deadline);
+            Assert.assertTrue(deadline.getRemainingMillis() <= DeviceFlowManager.PollTimeout);
+        }
+    }
+
+    @Test
+    public void requestToken_cancelsPollStillUnansweredAtTheTimeout() throws Exception {
+        final SettableFuture<HttpResponse> hanging = SettableFuture.create();
+        tokenEndpoint.script("device", hanging, granted("access"));
+        executor.hurryTimeouts = true;
+
+        final ListenableFuture<TokenPair> future = manager.requestToken(TOKEN_ENDPOINT, "client",
+                createResponse("device"));
+
+        Assert.assertEquals("access", future.get(10, TimeUnit.SECONDS).AccessToken.Value);
+        Assert.assertTrue(hanging.isCancelled());
+    }
+
+    @Test
+    public void requestToken_slowEndpointDoesNotHoldUpOtherFlows() throws Exception {
+        final SettableFuture<HttpResponse> hanging = SettableFuture.create();
+        tokenEndpoint.script("slow", hanging);
+        tokenEndpoint.script("fast", PENDING, granted("access"));
+
+        final ListenableFuture<TokenPair> slow = manager.requestToken(TOKEN_ENDPOINT, "client",
+                createResponse("slow"));
+        final ListenableFuture<TokenPair> fast = manager.requestToken(TOKEN_ENDPOINT, "client",
+                createResponse("fast"));
+
+        // one scheduler thread, and the slow flow's poll is still waiting for its answer
+        Assert.assertEquals("access", fast.get(10, TimeUnit.SECONDS).AccessToken.Value);
+        Assert.assertFalse(slow.isDone());
+        Assert.assertEquals(1, manager.getPendingCount());
+
+        manager.shutdown();
+
+        Assert.assertTrue(slow.isDone());
+        Assert.assertTrue(hanging.isCancelled());
+    }
+
+    @Test
+    public void shutdown_failsPendingFlows() throws Exception {
+        final DeviceFlowManager patientManager = new DeviceFlowManager(new DeviceFlowImpl(),
+                new ScheduledThreadPoolExecutor(1));
+        final ListenableFuture<TokenPair> future = patientManager.requestToken(TOKEN_ENDPOINT, "client",
+                createResponse("device"));
+        Assert.assertEquals(1, patientManager.getPendingCount());
+
+        patientManager.shutdown();
+
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            Assert.fail("the shutdown should have been reported");
+        } catch (final ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        Assert.assertEquals(0, patientManager.getPendingCount());
+        Assert.assertTrue(tokenEndpoint.deadlines.isEmpty());
+    }
+}
@@ -3,29 +3,57 @@
 
 package com.microsoft.alm.auth.oauth;
 
+import com.microsoft.alm.auth.HttpClientFactory;
+import com.microsoft.alm.auth.PromptBehavior;
+import com.microsoft.alm.auth.ValidationLeaseCache;
 import com.microsoft.alm.auth.oauth.helper.AzureAuthorityProvider;
 import com.microsoft.alm.helpers.Action;
+import com.microsoft.alm.helpers.HttpClient;
 import com.microsoft.alm.oauth2.useragent.AuthorizationException;
+import com.microsoft.alm.secret.Token;
 import com.microsoft.alm.secret.TokenPair;
+import com.microsoft.alm.storage.CrossProcessLeases;
+import com.microsoft.alm.storage.InsecureInMemoryStore;
 import com.microsoft.alm.storage.SecretStore;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import java.io.IOException;
+import java.util.HashMap;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static junit.framework.TestCase.assertTrue;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class OAuth2AuthenticatorTest {
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private OAuth2Authenticator underTest;
 
     private SecretStore<TokenPair> mockStore;
@@ -67,6 +95,7 @@ public class OAuth2AuthenticatorTest {
                 testCallback);
 
         underTest.setAzureAuthorityProvider(mockAzureAuthorityProvider);
+        underTest.setCrossProcessLeases(new CrossProcessLeases(temporaryFolder.getRoot()));
     }
 
     @Test
@@ -84,6 +113,51 @@ public class OAuth2AuthenticatorTest {
 
     }
 
+    @Test
+    public void getOAuth2TokenPair_differentAccountsDoNotShareASignIn() throws Exception {
+        when(mockOAuth2UseragentValidator.isOAuth2ProviderAvailable()).thenReturn(true);
+        final URI firstAccount = URI.create("https://first.visualstudio.com");
+        final URI secondAccount = URI.create("https://second.visualstudio.com");
+        final CountDownLatch firstStarted = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AzureAuthority firstAuthority = mock(AzureAuthority.class);
+        when(firstAuthority.acquireToken(clientId.toString(), TEST_RESOURCE, TEST_REDIRECT_URI,
+                underTest.POPUP_QUERY_PARAM)).thenAnswer(new Answer<TokenPair>() {
+            @Override
+            public TokenPair answer(final InvocationOnMock invocation) throws InterruptedException {
+                firstStarted.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                return new TokenPair("first", "refresh");
+            }
+        });
+        final AzureAuthority secondAuthority = mock(AzureAuthority.class);
+        when(secondAuthority.acquireToken(clientId.toString(), TEST_RESOURCE, TEST_REDIRECT_URI,
+                underTest.POPUP_QUERY_PARAM)).thenReturn(new TokenPair("second", "refresh"));
+        when(mockAzureAuthorityProvider.getAzureAuthority(firstAccount)).thenReturn(firstAuthority);
+        when(mockAzureAuthorityProvider.getAzureAuthority(secondAccount)).thenReturn(secondAuthority);
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<TokenPair> first = executor.submit(new Callable<TokenPair>() {
+                @Override
+                public TokenPair call() {
+                    return underTest.getOAuth2TokenPair(firstAccount, PromptBehavior.ALWAYS);
+                }
+            });
+            assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+
+            // both accounts are stored under the same key, but signing in to one does not sign in to the other
+            final TokenPair second = underTest.getOAuth2TokenPair(secondAccount, PromptBehavior.ALWAYS);
+            release.countDown();
+
+            assertEquals("second", second.AccessToken.Value);
+            assertEquals("first", first.get(5, TimeUnit.SECONDS).AccessToken.Value);
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
     @Test
     public void getTokenByAcquireAuthenticationResult_if_neither_browser_is_available()
             throws URISyntaxException, InterruptedException, ExecutionException, IOException, AuthorizationException {
@@ -126,6 +200,118 @@ public class OAuth2AuthenticatorTest {
         assertEquals(null, token);
     }
 
+    @Test
+    public void storedToken_isValidatedOncePerLease() throws IOException {
+        final TokenPair stored = new TokenPair("access", "refresh");
+        when(mockStore.get(underTest.getKey(OAuth2Authenticator.APP_VSSPS_VISUALSTUDIO))).thenReturn(stored);
+        final HttpClient mockClient = mock(HttpClient.class);
+        when(mockClient.getHeaders()).thenReturn(new HashMap<String, String>());
+        final HttpClientFactory previousFactory = Global.getHttpClientFactory();
+        Global.setHttpClientFactory(new HttpClientFactory() {
+            @Override
+            public HttpClient createHttpClient() {
+                return mockClient;
+            }
+        });
+        try {
+            final URI account = URI.create("https://account.visualstudio.com");
+            // leasing is off until asked for
+            assertEquals(stored, underTest.getOAuth2TokenPair(account, PromptBehavior.AUTO));
+            assertEquals(stored, underTest.getOAuth2TokenPair(account, PromptBehavior.AUTO));
+            verify(mockClient, times(2)).getGetResponseText(any(URI.class));
+
+            underTest.setValidationLeaseCache(new ValidationLeaseCache());
+            assertEquals(stored, underTest.getOAuth2TokenPair(account, PromptBehavior.AUTO));
+            assertEquals(stored, underTest.getOAuth2TokenPair(account, PromptBehavior.AUTO));
+            verify(mockClient, times(3)).getGetResponseText(any(URI.class));
+
+            underTest.reportRejected(stored);
+            assertEquals(stored, underTest.getOAuth2TokenPair(account, PromptBehavior.AUTO));
+            verify(mockClient, times(4)).getGetResponseText(any(URI.class));
+        } finally {
+            Global.setHttpClientFactory(previousFactory);
+        }
+    }
+
+    @Test
+    public void storedJwt_isJudgedByItsExpiry() throws IOException {
+        final long now = System.currentTimeMillis() / 1000;
+        final TokenPair fresh = new TokenPair(
+                AccessTokenFreshnessTest.createJwt("{\"exp\":" + (now + 60 * 60) + "}"), "refresh");
+        final TokenPair expired = new TokenPair(
+                AccessTokenFreshnessTest.createJwt("{\"exp\":" + (now - 60) + "}"), "refresh");
+        final TokenPair renewed = new TokenPair("renewed", "refresh2");
+        final String key = underTest.getKey(OAuth2Authenticator.APP_VSSPS_VISUALSTUDIO);
+        when(mockAzureAuthority.acquireTokenByRefreshToken(eq(clientId.toString()), eq(TEST_RESOURCE),
+                any(Token.class))).thenReturn(renewed);
+        final HttpClient mockClient = mock(HttpClient.class);
+        final HttpClientFactory previousFactory = Global.getHttpClientFactory();
+        Global.setHttpClientFactory(new HttpClientFactory() {
+            @Override
+            public HttpClient createHttpClient() {
+                return mockClient;
+            }
+        });
+        try {
+            underTest.setValidationLeaseCache(null);
+            final URI account = URI.create("https://account.visualstudio.com");
+
+            when(mockStore.get(key)).thenReturn(fresh);
+            assertEquals(fresh, underTest.getOAuth2TokenPair(account, PromptBehavior.AUTO));
+
+            when(mockStore.get(key)).thenReturn(expired);
+            assertEquals(renewed, underTest.getOAuth2TokenPair(account, PromptBehavior.AUTO));
+
+            verify(mockClient, never()).getGetResponseText(any(URI.class));
+        } finally {
+            Global.setHttpClientFactory(previousFactory);
+        }
+    }
+
+    @Test
+    public void expiredJwt_refreshedByAnotherProcess_isNotRefreshedAgain() {
+        final long now = System.currentTimeMillis() / 1000;
+        final TokenPair expired = new TokenPair(
+                AccessTokenFreshnessTest.createJwt("{\"exp\":" + (now - 60) + "}"), "refresh");
+        final TokenPair refreshedElsewhere = new TokenPair(
+                AccessTokenFreshnessTest.createJwt("{\"exp\":" + (now + 60 * 60) + "}"), "refresh2");
+        final String key = underTest.getKey(OAuth2Authenticator.APP_VSSPS_VISUALSTUDIO);
+        when(mockStore.get(key)).thenReturn(expired, refreshedElsewhere);
+
+        final URI account = URI.create("https://account.visualstudio.com");
+        assertEquals(refreshedElsewhere, underTest.getOAuth2TokenPair(account, PromptBehavior.AUTO));
+
+        verify(mockAzureAuthority, never()).acquireTokenByRefreshToken(any(String.class), any(String.class),
+                any(Token.class));
+    }
+
+    @Test
+    public void expiredJwt_refreshedUnderLease_isStoredOnce() {
+        final long now = System.currentTimeMillis() / 1000;
+        final TokenPair expired = new TokenPair(
+                AccessTokenFreshnessTest.createJwt("{\"exp\":" + (now - 60) + "}"), "refresh");
+        final TokenPair renewed = new TokenPair("renewed", "refresh2");
+        final SecretStore<TokenPair> store = spy(new InsecureInMemoryStore<TokenPair>());
+        final OAuth2Authenticator underTest = new OAuth2Authenticator(TEST_RESOURCE,
+                clientId.toString(),
+                TEST_REDIRECT_URI,
+                store,
+                mockOAuth2UseragentValidator,
+                testCallback);
+        underTest.setAzureAuthorityProvider(mockAzureAuthorityProvider);
+        underTest.setCrossProcessLeases(new CrossProcessLeases(temporaryFolder.getRoot()));
+        final String key = underTest.getKey(OAuth2Authenticator.APP_VSSPS_VISUALSTUDIO);
+        store.add(key, expired);
+        when(mockAzureAuthority.acquireTokenByRefreshToken(eq(clientId.toString()), eq(TEST_RESOURCE),
+                any(Token.class))).thenReturn(renewed);
+
+        final URI account = URI.create("https://account.visualstudio.com");
+        assertEquals(renewed, underTest.getOAuth2TokenPair(account, PromptBehavior.AUTO));
+
+        assertEquals(renewed, store.get(key));
+        verify(store, times(1)).add(key, renewed);
+    }
+
     @Test
     public void typeIsOAuth2() {
         assertEquals("OAuth2", underTest.getAuthType());
@@ -139,4 +325,17 @@ public class OAuth2AuthenticatorTest {
         assertFalse(underTest.isPersonalAccessTokenSupported());
     }
 
+    @Test
+    public void crossProcessLeasesAreOptIn() {
+        final OAuth2Authenticator.OAuth2AuthenticatorBuilder builder = new OAuth2Authenticator.OAuth2AuthenticatorBuilder()
+                .manage(TEST_RESOURCE)
+                .withClientId(clientId)
+                .redirectTo(TEST_REDIRECT_URI)
+                .backedBy(mockStore);
+        assertNull(builder.build().getCrossProcessLeases());
+
+        final CrossProcessLeases leases = new CrossProcessLeases(temporaryFolder.getRoot());
+        assertSame(leases, builder.coordinatedBy(leases).build().getCrossProcessLeases());
+    }
+
 }
\ No newline at end of file
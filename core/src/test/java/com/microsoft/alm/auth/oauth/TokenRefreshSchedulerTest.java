@@ -0,0 +1,96 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.auth.oauth;
+
+import com.microsoft.alm.helpers.Func;
+import com.microsoft.alm.secret.TokenPair;
+import com.microsoft.alm.storage.InsecureInMemoryStore;
+import com.microsoft.alm.storage.SecretStore;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A class to test {@link TokenRefreshScheduler}.
+ */
+public class TokenRefreshSchedulerTest {
+
+    private static final String KEY = "OAuth2:https://app.vssps.visualstudio.com";
+
+    private SecretStore<TokenPair> store;
+    private TokenRefreshScheduler cut;
+
+    @Before public void setUp() {
+        store = new InsecureInMemoryStore<TokenPair>();
+        cut = new TokenRefreshScheduler(Executors.newSingleThreadScheduledExecutor(), 0);
+    }
+
+    @After public void tearDown() {
+        cut.shutdown();
+    }
+
+    private static TokenPair createTokenPair(final String accessToken, final int expiresIn) {
+        return new TokenPair("{\"access_token\":\"" + accessToken + "\",\"refresh_token\":\"refresh\","
+                + "\"expires_in\":" + expiresIn + "}");
+    }
+
+    private static Func<TokenPair, TokenPair> renewingTo(final TokenPair renewed, final CountDownLatch called) {
+        return new Func<TokenPair, TokenPair>() {
+            @Override
+            public TokenPair call(final TokenPair current) {
+                called.countDown();
+                return renewed;
+            }
+        };
+    }
+
+    @Test public void track_refreshesAndWritesBack() throws Exception {
+        final TokenPair expiring = createTokenPair("expiring", 0);
+        final TokenPair renewed = createTokenPair("renewed", 3600);
+        store.add(KEY, expiring);
+        final CountDownLatch called = new CountDownLatch(1);
+
+        cut.track(KEY, expiring, store, renewingTo(renewed, called));
+
+        Assert.assertTrue(called.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 100 && !renewed.equals(store.get(KEY)); i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(renewed, store.get(KEY));
+        Assert.assertEquals(1, cut.getTrackedCount());
+    }
+
+    @Test public void track_doesNotOverwriteAnotherSignIn() throws Exception {
+        final TokenPair expiring = createTokenPair("expiring", 0);
+        final TokenPair other = createTokenPair("other", 3600);
+        store.add(KEY, other);
+        final CountDownLatch called = new CountDownLatch(1);
+
+        cut.track(KEY, expiring, store, renewingTo(createTokenPair("renewed", 3600), called));
+
+        Assert.assertTrue(called.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 100 && cut.getTrackedCount() > 0; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(0, cut.getTrackedCount());
+        Assert.assertEquals(other, store.get(KEY));
+    }
+
+    @Test public void cancel_stopsTracking() throws Exception {
+        final TokenPair pair = createTokenPair("access", 3600);
+        final CountDownLatch called = new CountDownLatch(1);
+
+        cut.track(KEY, pair, store, renewingTo(pair, called));
+        Assert.assertEquals(1, cut.getTrackedCount());
+        cut.cancel(KEY);
+
+        Assert.assertEquals(0, cut.getTrackedCount());
+        Assert.assertEquals(1, called.getCount());
+    }
+}
@@ -0,0 +1,43 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.auth.oauth.helper;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.UUID;
+
+public class TenantCacheTest {
+
+    private static final UUID TENANT = UUID.fromString("d1a9c4a6-6f2d-4c1b-9a4e-5b2f3c6d7e8f");
+
+    private static class CountingTenantCache extends TenantCache {
+        int lookups;
+
+        CountingTenantCache(final File snapshotFile) {
+            super(snapshotFile);
+        }
+
+        @Override
+        UUID detectTenantId(final URI uri) {
+            lookups++;
+            return uri.getHost().startsWith("aad") ? TENANT : null;
+        }
+    }
+
+    @Test
+    public void getTenantId_looksUpEachHostOnce() throws IOException {
+        final CountingTenantCache cut = new CountingTenantCache(null);
+
+        Assert.assertEquals(TENANT, cut.getTenantId(URI.create("https://aad.visualstudio.com/DefaultCollection")));
+        Assert.assertEquals(TENANT, cut.getTenantId(URI.create("https://AAD.visualstudio.com/")));
+        Assert.assertNull(cut.getTenantId(URI.create("https://msa.visualstudio.com")));
+        Assert.assertNull(cut.getTenantId(URI.create("https://msa.visualstudio.com")));
+
+        Assert.assertEquals(2, cut.lookups);
+    }
+}
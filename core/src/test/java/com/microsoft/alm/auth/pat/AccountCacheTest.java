@@ -0,0 +1,49 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.auth.pat;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.URI;
+
+public class AccountCacheTest {
+
+    private static final String IDENTITY = "tenant/user";
+    private static final URI ACCOUNT = URI.create("https://account.visualstudio.com/");
+
+    @Test
+    public void invalidateAccount_keepsProfileId() {
+        final AccountCache cache = new AccountCache();
+        cache.putProfileId(IDENTITY, "profile");
+        cache.putAccountUri(IDENTITY, ACCOUNT);
+
+        cache.invalidateAccount(IDENTITY);
+
+        Assert.assertNull(cache.getAccountUri(IDENTITY));
+        Assert.assertEquals("profile", cache.getProfileId(IDENTITY));
+    }
+
+    @Test
+    public void getAccountUri_expires() throws Exception {
+        final AccountCache cache = new AccountCache(AccountCache.DEFAULT_PROFILE_TTL_MILLIS, 1);
+        cache.putProfileId(IDENTITY, "profile");
+        cache.putAccountUri(IDENTITY, ACCOUNT);
+
+        Thread.sleep(10);
+
+        Assert.assertNull(cache.getAccountUri(IDENTITY));
+        Assert.assertEquals("profile", cache.getProfileId(IDENTITY));
+    }
+
+    @Test
+    public void get_otherUser() {
+        final AccountCache cache = new AccountCache();
+        cache.putProfileId(IDENTITY, "profile");
+        cache.putAccountUri(IDENTITY, ACCOUNT);
+
+        Assert.assertNull(cache.getProfileId("tenant/other"));
+        Assert.assertNull(cache.getAccountUri("tenant/other"));
+    }
+}
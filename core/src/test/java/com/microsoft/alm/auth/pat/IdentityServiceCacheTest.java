@@ -0,0 +1,27 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.auth.pat;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.URI;
+
+public class IdentityServiceCacheTest {
+
+    private static final URI IDENTITY_SERVICE = URI.create("https://account.vssps.visualstudio.com/");
+
+    @Test
+    public void get_isKeyedByAccount() {
+        final IdentityServiceCache cut = new IdentityServiceCache();
+
+        cut.put(URI.create("https://account.visualstudio.com/DefaultCollection"), IDENTITY_SERVICE);
+        cut.put(URI.create("https://dev.azure.com/first"), IDENTITY_SERVICE);
+
+        Assert.assertEquals(IDENTITY_SERVICE, cut.get(URI.create("https://ACCOUNT.visualstudio.com")));
+        Assert.assertNull(cut.get(URI.create("https://other.visualstudio.com")));
+        Assert.assertEquals(IDENTITY_SERVICE, cut.get(URI.create("https://dev.azure.com/first/project")));
+        Assert.assertNull(cut.get(URI.create("https://dev.azure.com/second")));
+    }
+}
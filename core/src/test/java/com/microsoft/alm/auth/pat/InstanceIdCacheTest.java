@@ -0,0 +1,67 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.auth.pat;
+
+import com.microsoft.alm.secret.Token;
+import com.microsoft.alm.secret.TokenType;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.net.URI;
+import java.util.UUID;
+
+public class InstanceIdCacheTest {
+
+    private static final UUID INSTANCE_ID = UUID.fromString("6b9c1f1d-52b4-4d2e-8f6a-0c3e5b7d9a1f");
+    private static final String CONNECTION_DATA = "{\"authenticatedUser\":{\"id\":\"a\"},\"instanceId\":\""
+            + INSTANCE_ID + "\",\"locationServiceData\":{}}";
+
+    private InstanceIdCache previousDefault;
+
+    @Before
+    public void setUp() {
+        previousDefault = InstanceIdCache.getDefault();
+        InstanceIdCache.setDefault(new InstanceIdCache());
+    }
+
+    @After
+    public void tearDown() {
+        InstanceIdCache.setDefault(previousDefault);
+    }
+
+    @Test
+    public void validationOfAccount_remembersInstanceId() throws Exception {
+        final URI account = URI.create("https://account.visualstudio.com");
+
+        VsoAzureAuthority.rememberingInstanceId(account, URI.create(account + "/_apis/connectionData"))
+                .handle(new StringReader(CONNECTION_DATA));
+
+        Assert.assertEquals(INSTANCE_ID, InstanceIdCache.getDefault().get(account));
+    }
+
+    @Test
+    public void validationOfCollection_isNotRemembered() throws Exception {
+        final URI collection = URI.create("https://account.visualstudio.com/DefaultCollection");
+
+        VsoAzureAuthority.rememberingInstanceId(collection, URI.create(collection + "/_apis/connectionData"))
+                .handle(new StringReader(CONNECTION_DATA));
+
+        Assert.assertNull(InstanceIdCache.getDefault().get(collection));
+    }
+
+    @Test
+    public void populateTokenTargetId_usesCachedInstanceId() {
+        final URI account = URI.create("https://account.visualstudio.com");
+        InstanceIdCache.getDefault().put(account, INSTANCE_ID);
+        final Token accessToken = new Token("access", TokenType.Access);
+
+        // a lookup would fail: there is no such account
+        Assert.assertTrue(new VsoAzureAuthority().populateTokenTargetId(account, accessToken));
+
+        Assert.assertEquals(INSTANCE_ID, accessToken.getTargetIdentity());
+    }
+}
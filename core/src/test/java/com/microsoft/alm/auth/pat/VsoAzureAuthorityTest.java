@@ -0,0 +1,131 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.auth.pat;
+
+import com.microsoft.alm.auth.HttpClientFactory;
+import com.microsoft.alm.auth.oauth.Global;
+import com.microsoft.alm.helpers.AsyncHttpClient;
+import com.microsoft.alm.helpers.HttpClient;
+import com.microsoft.alm.helpers.SettableFuture;
+import com.microsoft.alm.helpers.StringContent;
+import com.microsoft.alm.secret.Token;
+import com.microsoft.alm.secret.TokenType;
+import com.microsoft.alm.secret.VsoTokenScope;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.net.URI;
+import java.util.HashMap;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class VsoAzureAuthorityTest {
+
+    private static final URI ACCOUNT = URI.create("https://account.visualstudio.com");
+    private static final String INSTANCE_ID = "16fd2706-8baf-433b-82eb-8c7fada847da";
+
+    private HttpClientFactory previousFactory;
+    private IdentityServiceCache previousIdentityServices;
+    private InstanceIdCache previousInstanceIds;
+
+    @Before
+    public void setUp() {
+        previousFactory = Global.getHttpClientFactory();
+        previousIdentityServices = IdentityServiceCache.getDefault();
+        previousInstanceIds = InstanceIdCache.getDefault();
+        IdentityServiceCache.setDefault(new IdentityServiceCache());
+        InstanceIdCache.setDefault(new InstanceIdCache());
+    }
+
+    @After
+    public void tearDown() {
+        Global.setHttpClientFactory(previousFactory);
+        IdentityServiceCache.setDefault(previousIdentityServices);
+        InstanceIdCache.setDefault(previousInstanceIds);
+    }
+
+    @Test
+    public void generatePersonalAccessToken_looksUpIdentityServiceWhileInstanceIdIsRead() throws Exception {
+        final SettableFuture<String> location = SettableFuture.create();
+        final AsyncHttpClient asyncClient = mock(AsyncHttpClient.class);
+        when(asyncClient.getHeaders()).thenReturn(new HashMap<String, String>());
+        when(asyncClient.getGetResponseText(any(URI.class), anyInt())).thenReturn(location);
+
+        final HttpClient client = mock(HttpClient.class);
+        when(client.getHeaders()).thenReturn(new HashMap<String, String>());
+        when(client.getGetResponseText(eq(URI.create("https://account.visualstudio.com/_apis/connectiondata")),
+                anyInt())).thenAnswer(new Answer<String>() {
+            @Override
+            public String answer(final InvocationOnMock invocation) {
+                // the identity service has been asked for, and is still on its way
+                verify(asyncClient).getGetResponseText(
+                        eq(URI.create("https://account.visualstudio.com/_apis/ServiceDefinitions/LocationService2/"
+                                + "951917AC-A960-4999-8464-E3F0AA25B381?api-version=1.0")), anyInt());
+                Assert.assertFalse(location.isDone());
+                location.set("{ \"location\" : \"https://account.vssps.visualstudio.com/\" }");
+                return "{ \"instanceId\" : \"" + INSTANCE_ID + "\" }";
+            }
+        });
+        when(client.getPostResponseText(
+                eq(URI.create("https://account.vssps.visualstudio.com/_apis/token/sessiontokens?api-version=1.0")),
+                any(StringContent.class))).thenReturn("{ \"token\" : \"personal\" }");
+
+        Global.setHttpClientFactory(new HttpClientFactory() {
+            @Override
+            public HttpClient createHttpClient() {
+                return client;
+            }
+
+            @Override
+            public AsyncHttpClient createAsyncHttpClient() {
+                return asyncClient;
+            }
+        });
+
+        final Token token = new VsoAzureAuthority().generatePersonalAccessToken(ACCOUNT,
+                new Token("access", TokenType.Access), VsoTokenScope.CodeRead, false, false, "PAT");
+
+        Assert.assertEquals("personal", token.Value);
+        Assert.assertEquals(URI.create("https://account.vssps.visualstudio.com/"),
+                IdentityServiceCache.getDefault().get(ACCOUNT));
+    }
+
+    @Test
+    public void generatePersonalAccessToken_blockingOnlyFactoryServesTheLookup() throws Exception {
+        final HttpClient client = mock(HttpClient.class);
+        when(client.getHeaders()).thenReturn(new HashMap<String, String>());
+        when(client.getGetResponseText(eq(URI.create("https://account.visualstudio.com/_apis/ServiceDefinitions/"
+                + "LocationService2/951917AC-A960-4999-8464-E3F0AA25B381?api-version=1.0")), anyInt()))
+                .thenReturn("{ \"location\" : \"https://account.vssps.visualstudio.com/\" }");
+        when(client.getGetResponseText(eq(URI.create("https://account.visualstudio.com/_apis/connectiondata")),
+                anyInt())).thenReturn("{ \"instanceId\" : \"" + INSTANCE_ID + "\" }");
+        when(client.getPostResponseText(
+                eq(URI.create("https://account.vssps.visualstudio.com/_apis/token/sessiontokens?api-version=1.0")),
+                any(StringContent.class))).thenReturn("{ \"token\" : \"personal\" }");
+
+        // a factory written before the asynchronous clients existed
+        Global.setHttpClientFactory(new HttpClientFactory() {
+            @Override
+            public HttpClient createHttpClient() {
+                return client;
+            }
+        });
+
+        final Token token = new VsoAzureAuthority().generatePersonalAccessToken(ACCOUNT,
+                new Token("access", TokenType.Access), VsoTokenScope.CodeRead, false, false, "PAT");
+
+        Assert.assertEquals("personal", token.Value);
+        Assert.assertEquals(URI.create("https://account.vssps.visualstudio.com/"),
+                IdentityServiceCache.getDefault().get(ACCOUNT));
+    }
+}
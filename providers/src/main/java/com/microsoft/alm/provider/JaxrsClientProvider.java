@@ -4,9 +4,11 @@
 package com.microsoft.alm.provider;
 
 import com.microsoft.alm.auth.Authenticator;
+import com.microsoft.alm.auth.BaseAuthenticator;
 import com.microsoft.alm.auth.PromptBehavior;
 import com.microsoft.alm.helpers.SettingsHelper;
 import com.microsoft.alm.secret.Credential;
+import com.microsoft.alm.secret.Secret;
 import com.microsoft.alm.secret.Token;
 import com.microsoft.alm.secret.TokenPair;
 import com.microsoft.alm.helpers.Debug;
@@ -30,6 +32,8 @@ import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.ClientRequestContext;
 import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
 import java.io.IOException;
 import java.net.URI;
 
@@ -113,7 +117,7 @@ public class JaxrsClientProvider {
                     promptBehavior);
 
             if (token != null) {
-                client = getClientWithUsernamePassword(authenticator.getAuthType(), token.Value);
+                client = getClientWithUsernamePassword(authenticator.getAuthType(), token.Value, token);
             }
         }
 
@@ -168,7 +172,7 @@ public class JaxrsClientProvider {
             logger.debug("Getting a jaxrs client backed by basic auth.");
             final Credential credential = authenticator.getCredential(uri, promptBehavior);
             if (credential != null) {
-                client = getClientWithUsernamePassword(credential.Username, credential.Password);
+                client = getClientWithUsernamePassword(credential.Username, credential.Password, credential);
             }
 
         } else if (authenticator.isOAuth2TokenSupported()) {
@@ -187,7 +191,7 @@ public class JaxrsClientProvider {
                     promptBehavior);
 
             if (token != null) {
-                client = getClientWithUsernamePassword(authenticator.getAuthType(), token.Value);
+                client = getClientWithUsernamePassword(authenticator.getAuthType(), token.Value, token);
             }
         }
 
@@ -209,9 +213,10 @@ public class JaxrsClientProvider {
             client.register(new ClientRequestFilter() {
                 @Override
                 public void filter(final ClientRequestContext requestContext) throws IOException {
-                    requestContext.getHeaders().putSingle("Authorization", "Bearer " + tokenPair.AccessToken.Value);
+                    requestContext.getHeaders().putSingle("Authorization", tokenPair.AccessToken.getHeaderValue());
                 }
             });
+            reportRejections(client, tokenPair);
         } else {
             client = null;
         }
@@ -219,10 +224,32 @@ public class JaxrsClientProvider {
         return client;
     }
 
-    private Client getClientWithUsernamePassword(final String username, final String password) {
+    private Client getClientWithUsernamePassword(final String username, final String password, final Secret secret) {
         final ClientConfig clientConfig = getClientConfig(username, password);
 
-        return ClientBuilder.newClient(clientConfig);
+        final Client client = ClientBuilder.newClient(clientConfig);
+        reportRejections(client, secret);
+        return client;
+    }
+
+    /**
+     * A secret refused by the server must not be trusted on the strength of an earlier validation, so the
+     * authenticator hears about every 401.
+     */
+    private void reportRejections(final Client client, final Secret secret) {
+        if (!(authenticator instanceof BaseAuthenticator)) {
+            return;
+        }
+        final BaseAuthenticator baseAuthenticator = (BaseAuthenticator) authenticator;
+        client.register(new ClientResponseFilter() {
+            @Override
+            public void filter(final ClientRequestContext requestContext, final ClientResponseContext responseContext) {
+                if (responseContext.getStatus() == 401) {
+                    logger.debug("Request to {} was not authorized.", requestContext.getUri());
+                    baseAuthenticator.reportRejected(secret);
+                }
+            }
+        });
     }
 
     private ClientConfig getClientConfig(final String username, final String password) {
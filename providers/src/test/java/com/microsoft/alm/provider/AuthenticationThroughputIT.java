@@ -0,0 +1,218 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.provider;
+
+import com.microsoft.alm.auth.HttpClientFactory;
+import com.microsoft.alm.auth.MetricsHttpClientFactory;
+import com.microsoft.alm.auth.PooledHttpClientFactory;
+import com.microsoft.alm.auth.PromptBehavior;
+import com.microsoft.alm.auth.oauth.DeviceFlowResponse;
+import com.microsoft.alm.auth.oauth.Global;
+import com.microsoft.alm.auth.oauth.OAuth2Authenticator;
+import com.microsoft.alm.auth.pat.VstsPatAuthenticator;
+import com.microsoft.alm.helpers.Action;
+import com.microsoft.alm.helpers.HttpEndpoint;
+import com.microsoft.alm.helpers.HttpMetrics;
+import com.microsoft.alm.helpers.LatencyHistogram;
+import com.microsoft.alm.secret.Token;
+import com.microsoft.alm.secret.TokenPair;
+import com.microsoft.alm.secret.TokenType;
+import com.microsoft.alm.secret.VsoTokenScope;
+import com.microsoft.alm.storage.InsecureInMemoryStore;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.core.Response;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+
+/**
+ * Drives the authenticators and {@link JaxrsClientProvider} against a {@link StandInServer} from several threads
+ * and reports the throughput and latency of each flow, followed by the latency of each endpoint.
+ *
+ * The load can be shaped from the command line:
+ * <pre>
+ *     mvn verify -pl providers -Dit.test=AuthenticationThroughputIT -Dload.threads=16 -Dload.calls=200 \
+ *             -Dload.latencyMillis=20 -Dload.jitterMillis=30 -Dload.errorRate=0.01 -Dload.pooled=true
+ * </pre>
+ */
+public class AuthenticationThroughputIT {
+
+    private static final String CLIENT_ID = "872cd9fa-d31f-45e0-9eab-6e460a02d1f1";
+    private static final String REDIRECT_URL = "urn:ietf:wg:oauth:2.0:oob";
+    private static final URI ACCOUNT = URI.create("https://account.visualstudio.com");
+
+    private static final int THREADS = Integer.getInteger("load.threads", 4);
+    private static final int CALLS = Integer.getInteger("load.calls", 25);
+    private static final double ERROR_RATE = Double.parseDouble(System.getProperty("load.errorRate", "0"));
+
+    private final List<LoadDriver.Result> results = new ArrayList<LoadDriver.Result>();
+
+    private StandInServer server;
+    private HttpClientFactory previousFactory;
+    private LoadDriver driver;
+
+    @Before public void setUp() throws Exception {
+        server = new StandInServer();
+        server.setLatency(Integer.getInteger("load.latencyMillis", 0), Integer.getInteger("load.jitterMillis", 0));
+        server.setErrorRate(ERROR_RATE);
+
+        final HttpClientFactory transport = Boolean.getBoolean("load.pooled")
+                ? new PooledHttpClientFactory() : new HttpClientFactory();
+        previousFactory = Global.getHttpClientFactory();
+        Global.setHttpClientFactory(new MetricsHttpClientFactory(server.redirecting(transport)));
+        HttpMetrics.getInstance().reset();
+
+        driver = new LoadDriver(THREADS, CALLS);
+    }
+
+    @After public void tearDown() {
+        Global.setHttpClientFactory(previousFactory);
+        server.stop();
+    }
+
+    @Test public void allFlows() throws Exception {
+        oauth2();
+        personalAccessTokens();
+        jaxrsClientProvider();
+
+        for (final LoadDriver.Result result : results) {
+            System.out.println(result);
+        }
+        for (final HttpEndpoint endpoint : HttpEndpoint.values()) {
+            final LatencyHistogram.Snapshot latency = HttpMetrics.getInstance().getStatistics(endpoint).getLatency();
+            if (latency.getCount() > 0) {
+                System.out.println(String.format(Locale.ENGLISH, "  %-22s %6d calls  p50 %5d ms  p99 %5d ms",
+                        endpoint, latency.getCount(), latency.getPercentileMillis(50),
+                        latency.getPercentileMillis(99)));
+            }
+        }
+
+        for (final HttpEndpoint endpoint : HttpEndpoint.values()) {
+            if (endpoint != HttpEndpoint.OTHER) {
+                Assert.assertTrue(endpoint + " was never called", server.getRequestCount(endpoint) > 0);
+            }
+        }
+        if (ERROR_RATE == 0) {
+            for (final LoadDriver.Result result : results) {
+                if (result.failures > 0) {
+                    throw new AssertionError(result.name + " failed " + result.failures + " times: "
+                            + result.firstFailure);
+                }
+            }
+        }
+    }
+
+    private void oauth2() throws Exception {
+        final OAuth2Authenticator shared = createOAuth2Authenticator(new TokenPair("at-0", "rt-0"));
+        results.add(driver.run("OAuth2 validate stored", new Callable<TokenPair>() {
+            @Override
+            public TokenPair call() {
+                return shared.getOAuth2TokenPair(ACCOUNT, PromptBehavior.AUTO);
+            }
+        }));
+
+        results.add(driver.run("OAuth2 refresh expired", new Callable<TokenPair>() {
+            @Override
+            public TokenPair call() {
+                final OAuth2Authenticator authenticator = createOAuth2Authenticator(
+                        new TokenPair(StandInServer.EXPIRED_TOKEN_PREFIX + "at", "rt-0"));
+                return authenticator.getOAuth2TokenPair(ACCOUNT, PromptBehavior.AUTO);
+            }
+        }));
+
+        final String previousProvider = System.getProperty("userAgentProvider");
+        System.setProperty("userAgentProvider", "none");
+        try {
+            final OAuth2Authenticator deviceFlow = OAuth2Authenticator.getAuthenticator(CLIENT_ID, REDIRECT_URL,
+                    new InsecureInMemoryStore<TokenPair>(), new Action<DeviceFlowResponse>() {
+                        @Override
+                        public void call(final DeviceFlowResponse response) {
+                            // the stand-in server signs the user in straight away
+                        }
+                    });
+            results.add(driver.run("OAuth2 device flow", new Callable<TokenPair>() {
+                @Override
+                public TokenPair call() {
+                    return deviceFlow.getOAuth2TokenPair(PromptBehavior.ALWAYS);
+                }
+            }));
+        } finally {
+            if (previousProvider == null) {
+                System.clearProperty("userAgentProvider");
+            } else {
+                System.setProperty("userAgentProvider", previousProvider);
+            }
+        }
+    }
+
+    private void personalAccessTokens() throws Exception {
+        final VstsPatAuthenticator authenticator = createPatAuthenticator(new Token("pat-0", TokenType.Personal));
+        results.add(driver.run("PAT validate stored", new Callable<Token>() {
+            @Override
+            public Token call() {
+                return authenticator.getPersonalAccessToken(ACCOUNT, VsoTokenScope.CodeWrite, "load",
+                        PromptBehavior.AUTO);
+            }
+        }));
+
+        results.add(driver.run("PAT generate for account", new Callable<Token>() {
+            @Override
+            public Token call() {
+                return authenticator.getPersonalAccessToken(ACCOUNT, VsoTokenScope.CodeWrite, "load",
+                        PromptBehavior.ALWAYS);
+            }
+        }));
+
+        results.add(driver.run("PAT generate global", new Callable<Token>() {
+            @Override
+            public Token call() {
+                return authenticator.getPersonalAccessToken(VsoTokenScope.CodeWrite, "load", PromptBehavior.ALWAYS);
+            }
+        }));
+    }
+
+    private void jaxrsClientProvider() throws Exception {
+        final JaxrsClientProvider provider = new JaxrsClientProvider(
+                createPatAuthenticator(new Token("pat-0", TokenType.Personal)));
+        final URI projects = server.redirect(URI.create(ACCOUNT + "/_apis/projects?api-version=1.0"));
+        results.add(driver.run("JaxrsClientProvider request", new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                final Client client = provider.getClientFor(ACCOUNT);
+                if (client == null) {
+                    return false;
+                }
+                try {
+                    final Response response = client.target(projects).request().get();
+                    response.close();
+                    return response.getStatus() == 200;
+                } finally {
+                    client.close();
+                }
+            }
+        }));
+    }
+
+    private OAuth2Authenticator createOAuth2Authenticator(final TokenPair stored) {
+        final InsecureInMemoryStore<TokenPair> store = new InsecureInMemoryStore<TokenPair>();
+        final OAuth2Authenticator authenticator = OAuth2Authenticator.getAuthenticator(CLIENT_ID, REDIRECT_URL, store);
+        store.add(authenticator.getKey(OAuth2Authenticator.APP_VSSPS_VISUALSTUDIO), stored);
+        return authenticator;
+    }
+
+    private VstsPatAuthenticator createPatAuthenticator(final Token stored) {
+        final InsecureInMemoryStore<Token> store = new InsecureInMemoryStore<Token>();
+        final VstsPatAuthenticator authenticator = new VstsPatAuthenticator(
+                createOAuth2Authenticator(new TokenPair("at-0", "rt-0")), store);
+        store.add(authenticator.getKey(ACCOUNT), stored);
+        return authenticator;
+    }
+}
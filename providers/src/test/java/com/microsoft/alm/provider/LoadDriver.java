@@ -0,0 +1,118 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.provider;
+
+import com.microsoft.alm.helpers.DaemonThreadFactory;
+import com.microsoft.alm.helpers.Debug;
+import com.microsoft.alm.helpers.LatencyHistogram;
+
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs a call on a number of threads at once and measures its throughput and latency.
+ */
+class LoadDriver {
+
+    private final int threads;
+    private final int callsPerThread;
+
+    LoadDriver(final int threads, final int callsPerThread) {
+        Debug.Assert(threads > 0, "threads must be positive");
+        Debug.Assert(callsPerThread > 0, "callsPerThread must be positive");
+
+        this.threads = threads;
+        this.callsPerThread = callsPerThread;
+    }
+
+    /**
+     * @param name what is being measured, for the report
+     * @param call returns false, returns null or throws when it failed
+     */
+    Result run(final String name, final Callable<?> call) throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicReference<Throwable> firstFailure = new AtomicReference<Throwable>();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("load-driver"));
+        try {
+            for (int i = 0; i < threads; i++) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                            for (int c = 0; c < callsPerThread; c++) {
+                                final long begin = System.nanoTime();
+                                boolean succeeded = false;
+                                try {
+                                    final Object result = call.call();
+                                    succeeded = result != null && !Boolean.FALSE.equals(result);
+                                } catch (final Throwable t) {
+                                    firstFailure.compareAndSet(null, t);
+                                }
+                                histogram.record(System.nanoTime() - begin);
+                                if (!succeeded) {
+                                    failures.incrementAndGet();
+                                }
+                            }
+                        } catch (final InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                });
+            }
+            final long begin = System.nanoTime();
+            start.countDown();
+            done.await();
+            final long elapsed = System.nanoTime() - begin;
+
+            return new Result(name, threads, histogram.getSnapshot(), failures.get(), firstFailure.get(), elapsed);
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    static class Result {
+        final String name;
+        final int threads;
+        final LatencyHistogram.Snapshot latency;
+        final int failures;
+        final Throwable firstFailure;
+        final long elapsedNanos;
+
+        Result(final String name, final int threads, final LatencyHistogram.Snapshot latency, final int failures,
+               final Throwable firstFailure, final long elapsedNanos) {
+            this.name = name;
+            this.threads = threads;
+            this.latency = latency;
+            this.failures = failures;
+            this.firstFailure = firstFailure;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        double getCallsPerSecond() {
+            return latency.getCount() * 1e9 / Math.max(1, elapsedNanos);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ENGLISH,
+                    "%-28s %6d calls on %3d threads %9.1f calls/s  p50 %5d ms  p99 %5d ms  max %5d ms  %d failed",
+                    name, latency.getCount(), threads, getCallsPerSecond(), latency.getPercentileMillis(50),
+                    latency.getPercentileMillis(99), latency.getMaxMillis(), failures);
+        }
+    }
+}
@@ -0,0 +1,362 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.provider;
+
+import com.microsoft.alm.auth.HttpClientFactory;
+import com.microsoft.alm.helpers.AsyncHttpClient;
+import com.microsoft.alm.helpers.DaemonThreadFactory;
+import com.microsoft.alm.helpers.Debug;
+import com.microsoft.alm.helpers.HttpClient;
+import com.microsoft.alm.helpers.HttpClientHelper;
+import com.microsoft.alm.helpers.HttpEndpoint;
+import com.microsoft.alm.helpers.HttpResponse;
+import com.microsoft.alm.helpers.ListenableFuture;
+import com.microsoft.alm.helpers.ResponseHandler;
+import com.microsoft.alm.helpers.StreamingHttpClient;
+import com.microsoft.alm.helpers.StringContent;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-process stand-in for the Azure Active Directory and Visual Studio Team Services endpoints this library
+ * calls, with a configurable latency and error rate.
+ *
+ * Requests reach it through the factory returned by {@link #redirecting(HttpClientFactory)}, which keeps the
+ * original host as the first path segment: {@code https://account.visualstudio.com/_apis/connectionData} is sent
+ * to {@code http://127.0.0.1:port/account.visualstudio.com/_apis/connectionData}.
+ *
+ * Any Authorization header is accepted, except for tokens starting with {@link #EXPIRED_TOKEN_PREFIX}.
+ */
+class StandInServer {
+
+    static final String EXPIRED_TOKEN_PREFIX = "expired-";
+    static final UUID TENANT_ID = UUID.fromString("d1a9c4a6-6f2d-4c1b-9a4e-5b2f3c6d7e8f");
+    static final UUID INSTANCE_ID = UUID.fromString("0f6b5a7e-2c3d-4e1f-8a9b-1c2d3e4f5a6b");
+    static final UUID PROFILE_ID = UUID.fromString("7e3d2c1b-0a9f-4e8d-b7c6-5a4b3c2d1e0f");
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Random random = new Random();
+    private final AtomicInteger issued = new AtomicInteger();
+    private final Map<HttpEndpoint, AtomicLong> requests = new EnumMap<HttpEndpoint, AtomicLong>(HttpEndpoint.class);
+
+    private volatile int latencyMillis;
+    private volatile int latencyJitterMillis;
+    private volatile double errorRate;
+
+    StandInServer() throws IOException {
+        for (final HttpEndpoint endpoint : HttpEndpoint.values()) {
+            requests.put(endpoint, new AtomicLong());
+        }
+        executor = Executors.newCachedThreadPool(new DaemonThreadFactory("stand-in-server"));
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 128);
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                try {
+                    respond(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * @param latencyMillis how long every response is held back
+     * @param jitterMillis  up to how much longer, chosen at random
+     */
+    void setLatency(final int latencyMillis, final int jitterMillis) {
+        this.latencyMillis = latencyMillis;
+        this.latencyJitterMillis = jitterMillis;
+    }
+
+    /**
+     * @param errorRate the fraction of requests, between 0 and 1, answered with a 503 and a Retry-After of 0
+     */
+    void setErrorRate(final double errorRate) {
+        Debug.Assert(errorRate >= 0 && errorRate <= 1, "errorRate must be between 0 and 1");
+        this.errorRate = errorRate;
+    }
+
+    long getRequestCount(final HttpEndpoint endpoint) {
+        return requests.get(endpoint).get();
+    }
+
+    /**
+     * @return where a request for the given URI is sent to reach this server
+     */
+    URI redirect(final URI uri) {
+        final StringBuilder sb = new StringBuilder("http://127.0.0.1:");
+        sb.append(server.getAddress().getPort()).append('/').append(uri.getHost());
+        if (uri.getRawPath() != null) {
+            sb.append(uri.getRawPath());
+        }
+        if (uri.getRawQuery() != null) {
+            sb.append('?').append(uri.getRawQuery());
+        }
+        return URI.create(sb.toString());
+    }
+
+    /**
+     * @return a factory whose clients send all their requests to this server
+     */
+    HttpClientFactory redirecting(final HttpClientFactory delegate) {
+        return new HttpClientFactory() {
+            @Override
+            public HttpClient createHttpClient() {
+                return new RedirectingHttpClient(delegate.createHttpClient());
+            }
+
+            @Override
+            public AsyncHttpClient createAsyncHttpClient() {
+                return new RedirectingAsyncHttpClient(delegate.createAsyncHttpClient());
+            }
+        };
+    }
+
+    private void respond(final HttpExchange exchange) throws IOException {
+        drain(exchange.getRequestBody());
+
+        final URI requested = exchange.getRequestURI();
+        final String path = requested.getRawPath();
+        final int slash = path.indexOf('/', 1);
+        final String host = slash == -1 ? path.substring(1) : path.substring(1, slash);
+        final URI original = URI.create("https://" + host + (slash == -1 ? "/" : path.substring(slash))
+                + (requested.getRawQuery() == null ? "" : "?" + requested.getRawQuery()));
+        final String method = exchange.getRequestMethod();
+        final HttpEndpoint endpoint = HttpEndpoint.classify(method, original);
+        requests.get(endpoint).incrementAndGet();
+
+        pause();
+        if (errorRate > 0 && nextDouble() < errorRate) {
+            exchange.getResponseHeaders().add("Retry-After", "0");
+            send(exchange, 503, "{\"message\":\"The stand-in server is unavailable\"}");
+            return;
+        }
+
+        switch (endpoint) {
+            case TENANT_HEAD:
+                exchange.getResponseHeaders().add("X-VSS-ResourceTenant", TENANT_ID.toString());
+                exchange.sendResponseHeaders(401, -1);
+                return;
+            case TOKEN_POST:
+                final int token = issued.incrementAndGet();
+                send(exchange, 200, "{\"token_type\":\"Bearer\",\"expires_in\":\"3599\",\"resource\":\"stand-in\","
+                        + "\"access_token\":\"at-" + token + "\",\"refresh_token\":\"rt-" + token + "\"}");
+                return;
+            case DEVICE_CODE_POST:
+                send(exchange, 200, "{\"device_code\":\"dc-" + issued.incrementAndGet() + "\",\"user_code\":\"STANDIN\","
+                        + "\"verification_url\":\"https://aka.ms/devicelogin\",\"expires_in\":\"900\","
+                        + "\"interval\":\"0\",\"message\":\"Sign in with the code STANDIN\"}");
+                return;
+            default:
+                break;
+        }
+
+        if (!isAuthorized(exchange)) {
+            send(exchange, 401, "{\"message\":\"TF400813: The user is not authorized\"}");
+            return;
+        }
+        switch (endpoint) {
+            case CONNECTION_DATA_GET:
+                send(exchange, 200, "{\"authenticatedUser\":{\"id\":\"" + PROFILE_ID + "\"},"
+                        + "\"instanceId\":\"" + INSTANCE_ID + "\",\"deploymentId\":\"" + INSTANCE_ID + "\"}");
+                break;
+            case LOCATION_SERVICE_GET:
+                final String account = host.substring(0, host.indexOf('.'));
+                send(exchange, 200, "{\"serviceType\":\"LocationService2\",\"identifier\":"
+                        + "\"951917ac-a960-4999-8464-e3f0aa25b381\","
+                        + "\"location\":\"https://" + account + ".vssps.visualstudio.com/\"}");
+                break;
+            case SESSION_TOKENS_POST:
+                send(exchange, 200, "{\"displayName\":\"stand-in\",\"scope\":\"vso.code_write\","
+                        + "\"token\":\"pat-" + issued.incrementAndGet() + "\"}");
+                break;
+            case PROFILE_GET:
+                send(exchange, 200, "{\"displayName\":\"Stand In\",\"publicAlias\":\"" + PROFILE_ID + "\","
+                        + "\"id\":\"" + PROFILE_ID + "\"}");
+                break;
+            case ACCOUNTS_GET:
+                send(exchange, 200, "{\"count\":1,\"value\":[{\"accountId\":\"" + INSTANCE_ID + "\","
+                        + "\"accountUri\":\"https://account.vssps.visualstudio.com/\",\"accountName\":\"account\","
+                        + "\"accountOwner\":\"" + PROFILE_ID + "\",\"accountStatus\":\"enabled\"}]}");
+                break;
+            default:
+                send(exchange, 200, "{\"count\":0,\"value\":[]}");
+                break;
+        }
+    }
+
+    private static boolean isAuthorized(final HttpExchange exchange) {
+        final String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization == null) {
+            return false;
+        }
+        final int space = authorization.indexOf(' ');
+        return !authorization.substring(space + 1).startsWith(EXPIRED_TOKEN_PREFIX);
+    }
+
+    private void pause() {
+        final int jitter = latencyJitterMillis;
+        final int delay = latencyMillis + (jitter > 0 ? nextInt(jitter + 1) : 0);
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private synchronized double nextDouble() {
+        return random.nextDouble();
+    }
+
+    private synchronized int nextInt(final int bound) {
+        return random.nextInt(bound);
+    }
+
+    private static void send(final HttpExchange exchange, final int status, final String json) throws IOException {
+        final byte[] body = json.getBytes(UTF8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        final OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    private static void drain(final InputStream body) throws IOException {
+        final byte[] buffer = new byte[4096];
+        while (body.read(buffer) != -1) {
+            // the stand-in answers the same whatever was sent
+        }
+        body.close();
+    }
+
+    /**
+     * Sends every request of another client to this server instead of its actual host.
+     */
+    private class RedirectingHttpClient implements HttpClient, StreamingHttpClient {
+        private final HttpClient delegate;
+
+        RedirectingHttpClient(final HttpClient delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Map<String, String> getHeaders() {
+            return delegate.getHeaders();
+        }
+
+        @Override
+        public String getHeaderField(final URI uri, final String header) throws IOException {
+            return delegate.getHeaderField(redirect(uri), header);
+        }
+
+        @Override
+        public String getGetResponseText(final URI uri) throws IOException {
+            return delegate.getGetResponseText(redirect(uri));
+        }
+
+        @Override
+        public String getGetResponseText(final URI uri, final int timeout) throws IOException {
+            return delegate.getGetResponseText(redirect(uri), timeout);
+        }
+
+        @Override
+        public String getPostResponseText(final URI uri, final StringContent content) throws IOException {
+            return delegate.getPostResponseText(redirect(uri), content);
+        }
+
+        @Override
+        public HttpResponse getPostResponse(final URI uri, final StringContent content) throws IOException {
+            return delegate.getPostResponse(redirect(uri), content);
+        }
+
+        @Override
+        public <T> T streamGetResponse(final URI uri, final ResponseHandler<T> handler) throws IOException {
+            return HttpClientHelper.streamGetResponse(delegate, redirect(uri), handler);
+        }
+
+        @Override
+        public <T> T streamGetResponse(final URI uri, final int timeout, final ResponseHandler<T> handler)
+                throws IOException {
+            return HttpClientHelper.streamGetResponse(delegate, redirect(uri), timeout, handler);
+        }
+
+        @Override
+        public <T> T streamPostResponse(final URI uri, final StringContent content, final ResponseHandler<T> handler)
+                throws IOException {
+            return HttpClientHelper.streamPostResponse(delegate, redirect(uri), content, handler);
+        }
+    }
+
+    /**
+     * Sends every request of another non-blocking client to this server instead of its actual host.
+     */
+    private class RedirectingAsyncHttpClient implements AsyncHttpClient {
+        private final AsyncHttpClient delegate;
+
+        RedirectingAsyncHttpClient(final AsyncHttpClient delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Map<String, String> getHeaders() {
+            return delegate.getHeaders();
+        }
+
+        @Override
+        public ListenableFuture<String> getHeaderField(final URI uri, final String header) {
+            return delegate.getHeaderField(redirect(uri), header);
+        }
+
+        @Override
+        public ListenableFuture<String> getGetResponseText(final URI uri) {
+            return delegate.getGetResponseText(redirect(uri));
+        }
+
+        @Override
+        public ListenableFuture<String> getGetResponseText(final URI uri, final int timeout) {
+            return delegate.getGetResponseText(redirect(uri), timeout);
+        }
+
+        @Override
+        public ListenableFuture<String> getPostResponseText(final URI uri, final StringContent content) {
+            return delegate.getPostResponseText(redirect(uri), content);
+        }
+
+        @Override
+        public ListenableFuture<HttpResponse> getPostResponse(final URI uri, final StringContent content) {
+            return delegate.getPostResponse(redirect(uri), content);
+        }
+    }
+}
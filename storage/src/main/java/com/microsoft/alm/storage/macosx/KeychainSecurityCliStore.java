@@ -37,6 +37,10 @@ class KeychainSecurityCliStore {
     private static final String SERVICE_PARAMETER = "-s";
     private static final String KIND_PARAMETER = "-D";
     private static final String PASSWORD_PARAMETER = "-w";
+    private static final String COMMENT_PARAMETER = "-j";
+    static final String COMMENT_METADATA = "icmt";
+    static final String EXPIRES_ON = "expiresOn";
+    static final String ISSUED_AT = "issuedAt";
     private static final String UPDATE_IF_ALREADY_EXISTS = "-U";
     private static final int ITEM_NOT_FOUND_EXIT_CODE = 44;
     private static final int USER_INTERACTION_NOT_ALLOWED_EXIT_CODE = 36;
@@ -397,11 +401,14 @@ class KeychainSecurityCliStore {
 
         final Map<String, Object> accessTokenMetaData = read(SecretKind.TokenPair_Access_Token, processFactory, targetName);
 
+        final Map<String, String> tokenPairMetaData;
         if (accessTokenMetaData.size() > 0) {
             final String password = (String) accessTokenMetaData.get(PASSWORD);
             accessToken = password;
+            tokenPairMetaData = parseComment((String) accessTokenMetaData.get(COMMENT_METADATA));
         } else {
             accessToken = null;
+            tokenPairMetaData = new HashMap<String, String>();
         }
 
         final Map<String, Object> refreshTokenMetaData = read(SecretKind.TokenPair_Refresh_Token, processFactory, targetName);
@@ -414,26 +421,39 @@ class KeychainSecurityCliStore {
         }
 
         if (accessToken != null && refreshToken != null) {
-            return new TokenPair(accessToken, refreshToken);
+            return new TokenPair(accessToken, refreshToken,
+                    parseMillis(tokenPairMetaData.get(EXPIRES_ON)), parseMillis(tokenPairMetaData.get(ISSUED_AT)));
         }
 
         return null;
     }
 
     static void write(final SecretKind secretKind, final TestableProcessFactory processFactory, final String serviceName, final String accountName, final String password) {
+        write(secretKind, processFactory, serviceName, accountName, password, null);
+    }
+
+    static void write(final SecretKind secretKind, final TestableProcessFactory processFactory, final String serviceName, final String accountName, final String password, final String comment) {
         final String stdOut, stdErr;
         try {
             final TestableProcess addProcess = processFactory.create(
                 SECURITY,
                 INTERACTIVE_MODE
             );
-            final String[] commandParts = {
+            final String[] commandParts = comment == null ? new String[]{
                 ADD_GENERIC_PASSWORD,
                 UPDATE_IF_ALREADY_EXISTS,
                 ACCOUNT_PARAMETER, accountName,
                 SERVICE_PARAMETER, serviceName,
                 PASSWORD_PARAMETER, password,
                 KIND_PARAMETER, secretKind.name()
+            } : new String[]{
+                ADD_GENERIC_PASSWORD,
+                UPDATE_IF_ALREADY_EXISTS,
+                ACCOUNT_PARAMETER, accountName,
+                SERVICE_PARAMETER, serviceName,
+                PASSWORD_PARAMETER, password,
+                KIND_PARAMETER, secretKind.name(),
+                COMMENT_PARAMETER, comment
             };
             final ProcessCoordinator coordinator = new ProcessCoordinator(addProcess);
             final String command = StringHelper.join(" ", commandParts, 0, commandParts.length, QUOTING_PROCESSOR);
@@ -458,19 +478,63 @@ class KeychainSecurityCliStore {
     }
 
     private void writeTokenKind(final String targetName, final SecretKind secretKind, final Token token) {
+        writeTokenKind(targetName, secretKind, token, null);
+    }
+
+    private void writeTokenKind(final String targetName, final SecretKind secretKind, final Token token, final String comment) {
         final AtomicReference<String> accountNameReference = new AtomicReference<String>();
         Token.getFriendlyNameFromType(token.Type, accountNameReference);
         final String accountName = accountNameReference.get();
-        write(secretKind, processFactory, targetName, accountName, token.Value);
+        write(secretKind, processFactory, targetName, accountName, token.Value, comment);
     }
 
     public void writeTokenPair(final String targetName, final TokenPair tokenPair) {
         if (tokenPair.AccessToken.Value != null) {
-            writeTokenKind(targetName, SecretKind.TokenPair_Access_Token, tokenPair.AccessToken);
+            // the expiry goes in the comment of the access token, which older versions do not read
+            writeTokenKind(targetName, SecretKind.TokenPair_Access_Token, tokenPair.AccessToken,
+                    formatComment(tokenPair));
         }
 
         if (tokenPair.RefreshToken.Value != null) {
             writeTokenKind(targetName, SecretKind.TokenPair_Refresh_Token, tokenPair.RefreshToken);
         }
     }
+
+    static String formatComment(final TokenPair tokenPair) {
+        final StringBuilder sb = new StringBuilder();
+        if (tokenPair.getExpiresOnMillis() != -1) {
+            sb.append(EXPIRES_ON).append('=').append(tokenPair.getExpiresOnMillis());
+        }
+        if (tokenPair.getIssuedAtMillis() != -1) {
+            if (sb.length() > 0) {
+                sb.append(';');
+            }
+            sb.append(ISSUED_AT).append('=').append(tokenPair.getIssuedAtMillis());
+        }
+        return sb.length() == 0 ? null : sb.toString();
+    }
+
+    static Map<String, String> parseComment(final String comment) {
+        final Map<String, String> result = new HashMap<String, String>();
+        if (comment != null) {
+            for (final String pair : comment.split(";")) {
+                final int equals = pair.indexOf('=');
+                if (equals != -1) {
+                    result.put(pair.substring(0, equals), pair.substring(equals + 1));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static long parseMillis(final String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (final NumberFormatException e) {
+            return -1;
+        }
+    }
 }
@@ -9,6 +9,7 @@ import com.microsoft.alm.oauth2.useragent.subprocess.DefaultProcessFactory
 import com.microsoft.alm.oauth2.useragent.subprocess.TestableProcessFactory
 import com.microsoft.alm.secret.Credential
 import com.microsoft.alm.secret.Token
+import com.microsoft.alm.secret.TokenPair
 import com.microsoft.alm.secret.TokenType
 import groovy.transform.CompileStatic
 import org.junit.Ignore
@@ -96,6 +97,22 @@ attributes:
         assert expected == actual
     }
 
+    @Test public void comment_roundTrip() {
+        def tokenPair = new TokenPair("access", "refresh", 1500003600000L, 1500000000000L)
+
+        def comment = KeychainSecurityCliStore.formatComment(tokenPair)
+        def actual = KeychainSecurityCliStore.parseComment(comment)
+
+        assert "expiresOn=1500003600000;issuedAt=1500000000000" == comment
+        assert "1500003600000" == actual.get("expiresOn")
+        assert "1500000000000" == actual.get("issuedAt")
+    }
+
+    @Test public void comment_withoutExpiry() {
+        assert null == KeychainSecurityCliStore.formatComment(new TokenPair("access", "refresh"))
+        assert KeychainSecurityCliStore.parseComment(null).isEmpty()
+    }
+
     @Test public void parseMetadataLine() {
         def input = '''keychain: "/Users/chuck.norris/Library/Keychains/login.keychain"'''
         def destination = [:]